@@ -0,0 +1,429 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.common.midi;
+
+import android.media.midi.MidiReceiver;
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Pass messages to another MidiReceiver on a separate thread so that a slow
+ * receiver does not hold up the sender.
+ *
+ * Messages are copied into a bounded queue with one writing thread and one
+ * draining thread. When the queue is full the overflow policy decides what
+ * happens:
+ * <ul>
+ * <li>OVERFLOW_BLOCK waits for the drain thread to make room.</li>
+ * <li>OVERFLOW_DROP_OLDEST discards the oldest queued message.</li>
+ * <li>OVERFLOW_COALESCE_CONTROLLERS updates a queued Control Change or
+ * Pitch Bend with the new value. It never moves a value past a note,
+ * Program Change or other message on the same channel that is not a
+ * Control Change or Pitch Bend. Other messages wait as with
+ * OVERFLOW_BLOCK.</li>
+ * </ul>
+ * If the target throws an exception then the queue stops and the next
+ * send() throws, so a MidiDispatcher will drop it. A send() that is waiting
+ * for room also throws if the target fails or the queue is stopped.
+ */
+public class AsyncMidiReceiver extends MidiBatchReceiver {
+    private static final String TAG = "AsyncMidiReceiver";
+    public static final int OVERFLOW_BLOCK = 0;
+    public static final int OVERFLOW_DROP_OLDEST = 1;
+    public static final int OVERFLOW_COALESCE_CONTROLLERS = 2;
+    public static final int DEFAULT_CAPACITY = 1024;
+    private static final int SLOT_BYTES = 16;
+
+    // Slot states. A slot is only copied or changed by the thread that
+    // moved it out of FULL.
+    private static final int EMPTY = 0;
+    private static final int FULL = 1;
+    private static final int READING = 2;
+    private static final int WRITING = 3;
+
+    private final MidiReceiver mTarget;
+    private final int mOverflowPolicy;
+    private final int mMask;
+    private final byte[][] mSlotData;
+    private final int[] mSlotCounts;
+    private final long[] mSlotTimestamps;
+    private final long[] mSlotEnqueueTimes;
+    private final AtomicIntegerArray mSlotStates;
+    // Only advanced by the writer when dropping the oldest message.
+    private final AtomicLong mReadIndex = new AtomicLong();
+    private volatile long mWriteIndex;
+    private volatile boolean mDrainWaiting;
+    private volatile boolean mFailed;
+    private volatile boolean mRunning;
+    private DrainThread mDrainThread;
+
+    private volatile long mDeliveredCount;
+    private volatile long mDroppedCount;
+    private volatile long mCoalescedCount;
+    private volatile long mLastLatencyNanos;
+    private volatile long mMaxLatencyNanos;
+
+    public AsyncMidiReceiver(MidiReceiver target) {
+        this(target, DEFAULT_CAPACITY, OVERFLOW_BLOCK);
+    }
+
+    /**
+     * @param target receiver to call from the drain thread
+     * @param capacity maximum number of queued messages, rounded up to a
+     *     power of two
+     * @param overflowPolicy OVERFLOW_BLOCK, OVERFLOW_DROP_OLDEST or
+     *     OVERFLOW_COALESCE_CONTROLLERS
+     */
+    public AsyncMidiReceiver(MidiReceiver target, int capacity,
+            int overflowPolicy) {
+        if (capacity < 2) {
+            throw new IllegalArgumentException("capacity = " + capacity);
+        }
+        if (overflowPolicy < OVERFLOW_BLOCK
+                || overflowPolicy > OVERFLOW_COALESCE_CONTROLLERS) {
+            throw new IllegalArgumentException("overflowPolicy = "
+                    + overflowPolicy);
+        }
+        mTarget = target;
+        mOverflowPolicy = overflowPolicy;
+        int size = Integer.highestOneBit(capacity - 1) << 1;
+        mMask = size - 1;
+        mSlotData = new byte[size][];
+        for (int i = 0; i < size; i++) {
+            mSlotData[i] = new byte[SLOT_BYTES];
+        }
+        mSlotCounts = new int[size];
+        mSlotTimestamps = new long[size];
+        mSlotEnqueueTimes = new long[size];
+        mSlotStates = new AtomicIntegerArray(size);
+    }
+
+    class DrainThread extends Thread {
+        private volatile boolean go = true;
+        private byte[] mMessage = new byte[SLOT_BYTES];
+        private final MidiMessageBatch mBatch = new MidiMessageBatch();
+
+        @Override
+        public void run() {
+            try {
+                while (go) {
+                    long readIndex = mReadIndex.get();
+                    if (readIndex == mWriteIndex) {
+                        flushBatch();
+                        mDrainWaiting = true;
+                        // Check again so we cannot miss a wake up.
+                        if (go && mReadIndex.get() == mWriteIndex) {
+                            LockSupport.park(this);
+                        }
+                        mDrainWaiting = false;
+                        continue;
+                    }
+                    int slot = (int) (readIndex & mMask);
+                    if (!mSlotStates.compareAndSet(slot, FULL, READING)) {
+                        Thread.yield(); // The writer is coalescing into it.
+                        continue;
+                    }
+                    byte[] data = mSlotData[slot];
+                    int count = Math.min(mSlotCounts[slot], data.length);
+                    if (mMessage.length < count) {
+                        mMessage = new byte[count];
+                    }
+                    System.arraycopy(data, 0, mMessage, 0, count);
+                    long timestamp = mSlotTimestamps[slot];
+                    long enqueueTime = mSlotEnqueueTimes[slot];
+                    // Fails if the writer dropped this message meanwhile.
+                    boolean claimed = mReadIndex.compareAndSet(readIndex,
+                            readIndex + 1);
+                    mSlotStates.set(slot, claimed ? EMPTY : FULL);
+                    if (claimed) {
+                        long latency = System.nanoTime() - enqueueTime;
+                        mLastLatencyNanos = latency;
+                        if (latency > mMaxLatencyNanos) {
+                            mMaxLatencyNanos = latency;
+                        }
+                        deliver(mMessage, count, timestamp);
+                    }
+                }
+            } catch (IOException e) {
+                onFailure(e);
+            } catch (RuntimeException e) {
+                onFailure(e);
+            }
+        }
+
+        // Nothing will drain the queue now, so make waiting senders throw.
+        private void onFailure(Exception e) {
+            Log.e(TAG, "Receiver failed, stopping its queue.", e);
+            mFailed = true;
+            mRunning = false;
+        }
+
+        private void deliver(byte[] data, int count, long timestamp)
+                throws IOException {
+            if (mTarget instanceof MidiBatchReceiver) {
+                if (mBatch.addCopy(data, 0, count, timestamp)) {
+                    mDeliveredCount++;
+                    return;
+                }
+                flushBatch();
+                if (mBatch.addCopy(data, 0, count, timestamp)) {
+                    mDeliveredCount++;
+                    return;
+                }
+            }
+            mTarget.send(data, 0, count, timestamp);
+            mDeliveredCount++;
+        }
+
+        private void flushBatch() throws IOException {
+            try {
+                mBatch.sendTo(mTarget);
+            } finally {
+                mBatch.clear();
+            }
+        }
+
+        /**
+         * Asynchronously tell the thread to stop.
+         */
+        public void requestStop() {
+            go = false;
+            LockSupport.unpark(this);
+        }
+    }
+
+    /**
+     * Start the drain thread.
+     */
+    public void start() {
+        stop();
+        mFailed = false;
+        mRunning = true;
+        mDrainThread = new DrainThread();
+        mDrainThread.setDaemon(true);
+        mDrainThread.start();
+    }
+
+    /**
+     * Asks the drain thread to stop then waits for it to stop.
+     * Messages that are still queued are not delivered.
+     */
+    public void stop() {
+        mRunning = false;
+        if (mDrainThread != null) {
+            mDrainThread.requestStop();
+            try {
+                mDrainThread.join(500);
+            } catch (InterruptedException e) {
+                Log.e(TAG, "Interrupted while waiting for drain thread to stop.");
+            } finally {
+                mDrainThread = null;
+            }
+        }
+    }
+
+    @Override
+    public void onSend(byte[] msg, int offset, int count, long timestamp)
+            throws IOException {
+        checkFailed();
+        enqueue(msg, offset, count, timestamp);
+        wakeDrainThread();
+    }
+
+    @Override
+    public void onSendBatch(MidiMessageBatch batch) throws IOException {
+        checkFailed();
+        for (int i = 0; i < batch.size(); i++) {
+            enqueue(batch.getData(i), batch.getOffset(i), batch.getCount(i),
+                    batch.getTimestamp(i));
+        }
+        wakeDrainThread();
+    }
+
+    private void checkFailed() throws IOException {
+        if (mFailed) {
+            throw new IOException("Receiver failed");
+        }
+    }
+
+    private void wakeDrainThread() {
+        if (mDrainWaiting) {
+            LockSupport.unpark(mDrainThread);
+        }
+    }
+
+    private void enqueue(byte[] msg, int offset, int count, long timestamp)
+            throws IOException {
+        if (count <= 0) {
+            return;
+        }
+        long writeIndex = mWriteIndex;
+        while ((writeIndex - mReadIndex.get()) > mMask) {
+            if (mOverflowPolicy == OVERFLOW_DROP_OLDEST) {
+                long readIndex = mReadIndex.get();
+                if ((writeIndex - readIndex) > mMask
+                        && mReadIndex.compareAndSet(readIndex, readIndex + 1)) {
+                    mDroppedCount++;
+                }
+            } else if (mOverflowPolicy == OVERFLOW_COALESCE_CONTROLLERS
+                    && coalesce(msg, offset, count, timestamp, writeIndex)) {
+                mCoalescedCount++;
+                return;
+            } else {
+                // Nothing will make room if the drain thread has ended.
+                checkFailed();
+                if (!mRunning) {
+                    throw new IOException("Receiver stopped");
+                }
+                wakeDrainThread();
+                Thread.yield(); // Full so wait for the drain thread.
+            }
+        }
+        int slot = (int) (writeIndex & mMask);
+        // The drain thread may still be copying a message we dropped.
+        while (mSlotStates.get(slot) == READING) {
+            Thread.yield();
+        }
+        if (mSlotData[slot].length < count) {
+            mSlotData[slot] = new byte[count];
+        }
+        System.arraycopy(msg, offset, mSlotData[slot], 0, count);
+        mSlotCounts[slot] = count;
+        mSlotTimestamps[slot] = timestamp;
+        mSlotEnqueueTimes[slot] = System.nanoTime();
+        mSlotStates.set(slot, FULL);
+        mWriteIndex = writeIndex + 1; // Publish the message.
+    }
+
+    /**
+     * Replace the value of a queued Control Change or Pitch Bend that has
+     * the same channel and controller.
+     *
+     * @return true if the message was merged into the queue
+     */
+    private boolean coalesce(byte[] msg, int offset, int count,
+            long timestamp, long writeIndex) {
+        if (count != 3) {
+            return false;
+        }
+        byte status = msg[offset];
+        byte command = (byte) (status & MidiConstants.STATUS_COMMAND_MASK);
+        if (command != MidiConstants.STATUS_CONTROL_CHANGE
+                && command != MidiConstants.STATUS_PITCH_BEND) {
+            return false;
+        }
+        // Search from the newest message back.
+        for (long index = writeIndex - 1; index >= mReadIndex.get(); index--) {
+            int slot = (int) (index & mMask);
+            byte[] data = mSlotData[slot];
+            byte queuedStatus = data[0];
+            if ((queuedStatus & 0xFF) >= 0xF0) {
+                continue; // system message
+            }
+            if ((queuedStatus & 0xFF) >= 0x80
+                    && (queuedStatus & MidiConstants.STATUS_CHANNEL_MASK)
+                        != (status & MidiConstants.STATUS_CHANNEL_MASK)) {
+                continue; // different channel
+            }
+            if (queuedStatus == status && mSlotCounts[slot] == 3
+                    && (command == MidiConstants.STATUS_PITCH_BEND
+                    || data[1] == msg[offset + 1])) {
+                if (!mSlotStates.compareAndSet(slot, FULL, WRITING)) {
+                    return false; // being delivered now
+                }
+                if (index < mReadIndex.get()) {
+                    mSlotStates.set(slot, FULL);
+                    return false; // dropped while we looked
+                }
+                data[1] = msg[offset + 1];
+                data[2] = msg[offset + 2];
+                mSlotTimestamps[slot] = timestamp;
+                mSlotStates.set(slot, FULL);
+                return true;
+            }
+            byte queuedCommand = (byte) (queuedStatus
+                    & MidiConstants.STATUS_COMMAND_MASK);
+            if (queuedCommand != MidiConstants.STATUS_CONTROL_CHANGE
+                    && queuedCommand != MidiConstants.STATUS_PITCH_BEND) {
+                // Do not move a value before a note or Program Change.
+                return false;
+            }
+        }
+        return false;
+    }
+
+    public MidiReceiver getTarget() {
+        return mTarget;
+    }
+
+    public int getOverflowPolicy() {
+        return mOverflowPolicy;
+    }
+
+    /**
+     * @return number of messages waiting in the queue
+     */
+    public int getLag() {
+        return (int) (mWriteIndex - mReadIndex.get());
+    }
+
+    /**
+     * @return number of messages passed to the target
+     */
+    public long getDeliveredCount() {
+        return mDeliveredCount;
+    }
+
+    /**
+     * @return number of messages discarded by OVERFLOW_DROP_OLDEST
+     */
+    public long getDroppedCount() {
+        return mDroppedCount;
+    }
+
+    /**
+     * @return number of messages merged by OVERFLOW_COALESCE_CONTROLLERS
+     */
+    public long getCoalescedCount() {
+        return mCoalescedCount;
+    }
+
+    /**
+     * @return time the most recent message spent in the queue
+     */
+    public long getLastLatencyNanos() {
+        return mLastLatencyNanos;
+    }
+
+    /**
+     * @return longest time a message spent in the queue
+     */
+    public long getMaxLatencyNanos() {
+        return mMaxLatencyNanos;
+    }
+
+    /**
+     * @return true if the target threw an exception
+     */
+    public boolean isFailed() {
+        return mFailed;
+    }
+}
@@ -0,0 +1,288 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.common.midi;
+
+import android.media.midi.MidiReceiver;
+
+import java.io.IOException;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Reduce dense streams of continuous controller data before they reach a
+ * slower stage such as a scheduler.
+ *
+ * Within each time window only the last value is kept for each Control
+ * Change controller, Pitch Bend and Channel Pressure on each channel.
+ * Any other channel message, SysEx or System Common message first sends
+ * the values that are waiting, so values are never moved past a note.
+ * Real-Time messages pass straight through, and Timing Clock can
+ * optionally be dropped.
+ *
+ * The window is measured with System.nanoTime() when the messages arrive.
+ * Values that are still waiting when the input goes quiet are sent by
+ * flushExpired(), which the owner should call regularly, or by flush().
+ * Assume the input has been framed, for example by a MidiFramer.
+ */
+public class CoalescingMidiReceiver extends MidiBatchReceiver {
+    public static final long DEFAULT_WINDOW_NANOS = 5 * 1000000L;
+    private static final int KEYS_PER_CHANNEL = 130;
+    private static final int KEY_PITCH_BEND = 128;
+    private static final int KEY_CHANNEL_PRESSURE = 129;
+    private static final int NUM_KEYS = 16 * KEYS_PER_CHANNEL;
+
+    private final MidiReceiver mTarget;
+    private final long mWindowNanos;
+    private volatile boolean mDropTimingClock;
+    private final ReentrantLock mLock = new ReentrantLock();
+
+    // Values waiting to be sent, in the order their keys first arrived.
+    private final boolean[] mPending = new boolean[NUM_KEYS];
+    private final byte[] mPendingStatus = new byte[NUM_KEYS];
+    private final byte[] mPendingData1 = new byte[NUM_KEYS];
+    private final byte[] mPendingData2 = new byte[NUM_KEYS];
+    private final long[] mPendingTimestamps = new long[NUM_KEYS];
+    private final int[] mPendingOrder = new int[NUM_KEYS];
+    private int mPendingCount;
+    private long mWindowStart;
+
+    private final MidiMessageBatch mOutput = new MidiMessageBatch();
+    private final byte[] mMessage = new byte[3];
+
+    private volatile long mReceivedCount;
+    private volatile long mSentCount;
+    private volatile long mAbsorbedCount;
+    private volatile long mDroppedClockCount;
+
+    public CoalescingMidiReceiver(MidiReceiver target) {
+        this(target, DEFAULT_WINDOW_NANOS);
+    }
+
+    /**
+     * @param target receiver for the reduced stream
+     * @param windowNanos how long to collect values before sending them
+     */
+    public CoalescingMidiReceiver(MidiReceiver target, long windowNanos) {
+        mTarget = target;
+        mWindowNanos = windowNanos;
+    }
+
+    /**
+     * @param drop true to drop Timing Clock messages, for receivers that
+     *     do not follow the clock
+     */
+    public void setDropTimingClock(boolean drop) {
+        mDropTimingClock = drop;
+    }
+
+    public boolean isDropTimingClock() {
+        return mDropTimingClock;
+    }
+
+    @Override
+    public void onSend(byte[] data, int offset, int count, long timestamp)
+            throws IOException {
+        mLock.lock();
+        try {
+            process(data, offset, count, timestamp, System.nanoTime());
+            sendOutput();
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    @Override
+    public void onSendBatch(MidiMessageBatch batch) throws IOException {
+        mLock.lock();
+        try {
+            long now = System.nanoTime();
+            for (int i = 0; i < batch.size(); i++) {
+                process(batch.getData(i), batch.getOffset(i),
+                        batch.getCount(i), batch.getTimestamp(i), now);
+            }
+            sendOutput();
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    /**
+     * Send all the waiting values.
+     */
+    @Override
+    public void onFlush() throws IOException {
+        mLock.lock();
+        try {
+            flushPending();
+            sendOutput();
+        } finally {
+            mLock.unlock();
+        }
+        mTarget.flush();
+    }
+
+    /**
+     * Send the waiting values if their window has ended.
+     * This does not wait if another thread is sending, so it can be called
+     * from a time critical thread.
+     *
+     * @param now System.nanoTime()
+     */
+    public void flushExpired(long now) throws IOException {
+        if (mPendingCount == 0 || !mLock.tryLock()) {
+            return;
+        }
+        try {
+            if (mPendingCount > 0 && (now - mWindowStart) >= mWindowNanos) {
+                flushPending();
+                sendOutput();
+            }
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    private void process(byte[] data, int offset, int count, long timestamp,
+            long now) throws IOException {
+        if (count <= 0) {
+            return;
+        }
+        mReceivedCount++;
+        int status = data[offset] & 0xFF;
+        if (status >= 0xF8) { // real-time
+            if (mDropTimingClock
+                    && data[offset] == MidiConstants.STATUS_TIMING_CLOCK) {
+                mDroppedClockCount++;
+            } else {
+                output(data, offset, count, timestamp, false);
+            }
+            return;
+        }
+        int key = getKey(data, offset, count);
+        if (key < 0) {
+            // Keep everything else in order with the values.
+            flushPending();
+            output(data, offset, count, timestamp, false);
+            return;
+        }
+        if (mPendingCount > 0 && (now - mWindowStart) >= mWindowNanos) {
+            flushPending();
+        }
+        if (mPendingCount == 0) {
+            mWindowStart = now;
+        }
+        if (mPending[key]) {
+            mAbsorbedCount++;
+        } else {
+            mPending[key] = true;
+            mPendingOrder[mPendingCount++] = key;
+        }
+        mPendingStatus[key] = data[offset];
+        mPendingData1[key] = data[offset + 1];
+        mPendingData2[key] = (count > 2) ? data[offset + 2] : 0;
+        mPendingTimestamps[key] = timestamp;
+    }
+
+    /**
+     * @return index of the value this message sets or -1 if it cannot be
+     *     coalesced
+     */
+    private static int getKey(byte[] data, int offset, int count) {
+        byte command = (byte) (data[offset] & MidiConstants.STATUS_COMMAND_MASK);
+        int channel = data[offset] & MidiConstants.STATUS_CHANNEL_MASK;
+        if (command == MidiConstants.STATUS_CONTROL_CHANGE && count == 3) {
+            return channel * KEYS_PER_CHANNEL + (data[offset + 1] & 0x7F);
+        } else if (command == MidiConstants.STATUS_PITCH_BEND && count == 3) {
+            return channel * KEYS_PER_CHANNEL + KEY_PITCH_BEND;
+        } else if (command == MidiConstants.STATUS_CHANNEL_PRESSURE
+                && count == 2) {
+            return channel * KEYS_PER_CHANNEL + KEY_CHANNEL_PRESSURE;
+        }
+        return -1;
+    }
+
+    private void flushPending() throws IOException {
+        for (int i = 0; i < mPendingCount; i++) {
+            int key = mPendingOrder[i];
+            mMessage[0] = mPendingStatus[key];
+            mMessage[1] = mPendingData1[key];
+            mMessage[2] = mPendingData2[key];
+            int count = MidiConstants.getBytesPerMessage(mMessage[0]);
+            output(mMessage, 0, count, mPendingTimestamps[key], true);
+            mPending[key] = false;
+        }
+        mPendingCount = 0;
+    }
+
+    private void output(byte[] data, int offset, int count, long timestamp,
+            boolean copy) throws IOException {
+        boolean added = copy ? mOutput.addCopy(data, offset, count, timestamp)
+                : mOutput.addSlice(data, offset, count, timestamp);
+        if (!added) {
+            sendOutput();
+            if (copy) {
+                mOutput.addCopy(data, offset, count, timestamp);
+            } else {
+                mOutput.addSlice(data, offset, count, timestamp);
+            }
+        }
+        mSentCount++;
+    }
+
+    private void sendOutput() throws IOException {
+        try {
+            mOutput.sendTo(mTarget);
+        } finally {
+            mOutput.clear();
+        }
+    }
+
+    public MidiReceiver getTarget() {
+        return mTarget;
+    }
+
+    public long getWindowNanos() {
+        return mWindowNanos;
+    }
+
+    /**
+     * @return number of messages received
+     */
+    public long getReceivedCount() {
+        return mReceivedCount;
+    }
+
+    /**
+     * @return number of messages passed to the target
+     */
+    public long getSentCount() {
+        return mSentCount;
+    }
+
+    /**
+     * @return number of values replaced by a later value in the same window
+     */
+    public long getAbsorbedCount() {
+        return mAbsorbedCount;
+    }
+
+    /**
+     * @return number of Timing Clock messages dropped
+     */
+    public long getDroppedClockCount() {
+        return mDroppedClockCount;
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.common.midi;
+
+import android.media.midi.MidiReceiver;
+
+import java.io.IOException;
+
+/**
+ * A MidiReceiver that can also accept many framed messages in one call.
+ * Senders that have a MidiMessageBatch should use
+ * MidiMessageBatch.sendTo(), which falls back to send() for receivers
+ * that do not extend this class.
+ */
+public abstract class MidiBatchReceiver extends MidiReceiver {
+
+    public MidiBatchReceiver() {
+        super();
+    }
+
+    public MidiBatchReceiver(int maxMessageSize) {
+        super(maxMessageSize);
+    }
+
+    /**
+     * Deliver a batch of framed messages.
+     *
+     * @param batch
+     * @throws IOException
+     */
+    public void sendBatch(MidiMessageBatch batch) throws IOException {
+        onSendBatch(batch);
+    }
+
+    /**
+     * Called to receive a batch of framed messages. The batch and the
+     * arrays it refers to are only valid until this returns.
+     *
+     * @param batch
+     * @throws IOException
+     */
+    public abstract void onSendBatch(MidiMessageBatch batch)
+            throws IOException;
+}
@@ -28,11 +28,19 @@ import java.util.concurrent.CopyOnWriteArrayList;
  * to its receiver list. Any receivers that throw an exception upon receiving data will
  * be automatically removed from the receiver list, but no IOException will be returned
  * from the dispatcher's {@link MidiReceiver#onReceive} in that case.
+ * Batches are passed on whole to receivers that accept them.
+ *
+ * By default each receiver is called on the sender's thread. In asynchronous
+ * mode each receiver gets its own AsyncMidiReceiver queue and thread, so a
+ * slow receiver cannot hold up the others.
  */
-public final class MidiDispatcher extends MidiReceiver {
+public final class MidiDispatcher extends MidiBatchReceiver {
 
     private final CopyOnWriteArrayList<MidiReceiver> mReceivers
             = new CopyOnWriteArrayList<MidiReceiver>();
+    private final boolean mAsynchronous;
+    private final int mQueueCapacity;
+    private final int mOverflowPolicy;
 
     private final MidiSender mSender = new MidiSender() {
         /**
@@ -42,7 +50,14 @@ public final class MidiDispatcher extends MidiReceiver {
          */
         @Override
         public void onConnect(MidiReceiver receiver) {
-            mReceivers.add(receiver);
+            if (mAsynchronous) {
+                AsyncMidiReceiver queue = new AsyncMidiReceiver(receiver,
+                        mQueueCapacity, mOverflowPolicy);
+                queue.start();
+                mReceivers.add(queue);
+            } else {
+                mReceivers.add(receiver);
+            }
         }
 
         /**
@@ -52,10 +67,64 @@ public final class MidiDispatcher extends MidiReceiver {
          */
         @Override
         public void onDisconnect(MidiReceiver receiver) {
-            mReceivers.remove(receiver);
+            if (mAsynchronous) {
+                AsyncMidiReceiver queue = getAsyncReceiver(receiver);
+                if (queue != null) {
+                    mReceivers.remove(queue);
+                    queue.stop();
+                }
+            } else {
+                mReceivers.remove(receiver);
+            }
         }
     };
 
+    /**
+     * Create a dispatcher that calls each receiver on the sender's thread.
+     */
+    public MidiDispatcher() {
+        mAsynchronous = false;
+        mQueueCapacity = 0;
+        mOverflowPolicy = AsyncMidiReceiver.OVERFLOW_BLOCK;
+    }
+
+    /**
+     * Create a dispatcher that gives each receiver its own queue and thread.
+     *
+     * @param queueCapacity maximum number of messages queued per receiver
+     * @param overflowPolicy what to do when a queue is full, for example
+     *     AsyncMidiReceiver.OVERFLOW_DROP_OLDEST
+     */
+    public MidiDispatcher(int queueCapacity, int overflowPolicy) {
+        mAsynchronous = true;
+        mQueueCapacity = queueCapacity;
+        mOverflowPolicy = overflowPolicy;
+    }
+
+    /**
+     * @return true if each receiver has its own queue and thread
+     */
+    public boolean isAsynchronous() {
+        return mAsynchronous;
+    }
+
+    /**
+     * Find the queue for a connected receiver, for example to read its
+     * lag and drop counters.
+     *
+     * @param receiver the receiver that was connected
+     * @return the queue or null if not connected or not asynchronous
+     */
+    public AsyncMidiReceiver getAsyncReceiver(MidiReceiver receiver) {
+        for (MidiReceiver connected : mReceivers) {
+            if (connected instanceof AsyncMidiReceiver
+                    && ((AsyncMidiReceiver) connected).getTarget() == receiver) {
+                return (AsyncMidiReceiver) connected;
+            }
+        }
+        return null;
+    }
+
     /**
      * Returns the number of {@link MidiReceiver}s this dispatcher contains.
      * @return the number of receivers
@@ -86,6 +155,18 @@ public final class MidiDispatcher extends MidiReceiver {
         }
     }
 
+    @Override
+    public void onSendBatch(MidiMessageBatch batch) throws IOException {
+       for (MidiReceiver receiver : mReceivers) {
+            try {
+                batch.sendTo(receiver);
+            } catch (IOException e) {
+                // if the receiver fails we remove the receiver but do not propagate the exception
+                mReceivers.remove(receiver);
+            }
+        }
+    }
+
     @Override
     public void flush() throws IOException {
        for (MidiReceiver receiver : mReceivers) {
@@ -23,15 +23,34 @@ import java.io.IOException;
 /**
  * Add MIDI Events to an EventScheduler
  */
-public class MidiEventScheduler extends EventScheduler {
+public class MidiEventScheduler extends EventScheduler
+        implements MidiScheduler {
     private static final String TAG = "MidiEventScheduler";
     // Maintain a pool of scheduled events to reduce memory allocation.
     // This pool increases performance by about 14%.
     private final static int POOL_EVENT_SIZE = 16;
     private MidiReceiver mReceiver = new SchedulingReceiver();
+    // Only used by the reading thread.
+    private final MidiMessageBatch mDueBatch = new MidiMessageBatch();
+    private final MidiEvent[] mDueEvents = new MidiEvent[mDueBatch.getCapacity()];
 
-    private class SchedulingReceiver extends MidiReceiver
+    public MidiEventScheduler() {
+        super();
+    }
+
+    /**
+     * @param eventBuffer storage for the scheduled events,
+     *     for example a TimingWheelEventBuffer
+     */
+    public MidiEventScheduler(EventBuffer eventBuffer) {
+        super(eventBuffer);
+    }
+
+    private class SchedulingReceiver extends MidiBatchReceiver
     {
+        // Only used by the writing thread.
+        private MidiEvent[] mBatchEvents = new MidiEvent[MidiMessageBatch.DEFAULT_CAPACITY];
+
         /**
          * Store these bytes in the EventScheduler to be delivered at the specified
          * time.
@@ -44,6 +63,29 @@ public class MidiEventScheduler extends EventScheduler {
                 add(event);
             }
         }
+
+        /**
+         * Store the whole batch with one call to the EventBuffer.
+         */
+        @Override
+        public void onSendBatch(MidiMessageBatch batch) throws IOException {
+            if (mBatchEvents.length < batch.size()) {
+                mBatchEvents = new MidiEvent[batch.getCapacity()];
+            }
+            int count = 0;
+            for (int i = 0; i < batch.size(); i++) {
+                MidiEvent event = createScheduledEvent(batch.getData(i),
+                        batch.getOffset(i), batch.getCount(i),
+                        batch.getTimestamp(i));
+                if (event != null) {
+                    mBatchEvents[count++] = event;
+                }
+            }
+            addAll(mBatchEvents, count);
+            for (int i = 0; i < count; i++) {
+                mBatchEvents[i] = null;
+            }
+        }
     }
 
     public static class MidiEvent extends SchedulableEvent {
@@ -108,6 +150,54 @@ public class MidiEventScheduler extends EventScheduler {
         }
     }
 
+    /**
+     * Send every event that is due to the receiver and then return the
+     * events to the pool. A MidiBatchReceiver gets the events in batches.
+     *
+     * @param time
+     * @param receiver
+     * @throws IOException
+     */
+    public void sendDueEvents(long time, MidiReceiver receiver)
+            throws IOException {
+        if (receiver instanceof MidiBatchReceiver) {
+            sendDueEventBatches(time, receiver);
+            return;
+        }
+        MidiEvent event = (MidiEvent) getNextEvent(time);
+        while (event != null) {
+            receiver.send(event.data, 0, event.count, event.getTimestamp());
+            addEventToPool(event);
+            event = (MidiEvent) getNextEvent(time);
+        }
+    }
+
+    private void sendDueEventBatches(long time, MidiReceiver receiver)
+            throws IOException {
+        while (true) {
+            int count = 0;
+            MidiEvent event;
+            while (count < mDueEvents.length
+                    && (event = (MidiEvent) getNextEvent(time)) != null) {
+                mDueEvents[count++] = event;
+                mDueBatch.addSlice(event.data, 0, event.count,
+                        event.getTimestamp());
+            }
+            if (count == 0) {
+                break;
+            }
+            try {
+                mDueBatch.sendTo(receiver);
+            } finally {
+                mDueBatch.clear();
+                for (int i = 0; i < count; i++) {
+                    addEventToPool(mDueEvents[i]);
+                    mDueEvents[i] = null;
+                }
+            }
+        }
+    }
+
     /**
      * This MidiReceiver will write date to the scheduling buffer.
      * @return the MidiReceiver
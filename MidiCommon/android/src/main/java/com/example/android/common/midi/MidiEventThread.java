@@ -27,6 +27,17 @@ public class MidiEventThread extends MidiEventScheduler {
     private EventThread mEventThread;
     MidiDispatcher mDispatcher = new MidiDispatcher();
 
+    public MidiEventThread() {
+        super();
+    }
+
+    /**
+     * @param eventBuffer storage for the scheduled events
+     */
+    public MidiEventThread(EventBuffer eventBuffer) {
+        super(eventBuffer);
+    }
+
     class EventThread extends Thread {
         private boolean go = true;
 
@@ -0,0 +1,126 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.common.midi;
+
+import android.media.midi.MidiReceiver;
+import android.util.Log;
+
+import java.io.IOException;
+
+/**
+ * Play a MidiFileReader in real time.
+ *
+ * A thread sends the events a short time ahead of when they are due, so the
+ * receiver should schedule them, for example MidiEventScheduler.getReceiver()
+ * or a SynthEngine. Only one look-ahead window of events is queued at a time.
+ */
+public class MidiFilePlayer {
+    private static final String TAG = "MidiFilePlayer";
+    public static final long DEFAULT_LOOK_AHEAD_NANOS = 100 * 1000000L;
+
+    private final MidiFileReader mReader;
+    private final MidiReceiver mReceiver;
+    private final long mLookAheadNanos;
+    private PlayerThread mPlayerThread;
+
+    public MidiFilePlayer(MidiFileReader reader, MidiReceiver receiver) {
+        this(reader, receiver, DEFAULT_LOOK_AHEAD_NANOS);
+    }
+
+    /**
+     * @param reader
+     * @param receiver should schedule the events by timestamp
+     * @param lookAheadNanos how far ahead of time to send the events
+     */
+    public MidiFilePlayer(MidiFileReader reader, MidiReceiver receiver,
+            long lookAheadNanos) {
+        mReader = reader;
+        mReceiver = receiver;
+        mLookAheadNanos = lookAheadNanos;
+    }
+
+    class PlayerThread extends Thread {
+        private volatile boolean go = true;
+
+        @Override
+        public void run() {
+            try {
+                while (go) {
+                    long now = System.nanoTime();
+                    mReader.read(mReceiver, now + mLookAheadNanos);
+                    long nextTime = mReader.getNextEventTime();
+                    if (nextTime == Long.MAX_VALUE) {
+                        break; // end of file
+                    }
+                    // Wake up when the next event enters the window,
+                    // but not so often that we spin.
+                    long nanosToWait = nextTime - mLookAheadNanos - now;
+                    long millisToWait = Math.max(1, Math.min(
+                            nanosToWait / 1000000, mLookAheadNanos / 2000000));
+                    Thread.sleep(millisToWait);
+                }
+            } catch (InterruptedException e) {
+                // OK, this is how we stop the thread.
+            } catch (IOException e) {
+                Log.e(TAG, "MIDI file playback failed", e);
+            }
+        }
+
+        /**
+         * Asynchronously tell the thread to stop.
+         */
+        public void requestStop() {
+            go = false;
+            interrupt();
+        }
+    }
+
+    /**
+     * Play from the beginning of the file starting now.
+     */
+    public void start() throws IOException {
+        stop();
+        mReader.rewind();
+        mReader.setStartTime(System.nanoTime() + mLookAheadNanos);
+        mPlayerThread = new PlayerThread();
+        mPlayerThread.start();
+    }
+
+    /**
+     * Asks the thread to stop then waits for it to stop.
+     * Events already sent to the receiver are not cancelled.
+     */
+    public void stop() {
+        if (mPlayerThread != null) {
+            mPlayerThread.requestStop();
+            try {
+                mPlayerThread.join(500);
+            } catch (InterruptedException e) {
+                Log.e(TAG, "Interrupted while waiting for player thread to stop.");
+            } finally {
+                mPlayerThread = null;
+            }
+        }
+    }
+
+    /**
+     * @return true until the end of the file has been sent or stop() is called
+     */
+    public boolean isPlaying() {
+        return (mPlayerThread != null) && mPlayerThread.isAlive();
+    }
+}
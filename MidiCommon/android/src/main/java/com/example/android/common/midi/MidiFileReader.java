@@ -0,0 +1,502 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.common.midi;
+
+import android.media.midi.MidiReceiver;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Read a Standard MIDI File, type 0 or 1, and send its events to a
+ * MidiReceiver, for example the receiver of a MidiEventScheduler or a
+ * SynthEngine.
+ *
+ * The file is memory-mapped and the tracks are merged by tick as the events
+ * are read, so only the current position of each track is kept on the heap.
+ * Ticks are converted to nanoseconds using a tempo map that is built when
+ * the file is opened.
+ *
+ * Running Status is resolved the same way as in MidiFramer. Meta events are
+ * not sent. SysEx events may be sent in pieces.
+ */
+public class MidiFileReader {
+    private static final int CHUNK_MThd = 0x4D546864;
+    private static final int CHUNK_MTrk = 0x4D54726B;
+    private static final int META_EVENT = 0xFF;
+    private static final int META_END_OF_TRACK = 0x2F;
+    private static final int META_SET_TEMPO = 0x51;
+    private static final int DEFAULT_TEMPO = 500000; // microseconds per beat
+    private static final int SYSEX_PIECE_SIZE = 256;
+
+    private final ByteBuffer mData;
+    private final int mFormat;
+    private final int mNumTracks;
+    private final int mDivision;
+
+    // Tempo map, sorted by tick.
+    private long[] mTempoTicks = new long[8];
+    private long[] mTempoNanos = new long[8];
+    private int[] mTempos = new int[8];
+    private int mTempoCount;
+    private long mLastTick;
+    private double mNanosPerTickSmpte; // zero if division is in ticks per beat
+
+    // Read position of each track.
+    private final int[] mTrackStarts;
+    private final int[] mTrackEnds;
+    private final int[] mPositions;
+    private final long[] mNextTicks;
+    private final byte[] mRunningStatus;
+    // Min-heap of track indices ordered by next tick then track index.
+    private final int[] mHeap;
+    private int mHeapSize;
+    private int mTempoIndex;
+
+    private long mStartTime;
+    private final byte[] mMessage = new byte[3];
+    private final byte[] mSysExBuffer = new byte[SYSEX_PIECE_SIZE];
+
+    /**
+     * Map the file and build the tempo map.
+     *
+     * @param file
+     * @throws IOException if the file is not a valid type 0 or 1 MIDI file
+     */
+    public MidiFileReader(File file) throws IOException {
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = randomAccessFile.getChannel();
+            // The mapping stays valid after the file is closed.
+            mData = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                    channel.size());
+        } finally {
+            randomAccessFile.close();
+        }
+
+        if (mData.limit() < 14 || mData.getInt(0) != CHUNK_MThd) {
+            throw new IOException("Not a MIDI file");
+        }
+        int headerLength = mData.getInt(4);
+        mFormat = mData.getShort(8) & 0xFFFF;
+        mNumTracks = mData.getShort(10) & 0xFFFF;
+        mDivision = mData.getShort(12) & 0xFFFF;
+        if (mFormat > 1) {
+            throw new IOException("Unsupported MIDI file format " + mFormat);
+        }
+        if ((mDivision & 0x8000) != 0) {
+            int framesPerSecond = -(byte) (mDivision >> 8);
+            double frameRate = (framesPerSecond == 29) ? (30000.0 / 1001.0)
+                    : framesPerSecond;
+            int ticksPerFrame = mDivision & 0xFF;
+            if (framesPerSecond <= 0 || ticksPerFrame == 0) {
+                throw new IOException("Invalid SMPTE division");
+            }
+            mNanosPerTickSmpte = 1.0e9 / (frameRate * ticksPerFrame);
+        } else if (mDivision == 0) {
+            throw new IOException("Invalid division");
+        }
+
+        mTrackStarts = new int[mNumTracks];
+        mTrackEnds = new int[mNumTracks];
+        mPositions = new int[mNumTracks];
+        mNextTicks = new long[mNumTracks];
+        mRunningStatus = new byte[mNumTracks];
+        mHeap = new int[mNumTracks];
+
+        // Find the tracks and skip any unknown chunks.
+        int position = 8 + headerLength;
+        int track = 0;
+        while (track < mNumTracks) {
+            if (position + 8 > mData.limit()) {
+                throw new IOException("Missing track " + track);
+            }
+            int type = mData.getInt(position);
+            int length = mData.getInt(position + 4);
+            int start = position + 8;
+            if (length < 0 || start + length > mData.limit()) {
+                throw new IOException("Truncated chunk at " + position);
+            }
+            if (type == CHUNK_MTrk) {
+                mTrackStarts[track] = start;
+                mTrackEnds[track] = start + length;
+                track++;
+            }
+            position = start + length;
+        }
+
+        buildTempoMap();
+        rewind();
+    }
+
+    /**
+     * Scan every track for Set Tempo events without sending anything.
+     */
+    private void buildTempoMap() throws IOException {
+        mTempoCount = 0;
+        addTempo(0, DEFAULT_TEMPO);
+        for (int track = 0; track < mNumTracks; track++) {
+            int position = mTrackStarts[track];
+            int end = mTrackEnds[track];
+            long tick = 0;
+            byte runningStatus = 0;
+            while (position < end) {
+                long delta = 0;
+                int b;
+                do {
+                    b = getByte(position++, end);
+                    delta = (delta << 7) | (b & 0x7F);
+                } while ((b & 0x80) != 0);
+                tick += delta;
+
+                int status = getByte(position, end);
+                if (status == META_EVENT) {
+                    int type = getByte(position + 1, end);
+                    position += 2;
+                    int length = 0;
+                    do {
+                        b = getByte(position++, end);
+                        length = (length << 7) | (b & 0x7F);
+                    } while ((b & 0x80) != 0);
+                    if (type == META_SET_TEMPO && length == 3) {
+                        int tempo = (getByte(position, end) << 16)
+                                | (getByte(position + 1, end) << 8)
+                                | getByte(position + 2, end);
+                        addTempo(tick, tempo);
+                    }
+                    position += length;
+                    if (type == META_END_OF_TRACK) {
+                        break;
+                    }
+                } else if (status == 0xF0 || status == 0xF7) {
+                    position++;
+                    int length = 0;
+                    do {
+                        b = getByte(position++, end);
+                        length = (length << 7) | (b & 0x7F);
+                    } while ((b & 0x80) != 0);
+                    position += length;
+                } else if (status >= 0x80 && status < 0xF0) {
+                    runningStatus = (byte) status;
+                    position += MidiConstants.getBytesPerMessage(runningStatus);
+                } else if (status < 0x80 && runningStatus != 0) {
+                    position += MidiConstants.getBytesPerMessage(runningStatus)
+                            - 1;
+                } else {
+                    throw new IOException("Invalid status " + status
+                            + " at " + position);
+                }
+            }
+            if (tick > mLastTick) {
+                mLastTick = tick;
+            }
+        }
+
+        // Compute the time of each tempo change.
+        for (int i = 1; i < mTempoCount; i++) {
+            mTempoNanos[i] = mTempoNanos[i - 1] + (mTempoTicks[i]
+                    - mTempoTicks[i - 1]) * mTempos[i - 1] * 1000L / mDivision;
+        }
+    }
+
+    /**
+     * Insert a tempo change, keeping the map sorted by tick.
+     * Changes at the same tick keep the order they were found in.
+     */
+    private void addTempo(long tick, int tempo) {
+        if (mTempoCount == mTempoTicks.length) {
+            int size = mTempoCount * 2;
+            long[] ticks = new long[size];
+            long[] nanos = new long[size];
+            int[] tempos = new int[size];
+            System.arraycopy(mTempoTicks, 0, ticks, 0, mTempoCount);
+            System.arraycopy(mTempos, 0, tempos, 0, mTempoCount);
+            mTempoTicks = ticks;
+            mTempoNanos = nanos;
+            mTempos = tempos;
+        }
+        int i = mTempoCount;
+        while (i > 0 && mTempoTicks[i - 1] > tick) {
+            mTempoTicks[i] = mTempoTicks[i - 1];
+            mTempos[i] = mTempos[i - 1];
+            i--;
+        }
+        mTempoTicks[i] = tick;
+        mTempos[i] = tempo;
+        mTempoCount++;
+    }
+
+    private int getByte(int position, int end) throws IOException {
+        if (position >= end) {
+            throw new IOException("Truncated track at " + position);
+        }
+        return mData.get(position) & 0xFF;
+    }
+
+    private int readVariableLength(int track) throws IOException {
+        int end = mTrackEnds[track];
+        int value = 0;
+        int b;
+        do {
+            b = getByte(mPositions[track]++, end);
+            value = (value << 7) | (b & 0x7F);
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+    /**
+     * Go back to the beginning of the file.
+     */
+    public void rewind() throws IOException {
+        mHeapSize = 0;
+        mTempoIndex = 0;
+        for (int track = 0; track < mNumTracks; track++) {
+            mPositions[track] = mTrackStarts[track];
+            mRunningStatus[track] = 0;
+            mNextTicks[track] = 0;
+            if (mPositions[track] < mTrackEnds[track]) {
+                mNextTicks[track] = readVariableLength(track);
+                mHeap[mHeapSize] = track;
+                siftUp(mHeapSize++);
+            }
+        }
+    }
+
+    /**
+     * Set the time of tick zero. Events will be timestamped relative to
+     * this time. The default is zero.
+     *
+     * @param startTime in nanoseconds, for example System.nanoTime()
+     */
+    public void setStartTime(long startTime) {
+        mStartTime = startTime;
+    }
+
+    public long getStartTime() {
+        return mStartTime;
+    }
+
+    /**
+     * @return 0 for a single track file, 1 for a multi-track file
+     */
+    public int getFormat() {
+        return mFormat;
+    }
+
+    public int getTrackCount() {
+        return mNumTracks;
+    }
+
+    /**
+     * @return time of the last event in nanoseconds relative to the start
+     */
+    public long getDurationNanos() {
+        return ticksToNanos(mLastTick);
+    }
+
+    /**
+     * Convert a tick to nanoseconds relative to the start of the file.
+     *
+     * @param tick
+     * @return nanoseconds
+     */
+    public long ticksToNanos(long tick) {
+        if (mNanosPerTickSmpte > 0.0) {
+            return (long) (tick * mNanosPerTickSmpte);
+        }
+        // Binary search for the last tempo change at or before the tick.
+        int low = 0;
+        int high = mTempoCount - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (mTempoTicks[mid] <= tick) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return tickToNanos(tick, low);
+    }
+
+    private long tickToNanos(long tick, int tempoIndex) {
+        return mTempoNanos[tempoIndex] + (tick - mTempoTicks[tempoIndex])
+                * mTempos[tempoIndex] * 1000L / mDivision;
+    }
+
+    /**
+     * Time of the next event that has not been sent.
+     *
+     * @return timestamp in nanoseconds or Long.MAX_VALUE at the end of the file
+     */
+    public long getNextEventTime() {
+        if (mHeapSize == 0) {
+            return Long.MAX_VALUE;
+        }
+        return mStartTime + nextTickToNanos(mNextTicks[mHeap[0]]);
+    }
+
+    private long nextTickToNanos(long tick) {
+        if (mNanosPerTickSmpte > 0.0) {
+            return (long) (tick * mNanosPerTickSmpte);
+        }
+        // Ticks are read in order so the tempo index only moves forward.
+        while (mTempoIndex + 1 < mTempoCount
+                && mTempoTicks[mTempoIndex + 1] <= tick) {
+            mTempoIndex++;
+        }
+        return tickToNanos(tick, mTempoIndex);
+    }
+
+    /**
+     * Send the events whose timestamp is before endTime.
+     * Call this repeatedly with a look-ahead window so that the whole file
+     * never has to be scheduled at once.
+     *
+     * @param receiver for example MidiEventScheduler.getReceiver()
+     * @param endTime in nanoseconds
+     * @return number of events sent
+     * @throws IOException if the file is corrupt or the receiver fails
+     */
+    public int read(MidiReceiver receiver, long endTime) throws IOException {
+        int numEvents = 0;
+        while (mHeapSize > 0) {
+            int track = mHeap[0];
+            long timestamp = mStartTime + nextTickToNanos(mNextTicks[track]);
+            if (timestamp >= endTime) {
+                break;
+            }
+            if (readEvent(track, receiver, timestamp)) {
+                numEvents++;
+            }
+            if (mPositions[track] < mTrackEnds[track]) {
+                mNextTicks[track] += readVariableLength(track);
+                siftDown(0);
+            } else {
+                mHeap[0] = mHeap[--mHeapSize];
+                siftDown(0);
+            }
+        }
+        return numEvents;
+    }
+
+    /**
+     * Read one event from the track and send it if it is a MIDI message.
+     *
+     * @return true if the event was sent
+     */
+    private boolean readEvent(int track, MidiReceiver receiver, long timestamp)
+            throws IOException {
+        int end = mTrackEnds[track];
+        int position = mPositions[track];
+        int status = getByte(position, end);
+        if (status == META_EVENT) {
+            int type = getByte(position + 1, end);
+            mPositions[track] = position + 2;
+            int length = readVariableLength(track);
+            mPositions[track] += length;
+            if (type == META_END_OF_TRACK) {
+                // Ignore anything after the end of the track.
+                mPositions[track] = end;
+            }
+            return false;
+        } else if (status == 0xF0 || status == 0xF7) {
+            mPositions[track] = position + 1;
+            int length = readVariableLength(track);
+            int start = mPositions[track];
+            if (start + length > end) {
+                throw new IOException("Truncated SysEx at " + start);
+            }
+            // An F7 event is an escape for arbitrary bytes.
+            int numBytes = 0;
+            if (status == 0xF0) {
+                mSysExBuffer[numBytes++] = (byte) 0xF0;
+            }
+            for (int i = 0; i < length; i++) {
+                if (numBytes == mSysExBuffer.length) {
+                    receiver.send(mSysExBuffer, 0, numBytes, timestamp);
+                    numBytes = 0;
+                }
+                mSysExBuffer[numBytes++] = mData.get(start + i);
+            }
+            if (numBytes > 0) {
+                receiver.send(mSysExBuffer, 0, numBytes, timestamp);
+            }
+            mPositions[track] = start + length;
+            return true;
+        } else if (status >= 0x80 && status < 0xF0) {
+            mRunningStatus[track] = (byte) status;
+            position++;
+        } else if (status >= 0x80 || mRunningStatus[track] == 0) {
+            throw new IOException("Invalid status " + status + " at "
+                    + position);
+        }
+        // Channel message, possibly using Running Status.
+        mMessage[0] = mRunningStatus[track];
+        int count = MidiConstants.getBytesPerMessage(mMessage[0]);
+        for (int i = 1; i < count; i++) {
+            mMessage[i] = (byte) getByte(position++, end);
+        }
+        mPositions[track] = position;
+        receiver.send(mMessage, 0, count, timestamp);
+        return true;
+    }
+
+    private boolean isBefore(int track1, int track2) {
+        long tick1 = mNextTicks[track1];
+        long tick2 = mNextTicks[track2];
+        return (tick1 < tick2) || ((tick1 == tick2) && (track1 < track2));
+    }
+
+    private void siftUp(int index) {
+        int track = mHeap[index];
+        while (index > 0) {
+            int parent = (index - 1) >> 1;
+            if (!isBefore(track, mHeap[parent])) {
+                break;
+            }
+            mHeap[index] = mHeap[parent];
+            index = parent;
+        }
+        mHeap[index] = track;
+    }
+
+    private void siftDown(int index) {
+        if (mHeapSize == 0) {
+            return;
+        }
+        int track = mHeap[index];
+        while (true) {
+            int child = 2 * index + 1;
+            if (child >= mHeapSize) {
+                break;
+            }
+            if (child + 1 < mHeapSize
+                    && isBefore(mHeap[child + 1], mHeap[child])) {
+                child++;
+            }
+            if (!isBefore(mHeap[child], track)) {
+                break;
+            }
+            mHeap[index] = mHeap[child];
+            index = child;
+        }
+        mHeap[index] = track;
+    }
+}
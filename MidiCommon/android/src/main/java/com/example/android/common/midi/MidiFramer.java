@@ -0,0 +1,266 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.common.midi;
+
+import android.media.midi.MidiReceiver;
+import android.util.Log;
+
+import java.io.IOException;
+
+/**
+ * Convert stream of arbitrary MIDI bytes into discrete messages.
+ *
+ * Parses the incoming bytes and then posts individual messages to the receiver
+ * specified in the constructor. Short messages of 1-3 bytes will be complete.
+ * System Exclusive messages may be posted in pieces.
+ *
+ * Resolves Running Status and interleaved System Real-Time messages.
+ *
+ * Packets that are made of complete messages are scanned in one pass and
+ * the messages are passed on as slices of the original array, without
+ * copying. If the receiver is a MidiBatchReceiver then the messages from
+ * each packet are delivered in a single MidiMessageBatch. A batch that is
+ * sent to the framer is framed as one stream and passed on as one batch.
+ */
+public class MidiFramer extends MidiBatchReceiver {
+    private MidiReceiver mReceiver;
+    private byte[] mBuffer = new byte[3];
+    private int mCount;
+    private byte mRunningStatus;
+    private int mNeeded;
+    private boolean mInSysEx;
+    private boolean mBulkScanEnabled = true;
+    private MidiMessageBatch mBatch;
+
+    public MidiFramer(MidiReceiver receiver) {
+        mReceiver = receiver;
+        if (receiver instanceof MidiBatchReceiver) {
+            mBatch = new MidiMessageBatch();
+        }
+    }
+
+    /**
+     * The bulk scan produces the same messages as the byte by byte parser.
+     * It can be disabled to compare the two.
+     *
+     * @param enabled default is true
+     */
+    public void setBulkScanEnabled(boolean enabled) {
+        mBulkScanEnabled = enabled;
+    }
+
+    public boolean isBulkScanEnabled() {
+        return mBulkScanEnabled;
+    }
+
+    /*
+     * @see android.midi.MidiReceiver#onSend(byte[], int, int, long)
+     */
+    @Override
+    public void onSend(byte[] data, int offset, int count, long timestamp)
+            throws IOException {
+        try {
+            frame(data, offset, count, timestamp);
+        } finally {
+            flushBatch();
+        }
+    }
+
+    @Override
+    public void onSendBatch(MidiMessageBatch batch) throws IOException {
+        try {
+            for (int i = 0; i < batch.size(); i++) {
+                frame(batch.getData(i), batch.getOffset(i), batch.getCount(i),
+                        batch.getTimestamp(i));
+            }
+        } finally {
+            flushBatch();
+        }
+    }
+
+    private void frame(byte[] data, int offset, int count, long timestamp)
+            throws IOException {
+        // Use the fast path if we are between messages.
+        if (mBulkScanEnabled && !mInSysEx && mCount <= 1) {
+            int end = scanMessages(data, offset, offset + count, timestamp);
+            count -= end - offset;
+            offset = end;
+        }
+        parseBytes(data, offset, count, timestamp);
+    }
+
+    /**
+     * Pass on complete messages that lie in the array, stopping at the first
+     * byte that needs the full parser, such as SysEx, System Common or an
+     * incomplete message.
+     *
+     * @return offset of the first byte that was not consumed
+     */
+    private int scanMessages(byte[] data, int offset, int end, long timestamp)
+            throws IOException {
+        byte runningStatus = (mCount == 1) ? mRunningStatus : 0;
+        int i = offset;
+        while (i < end) {
+            final int currentInt = data[i] & 0xFF;
+            if (currentInt >= 0xF8) { // real-time?
+                emit(data, i, 1, timestamp, false);
+                i++;
+            } else if (currentInt >= 0xF0) { // SysEx or system common
+                break;
+            } else if (currentInt >= 0x80) { // channel message
+                int length = MidiConstants.getBytesPerMessage(data[i]);
+                if (i + length > end || !isDataOnly(data, i + 1, length - 1)) {
+                    break;
+                }
+                emit(data, i, length, timestamp, false);
+                runningStatus = data[i];
+                i += length;
+            } else { // data byte using Running Status
+                if (runningStatus == 0) {
+                    break;
+                }
+                int numData = MidiConstants.getBytesPerMessage(runningStatus) - 1;
+                if (i + numData > end || !isDataOnly(data, i, numData)) {
+                    break;
+                }
+                mBuffer[0] = runningStatus;
+                System.arraycopy(data, i, mBuffer, 1, numData);
+                emit(mBuffer, 0, numData + 1, timestamp, true);
+                i += numData;
+            }
+        }
+        // Leave the parser in the same state as if it had read these bytes.
+        if (runningStatus != 0) {
+            mRunningStatus = runningStatus;
+            mCount = 1;
+            mNeeded = MidiConstants.getBytesPerMessage(runningStatus) - 1;
+        }
+        return i;
+    }
+
+    private static boolean isDataOnly(byte[] data, int offset, int count) {
+        for (int i = offset; i < offset + count; i++) {
+            if (data[i] < 0) { // bytes >= 0x80 are negative
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Send a message or add it to the batch.
+     *
+     * @param copy true if the data is in a temporary buffer
+     */
+    private void emit(byte[] data, int offset, int count, long timestamp,
+            boolean copy) throws IOException {
+        if (count == 0) {
+            return;
+        }
+        if (mBatch == null) {
+            mReceiver.send(data, offset, count, timestamp);
+            return;
+        }
+        if (!addToBatch(data, offset, count, timestamp, copy)) {
+            flushBatch();
+            addToBatch(data, offset, count, timestamp, copy);
+        }
+    }
+
+    private boolean addToBatch(byte[] data, int offset, int count,
+            long timestamp, boolean copy) {
+        return copy ? mBatch.addCopy(data, offset, count, timestamp)
+                : mBatch.addSlice(data, offset, count, timestamp);
+    }
+
+    private void flushBatch() throws IOException {
+        if (mBatch != null && !mBatch.isEmpty()) {
+            try {
+                mBatch.sendTo(mReceiver);
+            } finally {
+                mBatch.clear();
+            }
+        }
+    }
+
+    /**
+     * Parse one byte at a time.
+     */
+    private void parseBytes(byte[] data, int offset, int count, long timestamp)
+            throws IOException {
+        int sysExStartOffset = (mInSysEx ? offset : -1);
+
+        for (int i = 0; i < count; i++) {
+            final byte currentByte = data[offset];
+            final int currentInt = currentByte & 0xFF;
+            if (currentInt >= 0x80) { // status byte?
+                if (currentInt < 0xF0) { // channel message?
+                    mRunningStatus = currentByte;
+                    mCount = 1;
+                    mNeeded = MidiConstants.getBytesPerMessage(currentByte) - 1;
+                } else if (currentInt < 0xF8) { // system common?
+                    if (currentInt == 0xF0 /* SysEx Start */) {
+                        // Log.i(TAG, "SysEx Start");
+                        mInSysEx = true;
+                        sysExStartOffset = offset;
+                    } else if (currentInt == 0xF7 /* SysEx End */) {
+                        // Log.i(TAG, "SysEx End");
+                        if (mInSysEx) {
+                            emit(data, sysExStartOffset,
+                                offset - sysExStartOffset + 1, timestamp, false);
+                            mInSysEx = false;
+                            sysExStartOffset = -1;
+                        }
+                    } else {
+                        mBuffer[0] = currentByte;
+                        mRunningStatus = 0;
+                        mCount = 1;
+                        mNeeded = MidiConstants.getBytesPerMessage(currentByte) - 1;
+                    }
+                } else { // real-time?
+                    // Single byte message interleaved with other data.
+                    if (mInSysEx) {
+                        emit(data, sysExStartOffset,
+                                offset - sysExStartOffset, timestamp, false);
+                        sysExStartOffset = offset + 1;
+                    }
+                    emit(data, offset, 1, timestamp, false);
+                }
+            } else { // data byte
+                if (!mInSysEx) {
+                    mBuffer[mCount++] = currentByte;
+                    if (--mNeeded == 0) {
+                        if (mRunningStatus != 0) {
+                            mBuffer[0] = mRunningStatus;
+                        }
+                        emit(mBuffer, 0, mCount, timestamp, true);
+                        mNeeded = MidiConstants.getBytesPerMessage(mBuffer[0]) - 1;
+                        mCount = 1;
+                    }
+                }
+            }
+            ++offset;
+        }
+
+        // send any accumulatedSysEx data
+        if (sysExStartOffset >= 0 && sysExStartOffset < offset) {
+            emit(data, sysExStartOffset,
+                    offset - sysExStartOffset, timestamp, false);
+        }
+    }
+
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.common.midi;
+
+import android.media.midi.MidiReceiver;
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Replay a MIDI log into a MidiReceiver at the recorded speed, scaled, or as
+ * fast as possible. The messages are sent when they are due, with their
+ * timestamps moved so that the first replayed message is at the start time.
+ */
+public class MidiLogPlayer {
+    private static final String TAG = "MidiLogPlayer";
+    public static final double SPEED_MAX = Double.POSITIVE_INFINITY;
+    // At maximum speed, read this much recorded time between stop checks.
+    private static final long MAX_SPEED_CHUNK_NANOS = 1000 * 1000000L;
+
+    private final MidiLogReader mReader;
+    private final MidiReceiver mReceiver;
+    private final TimeMappingReceiver mMapper = new TimeMappingReceiver();
+    private volatile double mSpeed = 1.0;
+    private PlayerThread mPlayerThread;
+
+    public MidiLogPlayer(MidiLogReader reader, MidiReceiver receiver) {
+        mReader = reader;
+        mReceiver = receiver;
+    }
+
+    /**
+     * Move the recorded timestamps to the replay time base.
+     */
+    private class TimeMappingReceiver extends MidiReceiver {
+        long origin;
+        long base;
+        double speed;
+
+        @Override
+        public void onSend(byte[] data, int offset, int count, long timestamp)
+                throws IOException {
+            mReceiver.send(data, offset, count, toReplayTime(timestamp));
+        }
+
+        long toReplayTime(long timestamp) {
+            return base + (long) ((timestamp - origin) / speed);
+        }
+    }
+
+    class PlayerThread extends Thread {
+        private volatile boolean go = true;
+
+        @Override
+        public void run() {
+            try {
+                while (go) {
+                    long next = mReader.getNextEventTime();
+                    if (next == Long.MAX_VALUE) {
+                        break; // end of log
+                    }
+                    long now = System.nanoTime();
+                    long nanosToWait = mMapper.toReplayTime(next) - now;
+                    if (nanosToWait > 0) {
+                        LockSupport.parkNanos(this, nanosToWait);
+                        continue;
+                    }
+                    long endTime;
+                    if (Double.isInfinite(mMapper.speed)) {
+                        endTime = next + MAX_SPEED_CHUNK_NANOS;
+                    } else {
+                        endTime = mMapper.origin + 1
+                                + (long) ((now - mMapper.base) * mMapper.speed);
+                    }
+                    mReader.read(mMapper, endTime);
+                }
+            } catch (IOException e) {
+                Log.e(TAG, "MIDI log replay failed", e);
+            }
+        }
+
+        /**
+         * Asynchronously tell the thread to stop.
+         */
+        public void requestStop() {
+            go = false;
+            LockSupport.unpark(this);
+        }
+    }
+
+    /**
+     * @param speed 1.0 for the recorded speed, 2.0 for twice as fast,
+     *     or SPEED_MAX to send the messages as fast as possible
+     */
+    public void setSpeed(double speed) {
+        if (!(speed > 0.0)) {
+            throw new IllegalArgumentException("speed = " + speed);
+        }
+        mSpeed = speed;
+    }
+
+    public double getSpeed() {
+        return mSpeed;
+    }
+
+    /**
+     * Replay from the beginning of the log.
+     */
+    public void start() {
+        start(Long.MIN_VALUE);
+    }
+
+    /**
+     * Replay from the first message at or after the given recorded time.
+     *
+     * @param fromTime recorded timestamp in nanoseconds
+     */
+    public void start(long fromTime) {
+        stop();
+        mReader.seek(fromTime);
+        mMapper.origin = mReader.getNextEventTime();
+        mMapper.base = System.nanoTime();
+        mMapper.speed = mSpeed;
+        mPlayerThread = new PlayerThread();
+        mPlayerThread.start();
+    }
+
+    /**
+     * Asks the thread to stop then waits for it to stop.
+     */
+    public void stop() {
+        if (mPlayerThread != null) {
+            mPlayerThread.requestStop();
+            try {
+                mPlayerThread.join(500);
+            } catch (InterruptedException e) {
+                Log.e(TAG, "Interrupted while waiting for player thread to stop.");
+            } finally {
+                mPlayerThread = null;
+            }
+        }
+    }
+
+    /**
+     * @return true until the end of the log has been sent or stop() is called
+     */
+    public boolean isPlaying() {
+        return (mPlayerThread != null) && mPlayerThread.isAlive();
+    }
+}
@@ -0,0 +1,220 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.common.midi;
+
+import android.media.midi.MidiReceiver;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Read a log written by MidiLogRecorder.
+ *
+ * The file is memory-mapped. seek() uses the sparse time index to find its
+ * position in O(log n) and then scans at most one index interval.
+ * Timestamps are assumed to increase through the log, as they do when
+ * recording from a single source.
+ */
+public class MidiLogReader {
+    private final ByteBuffer mData;
+    private final int mDataEnd;
+    private long[] mIndexTimes;
+    private long[] mIndexOffsets;
+    private int mIndexCount;
+    private int mPosition;
+    private final byte[] mMessage = new byte[MidiLogRecorder.MAX_RECORD_DATA];
+
+    /**
+     * Map the file and load the index. If the recording was not stopped
+     * cleanly then the index is rebuilt by scanning the records.
+     *
+     * @param file
+     * @throws IOException if the file is not a MIDI log
+     */
+    public MidiLogReader(File file) throws IOException {
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = randomAccessFile.getChannel();
+            mData = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                    channel.size());
+        } finally {
+            randomAccessFile.close();
+        }
+        int length = mData.limit();
+        if (length < MidiLogRecorder.HEADER_SIZE
+                || mData.getInt(0) != MidiLogRecorder.MAGIC_LOG) {
+            throw new IOException("Not a MIDI log");
+        }
+        if (mData.getInt(4) != MidiLogRecorder.VERSION) {
+            throw new IOException("Unsupported MIDI log version "
+                    + mData.getInt(4));
+        }
+
+        int trailer = length - MidiLogRecorder.TRAILER_SIZE;
+        if (trailer >= MidiLogRecorder.HEADER_SIZE
+                && mData.getInt(length - 4) == MidiLogRecorder.MAGIC_INDEX) {
+            int count = mData.getInt(trailer);
+            long indexOffset = mData.getLong(trailer + 4);
+            if (count < 0 || indexOffset + count * 16L != trailer) {
+                throw new IOException("Corrupt MIDI log index");
+            }
+            mDataEnd = (int) indexOffset;
+            mIndexTimes = new long[count];
+            mIndexOffsets = new long[count];
+            for (int i = 0; i < count; i++) {
+                int entry = mDataEnd + i * 16;
+                mIndexTimes[i] = mData.getLong(entry);
+                mIndexOffsets[i] = mData.getLong(entry + 8);
+            }
+            mIndexCount = count;
+        } else {
+            mDataEnd = rebuildIndex(length);
+        }
+        mPosition = MidiLogRecorder.HEADER_SIZE;
+    }
+
+    /**
+     * Scan the records to find the end of the data and build the index.
+     * The end of a recording that was not stopped is filled with zeros.
+     *
+     * @return offset of the end of the records
+     */
+    private int rebuildIndex(int length) {
+        mIndexTimes = new long[256];
+        mIndexOffsets = new long[256];
+        mIndexCount = 0;
+        long nextIndexOffset = MidiLogRecorder.HEADER_SIZE;
+        int position = MidiLogRecorder.HEADER_SIZE;
+        while (position + MidiLogRecorder.RECORD_HEADER_SIZE <= length) {
+            int count = mData.getShort(position + 8) & 0xFFFF;
+            int next = position + MidiLogRecorder.RECORD_HEADER_SIZE + count;
+            if (count == 0 || next > length) {
+                break;
+            }
+            if (position >= nextIndexOffset) {
+                if (mIndexCount == mIndexTimes.length) {
+                    long[] times = new long[mIndexCount * 2];
+                    long[] offsets = new long[mIndexCount * 2];
+                    System.arraycopy(mIndexTimes, 0, times, 0, mIndexCount);
+                    System.arraycopy(mIndexOffsets, 0, offsets, 0, mIndexCount);
+                    mIndexTimes = times;
+                    mIndexOffsets = offsets;
+                }
+                mIndexTimes[mIndexCount] = mData.getLong(position);
+                mIndexOffsets[mIndexCount] = position;
+                mIndexCount++;
+                nextIndexOffset = position + MidiLogRecorder.INDEX_INTERVAL;
+            }
+            position = next;
+        }
+        return position;
+    }
+
+    /**
+     * @return timestamp of the first record or Long.MAX_VALUE if empty
+     */
+    public long getStartTime() {
+        if (mDataEnd <= MidiLogRecorder.HEADER_SIZE) {
+            return Long.MAX_VALUE;
+        }
+        return mData.getLong(MidiLogRecorder.HEADER_SIZE);
+    }
+
+    /**
+     * Position the reader at the first record whose timestamp is at or
+     * after the given time.
+     *
+     * @param timestamp in nanoseconds, as recorded
+     */
+    public void seek(long timestamp) {
+        // Find the last index entry before the time.
+        int low = 0;
+        int high = mIndexCount - 1;
+        int found = -1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (mIndexTimes[mid] < timestamp) {
+                found = mid;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        mPosition = (found < 0) ? MidiLogRecorder.HEADER_SIZE
+                : (int) mIndexOffsets[found];
+        while (mPosition < mDataEnd && mData.getLong(mPosition) < timestamp) {
+            skipRecord();
+        }
+    }
+
+    /**
+     * Go back to the first record.
+     */
+    public void rewind() {
+        mPosition = MidiLogRecorder.HEADER_SIZE;
+    }
+
+    private void skipRecord() {
+        int count = mData.getShort(mPosition + 8) & 0xFFFF;
+        mPosition += MidiLogRecorder.RECORD_HEADER_SIZE + count;
+    }
+
+    /**
+     * @return timestamp of the next record or Long.MAX_VALUE at the end
+     */
+    public long getNextEventTime() {
+        if (mPosition >= mDataEnd) {
+            return Long.MAX_VALUE;
+        }
+        return mData.getLong(mPosition);
+    }
+
+    /**
+     * Send the records whose timestamp is before endTime.
+     *
+     * @param receiver
+     * @param endTime in nanoseconds, as recorded
+     * @return number of records sent
+     * @throws IOException if the receiver fails
+     */
+    public int read(MidiReceiver receiver, long endTime) throws IOException {
+        int numEvents = 0;
+        while (mPosition < mDataEnd) {
+            long timestamp = mData.getLong(mPosition);
+            if (timestamp >= endTime) {
+                break;
+            }
+            int count = mData.getShort(mPosition + 8) & 0xFFFF;
+            mData.position(mPosition + MidiLogRecorder.RECORD_HEADER_SIZE);
+            mData.get(mMessage, 0, count);
+            mPosition += MidiLogRecorder.RECORD_HEADER_SIZE + count;
+            receiver.send(mMessage, 0, count, timestamp);
+            numEvents++;
+        }
+        return numEvents;
+    }
+
+    /**
+     * @return number of bytes of records in the log
+     */
+    public int getDataSize() {
+        return mDataEnd - MidiLogRecorder.HEADER_SIZE;
+    }
+}
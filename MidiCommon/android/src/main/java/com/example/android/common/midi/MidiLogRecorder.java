@@ -0,0 +1,377 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.common.midi;
+
+import android.media.midi.MidiReceiver;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Record MIDI messages with their timestamps to an append-only binary log
+ * that can be read back with MidiLogReader.
+ * Connect it after a MidiFramer so that each record holds one message.
+ *
+ * Messages are copied into one of two buffers on the receiving thread.
+ * When that buffer is full the buffers are swapped and a writer thread
+ * copies the full one into a memory-mapped file, so onSend() never waits
+ * for the file. A partly full buffer is also handed over once it has held
+ * a message for the flush time, measured with System.nanoTime(). If the
+ * writer falls behind then messages are dropped and counted.
+ *
+ * Log format, big-endian:
+ * <pre>
+ * header:  int MAGIC_LOG, int VERSION
+ * records: long timestamp, unsigned short count, byte[count] data
+ * index:   (long timestamp, long offset) * n, int n, long indexOffset,
+ *          int MAGIC_INDEX
+ * </pre>
+ * The index has one entry for about every INDEX_INTERVAL bytes of records.
+ * It is written by stop(). If it is missing then the reader rebuilds it.
+ */
+public class MidiLogRecorder extends MidiReceiver {
+    private static final String TAG = "MidiLogRecorder";
+    public static final int MAGIC_LOG = 0x4D4C4F47; // "MLOG"
+    public static final int MAGIC_INDEX = 0x4D494458; // "MIDX"
+    public static final int VERSION = 1;
+    public static final int HEADER_SIZE = 8;
+    public static final int RECORD_HEADER_SIZE = 10;
+    public static final int TRAILER_SIZE = 16;
+    public static final int INDEX_INTERVAL = 4096;
+    // Longer messages are stored in pieces like SysEx from a MidiFramer.
+    public static final int MAX_RECORD_DATA = 4096;
+    private static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+    private static final int REGION_SIZE = 1024 * 1024;
+    private static final long DEFAULT_FLUSH_NANOS = 100 * 1000000L;
+
+    private final File mFile;
+    private final int mBufferSize;
+    private final long mFlushNanos;
+    private final Object mLock = new Object();
+
+    // Used by the receiving thread, and by the writer thread while
+    // holding mLock.
+    private ByteBuffer mFrontBuffer;
+    private long mFrontFirstTime; // System.nanoTime() of the first record
+    private volatile boolean mRecording;
+    private volatile long mRecordedCount;
+    private volatile long mDroppedCount;
+
+    // Handed to the writer thread. The receiving thread only touches it
+    // when mBackBufferFull is false.
+    private ByteBuffer mBackBuffer;
+    private volatile boolean mBackBufferFull;
+
+    // Used by the writer thread.
+    private RandomAccessFile mRandomAccessFile;
+    private FileChannel mChannel;
+    private MappedByteBuffer mRegion;
+    private long mRegionOffset;
+    private volatile long mFileLength;
+    private long mNextIndexOffset;
+    private long[] mIndexTimes = new long[256];
+    private long[] mIndexOffsets = new long[256];
+    private int mIndexCount;
+    private WriterThread mWriterThread;
+    private volatile IOException mError;
+
+    public MidiLogRecorder(File file) {
+        this(file, DEFAULT_BUFFER_SIZE, DEFAULT_FLUSH_NANOS);
+    }
+
+    /**
+     * @param file
+     * @param bufferSize size of each of the two buffers in bytes
+     * @param flushNanos hand a partly full buffer to the writer when its
+     *     oldest message was received this long ago
+     */
+    public MidiLogRecorder(File file, int bufferSize, long flushNanos) {
+        if (bufferSize < RECORD_HEADER_SIZE + MAX_RECORD_DATA) {
+            throw new IllegalArgumentException("bufferSize too small");
+        }
+        mFile = file;
+        mBufferSize = bufferSize;
+        mFlushNanos = flushNanos;
+    }
+
+    class WriterThread extends Thread {
+        private volatile boolean go = true;
+
+        @Override
+        public void run() {
+            while (go || mBackBufferFull) {
+                if (mBackBufferFull) {
+                    try {
+                        if (mError == null) {
+                            writeBuffer(mBackBuffer);
+                        }
+                    } catch (IOException e) {
+                        Log.e(TAG, "Could not write MIDI log", e);
+                        mError = e;
+                    }
+                    mBackBuffer.clear();
+                    mBackBufferFull = false;
+                } else {
+                    LockSupport.parkNanos(this, mFlushNanos);
+                    flushIfStale();
+                }
+            }
+        }
+
+        // Collect a trickle of messages that did not fill the buffer.
+        private void flushIfStale() {
+            synchronized (mLock) {
+                if (mRecording && isFrontBufferStale()) {
+                    swapBuffers();
+                }
+            }
+        }
+
+        /**
+         * Asynchronously tell the thread to stop after the back buffer
+         * has been written.
+         */
+        public void requestStop() {
+            go = false;
+            LockSupport.unpark(this);
+        }
+    }
+
+    /**
+     * Create the file and start recording.
+     */
+    public void start() throws IOException {
+        stop();
+        mRandomAccessFile = new RandomAccessFile(mFile, "rw");
+        mRandomAccessFile.setLength(0);
+        mChannel = mRandomAccessFile.getChannel();
+        mRegionOffset = 0;
+        mRegion = mChannel.map(FileChannel.MapMode.READ_WRITE, 0, REGION_SIZE);
+        mRegion.putInt(MAGIC_LOG);
+        mRegion.putInt(VERSION);
+        mFileLength = HEADER_SIZE;
+        mNextIndexOffset = HEADER_SIZE;
+        mIndexCount = 0;
+        mError = null;
+        mRecordedCount = 0;
+        mDroppedCount = 0;
+        mFrontBuffer = ByteBuffer.allocate(mBufferSize);
+        mBackBuffer = ByteBuffer.allocate(mBufferSize);
+        mBackBufferFull = false;
+        mWriterThread = new WriterThread();
+        mWriterThread.start();
+        mRecording = true;
+    }
+
+    @Override
+    public void onSend(byte[] data, int offset, int count, long timestamp)
+            throws IOException {
+        synchronized (mLock) {
+            if (!mRecording) {
+                return;
+            }
+            while (count > 0) {
+                int pieceSize = Math.min(count, MAX_RECORD_DATA);
+                appendRecord(data, offset, pieceSize, timestamp);
+                offset += pieceSize;
+                count -= pieceSize;
+            }
+            if (isFrontBufferStale()) {
+                swapBuffers();
+            }
+        }
+    }
+
+    // Message timestamps may be zero or far apart so use the wall time.
+    private boolean isFrontBufferStale() {
+        return mFrontBuffer.position() > 0
+                && System.nanoTime() - mFrontFirstTime >= mFlushNanos;
+    }
+
+    private void appendRecord(byte[] data, int offset, int count,
+            long timestamp) {
+        if (mFrontBuffer.remaining() < RECORD_HEADER_SIZE + count) {
+            if (!swapBuffers()) {
+                mDroppedCount++;
+                return;
+            }
+        }
+        if (mFrontBuffer.position() == 0) {
+            mFrontFirstTime = System.nanoTime();
+        }
+        mFrontBuffer.putLong(timestamp);
+        mFrontBuffer.putShort((short) count);
+        mFrontBuffer.put(data, offset, count);
+        mRecordedCount++;
+    }
+
+    /**
+     * Give the front buffer to the writer thread if it has finished with
+     * the back buffer.
+     *
+     * @return true if the buffers were swapped
+     */
+    private boolean swapBuffers() {
+        if (mBackBufferFull) {
+            return false;
+        }
+        ByteBuffer full = mFrontBuffer;
+        mFrontBuffer = mBackBuffer;
+        mBackBuffer = full;
+        mBackBuffer.flip();
+        mBackBufferFull = true;
+        LockSupport.unpark(mWriterThread);
+        return true;
+    }
+
+    /**
+     * Append the records to the file and add index entries.
+     */
+    private void writeBuffer(ByteBuffer buffer) throws IOException {
+        int start = buffer.position();
+        int end = buffer.limit();
+        int position = start;
+        while (position < end) {
+            long fileOffset = mFileLength + (position - start);
+            if (fileOffset >= mNextIndexOffset) {
+                addIndexEntry(buffer.getLong(position), fileOffset);
+                mNextIndexOffset = fileOffset + INDEX_INTERVAL;
+            }
+            int count = buffer.getShort(position + 8) & 0xFFFF;
+            position += RECORD_HEADER_SIZE + count;
+        }
+
+        byte[] bytes = buffer.array();
+        int offset = buffer.arrayOffset() + start;
+        int remaining = end - start;
+        while (remaining > 0) {
+            if (!mRegion.hasRemaining()) {
+                mRegionOffset += REGION_SIZE;
+                mRegion = mChannel.map(FileChannel.MapMode.READ_WRITE,
+                        mRegionOffset, REGION_SIZE);
+            }
+            int numBytes = Math.min(remaining, mRegion.remaining());
+            mRegion.put(bytes, offset, numBytes);
+            offset += numBytes;
+            remaining -= numBytes;
+        }
+        mFileLength += end - start;
+    }
+
+    private void addIndexEntry(long timestamp, long offset) {
+        if (mIndexCount == mIndexTimes.length) {
+            long[] times = new long[mIndexCount * 2];
+            long[] offsets = new long[mIndexCount * 2];
+            System.arraycopy(mIndexTimes, 0, times, 0, mIndexCount);
+            System.arraycopy(mIndexOffsets, 0, offsets, 0, mIndexCount);
+            mIndexTimes = times;
+            mIndexOffsets = offsets;
+        }
+        mIndexTimes[mIndexCount] = timestamp;
+        mIndexOffsets[mIndexCount] = offset;
+        mIndexCount++;
+    }
+
+    /**
+     * Write any buffered messages and the index then close the file.
+     * The recorder can be started again afterwards.
+     */
+    public void stop() throws IOException {
+        synchronized (mLock) {
+            if (!mRecording) {
+                return;
+            }
+            mRecording = false;
+        }
+        mWriterThread.requestStop();
+        try {
+            mWriterThread.join();
+        } catch (InterruptedException e) {
+            Log.e(TAG, "Interrupted while waiting for writer thread to stop.");
+        }
+        mWriterThread = null;
+        try {
+            if (mError == null) {
+                mFrontBuffer.flip();
+                writeBuffer(mFrontBuffer);
+                writeIndex();
+            }
+        } finally {
+            mRegion = null;
+            mChannel = null;
+            mRandomAccessFile.close();
+            mRandomAccessFile = null;
+        }
+        if (mError != null) {
+            throw mError;
+        }
+    }
+
+    private void writeIndex() throws IOException {
+        long indexOffset = mFileLength;
+        ByteBuffer index = ByteBuffer.allocate(mIndexCount * 16 + TRAILER_SIZE);
+        for (int i = 0; i < mIndexCount; i++) {
+            index.putLong(mIndexTimes[i]);
+            index.putLong(mIndexOffsets[i]);
+        }
+        index.putInt(mIndexCount);
+        index.putLong(indexOffset);
+        index.putInt(MAGIC_INDEX);
+        index.flip();
+        mRegion = null;
+        mChannel.truncate(indexOffset);
+        while (index.hasRemaining()) {
+            mChannel.write(index, indexOffset + index.position());
+        }
+        mFileLength = indexOffset + index.limit();
+    }
+
+    public boolean isRecording() {
+        return mRecording;
+    }
+
+    public File getFile() {
+        return mFile;
+    }
+
+    /**
+     * @return number of records stored since start()
+     */
+    public long getRecordedCount() {
+        return mRecordedCount;
+    }
+
+    /**
+     * @return number of records lost because the writer fell behind
+     */
+    public long getDroppedCount() {
+        return mDroppedCount;
+    }
+
+    /**
+     * @return number of bytes written to the file so far
+     */
+    public long getBytesWritten() {
+        return mFileLength;
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.common.midi;
+
+import android.media.midi.MidiReceiver;
+
+import java.io.IOException;
+
+/**
+ * A group of framed MIDI messages that can be passed to a receiver in one
+ * call.
+ *
+ * Each message is either a slice of an array owned by the sender, which is
+ * only valid until the batch is sent, or a copy stored in the batch itself.
+ * Receivers must not keep references to the data after the call returns.
+ */
+public class MidiMessageBatch {
+    public static final int DEFAULT_CAPACITY = 256;
+    private static final int BYTES_PER_COPY = 3;
+
+    private final byte[][] mArrays;
+    private final int[] mOffsets;
+    private final int[] mCounts;
+    private final long[] mTimestamps;
+    private final byte[] mCopies;
+    private int mSize;
+    private int mCopiedBytes;
+
+    public MidiMessageBatch() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity maximum number of messages
+     */
+    public MidiMessageBatch(int capacity) {
+        mArrays = new byte[capacity][];
+        mOffsets = new int[capacity];
+        mCounts = new int[capacity];
+        mTimestamps = new long[capacity];
+        mCopies = new byte[capacity * BYTES_PER_COPY];
+    }
+
+    /**
+     * Add a reference to a message without copying it.
+     *
+     * @return false if the batch is full
+     */
+    public boolean addSlice(byte[] data, int offset, int count,
+            long timestamp) {
+        if (mSize == mArrays.length) {
+            return false;
+        }
+        mArrays[mSize] = data;
+        mOffsets[mSize] = offset;
+        mCounts[mSize] = count;
+        mTimestamps[mSize] = timestamp;
+        mSize++;
+        return true;
+    }
+
+    /**
+     * Add a copy of a short message, for example one that was rebuilt from
+     * Running Status in a temporary buffer.
+     *
+     * @return false if the batch is full
+     */
+    public boolean addCopy(byte[] data, int offset, int count,
+            long timestamp) {
+        if (mSize == mArrays.length
+                || mCopiedBytes + count > mCopies.length) {
+            return false;
+        }
+        System.arraycopy(data, offset, mCopies, mCopiedBytes, count);
+        addSlice(mCopies, mCopiedBytes, count, timestamp);
+        mCopiedBytes += count;
+        return true;
+    }
+
+    /**
+     * Remove all the messages.
+     */
+    public void clear() {
+        // Drop references to the senders' arrays.
+        for (int i = 0; i < mSize; i++) {
+            mArrays[i] = null;
+        }
+        mSize = 0;
+        mCopiedBytes = 0;
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    public boolean isEmpty() {
+        return mSize == 0;
+    }
+
+    public int getCapacity() {
+        return mArrays.length;
+    }
+
+    public byte[] getData(int index) {
+        return mArrays[index];
+    }
+
+    public int getOffset(int index) {
+        return mOffsets[index];
+    }
+
+    public int getCount(int index) {
+        return mCounts[index];
+    }
+
+    public long getTimestamp(int index) {
+        return mTimestamps[index];
+    }
+
+    /**
+     * Send every message to the receiver, in one call if it is a
+     * MidiBatchReceiver or else one message at a time.
+     *
+     * @param receiver
+     * @throws IOException
+     */
+    public void sendTo(MidiReceiver receiver) throws IOException {
+        if (mSize == 0) {
+            return;
+        }
+        if (receiver instanceof MidiBatchReceiver) {
+            ((MidiBatchReceiver) receiver).sendBatch(this);
+        } else {
+            for (int i = 0; i < mSize; i++) {
+                receiver.send(mArrays[i], mOffsets[i], mCounts[i],
+                        mTimestamps[i]);
+            }
+        }
+    }
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.common.midi;
+
+import android.media.midi.MidiReceiver;
+
+import java.io.IOException;
+
+/**
+ * Holds timestamped MIDI messages until they are due.
+ * Messages are written through getReceiver() by one Thread and
+ * read by another Thread with sendDueEvents().
+ */
+public interface MidiScheduler {
+    /**
+     * @return the MidiReceiver that schedules the messages sent to it
+     */
+    MidiReceiver getReceiver();
+
+    /**
+     * Send every message that is due to the receiver, in timestamp order.
+     * Messages with the same timestamp are sent in the order they were
+     * received.
+     *
+     * @param time
+     * @param receiver
+     * @throws IOException
+     */
+    void sendDueEvents(long time, MidiReceiver receiver) throws IOException;
+
+    /**
+     * Should only be called by the reading thread.
+     *
+     * @return time of the next message or Long.MAX_VALUE if there are none
+     */
+    long getNextEventTime();
+}
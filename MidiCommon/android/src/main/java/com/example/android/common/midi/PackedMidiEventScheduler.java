@@ -0,0 +1,428 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.common.midi;
+
+import android.media.midi.MidiReceiver;
+
+import java.io.IOException;
+
+/**
+ * MidiScheduler that stores messages in preallocated primitive arrays
+ * so that scheduling does not allocate any objects.
+ *
+ * Each message uses two longs in a ring, one for the timestamp and one for
+ * the packed message. Messages of up to 3 bytes are packed into the long.
+ * Longer messages, like SysEx, are copied into a separate byte slab.
+ * Messages longer than half of the slab are dropped and counted.
+ *
+ * The reader moves messages from the ring into a heap that is sorted by
+ * timestamp, so messages are delivered in timestamp order. Messages with
+ * the same timestamp are delivered in the order they were received.
+ *
+ * Only one Thread can write and only one Thread can read.
+ * If the ring is full then the writing thread will yield until the
+ * reading thread makes room. Slab space is freed in the order that long
+ * messages were received, so a long message with a late timestamp can
+ * make the writer wait until it has been delivered.
+ */
+public class PackedMidiEventScheduler implements MidiScheduler {
+    public static final int DEFAULT_EVENT_CAPACITY = 1024;
+    public static final int DEFAULT_SLAB_CAPACITY = 16 * 1024;
+
+    private static final int MAX_PACKED_BYTES = 3;
+    private static final int COUNT_SHIFT = 40;
+    private static final long PAYLOAD_MASK = (1L << COUNT_SHIFT) - 1;
+
+    private final long[] mRing; // pairs of timestamp and packed message
+    private final int mRingMask;
+    private volatile long mWriteIndex;
+    private volatile long mReadIndex;
+
+    private final byte[] mSlab;
+    private final int mSlabMask;
+    // Positions in the slab are kept modulo 2^40.
+    private long mSlabWritePosition; // only used by the writer
+    private volatile long mSlabReadPosition;
+    private volatile long mDroppedCount;
+
+    // Only used by the reader.
+    // Binary heap of the messages taken from the ring, ordered by timestamp
+    // and then by ring index. Long messages also keep the index of their
+    // slab record.
+    private final long[] mHeapTimes;
+    private final long[] mHeapPacked;
+    private final long[] mHeapIndexes;
+    private final long[] mHeapSlabRecords;
+    private int mHeapSize;
+    // End of each long message in the slab, in the order they were
+    // received, and whether it has been delivered.
+    private final long[] mSlabEnds;
+    private final boolean[] mSlabDelivered;
+    private long mSlabHead;
+    private long mSlabTail;
+    private final long[] mDueSlabRecords;
+    private final byte[] mShortMessage = new byte[MAX_PACKED_BYTES];
+    private final MidiMessageBatch mDueBatch = new MidiMessageBatch();
+    private final MidiReceiver mReceiver = new PackingReceiver();
+
+    public PackedMidiEventScheduler() {
+        this(DEFAULT_EVENT_CAPACITY, DEFAULT_SLAB_CAPACITY);
+    }
+
+    /**
+     * @param eventCapacity maximum number of messages, rounded up to a
+     *     power of two
+     * @param slabCapacity bytes for long messages, rounded up to a
+     *     power of two
+     */
+    public PackedMidiEventScheduler(int eventCapacity, int slabCapacity) {
+        if (eventCapacity < 2 || eventCapacity > (1 << 24)
+                || slabCapacity < 2 || slabCapacity > (1 << 30)) {
+            throw new IllegalArgumentException("eventCapacity = " + eventCapacity
+                    + ", slabCapacity = " + slabCapacity);
+        }
+        int events = Integer.highestOneBit(eventCapacity - 1) << 1;
+        mRing = new long[2 * events];
+        mRingMask = events - 1;
+        int bytes = Integer.highestOneBit(slabCapacity - 1) << 1;
+        mSlab = new byte[bytes];
+        mSlabMask = bytes - 1;
+        mHeapTimes = new long[events];
+        mHeapPacked = new long[events];
+        mHeapIndexes = new long[events];
+        mHeapSlabRecords = new long[events];
+        mSlabEnds = new long[events];
+        mSlabDelivered = new boolean[events];
+        mDueSlabRecords = new long[mDueBatch.getCapacity()];
+    }
+
+    private class PackingReceiver extends MidiBatchReceiver {
+        /**
+         * Pack these bytes into the ring to be delivered at the specified
+         * time.
+         */
+        @Override
+        public void onSend(byte[] msg, int offset, int count, long timestamp)
+                throws IOException {
+            mWriteIndex = pack(msg, offset, count, timestamp, mWriteIndex);
+        }
+
+        /**
+         * Pack the whole batch then publish it at once.
+         */
+        @Override
+        public void onSendBatch(MidiMessageBatch batch) throws IOException {
+            long writeIndex = mWriteIndex;
+            for (int i = 0; i < batch.size(); i++) {
+                writeIndex = pack(batch.getData(i), batch.getOffset(i),
+                        batch.getCount(i), batch.getTimestamp(i), writeIndex);
+            }
+            mWriteIndex = writeIndex;
+        }
+    }
+
+    /**
+     * Write a message into the ring without publishing it.
+     * Anything not yet published is published before waiting for the
+     * reader, so the reader can always make progress.
+     *
+     * @return the write index after the message
+     */
+    private long pack(byte[] msg, int offset, int count, long timestamp,
+            long writeIndex) {
+        if (count <= 0) {
+            return writeIndex;
+        }
+        long payload;
+        if (count <= MAX_PACKED_BYTES) {
+            payload = 0;
+            for (int i = count - 1; i >= 0; i--) {
+                payload = (payload << 8) | (msg[offset + i] & 0xFF);
+            }
+        } else {
+            mWriteIndex = writeIndex;
+            payload = copyToSlab(msg, offset, count);
+            if (payload < 0) {
+                mDroppedCount++;
+                return writeIndex;
+            }
+        }
+        if ((writeIndex - mReadIndex) > mRingMask) {
+            mWriteIndex = writeIndex;
+            while ((writeIndex - mReadIndex) > mRingMask) {
+                Thread.yield(); // Full so wait for the reader to catch up.
+            }
+        }
+        int slot = 2 * (int) (writeIndex & mRingMask);
+        mRing[slot] = timestamp;
+        mRing[slot + 1] = ((long) count << COUNT_SHIFT) | payload;
+        return writeIndex + 1;
+    }
+
+    // Returns the position of the copy or -1 if it can never fit.
+    private long copyToSlab(byte[] msg, int offset, int count) {
+        // Limit the size so the skip at the end of the slab always fits.
+        if (count > (mSlab.length / 2)) {
+            return -1;
+        }
+        long position = mSlabWritePosition;
+        int start = (int) (position & mSlabMask);
+        if (start + count > mSlab.length) {
+            // Do not split the message. Skip to the beginning of the slab.
+            position = (position + mSlab.length - start) & PAYLOAD_MASK;
+            start = 0;
+        }
+        long end = (position + count) & PAYLOAD_MASK;
+        while (((end - mSlabReadPosition) & PAYLOAD_MASK) > mSlab.length) {
+            Thread.yield(); // Wait for the reader to free some space.
+        }
+        System.arraycopy(msg, offset, mSlab, start, count);
+        mSlabWritePosition = end;
+        return position;
+    }
+
+    /**
+     * Move the published messages from the ring into the heap, which
+     * frees their slots in the ring.
+     */
+    private void drainRing() {
+        long readIndex = mReadIndex;
+        long writeIndex = mWriteIndex;
+        if (readIndex == writeIndex) {
+            return;
+        }
+        while (readIndex < writeIndex && mHeapSize < mHeapTimes.length) {
+            int slot = 2 * (int) (readIndex & mRingMask);
+            long packed = mRing[slot + 1];
+            long slabRecord = -1;
+            int count = (int) (packed >>> COUNT_SHIFT);
+            if (count > MAX_PACKED_BYTES) {
+                if ((mSlabTail - mSlabHead) > mRingMask) {
+                    break; // Wait for earlier long messages to be delivered.
+                }
+                slabRecord = mSlabTail++;
+                int record = (int) (slabRecord & mRingMask);
+                mSlabEnds[record] = ((packed & PAYLOAD_MASK) + count)
+                        & PAYLOAD_MASK;
+                mSlabDelivered[record] = false;
+            }
+            heapAdd(mRing[slot], packed, readIndex, slabRecord);
+            readIndex++;
+        }
+        mReadIndex = readIndex;
+    }
+
+    private boolean heapLess(int a, int b) {
+        if (mHeapTimes[a] != mHeapTimes[b]) {
+            return mHeapTimes[a] < mHeapTimes[b];
+        }
+        return mHeapIndexes[a] < mHeapIndexes[b];
+    }
+
+    private void heapSwap(int a, int b) {
+        long temp = mHeapTimes[a];
+        mHeapTimes[a] = mHeapTimes[b];
+        mHeapTimes[b] = temp;
+        temp = mHeapPacked[a];
+        mHeapPacked[a] = mHeapPacked[b];
+        mHeapPacked[b] = temp;
+        temp = mHeapIndexes[a];
+        mHeapIndexes[a] = mHeapIndexes[b];
+        mHeapIndexes[b] = temp;
+        temp = mHeapSlabRecords[a];
+        mHeapSlabRecords[a] = mHeapSlabRecords[b];
+        mHeapSlabRecords[b] = temp;
+    }
+
+    private void heapAdd(long timestamp, long packed, long index,
+            long slabRecord) {
+        int child = mHeapSize++;
+        mHeapTimes[child] = timestamp;
+        mHeapPacked[child] = packed;
+        mHeapIndexes[child] = index;
+        mHeapSlabRecords[child] = slabRecord;
+        while (child > 0) {
+            int parent = (child - 1) >> 1;
+            if (!heapLess(child, parent)) {
+                break;
+            }
+            heapSwap(child, parent);
+            child = parent;
+        }
+    }
+
+    // Remove the earliest message. Read it from the top of the heap first.
+    private void heapRemoveFirst() {
+        int last = --mHeapSize;
+        if (last > 0) {
+            heapSwap(0, last);
+        }
+        int parent = 0;
+        while (true) {
+            int child = 2 * parent + 1;
+            if (child >= last) {
+                break;
+            }
+            if (child + 1 < last && heapLess(child + 1, child)) {
+                child++;
+            }
+            if (!heapLess(child, parent)) {
+                break;
+            }
+            heapSwap(child, parent);
+            parent = child;
+        }
+    }
+
+    /**
+     * Mark a long message as delivered then free the slab space of every
+     * long message that has been delivered in the order they arrived.
+     */
+    private void releaseSlab(long slabRecord) {
+        mSlabDelivered[(int) (slabRecord & mRingMask)] = true;
+        long head = mSlabHead;
+        long position = -1;
+        while (head < mSlabTail && mSlabDelivered[(int) (head & mRingMask)]) {
+            position = mSlabEnds[(int) (head & mRingMask)];
+            head++;
+        }
+        mSlabHead = head;
+        if (position >= 0) {
+            mSlabReadPosition = position;
+        }
+    }
+
+    /**
+     * Send every message that is due to the receiver, in timestamp order.
+     * A MidiBatchReceiver gets the messages in batches.
+     *
+     * @param time
+     * @param receiver
+     * @throws IOException
+     */
+    @Override
+    public void sendDueEvents(long time, MidiReceiver receiver)
+            throws IOException {
+        if (receiver instanceof MidiBatchReceiver) {
+            sendDueBatches(time, receiver);
+            return;
+        }
+        drainRing();
+        while (mHeapSize > 0 && mHeapTimes[0] <= time) {
+            long timestamp = mHeapTimes[0];
+            long packed = mHeapPacked[0];
+            long slabRecord = mHeapSlabRecords[0];
+            heapRemoveFirst();
+            int count = (int) (packed >>> COUNT_SHIFT);
+            long payload = packed & PAYLOAD_MASK;
+            if (count <= MAX_PACKED_BYTES) {
+                for (int i = 0; i < count; i++) {
+                    mShortMessage[i] = (byte) payload;
+                    payload >>>= 8;
+                }
+                receiver.send(mShortMessage, 0, count, timestamp);
+            } else {
+                try {
+                    receiver.send(mSlab, (int) (payload & mSlabMask), count,
+                            timestamp);
+                } finally {
+                    releaseSlab(slabRecord);
+                }
+            }
+            drainRing();
+        }
+    }
+
+    private void sendDueBatches(long time, MidiReceiver receiver)
+            throws IOException {
+        drainRing();
+        int slabCount = 0;
+        while (mHeapSize > 0 && mHeapTimes[0] <= time) {
+            long timestamp = mHeapTimes[0];
+            long packed = mHeapPacked[0];
+            int count = (int) (packed >>> COUNT_SHIFT);
+            long payload = packed & PAYLOAD_MASK;
+            boolean added;
+            if (count <= MAX_PACKED_BYTES) {
+                for (int i = 0; i < count; i++) {
+                    mShortMessage[i] = (byte) payload;
+                    payload >>>= 8;
+                }
+                added = mDueBatch.addCopy(mShortMessage, 0, count, timestamp);
+            } else {
+                added = mDueBatch.addSlice(mSlab, (int) (payload & mSlabMask),
+                        count, timestamp);
+                if (added) {
+                    mDueSlabRecords[slabCount++] = mHeapSlabRecords[0];
+                }
+            }
+            if (added) {
+                heapRemoveFirst();
+            } else {
+                sendDueBatch(receiver, slabCount);
+                slabCount = 0;
+                drainRing();
+            }
+        }
+        sendDueBatch(receiver, slabCount);
+    }
+
+    /**
+     * Send the batch then release its long messages from the slab.
+     */
+    private void sendDueBatch(MidiReceiver receiver, int slabCount)
+            throws IOException {
+        try {
+            mDueBatch.sendTo(receiver);
+        } finally {
+            mDueBatch.clear();
+            for (int i = 0; i < slabCount; i++) {
+                releaseSlab(mDueSlabRecords[i]);
+            }
+        }
+    }
+
+    /**
+     * Should only be called by the reading thread.
+     *
+     * @return time of the next message or Long.MAX_VALUE if there are none
+     */
+    @Override
+    public long getNextEventTime() {
+        drainRing();
+        if (mHeapSize == 0) {
+            return Long.MAX_VALUE;
+        }
+        return mHeapTimes[0];
+    }
+
+    /**
+     * @return number of messages that were too long for the slab
+     */
+    public long getDroppedCount() {
+        return mDroppedCount;
+    }
+
+    /**
+     * This MidiReceiver will pack data into the ring.
+     * @return the MidiReceiver
+     */
+    @Override
+    public MidiReceiver getReceiver() {
+        return mReceiver;
+    }
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.example.android.common.midi.synth;
+
+import android.media.AudioAttributes;
+import android.media.AudioFormat;
+import android.media.AudioTimestamp;
+import android.media.AudioTrack;
+import android.os.Build;
+import android.util.Log;
+
+/**
+ * AudioSink that plays through a float stereo AudioTrack.
+ * The buffer size can only be adjusted on Android N or later.
+ */
+public class AudioTrackSink implements AudioSink {
+    private static final String TAG = "AudioTrackSink";
+    // Capacity of an adjustable track as a multiple of the minimum size.
+    private static final int ADJUSTABLE_CAPACITY_FACTOR = 8;
+
+    private AudioTrack mAudioTrack;
+    private int mCapacityInFrames;
+    private long mWriteNanos;
+    private final AudioTimestamp mTrackTimestamp = new AudioTimestamp();
+
+    @Override
+    public void start(int frameRate, boolean adjustable) {
+        stop();
+        int minBufferSizeBytes = AudioTrack.getMinBufferSize(frameRate,
+                AudioFormat.CHANNEL_OUT_STEREO, AudioFormat.ENCODING_PCM_FLOAT);
+        Log.i(TAG, "AudioTrack.minBufferSize = " + minBufferSizeBytes
+                + " bytes = "
+                + (minBufferSizeBytes / SimpleAudioOutput.BYTES_PER_FRAME)
+                + " frames");
+        int bufferSize = minBufferSizeBytes;
+        if (adjustable && Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+            bufferSize *= ADJUSTABLE_CAPACITY_FACTOR;
+        }
+        mAudioTrack = createAudioTrack(frameRate, bufferSize);
+        mCapacityInFrames = bufferSize / SimpleAudioOutput.BYTES_PER_FRAME;
+        Log.i(TAG, "actual bufferSize = " + bufferSize + " bytes = "
+                + (bufferSize / SimpleAudioOutput.BYTES_PER_FRAME) + " frames");
+        // AudioTrack will wait until it has enough data before starting.
+        mAudioTrack.play();
+    }
+
+    /**
+     * Create a track for media playback, asking for the low latency path
+     * when it is available.
+     *
+     * @param frameRate
+     * @param bufferSizeInBytes
+     * @return new AudioTrack
+     */
+    public AudioTrack createAudioTrack(int frameRate, int bufferSizeInBytes) {
+        AudioAttributes attributes = new AudioAttributes.Builder()
+                .setUsage(AudioAttributes.USAGE_MEDIA)
+                .setContentType(AudioAttributes.CONTENT_TYPE_MUSIC)
+                .build();
+        AudioFormat format = new AudioFormat.Builder()
+                .setSampleRate(frameRate)
+                .setChannelMask(AudioFormat.CHANNEL_OUT_STEREO)
+                .setEncoding(AudioFormat.ENCODING_PCM_FLOAT)
+                .build();
+        AudioTrack.Builder builder = new AudioTrack.Builder()
+                .setAudioAttributes(attributes)
+                .setAudioFormat(format)
+                .setBufferSizeInBytes(bufferSizeInBytes)
+                .setTransferMode(AudioTrack.MODE_STREAM);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            builder.setPerformanceMode(AudioTrack.PERFORMANCE_MODE_LOW_LATENCY);
+        }
+        AudioTrack player = builder.build();
+        Log.i(TAG, "created AudioTrack");
+        return player;
+    }
+
+    @Override
+    public int write(float[] buffer, int offset, int length) {
+        long startTime = System.nanoTime();
+        int result = mAudioTrack.write(buffer, offset, length,
+                AudioTrack.WRITE_BLOCKING);
+        mWriteNanos = System.nanoTime() - startTime;
+        return result;
+    }
+
+    @Override
+    public void stop() {
+        if (mAudioTrack != null) {
+            mAudioTrack.stop();
+            mAudioTrack.release();
+            mAudioTrack = null;
+        }
+    }
+
+    @Override
+    public int getUnderrunCount() {
+        if (mAudioTrack == null
+                || Build.VERSION.SDK_INT < Build.VERSION_CODES.N) {
+            return 0;
+        }
+        return mAudioTrack.getUnderrunCount();
+    }
+
+    @Override
+    public int getBufferSizeInFrames() {
+        if (mAudioTrack == null
+                || Build.VERSION.SDK_INT < Build.VERSION_CODES.N) {
+            return getBufferCapacityInFrames();
+        }
+        return mAudioTrack.getBufferSizeInFrames();
+    }
+
+    @Override
+    public int getBufferCapacityInFrames() {
+        if (mAudioTrack == null) {
+            return 0;
+        } else if (Build.VERSION.SDK_INT < Build.VERSION_CODES.N) {
+            return mCapacityInFrames;
+        }
+        return mAudioTrack.getBufferCapacityInFrames();
+    }
+
+    @Override
+    public int setBufferSizeInFrames(int frames) {
+        if (mAudioTrack == null
+                || Build.VERSION.SDK_INT < Build.VERSION_CODES.N) {
+            return getBufferSizeInFrames();
+        }
+        return mAudioTrack.setBufferSizeInFrames(frames);
+    }
+
+    @Override
+    public boolean getTimestamp(AudioFrameTimestamp timestamp) {
+        if (mAudioTrack == null || !mAudioTrack.getTimestamp(mTrackTimestamp)) {
+            return false;
+        }
+        timestamp.framePosition = mTrackTimestamp.framePosition;
+        timestamp.nanoTime = mTrackTimestamp.nanoTime;
+        return true;
+    }
+
+    @Override
+    public long getWriteNanos() {
+        return mWriteNanos;
+    }
+
+    @Override
+    public long nanoTime() {
+        return System.nanoTime();
+    }
+
+    public AudioTrack getAudioTrack() {
+        return mAudioTrack;
+    }
+}
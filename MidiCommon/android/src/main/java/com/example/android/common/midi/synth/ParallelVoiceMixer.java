@@ -0,0 +1,269 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.common.midi.synth;
+
+import android.util.Log;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Mix voices using a fixed pool of worker threads.
+ *
+ * The voices are split into one partition per thread. Each partition is
+ * mixed into its own scratch buffer and the scratch buffers are then added
+ * to the output in partition order, so the result does not depend on which
+ * thread rendered which partition.
+ *
+ * The calling thread also claims partitions. If the workers are slow to
+ * wake up then the caller simply renders more partitions itself.
+ * If a parallel mix takes longer than the deadline then the mixer falls
+ * back to single threaded mixing for a while.
+ *
+ * Partitions are claimed from a single AtomicLong that holds the
+ * generation of the job, its number of partitions and the next partition.
+ * So a worker that is still running after the previous job can only claim
+ * a partition that really belongs to the current job.
+ */
+public class ParallelVoiceMixer {
+    private static final String TAG = "ParallelVoiceMixer";
+    // Do not bother with other threads for fewer voices than this.
+    private static final int MIN_VOICES_PER_PARTITION = 2;
+    // Number of mix() calls to stay single threaded after missing the deadline.
+    private static final int FALLBACK_BUFFERS = 200;
+    // Layout of a claim: generation, number of partitions, next partition.
+    private static final int GENERATION_SHIFT = 48;
+    private static final int COUNT_SHIFT = 32;
+    private static final long COUNT_MASK = 0xFFFF;
+    private static final long INDEX_MASK = 0xFFFFFFFFL;
+
+    private final int mNumWorkers;
+    private final long mDeadlineNanos;
+    private final float[][] mScratchBuffers;
+    private final Worker[] mWorkers;
+    private Thread mCaller;
+
+    // Describes the current job. Written before mClaim is set. Only read
+    // after claiming a partition of the job, which keeps the job running.
+    private SynthVoice[] mVoices;
+    private int mNumVoices;
+    private int mNumFrames;
+    private int mSamplesPerFrame;
+    private float mLevel;
+    private long mGeneration; // only used by the caller
+    private final AtomicLong mClaim = new AtomicLong();
+    private final AtomicInteger mCompletedPartitions = new AtomicInteger();
+
+    private int mFallbackRemaining;
+    private volatile boolean mRunning;
+    private volatile long mLastMixNanos;
+    private volatile long mMaxMixNanos;
+    private volatile int mDeadlineMissCount;
+
+    /**
+     * @param numThreads total threads including the caller
+     * @param maxSamples size of the largest block that will be mixed
+     * @param deadlineNanos a parallel mix slower than this causes a fallback
+     */
+    public ParallelVoiceMixer(int numThreads, int maxSamples, long deadlineNanos) {
+        if (numThreads < 2) {
+            throw new IllegalArgumentException("numThreads = " + numThreads);
+        }
+        mNumWorkers = numThreads - 1;
+        mDeadlineNanos = deadlineNanos;
+        mScratchBuffers = new float[numThreads][maxSamples];
+        mWorkers = new Worker[mNumWorkers];
+    }
+
+    private class Worker extends Thread {
+        Worker(int index) {
+            super("ParallelVoiceMixer-" + index);
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            long seenGeneration = mClaim.get() >>> GENERATION_SHIFT;
+            while (mRunning) {
+                long generation = mClaim.get() >>> GENERATION_SHIFT;
+                if (generation == seenGeneration) {
+                    LockSupport.park(this);
+                    continue;
+                }
+                seenGeneration = generation;
+                runPartitions();
+            }
+        }
+    }
+
+    /**
+     * Start the worker threads.
+     */
+    public void start() {
+        stop();
+        mRunning = true;
+        for (int i = 0; i < mNumWorkers; i++) {
+            mWorkers[i] = new Worker(i);
+            mWorkers[i].start();
+        }
+    }
+
+    /**
+     * Stop the worker threads and wait for them to finish.
+     */
+    public void stop() {
+        mRunning = false;
+        for (int i = 0; i < mNumWorkers; i++) {
+            Worker worker = mWorkers[i];
+            if (worker != null) {
+                LockSupport.unpark(worker);
+                try {
+                    worker.join(500);
+                } catch (InterruptedException e) {
+                    Log.e(TAG, "Interrupted while waiting for worker to stop.");
+                }
+                mWorkers[i] = null;
+            }
+        }
+    }
+
+    /**
+     * Add the output of the voices to part of the output buffer.
+     * Voices are not mixed if this returns false.
+     *
+     * @param voices
+     * @param numVoices
+     * @param outputBuffer
+     * @param frameOffset
+     * @param numFrames
+     * @param samplesPerFrame
+     * @param level
+     * @return false if the caller should mix the voices itself
+     */
+    public boolean mix(SynthVoice[] voices, int numVoices, float[] outputBuffer,
+            int frameOffset, int numFrames, int samplesPerFrame, float level) {
+        int numPartitions = Math.min(mNumWorkers + 1,
+                numVoices / MIN_VOICES_PER_PARTITION);
+        if (!mRunning || numPartitions < 2) {
+            return false;
+        }
+        if (mFallbackRemaining > 0) {
+            mFallbackRemaining--;
+            return false;
+        }
+        long startTime = System.nanoTime();
+        mCaller = Thread.currentThread();
+        mVoices = voices;
+        mNumVoices = numVoices;
+        mNumFrames = numFrames;
+        mSamplesPerFrame = samplesPerFrame;
+        mLevel = level;
+        mCompletedPartitions.set(0);
+        mGeneration++;
+        // Publishes the job.
+        mClaim.set((mGeneration << GENERATION_SHIFT)
+                | ((long) numPartitions << COUNT_SHIFT));
+        for (int i = 0; i < mNumWorkers; i++) {
+            LockSupport.unpark(mWorkers[i]);
+        }
+        runPartitions();
+        while (mCompletedPartitions.get() < numPartitions) {
+            LockSupport.park(this);
+        }
+        mVoices = null;
+
+        int numSamples = numFrames * samplesPerFrame;
+        int outputOffset = frameOffset * samplesPerFrame;
+        for (int partition = 0; partition < numPartitions; partition++) {
+            float[] scratch = mScratchBuffers[partition];
+            for (int i = 0; i < numSamples; i++) {
+                outputBuffer[outputOffset + i] += scratch[i];
+            }
+        }
+
+        long elapsed = System.nanoTime() - startTime;
+        mLastMixNanos = elapsed;
+        if (elapsed > mMaxMixNanos) {
+            mMaxMixNanos = elapsed;
+        }
+        if (elapsed > mDeadlineNanos) {
+            mDeadlineMissCount++;
+            mFallbackRemaining = FALLBACK_BUFFERS;
+        }
+        return true;
+    }
+
+    // Claim and render partitions until they are all taken.
+    private void runPartitions() {
+        while (true) {
+            // The number of partitions comes from the same claim, so a
+            // leftover index from an older job is never taken as valid.
+            long claim = mClaim.getAndIncrement();
+            int partition = (int) (claim & INDEX_MASK);
+            int numPartitions = (int) ((claim >>> COUNT_SHIFT) & COUNT_MASK);
+            if (partition >= numPartitions) {
+                break;
+            }
+            renderPartition(partition, numPartitions);
+            if (mCompletedPartitions.incrementAndGet() == numPartitions) {
+                LockSupport.unpark(mCaller);
+            }
+        }
+    }
+
+    private void renderPartition(int partition, int numPartitions) {
+        float[] scratch = mScratchBuffers[partition];
+        int numSamples = mNumFrames * mSamplesPerFrame;
+        for (int i = 0; i < numSamples; i++) {
+            scratch[i] = 0.0f;
+        }
+        int first = partition * mNumVoices / numPartitions;
+        int last = (partition + 1) * mNumVoices / numPartitions;
+        for (int i = first; i < last; i++) {
+            mVoices[i].mix(scratch, 0, mNumFrames, mSamplesPerFrame, mLevel);
+        }
+    }
+
+    /**
+     * @return number of threads used in addition to the caller
+     */
+    public int getWorkerCount() {
+        return mNumWorkers;
+    }
+
+    /**
+     * @return duration of the most recent parallel mix in nanoseconds
+     */
+    public long getLastMixNanos() {
+        return mLastMixNanos;
+    }
+
+    /**
+     * @return longest parallel mix in nanoseconds
+     */
+    public long getMaxMixNanos() {
+        return mMaxMixNanos;
+    }
+
+    /**
+     * @return number of parallel mixes that took longer than the deadline
+     */
+    public int getDeadlineMissCount() {
+        return mDeadlineMissCount;
+    }
+}
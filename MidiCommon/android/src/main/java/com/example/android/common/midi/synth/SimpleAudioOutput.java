@@ -0,0 +1,216 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.common.midi.synth;
+
+import android.media.AudioTrack;
+
+import java.util.Arrays;
+
+/**
+ * Simple base class for implementing audio output for examples.
+ * This can be sub-classed for experimentation or to redirect audio output.
+ *
+ * Audio is written to an AudioSink, which plays through an AudioTrack by
+ * default. Override createAudioTrack(int) to change that track. In adaptive
+ * mode an AudioBufferTuner keeps the buffer as small as the target glitch
+ * rate allows.
+ */
+public class SimpleAudioOutput extends AudioOutput {
+
+    public static final int BYTES_PER_SAMPLE = 4; // float
+    public static final int BYTES_PER_FRAME = SAMPLES_PER_FRAME * BYTES_PER_SAMPLE;
+    // Number of recent writes used for the write duration percentiles.
+    private static final int WRITE_HISTORY_SIZE = 512;
+
+    private final AudioSink mSink;
+    private final AudioBufferTuner mTuner;
+    private boolean mAdaptive;
+    private int mFrameRate;
+    private final long[] mWriteDurations = new long[WRITE_HISTORY_SIZE];
+    private volatile int mWriteCount;
+
+    // Gets its track from createAudioTrack(int) so subclasses can replace it.
+    private class DefaultSink extends AudioTrackSink {
+        private int mBufferSizeInBytes;
+
+        @Override
+        public AudioTrack createAudioTrack(int frameRate,
+                int bufferSizeInBytes) {
+            mBufferSizeInBytes = bufferSizeInBytes;
+            return SimpleAudioOutput.this.createAudioTrack(frameRate);
+        }
+
+        AudioTrack createDefaultAudioTrack(int frameRate) {
+            return super.createAudioTrack(frameRate, mBufferSizeInBytes);
+        }
+    }
+
+    /**
+     * Play through the AudioTrack made by createAudioTrack(int).
+     */
+    public SimpleAudioOutput() {
+        super();
+        mSink = new DefaultSink();
+        mTuner = new AudioBufferTuner(mSink);
+    }
+
+    /**
+     * @param sink destination for the audio
+     */
+    public SimpleAudioOutput(AudioSink sink) {
+        super();
+        mSink = sink;
+        mTuner = new AudioBufferTuner(sink);
+    }
+
+    /**
+     * Create the AudioTrack for the default sink, with the buffer size the
+     * sink chose. Called by start() when no sink was passed in.
+     *
+     * @param frameRate
+     * @return new AudioTrack
+     */
+    public AudioTrack createAudioTrack(int frameRate) {
+        if (!(mSink instanceof DefaultSink)) {
+            throw new IllegalStateException("Output uses its own sink");
+        }
+        return ((DefaultSink) mSink).createDefaultAudioTrack(frameRate);
+    }
+
+    /**
+     * Start the sink, which will wait until it has enough data before
+     * playing.
+     *
+     * @param frameRate
+     */
+    @Override
+    public void start(int frameRate) {
+        stop();
+        mFrameRate = frameRate;
+        mWriteCount = 0;
+        mSink.start(frameRate, mAdaptive);
+        mTuner.reset(frameRate);
+    }
+
+    @Override
+    public int write(float[] buffer, int offset, int length) {
+        int result = mSink.write(buffer, offset, length);
+        long writeNanos = mSink.getWriteNanos();
+        int writeCount = mWriteCount;
+        mWriteDurations[writeCount % WRITE_HISTORY_SIZE] = writeNanos;
+        mWriteCount = writeCount + 1;
+        if (mAdaptive && result > 0) {
+            mTuner.onWrite(result / SAMPLES_PER_FRAME, writeNanos,
+                    mSink.nanoTime());
+        }
+        return result;
+    }
+
+    @Override
+    public void stop() {
+        mSink.stop();
+    }
+
+    /**
+     * Start with the smallest buffer and adjust it to meet the target
+     * glitch rate. Takes effect at the next start().
+     * Requires Android N or later for an AudioTrack.
+     *
+     * @param adaptive
+     */
+    public void setAdaptive(boolean adaptive) {
+        mAdaptive = adaptive;
+    }
+
+    public boolean isAdaptive() {
+        return mAdaptive;
+    }
+
+    /**
+     * @param glitchesPerHour tolerated underruns per hour in adaptive mode
+     */
+    public void setTargetGlitchRate(double glitchesPerHour) {
+        mTuner.setTargetGlitchRate(glitchesPerHour);
+    }
+
+    @Override
+    public boolean getTimestamp(AudioFrameTimestamp timestamp) {
+        return mSink.getTimestamp(timestamp);
+    }
+
+    @Override
+    public int getUnderrunCount() {
+        return mSink.getUnderrunCount();
+    }
+
+    @Override
+    public int getBufferSizeInFrames() {
+        return mAdaptive ? mTuner.getBufferSizeInFrames()
+                : mSink.getBufferSizeInFrames();
+    }
+
+    /**
+     * @return time to play a full buffer
+     */
+    public long getLatencyNanos() {
+        if (mFrameRate == 0) {
+            return 0;
+        }
+        return getBufferSizeInFrames() * 1000000000L / mFrameRate;
+    }
+
+    /**
+     * Get a percentile of the time recent writes spent blocked.
+     * This is approximate because the writes are not locked out.
+     *
+     * @param fraction between 0.0 and 1.0, for example 0.99
+     * @return duration in nanoseconds or zero if nothing was written
+     */
+    public long getWriteDurationPercentile(double fraction) {
+        int count = Math.min(mWriteCount, WRITE_HISTORY_SIZE);
+        if (count == 0) {
+            return 0;
+        }
+        long[] durations = Arrays.copyOf(mWriteDurations, count);
+        Arrays.sort(durations);
+        int index = (int) Math.ceil(fraction * count) - 1;
+        return durations[Math.max(0, Math.min(count - 1, index))];
+    }
+
+    public AudioBufferTuner getTuner() {
+        return mTuner;
+    }
+
+    public AudioSink getSink() {
+        return mSink;
+    }
+
+    @Override
+    public int getFrameRate() {
+        return mFrameRate;
+    }
+
+    /**
+     * @return the AudioTrack or null if the sink does not use one
+     */
+    public AudioTrack getAudioTrack() {
+        if (mSink instanceof AudioTrackSink) {
+            return ((AudioTrackSink) mSink).getAudioTrack();
+        }
+        return null;
+    }
+}
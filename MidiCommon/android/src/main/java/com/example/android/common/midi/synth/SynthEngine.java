@@ -0,0 +1,1146 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.common.midi.synth;
+
+import android.media.midi.MidiReceiver;
+import android.util.Log;
+
+import com.example.android.common.midi.AsyncMidiReceiver;
+import com.example.android.common.midi.CoalescingMidiReceiver;
+import com.example.android.common.midi.MidiBatchReceiver;
+import com.example.android.common.midi.MidiConstants;
+import com.example.android.common.midi.MidiEventScheduler;
+import com.example.android.common.midi.MidiFramer;
+import com.example.android.common.midi.MidiMessageBatch;
+import com.example.android.common.midi.MidiScheduler;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Very simple polyphonic, multitimbral synthesizer. Each of the 16 MIDI
+ * channels has its own program and pitch bend. It runs a background
+ * thread that processes MIDI events and synthesizes audio.
+ * MIDI can be sent one message at a time or in a MidiMessageBatch.
+ */
+public class SynthEngine extends MidiBatchReceiver {
+
+    private static final String TAG = "SynthEngine";
+
+    public static final int FRAME_RATE = SynthUnit.FRAME_RATE;
+    private static final int FRAMES_PER_BUFFER = 240;
+    private static final int SAMPLES_PER_FRAME = 2;
+    public static final int DEFAULT_MAX_VOICES = 32;
+    private static final long NANOS_PER_SECOND = 1000000000L;
+    private static final long NANOS_PER_BUFFER = NANOS_PER_SECOND
+            * FRAMES_PER_BUFFER / FRAME_RATE;
+    // Re-anchor the buffer clock if it drifts this far from System.nanoTime().
+    private static final long MAX_ANCHOR_ERROR = 4 * NANOS_PER_BUFFER;
+    // Read the output timestamp about every 100 msec.
+    private static final int BUFFERS_PER_TIMESTAMP = 20;
+
+    private boolean go;
+    private volatile boolean mSampleAccurate;
+    private long mAnchorTime;
+    private long mFramesSinceAnchor = -1;
+    private final AudioClock mAudioClock = new AudioClock(FRAME_RATE);
+    private final AudioFrameTimestamp mAudioTimestamp =
+            new AudioFrameTimestamp();
+    private volatile boolean mAudioClockEnabled = true;
+    private long mFramesRendered;
+    private final LatencyCompensator mLatencyCompensator =
+            new LatencyCompensator(NANOS_PER_BUFFER);
+    private int mOutputBufferFrames;
+    private volatile long mLatencyCompensation;
+    private volatile long mOutputLatencyNanos;
+    // Presentation time of the current buffer or zero if unknown.
+    private long mBufferPresentationTime;
+    private int mEventFrame;
+    private volatile long mLastEventLatencyNanos;
+    private volatile long mMaxEventLatencyNanos;
+    private boolean mOffline;
+    private long mOfflineFrames;
+    private long mOfflineTime;
+    private volatile int mMixingThreads = 1;
+    private ParallelVoiceMixer mParallelMixer;
+    private SynthVoice[] mActiveVoices;
+    private volatile long mLastRenderNanos;
+    private final SynthMonitor mMonitor = new SynthMonitor(NANOS_PER_BUFFER);
+    // Only used by the synthesis thread to measure each buffer.
+    private long mEventNanos;
+    private int mBufferMaxVoices;
+    private int mLastUnderrunCount;
+    private Thread mThread;
+    private float[] mBuffer = new float[FRAMES_PER_BUFFER * SAMPLES_PER_FRAME];
+    // Settings for each MIDI channel.
+    private final int[] mPrograms = new int[VoicePool.NUM_CHANNELS];
+    private final float[] mBendRanges = new float[VoicePool.NUM_CHANNELS];
+    private final float[] mFrequencyScalers = new float[VoicePool.NUM_CHANNELS];
+
+    private volatile int mMaxVoices = DEFAULT_MAX_VOICES;
+    private volatile int mStealPolicy = VoicePool.STEAL_OLDEST;
+    private final EffectsChain mEffectsChain = new EffectsChain();
+    private final ModulationMatrix mModulationMatrix =
+            ModulationMatrix.createDefault();
+    // Polyphonic aftertouch for each channel and note, NaN if none.
+    private final float[] mNotePressures =
+            new float[VoicePool.NUM_CHANNELS * VoicePool.NUM_NOTES];
+    private final AsyncMidiReceiver mLogReceiver = new AsyncMidiReceiver(
+            new LogReceiver(), 64, AsyncMidiReceiver.OVERFLOW_DROP_OLDEST);
+    private volatile boolean mLogUnhandledMessages = true;
+    private volatile long mUnhandledCount;
+    private volatile PatchBank mPatchBank = PatchBank.createDefault();
+    private volatile int mWarmVoicesPerPatch = DEFAULT_MAX_VOICES;
+    // Only used by the synthesis thread after prepare().
+    private PatchBank mActiveBank;
+    private SynthVoice[][] mWarmVoices;
+    private int[] mWarmCounts;
+    private int[] mPatchPrograms; // lowest program using each patch, or -1
+    private final float[] mWarmUpBuffer =
+            new float[FRAMES_PER_BUFFER * SAMPLES_PER_FRAME];
+    private volatile int mVoiceAllocationCount;
+    private volatile float mSilenceThreshold =
+            SegmentEnvelope.DEFAULT_SILENCE_THRESHOLD;
+    private VoicePool mVoicePool;
+    private MidiScheduler mEventScheduler;
+    private MidiFramer mFramer;
+    private MidiReceiver mReceiver = new MyReceiver();
+    // Used by the thread that sends MIDI to the engine.
+    private final MidiMessageBatch mInputBatch = new MidiMessageBatch();
+    private final MidiBatchReceiver mSchedulingInput = new SchedulingInput();
+    private volatile CoalescingMidiReceiver mCoalescer;
+    private AudioOutput mAudioOutput;
+
+    public SynthEngine() {
+        this(new SimpleAudioOutput());
+    }
+
+    public SynthEngine(AudioOutput audioOutput) {
+        mReceiver = new MyReceiver();
+        mFramer = new MidiFramer(mReceiver);
+        mAudioOutput = audioOutput;
+        for (int channel = 0; channel < VoicePool.NUM_CHANNELS; channel++) {
+            mBendRanges[channel] = 2.0f; // semitones
+            mFrequencyScalers[channel] = 1.0f;
+        }
+        // Replaced by a pool full of voices when started.
+        mVoicePool = new VoicePool(DEFAULT_MAX_VOICES);
+        mActiveVoices = new SynthVoice[DEFAULT_MAX_VOICES];
+        mActiveBank = mPatchBank;
+        mWarmVoices = new SynthVoice[mActiveBank.getPatchCount()][DEFAULT_MAX_VOICES];
+        mWarmCounts = new int[mActiveBank.getPatchCount()];
+    }
+
+    @Override
+    public void onSend(byte[] data, int offset, int count, long timestamp)
+            throws IOException {
+        MidiReceiver input = mCoalescer;
+        if (input == null) {
+            input = mSchedulingInput;
+        }
+        input.send(data, offset, count, timestamp);
+    }
+
+    @Override
+    public void onSendBatch(MidiMessageBatch batch) throws IOException {
+        MidiReceiver input = mCoalescer;
+        if (input == null) {
+            input = mSchedulingInput;
+        }
+        batch.sendTo(input);
+    }
+
+    /**
+     * Schedule incoming MIDI, leaving out Active Sensing.
+     */
+    private class SchedulingInput extends MidiBatchReceiver {
+        @Override
+        public void onSend(byte[] data, int offset, int count, long timestamp)
+                throws IOException {
+            if (mEventScheduler != null) {
+                if (!MidiConstants.isAllActiveSensing(data, offset, count)) {
+                    mEventScheduler.getReceiver().send(data, offset, count,
+                            timestamp);
+                }
+            }
+        }
+
+        @Override
+        public void onSendBatch(MidiMessageBatch batch) throws IOException {
+            if (mEventScheduler != null) {
+                try {
+                    for (int i = 0; i < batch.size(); i++) {
+                        if (!MidiConstants.isAllActiveSensing(batch.getData(i),
+                                batch.getOffset(i), batch.getCount(i))) {
+                            mInputBatch.addSlice(batch.getData(i),
+                                    batch.getOffset(i), batch.getCount(i),
+                                    batch.getTimestamp(i));
+                        }
+                    }
+                    mInputBatch.sendTo(mEventScheduler.getReceiver());
+                } finally {
+                    mInputBatch.clear();
+                }
+            }
+        }
+    }
+
+    private class MyReceiver extends MidiBatchReceiver {
+        @Override
+        public void onSend(byte[] data, int offset, int count, long timestamp)
+                throws IOException {
+            measureLatency(timestamp);
+            handleMessage(data, offset, count);
+        }
+
+        @Override
+        public void onSendBatch(MidiMessageBatch batch) throws IOException {
+            for (int i = 0; i < batch.size(); i++) {
+                measureLatency(batch.getTimestamp(i));
+                handleMessage(batch.getData(i), batch.getOffset(i),
+                        batch.getCount(i));
+            }
+        }
+    }
+
+    /**
+     * Measure the time from an event's timestamp until it is heard.
+     */
+    private void measureLatency(long timestamp) {
+        if (mBufferPresentationTime != 0 && timestamp != 0) {
+            long latency = mBufferPresentationTime + framesToNanos(mEventFrame)
+                    - timestamp;
+            mLastEventLatencyNanos = latency;
+            if (latency > mMaxEventLatencyNanos) {
+                mMaxEventLatencyNanos = latency;
+            }
+        }
+    }
+
+    /**
+     * Assume message has been aligned to the start of a MIDI message.
+     */
+    private void handleMessage(byte[] data, int offset, int count) {
+        byte status = data[offset];
+        byte command = (byte) (status & MidiConstants.STATUS_COMMAND_MASK);
+        int channel = (byte) (status & MidiConstants.STATUS_CHANNEL_MASK);
+        switch (command) {
+        case MidiConstants.STATUS_NOTE_OFF:
+            noteOff(channel, data[offset + 1], data[offset + 2]);
+            break;
+        case MidiConstants.STATUS_NOTE_ON:
+            noteOn(channel, data[offset + 1], data[offset + 2]);
+            break;
+        case MidiConstants.STATUS_PITCH_BEND:
+            int bend = (data[offset + 2] << 7) + data[offset + 1];
+            pitchBend(channel, bend);
+            break;
+        case MidiConstants.STATUS_PROGRAM_CHANGE:
+            mPrograms[channel] = data[offset + 1];
+            break;
+        case MidiConstants.STATUS_CONTROL_CHANGE:
+            controlChange(channel, data[offset + 1], data[offset + 2]);
+            break;
+        case MidiConstants.STATUS_CHANNEL_PRESSURE:
+            channelPressure(channel, data[offset + 1]);
+            break;
+        case MidiConstants.STATUS_POLYPHONIC_AFTERTOUCH:
+            polyphonicAftertouch(channel, data[offset + 1], data[offset + 2]);
+            break;
+        default:
+            mUnhandledCount++;
+            if (mLogUnhandledMessages) {
+                try {
+                    // Formatted and logged on the log thread.
+                    mLogReceiver.send(data, offset, count);
+                } catch (IOException e) {
+                    // The log receiver never fails.
+                }
+            }
+            break;
+        }
+    }
+
+    /**
+     * Logs the messages that the synthesizer does not handle, off the
+     * synthesis thread.
+     */
+    private class LogReceiver extends MidiReceiver {
+        @Override
+        public void onSend(byte[] data, int offset, int count, long timestamp)
+                throws IOException {
+            logMidiMessage(data, offset, count);
+        }
+    }
+
+    class MyRunnable implements Runnable {
+        @Override
+        public void run() {
+            try {
+                mAudioOutput.start(FRAME_RATE);
+                onLoopStarted();
+                while (go) {
+                    long loopStartTime = System.nanoTime();
+                    mEventNanos = 0;
+                    mBufferMaxVoices = 0;
+                    CoalescingMidiReceiver coalescer = mCoalescer;
+                    if (coalescer != null) {
+                        coalescer.flushExpired(loopStartTime);
+                    }
+                    long bufferStartTime = getBufferStartTime();
+                    if (mSampleAccurate) {
+                        mEventNanos = System.nanoTime() - loopStartTime;
+                        generateBufferSampleAccurate(bufferStartTime);
+                    } else {
+                        mEventFrame = 0;
+                        processMidiEvents(bufferStartTime + NANOS_PER_BUFFER);
+                        mEventNanos = System.nanoTime() - loopStartTime;
+                        generateBuffer();
+                    }
+                    long writeStartTime = System.nanoTime();
+                    mAudioOutput.write(mBuffer, 0, mBuffer.length);
+                    long writeNanos = System.nanoTime() - writeStartTime;
+                    mFramesRendered += FRAMES_PER_BUFFER;
+                    if ((mFramesRendered / FRAMES_PER_BUFFER)
+                            % BUFFERS_PER_TIMESTAMP == 0) {
+                        sampleAudioClock();
+                    }
+                    recordBuffer(writeStartTime - loopStartTime, writeNanos);
+                    onBufferCompleted(FRAMES_PER_BUFFER);
+                }
+            } catch (Exception e) {
+                Log.e(TAG, "SynthEngine background thread exception.", e);
+            } finally {
+                onLoopEnded();
+                mAudioOutput.stop();
+            }
+        }
+    }
+
+    /**
+     * This is called form the synthesis thread before it starts looping.
+     */
+    public void onLoopStarted() {
+    }
+
+    private void recordBuffer(long processNanos, long writeNanos) {
+        int underruns = mAudioOutput.getUnderrunCount();
+        mMonitor.recordBuffer(mEventNanos, processNanos - mEventNanos,
+                writeNanos, mBufferMaxVoices, underruns - mLastUnderrunCount);
+        mLastUnderrunCount = underruns;
+    }
+
+    /**
+     * This is called once at the end of each synthesis loop, after the
+     * buffer has been recorded by the monitor.
+     *
+     * @param framesPerBuffer
+     */
+    public void onBufferCompleted(int framesPerBuffer) {
+    }
+
+    /**
+     * This is called form the synthesis thread when it stop looping.
+     */
+    public void onLoopEnded() {
+    }
+
+    /**
+     * Assume message has been aligned to the start of a MIDI message.
+     *
+     * @param data
+     * @param offset
+     * @param count
+     */
+    public void logMidiMessage(byte[] data, int offset, int count) {
+        StringBuilder text = new StringBuilder("Received: ");
+        for (int i = 0; i < count; i++) {
+            text.append(String.format("0x%02X, ", data[offset + i]));
+        }
+        Log.i(TAG, text.toString());
+    }
+
+    /**
+     * @throws IOException
+     *
+     */
+    private void processMidiEvents(long now) throws IOException {
+        mEventScheduler.sendDueEvents(now, mFramer);
+    }
+
+    /**
+     *
+     */
+    private void generateBuffer() {
+        long startTime = System.nanoTime();
+        for (int i = 0; i < mBuffer.length; i++) {
+            mBuffer[i] = 0.0f;
+        }
+        mixVoices(0, FRAMES_PER_BUFFER);
+        mEffectsChain.process(mBuffer, 0, FRAMES_PER_BUFFER, SAMPLES_PER_FRAME);
+        mLastRenderNanos = System.nanoTime() - startTime;
+    }
+
+    /**
+     * Split the buffer at the timestamps of the events so that each event
+     * is applied at its exact frame.
+     *
+     * @throws IOException
+     */
+    private void generateBufferSampleAccurate(long bufferStartTime)
+            throws IOException {
+        long startTime = System.nanoTime();
+        for (int i = 0; i < mBuffer.length; i++) {
+            mBuffer[i] = 0.0f;
+        }
+        int frame = 0;
+        while (frame < FRAMES_PER_BUFFER) {
+            mEventFrame = frame;
+            long eventStartTime = System.nanoTime();
+            mEventScheduler.sendDueEvents(
+                    bufferStartTime + framesToNanos(frame), mFramer);
+            mEventNanos += System.nanoTime() - eventStartTime;
+            int endFrame = FRAMES_PER_BUFFER;
+            long nextTime = mEventScheduler.getNextEventTime();
+            if (nextTime < bufferStartTime + NANOS_PER_BUFFER) {
+                endFrame = Math.max(frame + 1,
+                        nanosToFrameCeiling(nextTime - bufferStartTime));
+            }
+            mixVoices(frame, endFrame - frame);
+            frame = endFrame;
+        }
+        mEffectsChain.process(mBuffer, 0, FRAMES_PER_BUFFER, SAMPLES_PER_FRAME);
+        mLastRenderNanos = System.nanoTime() - startTime;
+    }
+
+    /**
+     * Get the time of the first frame in the buffer, in the time base of the
+     * MIDI timestamps.
+     *
+     * When the audio clock has timestamps this is the time the frame will be
+     * heard minus a latency compensation, so events are heard a fixed time
+     * after their timestamps. The compensation follows a high percentile of
+     * the recent output latency plus one buffer, see LatencyCompensator.
+     *
+     * Until then the time is advanced by exactly one buffer each time so it
+     * does not jitter with the scheduling of this thread. It trails
+     * System.nanoTime() by one buffer so that an event that arrived while
+     * the previous buffer was being written can still be placed at its exact
+     * frame.
+     */
+    private long getBufferStartTime() {
+        if (mAudioClockEnabled && mAudioClock.isValid()) {
+            long presentationTime = mAudioClock.framesToNanos(mFramesRendered);
+            long outputLatency = presentationTime - System.nanoTime();
+            mOutputLatencyNanos = outputLatency;
+            mLatencyCompensation = mLatencyCompensator.update(outputLatency);
+            mBufferPresentationTime = presentationTime;
+            return presentationTime - mLatencyCompensation;
+        }
+        mBufferPresentationTime = 0;
+        long now = System.nanoTime() - NANOS_PER_BUFFER;
+        long expected = mAnchorTime + framesToNanos(mFramesSinceAnchor);
+        if (mFramesSinceAnchor < 0
+                || Math.abs(now - expected) > MAX_ANCHOR_ERROR) {
+            mAnchorTime = now;
+            mFramesSinceAnchor = 0;
+            expected = now;
+        }
+        mFramesSinceAnchor += FRAMES_PER_BUFFER;
+        return expected;
+    }
+
+    /**
+     * Add the output's latest presentation timestamp to the audio clock.
+     * Start measuring the latency again if the output buffer was resized.
+     */
+    private void sampleAudioClock() {
+        if (mAudioOutput.getTimestamp(mAudioTimestamp)) {
+            mAudioClock.addTimestamp(mAudioTimestamp.framePosition,
+                    mAudioTimestamp.nanoTime);
+        }
+        int bufferFrames = mAudioOutput.getBufferSizeInFrames();
+        if (bufferFrames != mOutputBufferFrames) {
+            mOutputBufferFrames = bufferFrames;
+            mLatencyCompensator.reset();
+        }
+    }
+
+    private static long framesToNanos(long frames) {
+        return frames * NANOS_PER_SECOND / FRAME_RATE;
+    }
+
+    private static int nanosToFrameCeiling(long nanos) {
+        if (nanos <= 0) {
+            return 0;
+        }
+        return (int) ((nanos * FRAME_RATE + NANOS_PER_SECOND - 1)
+                / NANOS_PER_SECOND);
+    }
+
+    private void mixVoices(int frameOffset, int numFrames) {
+        mVoicePool.releaseFinishedVoices();
+        int numActive = mVoicePool.getActiveCount();
+        if (numActive > mBufferMaxVoices) {
+            mBufferMaxVoices = numActive;
+        }
+        for (int i = 0; i < numActive; i++) {
+            mActiveVoices[i] = mVoicePool.getActiveVoice(i);
+        }
+        ParallelVoiceMixer mixer = mParallelMixer;
+        if (mixer == null || !mixer.mix(mActiveVoices, numActive, mBuffer,
+                frameOffset, numFrames, SAMPLES_PER_FRAME, 0.25f)) {
+            for (int i = 0; i < numActive; i++) {
+                mActiveVoices[i].mix(mBuffer, frameOffset, numFrames,
+                        SAMPLES_PER_FRAME, 0.25f);
+            }
+        }
+        for (int i = 0; i < numActive; i++) {
+            mActiveVoices[i] = null;
+        }
+    }
+
+    /**
+     * In sample accurate mode each buffer is split at the timestamps of
+     * the MIDI events instead of applying all of them at the start of the
+     * buffer. This removes up to one buffer of jitter but adds one buffer
+     * of latency.
+     *
+     * @param sampleAccurate
+     */
+    public void setSampleAccurate(boolean sampleAccurate) {
+        mSampleAccurate = sampleAccurate;
+    }
+
+    public boolean isSampleAccurate() {
+        return mSampleAccurate;
+    }
+
+    /**
+     * Set the number of threads used to mix the voices, including the
+     * synthesis thread. More than one thread will mix voices in parallel
+     * when there are enough of them. Takes effect the next time the
+     * synthesizer is started.
+     *
+     * @param numThreads
+     */
+    public void setMixingThreads(int numThreads) {
+        mMixingThreads = Math.max(1, numThreads);
+    }
+
+    public int getMixingThreads() {
+        return mMixingThreads;
+    }
+
+    /**
+     * Schedule events against the audio presentation clock when the output
+     * provides timestamps, instead of System.nanoTime().
+     *
+     * @param enabled default is true
+     */
+    public void setAudioClockEnabled(boolean enabled) {
+        mAudioClockEnabled = enabled;
+    }
+
+    public boolean isAudioClockEnabled() {
+        return mAudioClockEnabled;
+    }
+
+    /**
+     * The clock is only updated by the synthesis thread.
+     *
+     * @return model of when frames are presented
+     */
+    public AudioClock getAudioClock() {
+        return mAudioClock;
+    }
+
+    /**
+     * @return time between writing a buffer and hearing its first frame
+     */
+    public long getOutputLatencyNanos() {
+        return mOutputLatencyNanos;
+    }
+
+    /**
+     * @return delay added to event timestamps so they are heard on time
+     */
+    public long getLatencyCompensationNanos() {
+        return mLatencyCompensation;
+    }
+
+    /**
+     * @return time from the timestamp of the most recent event until it
+     *     was heard, or zero if the audio clock is not running
+     */
+    public long getLastEventLatencyNanos() {
+        return mLastEventLatencyNanos;
+    }
+
+    /**
+     * @return largest event latency since the synthesizer was started
+     */
+    public long getMaxEventLatencyNanos() {
+        return mMaxEventLatencyNanos;
+    }
+
+    /**
+     * Coalesce dense controller, Pitch Bend and Channel Pressure data before
+     * it is scheduled, keeping the last value in each window. Timing Clock,
+     * which the synthesizer ignores, is dropped.
+     *
+     * @param windowNanos zero to schedule every message
+     */
+    public void setCoalescingWindow(long windowNanos) throws IOException {
+        CoalescingMidiReceiver old = mCoalescer;
+        if (windowNanos > 0) {
+            CoalescingMidiReceiver coalescer = new CoalescingMidiReceiver(
+                    mSchedulingInput, windowNanos);
+            coalescer.setDropTimingClock(true);
+            mCoalescer = coalescer;
+        } else {
+            mCoalescer = null;
+        }
+        if (old != null) {
+            old.flush();
+        }
+    }
+
+    /**
+     * @return the coalescing stage, to read its counters, or null
+     */
+    public CoalescingMidiReceiver getCoalescer() {
+        return mCoalescer;
+    }
+
+    /**
+     * @return the parallel mixer or null if voices are mixed on one thread
+     */
+    public ParallelVoiceMixer getParallelVoiceMixer() {
+        return mParallelMixer;
+    }
+
+    /**
+     * @return time spent rendering the most recent buffer in nanoseconds
+     */
+    public long getLastRenderNanos() {
+        return mLastRenderNanos;
+    }
+
+    /**
+     * Timing statistics for the synthesis loop. They are cleared when the
+     * synthesizer starts. Use getMonitor().getSnapshot() to read them from
+     * any thread without blocking the audio.
+     */
+    public SynthMonitor getMonitor() {
+        return mMonitor;
+    }
+
+    public void noteOff(int channel, int noteIndex, int velocity) {
+        SynthVoice voice = mVoicePool.findVoice(channel, noteIndex);
+        if (voice != null) {
+            voice.noteOff();
+        }
+    }
+
+    public void allNotesOff() {
+        for (int i = 0; i < mVoicePool.getActiveCount(); i++) {
+            mVoicePool.getActiveVoice(i).noteOff();
+        }
+    }
+
+    /**
+     * Create the scheduler that holds incoming MIDI events until they are due.
+     * Override this to use a different EventBuffer or a
+     * PackedMidiEventScheduler.
+     */
+    protected MidiScheduler createEventScheduler() {
+        return new MidiEventScheduler();
+    }
+
+    /**
+     * Create a SynthVoice for a program using the patch bank.
+     * Override this to make your own voices. Voices are kept by patch, so
+     * the engine calls this with the lowest program that uses each patch,
+     * and programs that share a patch share its voices.
+     */
+    public SynthVoice createVoice(int program) {
+        PatchBank bank = (mActiveBank != null) ? mActiveBank : mPatchBank;
+        return bank.getProgramPatch(program).createVoice();
+    }
+
+    /**
+     * Create a voice for a patch in the active bank. Render it once so its
+     * scratch buffers are allocated now and not while it is playing.
+     */
+    private SynthVoice createPatchVoice(int patch) {
+        SynthVoice voice = createVoice(mPatchPrograms[patch]);
+        voice.mix(mWarmUpBuffer, SAMPLES_PER_FRAME, 0.0f);
+        return voice;
+    }
+
+    // Take a voice for the patch from its warm pool.
+    private SynthVoice takeWarmVoice(int patch) {
+        int count = mWarmCounts[patch];
+        if (count == 0) {
+            mVoiceAllocationCount++;
+            return createPatchVoice(patch);
+        }
+        SynthVoice voice = mWarmVoices[patch][--count];
+        mWarmVoices[patch][count] = null;
+        mWarmCounts[patch] = count;
+        return voice;
+    }
+
+    private void returnWarmVoice(int patch, SynthVoice voice) {
+        int count = mWarmCounts[patch];
+        if (count < mWarmVoices[patch].length) {
+            mWarmVoices[patch][count] = voice;
+            mWarmCounts[patch] = count + 1;
+        }
+    }
+
+    /**
+     *
+     * @param channel
+     * @param noteIndex
+     * @param velocity
+     */
+    public void noteOn(int channel, int noteIndex, int velocity) {
+        if (velocity == 0) {
+            noteOff(channel, noteIndex, velocity);
+        } else {
+            // The pool keeps voices by patch, since programs share patches.
+            int patch = mActiveBank.getPatchIndex(mPrograms[channel]);
+            int slot = mVoicePool.allocate(channel, noteIndex, patch);
+            SynthVoice voice = mVoicePool.getVoice(slot);
+            int oldPatch = mVoicePool.getProgram(slot);
+            if (voice == null || oldPatch != patch) {
+                if (voice != null) {
+                    returnWarmVoice(oldPatch, voice);
+                }
+                voice = takeWarmVoice(patch);
+                mVoicePool.setVoice(slot, voice, patch);
+            }
+            // A new note has no aftertouch yet.
+            mNotePressures[(channel * VoicePool.NUM_NOTES) + noteIndex] =
+                    Float.NaN;
+            // Set the envelope times before the note starts.
+            applyModulation(channel, noteIndex, voice);
+            if (voice instanceof SawVoice) {
+                ((SawVoice) voice).getEnvelope()
+                        .setSilenceThreshold(mSilenceThreshold);
+            }
+            voice.noteOn(noteIndex, velocity);
+        }
+    }
+
+    public void pitchBend(int channel, int bend) {
+        double semitones = (mBendRanges[channel] * (bend - 0x2000)) / 0x2000;
+        float scaler = (float) Math.pow(2.0, semitones / 12.0);
+        mFrequencyScalers[channel] = scaler;
+        int numVoices = mVoicePool.getChannelVoiceCount(channel);
+        for (int i = 0; i < numVoices; i++) {
+            SynthVoice voice = mVoicePool.getChannelVoice(channel, i);
+            applyModulation(channel, voice.getNoteIndex(), voice);
+        }
+    }
+
+    public void controlChange(int channel, int controller, int value) {
+        if (mModulationMatrix.setValue(channel, controller, value)) {
+            modulateChannel(channel);
+        }
+    }
+
+    public void channelPressure(int channel, int pressure) {
+        if (mModulationMatrix.setValue(channel,
+                ModulationMatrix.SOURCE_CHANNEL_PRESSURE, pressure)) {
+            modulateChannel(channel);
+        }
+    }
+
+    public void polyphonicAftertouch(int channel, int noteIndex, int pressure) {
+        mNotePressures[(channel * VoicePool.NUM_NOTES) + noteIndex] = pressure;
+        if (mModulationMatrix.setValue(channel,
+                ModulationMatrix.SOURCE_POLY_AFTERTOUCH, pressure)) {
+            SynthVoice voice = mVoicePool.findVoice(channel, noteIndex);
+            if (voice != null) {
+                applyModulation(channel, noteIndex, voice);
+            }
+        }
+    }
+
+    private void modulateChannel(int channel) {
+        int numVoices = mVoicePool.getChannelVoiceCount(channel);
+        for (int i = 0; i < numVoices; i++) {
+            SynthVoice voice = mVoicePool.getChannelVoice(channel, i);
+            applyModulation(channel, voice.getNoteIndex(), voice);
+        }
+    }
+
+    /**
+     * Set the pitch and the modulated parameters of a voice from the
+     * channel's controllers and the aftertouch of the voice's note.
+     */
+    private void applyModulation(int channel, int noteIndex,
+            SynthVoice voice) {
+        ModulationMatrix matrix = mModulationMatrix;
+        float pressure = mNotePressures[(channel * VoicePool.NUM_NOTES)
+                + noteIndex];
+        float pitch = matrix.getChannelAmount(channel,
+                ModulationMatrix.DEST_PITCH)
+                + matrix.getNoteAmount(ModulationMatrix.DEST_PITCH, pressure);
+        float scaler = mFrequencyScalers[channel];
+        if (pitch != 0.0f) {
+            scaler *= (float) Math.pow(2.0, pitch / 12.0);
+        }
+        voice.setFrequencyScaler(scaler);
+        for (int destination = ModulationMatrix.DEST_AMPLITUDE;
+                destination < ModulationMatrix.NUM_DESTINATIONS; destination++) {
+            if (destination == ModulationMatrix.DEST_PITCH) {
+                continue;
+            }
+            float amount = matrix.getChannelAmount(channel, destination)
+                    + matrix.getNoteAmount(destination, pressure);
+            float value;
+            if (destination == ModulationMatrix.DEST_AMPLITUDE) {
+                value = Math.max(0.0f, 1.0f + amount);
+            } else {
+                value = (amount == 0.0f) ? 1.0f
+                        : (float) Math.pow(2.0, amount);
+            }
+            voice.setModulation(destination, value);
+        }
+    }
+
+    /**
+     * @param channel
+     * @return program selected on the channel
+     */
+    public int getProgram(int channel) {
+        return mPrograms[channel];
+    }
+
+    /**
+     * Set the range of the pitch bend wheel for one channel.
+     * It applies to the next pitch bend message.
+     *
+     * @param channel
+     * @param semitones
+     */
+    public void setBendRange(int channel, float semitones) {
+        mBendRanges[channel] = semitones;
+    }
+
+    public float getBendRange(int channel) {
+        return mBendRanges[channel];
+    }
+
+    /**
+     * Set the number of voices that can play at the same time.
+     * Takes effect the next time the synthesizer is started.
+     *
+     * @param maxVoices
+     */
+    public void setMaxVoices(int maxVoices) {
+        mMaxVoices = Math.max(1, maxVoices);
+    }
+
+    public int getMaxVoices() {
+        return mMaxVoices;
+    }
+
+    /**
+     * Effects applied to the mixed output of every voice, ending with a
+     * soft limiter. Each effect reports how long it takes per buffer.
+     */
+    public EffectsChain getEffectsChain() {
+        return mEffectsChain;
+    }
+
+    /**
+     * Routes from controllers and aftertouch to voice parameters.
+     * Routes can be added while the synthesizer is running.
+     */
+    public ModulationMatrix getModulationMatrix() {
+        return mModulationMatrix;
+    }
+
+    /**
+     * Log messages that the synthesizer does not handle. They are logged
+     * by a separate thread, and dropped if it falls behind, so logging
+     * never delays the audio.
+     *
+     * @param enabled default is true
+     */
+    public void setLogUnhandledMessages(boolean enabled) {
+        mLogUnhandledMessages = enabled;
+    }
+
+    /**
+     * @return number of messages that the synthesizer did not handle
+     */
+    public long getUnhandledCount() {
+        return mUnhandledCount;
+    }
+
+    /**
+     * Set the patches used by each program.
+     * Takes effect the next time the synthesizer is started.
+     *
+     * @param bank
+     */
+    public void setPatchBank(PatchBank bank) {
+        mPatchBank = bank;
+    }
+
+    public PatchBank getPatchBank() {
+        return mPatchBank;
+    }
+
+    /**
+     * Set how many spare voices are built for each patch so that program
+     * changes do not allocate. Only patches that a program maps to are
+     * warmed, so start() builds at most
+     * mapped patches * (numVoices + max voices) voices.
+     * Takes effect the next time the synthesizer is started.
+     *
+     * @param numVoices default is DEFAULT_MAX_VOICES
+     */
+    public void setWarmVoicesPerPatch(int numVoices) {
+        mWarmVoicesPerPatch = Math.max(0, numVoices);
+    }
+
+    public int getWarmVoicesPerPatch() {
+        return mWarmVoicesPerPatch;
+    }
+
+    /**
+     * @return number of voices created while playing because a warm pool
+     *     was empty
+     */
+    public int getVoiceAllocationCount() {
+        return mVoiceAllocationCount;
+    }
+
+    /**
+     * Release a voice as soon as its envelope fades below this level,
+     * instead of waiting for it to reach zero. Applies to notes started
+     * after it is set.
+     *
+     * @param level default is SegmentEnvelope.DEFAULT_SILENCE_THRESHOLD
+     */
+    public void setSilenceThreshold(float level) {
+        mSilenceThreshold = level;
+    }
+
+    public float getSilenceThreshold() {
+        return mSilenceThreshold;
+    }
+
+    /**
+     * Choose which voice is replaced when all of them are playing.
+     * Takes effect the next time the synthesizer is started.
+     *
+     * @param policy VoicePool.STEAL_OLDEST, STEAL_QUIETEST or STEAL_SAME_NOTE
+     */
+    public void setStealPolicy(int policy) {
+        mStealPolicy = policy;
+    }
+
+    public int getStealPolicy() {
+        return mStealPolicy;
+    }
+
+    /**
+     * Create the voice pool and fill it with voices for the program on the
+     * first channel. Build a warm pool of voices for every patch that a
+     * program maps to so that playing notes and changing programs do not
+     * allocate. Patches no program uses get no voices.
+     */
+    private void createVoicePool() {
+        mActiveBank = mPatchBank;
+        int numPatches = mActiveBank.getPatchCount();
+        VoicePool pool = new VoicePool(mMaxVoices);
+        pool.setStealPolicy(mStealPolicy);
+        int warmVoices = mWarmVoicesPerPatch;
+        mWarmVoices = new SynthVoice[numPatches][];
+        mWarmCounts = new int[numPatches];
+        // A note can only play a patch that some program maps to.
+        mPatchPrograms = new int[numPatches];
+        Arrays.fill(mPatchPrograms, -1);
+        for (int program = PatchBank.NUM_PROGRAMS - 1; program >= 0; program--) {
+            mPatchPrograms[mActiveBank.getPatchIndex(program)] = program;
+        }
+        for (int patch = 0; patch < numPatches; patch++) {
+            if (mPatchPrograms[patch] < 0) {
+                mWarmVoices[patch] = new SynthVoice[0];
+                continue;
+            }
+            // Leave room for voices that come back from the slots.
+            mWarmVoices[patch] = new SynthVoice[warmVoices + pool.getMaxVoices()];
+            for (int i = 0; i < warmVoices; i++) {
+                mWarmVoices[patch][i] = createPatchVoice(patch);
+            }
+            mWarmCounts[patch] = warmVoices;
+        }
+        int firstPatch = mActiveBank.getPatchIndex(mPrograms[0]);
+        for (int slot = 0; slot < pool.getMaxVoices(); slot++) {
+            pool.setVoice(slot, createPatchVoice(firstPatch), firstPatch);
+        }
+        mActiveVoices = new SynthVoice[pool.getMaxVoices()];
+        mVoicePool = pool;
+    }
+
+    /**
+     * Start the synthesizer.
+     */
+    public void start() {
+        stop();
+        go = true;
+        prepare();
+        mThread = new Thread(new MyRunnable());
+        mThread.start();
+    }
+
+    private void prepare() {
+        mFramesSinceAnchor = -1;
+        mFramesRendered = 0;
+        mAudioClock.reset();
+        mLatencyCompensator.reset();
+        mOutputBufferFrames = 0;
+        mLatencyCompensation = 0;
+        mBufferPresentationTime = 0;
+        mMaxEventLatencyNanos = 0;
+        mModulationMatrix.reset();
+        mMonitor.reset();
+        mLastUnderrunCount = 0;
+        Arrays.fill(mNotePressures, Float.NaN);
+        mLogReceiver.start();
+        // Build the shared tables now so a program change does not have to.
+        Wavetable.getSaw();
+        Wavetable.getSine();
+        Wavetable.getSquare();
+        Wavetable.getTriangle();
+        createVoicePool();
+        if (mMixingThreads > 1) {
+            // Leave half of the buffer period for everything else.
+            mParallelMixer = new ParallelVoiceMixer(mMixingThreads,
+                    mBuffer.length, NANOS_PER_BUFFER / 2);
+            mParallelMixer.start();
+        }
+        mEventScheduler = createEventScheduler();
+    }
+
+    /**
+     * Start the synthesizer without a background thread so that it can be
+     * driven by renderOffline() as fast as the CPU allows.
+     * Offline time starts at zero, so MIDI timestamps should be
+     * nanoseconds from the start of the rendering.
+     * Call stop() when done to close the audio output.
+     */
+    public void startOffline() {
+        stop();
+        prepare();
+        mOfflineFrames = 0;
+        mOfflineTime = 0;
+        mOffline = true;
+        mAudioOutput.start(FRAME_RATE);
+        onLoopStarted();
+    }
+
+    /**
+     * Render whole buffers until the offline time reaches endTime.
+     * Send MIDI to this receiver before rendering the time they are due.
+     *
+     * @param endTime in nanoseconds since startOffline()
+     * @return number of frames rendered
+     * @throws IOException if the audio output fails
+     */
+    public int renderOffline(long endTime) throws IOException {
+        if (!mOffline) {
+            throw new IllegalStateException("startOffline() was not called");
+        }
+        // Everything to render was sent before this call.
+        CoalescingMidiReceiver coalescer = mCoalescer;
+        if (coalescer != null) {
+            coalescer.flush();
+        }
+        int frames = 0;
+        while (mOfflineTime < endTime) {
+            long startTime = System.nanoTime();
+            mEventNanos = 0;
+            mBufferMaxVoices = 0;
+            if (mSampleAccurate) {
+                generateBufferSampleAccurate(mOfflineTime);
+            } else {
+                // Same event horizon as the real-time loop so that an
+                // offline render matches a live one.
+                mEventFrame = 0;
+                processMidiEvents(mOfflineTime + NANOS_PER_BUFFER);
+                mEventNanos = System.nanoTime() - startTime;
+                generateBuffer();
+            }
+            long writeStartTime = System.nanoTime();
+            if (mAudioOutput.write(mBuffer, 0, mBuffer.length) < 0) {
+                throw new IOException("Audio output failed.");
+            }
+            recordBuffer(writeStartTime - startTime,
+                    System.nanoTime() - writeStartTime);
+            onBufferCompleted(FRAMES_PER_BUFFER);
+            frames += FRAMES_PER_BUFFER;
+            mOfflineFrames += FRAMES_PER_BUFFER;
+            mOfflineTime = framesToNanos(mOfflineFrames);
+        }
+        return frames;
+    }
+
+    /**
+     * @return nanoseconds rendered since startOffline()
+     */
+    public long getOfflineTime() {
+        return mOfflineTime;
+    }
+
+    /**
+     * Stop the synthesizer.
+     */
+    public void stop() {
+        go = false;
+        if (mThread != null) {
+            try {
+                mThread.interrupt();
+                mThread.join(500);
+            } catch (InterruptedException e) {
+                // OK, just stopping safely.
+            }
+            mThread = null;
+            mEventScheduler = null;
+        }
+        if (mOffline) {
+            mOffline = false;
+            onLoopEnded();
+            mAudioOutput.stop();
+            mEventScheduler = null;
+        }
+        if (mParallelMixer != null) {
+            mParallelMixer.stop();
+            mParallelMixer = null;
+        }
+        mLogReceiver.stop();
+    }
+}
@@ -0,0 +1,234 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.common.midi;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import android.media.midi.MidiReceiver;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Messages are written with onSend() because MidiReceiver.send() does
+ * nothing in the Android jar that JVM tests run against.
+ */
+public class AsyncMidiReceiverTest {
+    private static final byte[] NOTE_ON = {(byte) 0x90, 60, 100};
+    private static final int CAPACITY = 4;
+
+    // Holds up the drain thread on the first message until released.
+    private static class StuckReceiver extends MidiReceiver {
+        final CountDownLatch entered = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final List<byte[]> received = new ArrayList<byte[]>();
+        final boolean fail;
+        boolean throwRuntime;
+
+        StuckReceiver(boolean fail) {
+            this.fail = fail;
+        }
+
+        @Override
+        public void send(byte[] msg, int offset, int count, long timestamp)
+                throws IOException {
+            onSend(msg, offset, count, timestamp);
+        }
+
+        @Override
+        public void onSend(byte[] msg, int offset, int count, long timestamp)
+                throws IOException {
+            entered.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                // Give up waiting.
+            }
+            if (throwRuntime) {
+                throw new IllegalStateException("target failed");
+            }
+            if (fail) {
+                throw new IOException("target failed");
+            }
+            synchronized (received) {
+                received.add(Arrays.copyOfRange(msg, offset, offset + count));
+            }
+        }
+    }
+
+    // Let the target go after a short time, while a send is waiting.
+    private static Thread releaseLater(final StuckReceiver target) {
+        Thread releaser = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(100);
+                } catch (InterruptedException e) {
+                    // Release now.
+                }
+                target.release.countDown();
+            }
+        };
+        releaser.start();
+        return releaser;
+    }
+
+    // Fill the queue behind the message that the target is stuck on.
+    private static void fillQueue(AsyncMidiReceiver receiver,
+            StuckReceiver target) throws Exception {
+        receiver.onSend(NOTE_ON, 0, 3, 0);
+        assertTrue(target.entered.await(5, TimeUnit.SECONDS));
+        for (int i = 0; i < CAPACITY; i++) {
+            receiver.onSend(NOTE_ON, 0, 3, 0);
+        }
+        assertEquals(CAPACITY, receiver.getLag());
+    }
+
+    @Test(timeout = 10000)
+    public void blockedSendThrowsWhenTargetFails() throws Exception {
+        StuckReceiver target = new StuckReceiver(true);
+        AsyncMidiReceiver receiver = new AsyncMidiReceiver(target, CAPACITY,
+                AsyncMidiReceiver.OVERFLOW_BLOCK);
+        receiver.start();
+        try {
+            fillQueue(receiver, target);
+            target.release.countDown();
+            // Waits for room until the drain thread fails.
+            receiver.onSend(NOTE_ON, 0, 3, 0);
+            fail("send to a full queue with a failed target did not throw");
+        } catch (IOException e) {
+            assertTrue(receiver.isFailed());
+        } finally {
+            target.release.countDown();
+            receiver.stop();
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void blockedSendThrowsWhenTargetThrowsRuntimeException()
+            throws Exception {
+        StuckReceiver target = new StuckReceiver(false);
+        target.throwRuntime = true;
+        AsyncMidiReceiver receiver = new AsyncMidiReceiver(target, CAPACITY,
+                AsyncMidiReceiver.OVERFLOW_BLOCK);
+        receiver.start();
+        try {
+            fillQueue(receiver, target);
+            releaseLater(target);
+            // Waits for room until the drain thread dies.
+            receiver.onSend(NOTE_ON, 0, 3, 0);
+            fail("send to a full queue with a dead drain thread did not throw");
+        } catch (IOException e) {
+            assertTrue(receiver.isFailed());
+        } finally {
+            target.release.countDown();
+            receiver.stop();
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void coalesceDoesNotMoveBankSelectPastProgramChange()
+            throws Exception {
+        StuckReceiver target = new StuckReceiver(false);
+        AsyncMidiReceiver receiver = new AsyncMidiReceiver(target, CAPACITY,
+                AsyncMidiReceiver.OVERFLOW_COALESCE_CONTROLLERS);
+        receiver.start();
+        byte[][] queued = {
+                {(byte) 0xB0, 0, 1}, // Bank Select
+                {(byte) 0xC0, 5}, // Program Change
+                {(byte) 0xB0, 7, 10}, // Volume
+                {(byte) 0xB1, 0, 3}, // Bank Select on another channel
+        };
+        byte[] volume = {(byte) 0xB0, 7, 11};
+        byte[] bank = {(byte) 0xB0, 0, 2};
+        try {
+            receiver.onSend(NOTE_ON, 0, 3, 0);
+            assertTrue(target.entered.await(5, TimeUnit.SECONDS));
+            for (byte[] msg : queued) {
+                receiver.onSend(msg, 0, msg.length, 0);
+            }
+            assertEquals(CAPACITY, receiver.getLag());
+            // Same controller with only controllers after it, so merged.
+            receiver.onSend(volume, 0, volume.length, 0);
+            assertEquals(1, receiver.getCoalescedCount());
+            Thread releaser = releaseLater(target);
+            // Behind the Program Change, so it waits for room.
+            receiver.onSend(bank, 0, bank.length, 0);
+            assertEquals(1, receiver.getCoalescedCount());
+            releaser.join();
+            long deadline = System.currentTimeMillis() + 5000;
+            while (receiver.getDeliveredCount() < 6
+                    && System.currentTimeMillis() < deadline) {
+                Thread.sleep(1);
+            }
+        } finally {
+            target.release.countDown();
+            receiver.stop();
+        }
+        byte[][] expected = {NOTE_ON, queued[0], queued[1], volume,
+                queued[3], bank};
+        synchronized (target.received) {
+            assertEquals(expected.length, target.received.size());
+            for (int i = 0; i < expected.length; i++) {
+                assertTrue("message " + i,
+                        Arrays.equals(expected[i], target.received.get(i)));
+            }
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void blockedSendThrowsWhenStopped() throws Exception {
+        final StuckReceiver target = new StuckReceiver(false);
+        final AsyncMidiReceiver receiver = new AsyncMidiReceiver(target,
+                CAPACITY, AsyncMidiReceiver.OVERFLOW_COALESCE_CONTROLLERS);
+        receiver.start();
+        try {
+            fillQueue(receiver, target);
+            Thread stopper = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        Thread.sleep(100);
+                    } catch (InterruptedException e) {
+                        // Stop now.
+                    }
+                    receiver.stop();
+                }
+            };
+            stopper.start();
+            try {
+                // A note cannot be coalesced so it waits for room.
+                receiver.onSend(NOTE_ON, 0, 3, 0);
+                fail("send to a full queue that was stopped did not throw");
+            } catch (IOException e) {
+                // Expected.
+            }
+            stopper.join();
+        } finally {
+            target.release.countDown();
+            receiver.stop();
+        }
+    }
+}
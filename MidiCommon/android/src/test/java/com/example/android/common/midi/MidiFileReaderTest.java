@@ -0,0 +1,309 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.common.midi;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import android.media.midi.MidiReceiver;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Reads small Standard MIDI Files that are built by hand.
+ */
+public class MidiFileReaderTest {
+    private static final long MSEC = 1000000L;
+    private static final long SECOND = 1000 * MSEC;
+    private static final int LONG_SYSEX_LENGTH = 300;
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private static class RecordingReceiver extends MidiReceiver {
+        final ArrayList<byte[]> messages = new ArrayList<byte[]>();
+        final ArrayList<Long> timestamps = new ArrayList<Long>();
+
+        @Override
+        public void send(byte[] msg, int offset, int count, long timestamp)
+                throws IOException {
+            onSend(msg, offset, count, timestamp);
+        }
+
+        @Override
+        public void onSend(byte[] msg, int offset, int count, long timestamp) {
+            messages.add(Arrays.copyOfRange(msg, offset, offset + count));
+            timestamps.add(timestamp);
+        }
+    }
+
+    /**
+     * Builds the bytes of a chunk.
+     */
+    private static class Chunk {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        Chunk bytes(int... values) {
+            for (int value : values) {
+                bytes.write(value);
+            }
+            return this;
+        }
+
+        Chunk variableLength(int value) {
+            int shift = 28;
+            while (shift > 0 && (value >>> shift) == 0) {
+                shift -= 7;
+            }
+            for (; shift > 0; shift -= 7) {
+                bytes.write(((value >>> shift) & 0x7F) | 0x80);
+            }
+            bytes.write(value & 0x7F);
+            return this;
+        }
+
+        Chunk event(int delta, int... data) {
+            return variableLength(delta).bytes(data);
+        }
+
+        Chunk meta(int delta, int type, int length) {
+            variableLength(delta).bytes(0xFF, type).variableLength(length);
+            for (int i = 0; i < length; i++) {
+                bytes.write('a' + i % 26);
+            }
+            return this;
+        }
+
+        Chunk tempo(int delta, int microsPerBeat) {
+            return event(delta, 0xFF, 0x51, 3, microsPerBeat >> 16,
+                    (microsPerBeat >> 8) & 0xFF, microsPerBeat & 0xFF);
+        }
+
+        Chunk endOfTrack(int delta) {
+            return event(delta, 0xFF, 0x2F, 0);
+        }
+
+        void writeTo(ByteArrayOutputStream file, String type) {
+            byte[] data = bytes.toByteArray();
+            file.write(type.charAt(0));
+            file.write(type.charAt(1));
+            file.write(type.charAt(2));
+            file.write(type.charAt(3));
+            writeInt(file, data.length);
+            file.write(data, 0, data.length);
+        }
+    }
+
+    private static void writeInt(ByteArrayOutputStream file, int value) {
+        file.write(value >>> 24);
+        file.write((value >> 16) & 0xFF);
+        file.write((value >> 8) & 0xFF);
+        file.write(value & 0xFF);
+    }
+
+    private static ByteArrayOutputStream header(int format, int numTracks,
+            int division) {
+        ByteArrayOutputStream file = new ByteArrayOutputStream();
+        new Chunk().bytes(0, format, numTracks >> 8, numTracks & 0xFF,
+                division >> 8, division & 0xFF).writeTo(file, "MThd");
+        return file;
+    }
+
+    private File write(ByteArrayOutputStream bytes) throws IOException {
+        File file = mFolder.newFile();
+        FileOutputStream stream = new FileOutputStream(file);
+        try {
+            bytes.writeTo(stream);
+        } finally {
+            stream.close();
+        }
+        return file;
+    }
+
+    private static byte[] longSysEx() {
+        byte[] data = new byte[LONG_SYSEX_LENGTH];
+        for (int i = 0; i < data.length - 1; i++) {
+            data[i] = (byte) (i & 0x7F);
+        }
+        data[data.length - 1] = (byte) 0xF7;
+        return data;
+    }
+
+    // 96 ticks per beat at the default tempo of 120 beats per minute.
+    private File writeType0() throws IOException {
+        ByteArrayOutputStream file = header(0, 1, 96);
+        Chunk track = new Chunk()
+                .meta(0, 0x03, 4) // track name
+                .event(0, 0x90, 60, 100)
+                .event(48, 62, 101) // Running Status
+                .event(0, 0xF0, 3, 0x7E, 0x7F, 0xF7)
+                .meta(0, 0x01, 200) // text with a two byte length
+                .event(48, 0x80, 60, 0)
+                .event(0, 62, 0);
+        track.variableLength(0).bytes(0xF0).variableLength(LONG_SYSEX_LENGTH);
+        byte[] sysEx = longSysEx();
+        track.bytes.write(sysEx, 0, sysEx.length);
+        track.endOfTrack(96).writeTo(file, "MTrk");
+        return write(file);
+    }
+
+    private static void assertMessage(RecordingReceiver receiver, int index,
+            long timestamp, int... data) {
+        byte[] expected = new byte[data.length];
+        for (int i = 0; i < data.length; i++) {
+            expected[i] = (byte) data[i];
+        }
+        assertArrayEquals("message " + index, expected,
+                receiver.messages.get(index));
+        assertEquals("timestamp " + index, timestamp,
+                (long) receiver.timestamps.get(index));
+    }
+
+    @Test
+    public void readsType0() throws IOException {
+        MidiFileReader reader = new MidiFileReader(writeType0());
+        assertEquals(0, reader.getFormat());
+        assertEquals(1, reader.getTrackCount());
+        assertEquals(SECOND, reader.getDurationNanos());
+        RecordingReceiver receiver = new RecordingReceiver();
+        // The long SysEx counts as one event.
+        assertEquals(6, reader.read(receiver, Long.MAX_VALUE));
+        assertEquals(7, receiver.messages.size());
+        assertMessage(receiver, 0, 0, 0x90, 60, 100);
+        assertMessage(receiver, 1, 250 * MSEC, 0x90, 62, 101);
+        assertMessage(receiver, 2, 250 * MSEC, 0xF0, 0x7E, 0x7F, 0xF7);
+        assertMessage(receiver, 3, 500 * MSEC, 0x80, 60, 0);
+        assertMessage(receiver, 4, 500 * MSEC, 0x80, 62, 0);
+        // The long SysEx is sent in two pieces.
+        byte[] sysEx = longSysEx();
+        assertEquals(256, receiver.messages.get(5).length);
+        assertEquals((byte) 0xF0, receiver.messages.get(5)[0]);
+        ByteArrayOutputStream joined = new ByteArrayOutputStream();
+        joined.write(receiver.messages.get(5), 1, 255);
+        joined.write(receiver.messages.get(6), 0, receiver.messages.get(6).length);
+        assertArrayEquals(sysEx, joined.toByteArray());
+        assertEquals(500 * MSEC, (long) receiver.timestamps.get(6));
+        assertEquals(Long.MAX_VALUE, reader.getNextEventTime());
+    }
+
+    @Test
+    public void readsInWindows() throws IOException {
+        MidiFileReader reader = new MidiFileReader(writeType0());
+        reader.setStartTime(SECOND);
+        RecordingReceiver receiver = new RecordingReceiver();
+        assertEquals(SECOND, reader.getNextEventTime());
+        assertEquals(0, reader.read(receiver, SECOND));
+        assertEquals(1, reader.read(receiver, SECOND + 250 * MSEC));
+        assertEquals(SECOND + 250 * MSEC, reader.getNextEventTime());
+        assertEquals(2, reader.read(receiver, SECOND + 500 * MSEC));
+        reader.rewind();
+        assertEquals(SECOND, reader.getNextEventTime());
+        assertEquals(6, reader.read(receiver, Long.MAX_VALUE));
+        assertEquals(3 + 7, receiver.messages.size());
+    }
+
+    // Division 480. The tempo track drops to 60 beats per minute at 1 sec.
+    private File writeType1() throws IOException {
+        ByteArrayOutputStream file = header(1, 3, 480);
+        new Chunk().tempo(0, 500000).tempo(960, 1000000).endOfTrack(0)
+                .writeTo(file, "MTrk");
+        new Chunk().bytes(1, 2, 3).writeTo(file, "XFIH"); // unknown chunk
+        new Chunk()
+                .event(0, 0x90, 64, 127)
+                .event(960, 0x80, 64, 0)
+                .event(480, 0x90, 65, 127)
+                .endOfTrack(0)
+                .writeTo(file, "MTrk");
+        new Chunk()
+                .event(480, 0xC0, 5)
+                .event(960, 0xB0, 7, 100)
+                .event(480, 0x81, 70, 0)
+                .endOfTrack(0)
+                .writeTo(file, "MTrk");
+        return write(file);
+    }
+
+    @Test
+    public void mergesType1TracksWithTempoChange() throws IOException {
+        MidiFileReader reader = new MidiFileReader(writeType1());
+        assertEquals(1, reader.getFormat());
+        assertEquals(3, reader.getTrackCount());
+        assertEquals(500 * MSEC, reader.ticksToNanos(480));
+        assertEquals(SECOND, reader.ticksToNanos(960));
+        assertEquals(2 * SECOND, reader.ticksToNanos(1440));
+        assertEquals(3 * SECOND, reader.getDurationNanos());
+        RecordingReceiver receiver = new RecordingReceiver();
+        assertEquals(6, reader.read(receiver, Long.MAX_VALUE));
+        assertMessage(receiver, 0, 0, 0x90, 64, 127);
+        assertMessage(receiver, 1, 500 * MSEC, 0xC0, 5);
+        assertMessage(receiver, 2, SECOND, 0x80, 64, 0);
+        // Events at the same tick are sent in track order.
+        assertMessage(receiver, 3, 2 * SECOND, 0x90, 65, 127);
+        assertMessage(receiver, 4, 2 * SECOND, 0xB0, 7, 100);
+        assertMessage(receiver, 5, 3 * SECOND, 0x81, 70, 0);
+    }
+
+    private void assertInvalid(ByteArrayOutputStream bytes, String message)
+            throws IOException {
+        File file = write(bytes);
+        try {
+            new MidiFileReader(file);
+            fail("read an invalid file");
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith(message));
+        }
+    }
+
+    @Test
+    public void rejectsInvalidFiles() throws IOException {
+        ByteArrayOutputStream notMidi = new ByteArrayOutputStream();
+        new Chunk().bytes(0, 0, 0, 0, 0, 0).writeTo(notMidi, "RIFF");
+        assertInvalid(notMidi, "Not a MIDI file");
+
+        assertInvalid(header(2, 0, 96), "Unsupported MIDI file format 2");
+        assertInvalid(header(0, 1, 96), "Missing track 0");
+
+        ByteArrayOutputStream noStatus = header(0, 1, 96);
+        new Chunk().event(0, 60, 100).endOfTrack(0).writeTo(noStatus, "MTrk");
+        assertInvalid(noStatus, "Invalid status");
+    }
+
+    @Test
+    public void truncatedTrackFailsWhenRead() throws IOException {
+        ByteArrayOutputStream bytes = header(0, 1, 96);
+        new Chunk().event(0, 0x90, 60).writeTo(bytes, "MTrk");
+        MidiFileReader reader = new MidiFileReader(write(bytes));
+        try {
+            reader.read(new RecordingReceiver(), Long.MAX_VALUE);
+            fail("read a truncated track");
+        } catch (IOException e) {
+            assertTrue(e.getMessage(),
+                    e.getMessage().startsWith("Truncated track"));
+        }
+    }
+}
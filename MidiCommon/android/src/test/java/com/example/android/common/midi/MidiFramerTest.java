@@ -0,0 +1,295 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.common.midi;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import android.media.midi.MidiReceiver;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Checks that the bulk scan frames random streams the same way as the
+ * byte by byte parser.
+ *
+ * Packets are written with onSend() because MidiReceiver.send() does
+ * nothing in the Android jar that JVM tests run against.
+ */
+public class MidiFramerTest {
+    private static final int NUM_STREAMS = 200;
+    private static final int MESSAGES_PER_STREAM = 200;
+    private static final byte[] CHANNEL_COMMANDS = {
+            (byte) 0x80, (byte) 0x90, (byte) 0xA0, (byte) 0xB0,
+            (byte) 0xC0, (byte) 0xD0, (byte) 0xE0};
+    // Tune Request (0xF6) is left out because neither parser passes it on.
+    private static final byte[] SYSTEM_COMMON = {
+            (byte) 0xF1, (byte) 0xF2, (byte) 0xF3};
+    private static final byte[] REAL_TIME = {
+            (byte) 0xF8, (byte) 0xFA, (byte) 0xFC, (byte) 0xFE};
+
+    private static class RecordingReceiver extends MidiReceiver {
+        final ArrayList<byte[]> messages = new ArrayList<byte[]>();
+        final ArrayList<Long> timestamps = new ArrayList<Long>();
+
+        @Override
+        public void send(byte[] msg, int offset, int count, long timestamp)
+                throws IOException {
+            onSend(msg, offset, count, timestamp);
+        }
+
+        @Override
+        public void onSend(byte[] msg, int offset, int count, long timestamp) {
+            messages.add(Arrays.copyOfRange(msg, offset, offset + count));
+            timestamps.add(timestamp);
+        }
+    }
+
+    private static class RecordingBatchReceiver extends MidiBatchReceiver {
+        final RecordingReceiver recorder = new RecordingReceiver();
+
+        @Override
+        public void onSend(byte[] msg, int offset, int count, long timestamp) {
+            recorder.onSend(msg, offset, count, timestamp);
+        }
+
+        @Override
+        public void onSendBatch(MidiMessageBatch batch) {
+            for (int i = 0; i < batch.size(); i++) {
+                recorder.onSend(batch.getData(i), batch.getOffset(i),
+                        batch.getCount(i), batch.getTimestamp(i));
+            }
+        }
+    }
+
+    /**
+     * A random stream with the messages that it should be framed into.
+     */
+    private static class Stream {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        // Messages other than SysEx, in the order they should be passed on.
+        final ArrayList<byte[]> messages = new ArrayList<byte[]>();
+        // All of the SysEx bytes, which may be passed on in pieces.
+        final ByteArrayOutputStream sysEx = new ByteArrayOutputStream();
+        private final Random mRandom;
+        private byte mRunningStatus;
+
+        Stream(Random random) {
+            mRandom = random;
+            for (int i = 0; i < MESSAGES_PER_STREAM; i++) {
+                int kind = mRandom.nextInt(10);
+                if (kind < 6) {
+                    addChannelMessage();
+                } else if (kind < 7) {
+                    addMessage(randomMessage(
+                            SYSTEM_COMMON[mRandom.nextInt(SYSTEM_COMMON.length)]),
+                            0);
+                    mRunningStatus = 0;
+                } else if (kind < 8) {
+                    addSysEx();
+                    mRunningStatus = 0;
+                } else {
+                    byte[] realTime = {REAL_TIME[mRandom.nextInt(REAL_TIME.length)]};
+                    addMessage(realTime, 0);
+                }
+            }
+        }
+
+        private byte[] randomMessage(byte status) {
+            byte[] message = new byte[MidiConstants.getBytesPerMessage(status)];
+            message[0] = status;
+            for (int i = 1; i < message.length; i++) {
+                message[i] = (byte) mRandom.nextInt(128);
+            }
+            return message;
+        }
+
+        private void addChannelMessage() {
+            byte status = (byte) (CHANNEL_COMMANDS[mRandom.nextInt(
+                    CHANNEL_COMMANDS.length)] | mRandom.nextInt(2));
+            byte[] message = randomMessage(status);
+            int skip = (status == mRunningStatus && mRandom.nextBoolean()) ? 1 : 0;
+            addMessage(message, skip);
+            mRunningStatus = status;
+        }
+
+        // Write the message, maybe with a real-time byte inside it.
+        private void addMessage(byte[] message, int skip) {
+            int length = message.length - skip;
+            if (length > 1 && mRandom.nextInt(4) == 0) {
+                int split = skip + 1 + mRandom.nextInt(length - 1);
+                byte[] realTime = {REAL_TIME[mRandom.nextInt(REAL_TIME.length)]};
+                bytes.write(message, skip, split - skip);
+                bytes.write(realTime, 0, 1);
+                bytes.write(message, split, message.length - split);
+                // The real-time byte is passed on as soon as it is seen.
+                messages.add(realTime);
+            } else {
+                bytes.write(message, skip, length);
+            }
+            messages.add(message);
+        }
+
+        private void addSysEx() {
+            int length = 1 + mRandom.nextInt(40);
+            bytes.write(MidiConstants.STATUS_SYSTEM_EXCLUSIVE);
+            sysEx.write(MidiConstants.STATUS_SYSTEM_EXCLUSIVE);
+            for (int i = 0; i < length; i++) {
+                if (mRandom.nextInt(10) == 0) {
+                    byte realTime = REAL_TIME[mRandom.nextInt(REAL_TIME.length)];
+                    bytes.write(realTime);
+                    messages.add(new byte[] {realTime});
+                }
+                int data = mRandom.nextInt(128);
+                bytes.write(data);
+                sysEx.write(data);
+            }
+            bytes.write(MidiConstants.STATUS_END_SYSEX);
+            sysEx.write(MidiConstants.STATUS_END_SYSEX);
+        }
+    }
+
+    // Random packet boundaries, with the packet index as the timestamp.
+    private static int[] split(Random random, int length) {
+        ArrayList<Integer> ends = new ArrayList<Integer>();
+        int end = 0;
+        while (end < length) {
+            end = Math.min(length, end + 1 + random.nextInt(20));
+            ends.add(end);
+        }
+        int[] result = new int[ends.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = ends.get(i);
+        }
+        return result;
+    }
+
+    private static void sendPackets(MidiFramer framer, byte[] data, int[] ends)
+            throws IOException {
+        int start = 0;
+        for (int i = 0; i < ends.length; i++) {
+            framer.onSend(data, start, ends[i] - start, i);
+            start = ends[i];
+        }
+    }
+
+    // Send the packets to the framer in batches of a few packets.
+    private static void sendBatches(MidiFramer framer, byte[] data, int[] ends,
+            Random random) throws IOException {
+        MidiMessageBatch batch = new MidiMessageBatch();
+        int start = 0;
+        for (int i = 0; i < ends.length; i++) {
+            batch.addSlice(data, start, ends[i] - start, i);
+            start = ends[i];
+            if (random.nextInt(4) == 0 || i == ends.length - 1) {
+                framer.onSendBatch(batch);
+                batch.clear();
+            }
+        }
+    }
+
+    private static RecordingReceiver frame(byte[] data, int[] ends,
+            boolean bulkScan, boolean batchTarget) throws IOException {
+        RecordingReceiver receiver;
+        MidiFramer framer;
+        if (batchTarget) {
+            RecordingBatchReceiver batchReceiver = new RecordingBatchReceiver();
+            receiver = batchReceiver.recorder;
+            framer = new MidiFramer(batchReceiver);
+        } else {
+            receiver = new RecordingReceiver();
+            framer = new MidiFramer(receiver);
+        }
+        framer.setBulkScanEnabled(bulkScan);
+        sendPackets(framer, data, ends);
+        return receiver;
+    }
+
+    private static void assertSameOutput(String name, RecordingReceiver expected,
+            RecordingReceiver actual) {
+        assertEquals(name, expected.messages.size(), actual.messages.size());
+        for (int i = 0; i < expected.messages.size(); i++) {
+            assertArrayEquals(name + " message " + i, expected.messages.get(i),
+                    actual.messages.get(i));
+            assertEquals(name + " timestamp " + i, expected.timestamps.get(i),
+                    actual.timestamps.get(i));
+        }
+    }
+
+    // Check the byte by byte parser against the stream that was generated.
+    private static void assertFramed(Stream stream, RecordingReceiver receiver) {
+        ArrayList<byte[]> messages = new ArrayList<byte[]>();
+        ByteArrayOutputStream sysEx = new ByteArrayOutputStream();
+        for (byte[] message : receiver.messages) {
+            int status = message[0] & 0xFF;
+            if (status < 0x80 || status == 0xF0 || status == 0xF7) {
+                sysEx.write(message, 0, message.length); // a SysEx piece
+            } else {
+                messages.add(message);
+            }
+        }
+        assertEquals(stream.messages.size(), messages.size());
+        for (int i = 0; i < messages.size(); i++) {
+            assertArrayEquals("message " + i, stream.messages.get(i),
+                    messages.get(i));
+        }
+        assertArrayEquals(stream.sysEx.toByteArray(), sysEx.toByteArray());
+    }
+
+    @Test
+    public void bulkScanMatchesByteParser() throws IOException {
+        Random random = new Random(5678);
+        for (int n = 0; n < NUM_STREAMS; n++) {
+            Stream stream = new Stream(random);
+            byte[] data = stream.bytes.toByteArray();
+            int[] ends = split(random, data.length);
+
+            RecordingReceiver reference = frame(data, ends, false, false);
+            assertFramed(stream, reference);
+            assertSameOutput("bulk", reference, frame(data, ends, true, false));
+            assertSameOutput("batch target", reference,
+                    frame(data, ends, false, true));
+            assertSameOutput("bulk batch target", reference,
+                    frame(data, ends, true, true));
+
+            RecordingBatchReceiver batchReceiver = new RecordingBatchReceiver();
+            MidiFramer framer = new MidiFramer(batchReceiver);
+            sendBatches(framer, data, ends, random);
+            assertSameOutput("batch in", reference, batchReceiver.recorder);
+        }
+    }
+
+    @Test
+    public void runningStatusAcrossPackets() throws IOException {
+        byte[] data = {(byte) 0x90, 60, 100, 62, 101, 64, 102};
+        int[] ends = {2, 4, 5, 7};
+        RecordingReceiver reference = frame(data, ends, false, false);
+        assertEquals(3, reference.messages.size());
+        assertArrayEquals(new byte[] {(byte) 0x90, 62, 101},
+                reference.messages.get(1));
+        assertEquals(2L, (long) reference.timestamps.get(1));
+        assertSameOutput("bulk", reference, frame(data, ends, true, false));
+        assertSameOutput("bulk batch target", reference,
+                frame(data, ends, true, true));
+    }
+}
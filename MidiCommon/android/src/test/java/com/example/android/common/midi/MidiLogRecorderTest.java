@@ -0,0 +1,231 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.common.midi;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import android.media.midi.MidiReceiver;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Messages are written with onSend() because MidiReceiver.send() does
+ * nothing in the Android jar that JVM tests run against.
+ */
+public class MidiLogRecorderTest {
+    private static final long MSEC = 1000000L;
+    private static final int NUM_MESSAGES = 3000;
+    private static final long SPACING = 1000; // nanoseconds between messages
+    private static final int SYSEX_INDEX = 1000;
+    private static final int SYSEX_LENGTH = MidiLogRecorder.MAX_RECORD_DATA + 100;
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private static class RecordingReceiver extends MidiReceiver {
+        final ArrayList<byte[]> messages = new ArrayList<byte[]>();
+        final ArrayList<Long> timestamps = new ArrayList<Long>();
+
+        @Override
+        public void send(byte[] msg, int offset, int count, long timestamp)
+                throws IOException {
+            onSend(msg, offset, count, timestamp);
+        }
+
+        @Override
+        public void onSend(byte[] msg, int offset, int count, long timestamp) {
+            messages.add(Arrays.copyOfRange(msg, offset, offset + count));
+            timestamps.add(timestamp);
+        }
+    }
+
+    private static byte[] message(int i) {
+        return new byte[] {(byte) 0x90, (byte) (i & 0x7F), (byte) (i % 100 + 1)};
+    }
+
+    private static byte[] sysex() {
+        byte[] data = new byte[SYSEX_LENGTH];
+        data[0] = MidiConstants.STATUS_SYSTEM_EXCLUSIVE;
+        for (int i = 1; i < data.length - 1; i++) {
+            data[i] = (byte) (i & 0x7F);
+        }
+        data[data.length - 1] = MidiConstants.STATUS_END_SYSEX;
+        return data;
+    }
+
+    // Messages at increasing times with one SysEx that is split in two.
+    private static void record(MidiLogRecorder recorder) throws IOException {
+        for (int i = 0; i < NUM_MESSAGES; i++) {
+            byte[] data = (i == SYSEX_INDEX) ? sysex() : message(i);
+            recorder.onSend(data, 0, data.length, i * SPACING);
+        }
+    }
+
+    private static int recordSize() {
+        return NUM_MESSAGES * (MidiLogRecorder.RECORD_HEADER_SIZE + 3)
+                + MidiLogRecorder.RECORD_HEADER_SIZE + SYSEX_LENGTH - 3;
+    }
+
+    private static void waitForBytes(MidiLogRecorder recorder, long bytes)
+            throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (recorder.getBytesWritten() < bytes) {
+            if (System.currentTimeMillis() > deadline) {
+                fail("only " + recorder.getBytesWritten() + " of " + bytes
+                        + " bytes were written");
+            }
+            Thread.sleep(1);
+        }
+    }
+
+    // Check messages read after seeking to the one at index first.
+    private static void checkSeek(MidiLogReader reader, int first, int last)
+            throws IOException {
+        RecordingReceiver receiver = new RecordingReceiver();
+        reader.seek(first * SPACING);
+        assertEquals(first * SPACING, reader.getNextEventTime());
+        reader.read(receiver, last * SPACING);
+        int expected = last - first;
+        if (first <= SYSEX_INDEX && SYSEX_INDEX < last) {
+            expected++; // the SysEx is read in two pieces
+        }
+        assertEquals(expected, receiver.messages.size());
+        int i = first;
+        for (int n = 0; n < receiver.messages.size(); n++, i++) {
+            assertEquals(i * SPACING, (long) receiver.timestamps.get(n));
+            if (i == SYSEX_INDEX) {
+                byte[] data = sysex();
+                int split = MidiLogRecorder.MAX_RECORD_DATA;
+                assertArrayEquals(Arrays.copyOfRange(data, 0, split),
+                        receiver.messages.get(n));
+                n++;
+                assertEquals(i * SPACING, (long) receiver.timestamps.get(n));
+                assertArrayEquals(Arrays.copyOfRange(data, split, data.length),
+                        receiver.messages.get(n));
+            } else {
+                assertArrayEquals(message(i), receiver.messages.get(n));
+            }
+        }
+    }
+
+    private static void checkLog(MidiLogReader reader) throws IOException {
+        assertEquals(recordSize(), reader.getDataSize());
+        assertEquals(0, reader.getStartTime());
+        checkSeek(reader, 0, NUM_MESSAGES);
+        checkSeek(reader, 1, 2);
+        checkSeek(reader, SYSEX_INDEX - 1, SYSEX_INDEX + 2);
+        checkSeek(reader, 2500, 2600);
+        checkSeek(reader, NUM_MESSAGES - 1, NUM_MESSAGES);
+        reader.seek(NUM_MESSAGES * SPACING);
+        assertEquals(Long.MAX_VALUE, reader.getNextEventTime());
+        reader.rewind();
+        assertEquals(0, reader.getNextEventTime());
+    }
+
+    @Test
+    public void roundTripWithIndex() throws Exception {
+        File file = mFolder.newFile("clean.mlog");
+        MidiLogRecorder recorder = new MidiLogRecorder(file);
+        recorder.start();
+        record(recorder);
+        recorder.stop();
+        assertEquals(0, recorder.getDroppedCount());
+        assertEquals(NUM_MESSAGES + 1, recorder.getRecordedCount());
+        checkLog(new MidiLogReader(file));
+    }
+
+    @Test(timeout = 10000)
+    public void rebuildsIndexWhenNotStopped() throws Exception {
+        File file = mFolder.newFile("crashed.mlog");
+        MidiLogRecorder recorder = new MidiLogRecorder(file, 64 * 1024,
+                10 * MSEC);
+        recorder.start();
+        try {
+            record(recorder);
+            waitForBytes(recorder, MidiLogRecorder.HEADER_SIZE + recordSize());
+            // Copy the mapped file as it would be left by a crash.
+            File copy = mFolder.newFile("copy.mlog");
+            copyFile(file, copy);
+            assertTrue(copy.length() > MidiLogRecorder.HEADER_SIZE
+                    + recordSize());
+            checkLog(new MidiLogReader(copy));
+        } finally {
+            recorder.stop();
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void flushesMessagesWithoutTimestamps() throws Exception {
+        File file = mFolder.newFile("trickle.mlog");
+        MidiLogRecorder recorder = new MidiLogRecorder(file, 64 * 1024,
+                10 * MSEC);
+        recorder.start();
+        try {
+            byte[] data = message(1);
+            recorder.onSend(data, 0, data.length, 0);
+            // Nothing else arrives, so the writer has to collect it.
+            waitForBytes(recorder, MidiLogRecorder.HEADER_SIZE
+                    + MidiLogRecorder.RECORD_HEADER_SIZE + data.length);
+        } finally {
+            recorder.stop();
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsOtherFiles() throws Exception {
+        File file = mFolder.newFile("other.mlog");
+        OutputStream output = new FileOutputStream(file);
+        try {
+            output.write(new byte[] {'M', 'T', 'h', 'd', 0, 0, 0, 6});
+        } finally {
+            output.close();
+        }
+        new MidiLogReader(file);
+    }
+
+    private static void copyFile(File from, File to) throws IOException {
+        InputStream input = new FileInputStream(from);
+        try {
+            OutputStream output = new FileOutputStream(to);
+            try {
+                byte[] buffer = new byte[8192];
+                int count;
+                while ((count = input.read(buffer)) > 0) {
+                    output.write(buffer, 0, count);
+                }
+            } finally {
+                output.close();
+            }
+        } finally {
+            input.close();
+        }
+    }
+}
@@ -0,0 +1,240 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.common.midi;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import android.media.midi.MidiReceiver;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Messages are written with onSend() because MidiReceiver.send() does
+ * nothing in the Android jar that JVM tests run against.
+ */
+public class PackedMidiEventSchedulerTest {
+    private static final byte[] NOTE_ON = {(byte) 0x90, 60, 100};
+    private static final byte[] NOTE_OFF = {(byte) 0x80, 60, 0};
+
+    private static class RecordingReceiver extends MidiReceiver {
+        final ArrayList<byte[]> messages = new ArrayList<byte[]>();
+        final ArrayList<Long> timestamps = new ArrayList<Long>();
+
+        @Override
+        public void send(byte[] msg, int offset, int count, long timestamp)
+                throws IOException {
+            onSend(msg, offset, count, timestamp);
+        }
+
+        @Override
+        public void onSend(byte[] msg, int offset, int count, long timestamp) {
+            messages.add(Arrays.copyOfRange(msg, offset, offset + count));
+            timestamps.add(timestamp);
+        }
+    }
+
+    private static class RecordingBatchReceiver extends MidiBatchReceiver {
+        final RecordingReceiver recorder = new RecordingReceiver();
+        int batchCount;
+
+        @Override
+        public void onSend(byte[] msg, int offset, int count, long timestamp) {
+            recorder.onSend(msg, offset, count, timestamp);
+        }
+
+        @Override
+        public void onSendBatch(MidiMessageBatch batch) {
+            batchCount++;
+            for (int i = 0; i < batch.size(); i++) {
+                recorder.onSend(batch.getData(i), batch.getOffset(i),
+                        batch.getCount(i), batch.getTimestamp(i));
+            }
+        }
+    }
+
+    // Does not allocate.
+    private static class CountingReceiver extends MidiReceiver {
+        long count;
+        long sum;
+
+        @Override
+        public void send(byte[] msg, int offset, int count, long timestamp)
+                throws IOException {
+            onSend(msg, offset, count, timestamp);
+        }
+
+        @Override
+        public void onSend(byte[] msg, int offset, int count, long timestamp) {
+            this.count++;
+            sum += msg[offset + count - 1];
+        }
+    }
+
+    private static byte[] sysEx(int length, int seed) {
+        byte[] msg = new byte[length];
+        msg[0] = MidiConstants.STATUS_SYSTEM_EXCLUSIVE;
+        for (int i = 1; i < length - 1; i++) {
+            msg[i] = (byte) ((seed + i) & 0x7F);
+        }
+        msg[length - 1] = MidiConstants.STATUS_END_SYSEX;
+        return msg;
+    }
+
+    @Test
+    public void lateMessageDoesNotHoldBackDueMessages() throws IOException {
+        PackedMidiEventScheduler scheduler = new PackedMidiEventScheduler();
+        MidiReceiver input = scheduler.getReceiver();
+        input.onSend(NOTE_OFF, 0, 3, 5000);
+        input.onSend(NOTE_ON, 0, 3, 1000);
+        assertEquals(1000, scheduler.getNextEventTime());
+
+        RecordingReceiver output = new RecordingReceiver();
+        scheduler.sendDueEvents(2000, output);
+        assertEquals(1, output.messages.size());
+        assertArrayEquals(NOTE_ON, output.messages.get(0));
+        assertEquals(5000, scheduler.getNextEventTime());
+
+        scheduler.sendDueEvents(5000, output);
+        assertEquals(2, output.messages.size());
+        assertArrayEquals(NOTE_OFF, output.messages.get(1));
+        assertEquals(Long.MAX_VALUE, scheduler.getNextEventTime());
+    }
+
+    @Test
+    public void sortsByTimestampThenArrival() throws IOException {
+        PackedMidiEventScheduler scheduler = new PackedMidiEventScheduler(64, 1024);
+        MidiReceiver input = scheduler.getReceiver();
+        long[] times = {30, 10, 20, 10, 30, 0, 20, 10};
+        for (int i = 0; i < times.length; i++) {
+            byte[] msg = {(byte) 0x90, (byte) i, 64};
+            input.onSend(msg, 0, 3, times[i]);
+        }
+        RecordingBatchReceiver output = new RecordingBatchReceiver();
+        scheduler.sendDueEvents(100, output);
+        int[] expectedNotes = {5, 1, 3, 7, 2, 6, 0, 4};
+        assertEquals(expectedNotes.length, output.recorder.messages.size());
+        for (int i = 0; i < expectedNotes.length; i++) {
+            assertEquals(expectedNotes[i], output.recorder.messages.get(i)[1]);
+            assertEquals(times[expectedNotes[i]],
+                    (long) output.recorder.timestamps.get(i));
+        }
+    }
+
+    @Test
+    public void longMessagesCanBeDeliveredOutOfOrder() throws IOException {
+        // A small slab so that it wraps many times.
+        PackedMidiEventScheduler scheduler = new PackedMidiEventScheduler(16, 256);
+        MidiReceiver input = scheduler.getReceiver();
+        RecordingReceiver output = new RecordingReceiver();
+        RecordingBatchReceiver batchOutput = new RecordingBatchReceiver();
+        ArrayList<byte[]> expected = new ArrayList<byte[]>();
+        long time = 0;
+        for (int round = 0; round < 200; round++) {
+            byte[] late = sysEx(20 + (round % 7), round);
+            byte[] early = sysEx(9 + (round % 5), round + 50);
+            input.onSend(late, 0, late.length, time + 2);
+            input.onSend(NOTE_ON, 0, 3, time + 1);
+            input.onSend(early, 0, early.length, time);
+            expected.add(early);
+            expected.add(NOTE_ON);
+            expected.add(late);
+            if ((round & 1) == 0) {
+                scheduler.sendDueEvents(time + 2, output);
+            } else {
+                scheduler.sendDueEvents(time + 2, batchOutput);
+            }
+            time += 10;
+        }
+        for (int i = 0; i < expected.size(); i++) {
+            int round = i / 3;
+            RecordingReceiver recorder = ((round & 1) == 0)
+                    ? output : batchOutput.recorder;
+            int index = (round / 2) * 3 + (i % 3);
+            assertArrayEquals("message " + i, expected.get(i),
+                    recorder.messages.get(index));
+        }
+        assertEquals(0, scheduler.getDroppedCount());
+    }
+
+    @Test
+    public void dropsMessagesLongerThanHalfTheSlab() throws IOException {
+        PackedMidiEventScheduler scheduler = new PackedMidiEventScheduler(16, 64);
+        byte[] big = sysEx(40, 0);
+        scheduler.getReceiver().onSend(big, 0, big.length, 0);
+        assertEquals(1, scheduler.getDroppedCount());
+        assertEquals(Long.MAX_VALUE, scheduler.getNextEventTime());
+    }
+
+    @Test
+    public void steadyStateDoesNotAllocate() throws IOException {
+        java.lang.management.ThreadMXBean bean =
+                ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threadBean =
+                (com.sun.management.ThreadMXBean) bean;
+        Assume.assumeTrue(threadBean.isThreadAllocatedMemorySupported());
+        threadBean.setThreadAllocatedMemoryEnabled(true);
+        long threadId = Thread.currentThread().getId();
+
+        PackedMidiEventScheduler scheduler = new PackedMidiEventScheduler();
+        CountingReceiver output = new CountingReceiver();
+        // Same path as SynthEngine, through a MidiFramer.
+        MidiFramer framer = new MidiFramer(output);
+        byte[] sysEx = sysEx(24, 0);
+        // Warm up so that classes are loaded and compiled.
+        scheduleAndSend(scheduler, framer, output, sysEx, 20000);
+
+        // Measure what reading the counter costs by itself.
+        long start = threadBean.getThreadAllocatedBytes(threadId);
+        long overhead = threadBean.getThreadAllocatedBytes(threadId) - start;
+        start = threadBean.getThreadAllocatedBytes(threadId);
+        scheduleAndSend(scheduler, framer, output, sysEx, 20000);
+        long allocated = threadBean.getThreadAllocatedBytes(threadId) - start
+                - overhead;
+        assertTrue("allocated " + allocated + " bytes", allocated <= 0);
+    }
+
+    private static void scheduleAndSend(PackedMidiEventScheduler scheduler,
+            MidiReceiver framer, CountingReceiver output, byte[] sysEx,
+            int rounds) throws IOException {
+        MidiReceiver input = scheduler.getReceiver();
+        long expected = output.count;
+        for (int i = 0; i < rounds; i++) {
+            long time = 100L * i;
+            input.onSend(NOTE_OFF, 0, 3, time + 50);
+            input.onSend(NOTE_ON, 0, 3, time);
+            if ((i % 16) == 0) {
+                input.onSend(sysEx, 0, sysEx.length, time + 10);
+                expected++;
+            }
+            // The framer takes batches.
+            scheduler.sendDueEvents(time + 50, framer);
+            input.onSend(NOTE_ON, 0, 3, time + 60);
+            scheduler.sendDueEvents(time + 60, output);
+            expected += 3;
+        }
+        assertEquals(expected, output.count);
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.common.midi.synth;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ParallelVoiceMixerTest {
+    private static final int NUM_THREADS = 4;
+    private static final int NUM_FRAMES = 16;
+    private static final int SAMPLES_PER_FRAME = 2;
+
+    private ParallelVoiceMixer mMixer;
+
+    // Outputs a constant and counts how many blocks it rendered.
+    private static class CountingVoice extends SynthVoice {
+        final float value;
+        int blockCount;
+
+        CountingVoice(float value) {
+            this.value = value;
+        }
+
+        @Override
+        public float render() {
+            return value;
+        }
+
+        @Override
+        public void renderBlock(float[] output, int offset, int numFrames) {
+            blockCount++;
+            for (int i = offset; i < offset + numFrames; i++) {
+                output[i] = value;
+            }
+        }
+    }
+
+    @Before
+    public void setUp() {
+        // No deadline so that it never falls back to the caller.
+        mMixer = new ParallelVoiceMixer(NUM_THREADS,
+                NUM_FRAMES * SAMPLES_PER_FRAME, Long.MAX_VALUE);
+        mMixer.start();
+    }
+
+    @After
+    public void tearDown() {
+        mMixer.stop();
+    }
+
+    @Test
+    public void mixesEachVoiceOnce() {
+        CountingVoice[] voices = new CountingVoice[8];
+        for (int i = 0; i < voices.length; i++) {
+            voices[i] = new CountingVoice(1 << i);
+        }
+        float[] output = new float[NUM_FRAMES * SAMPLES_PER_FRAME];
+        assertTrue(mMixer.mix(voices, voices.length, output, 0, NUM_FRAMES,
+                SAMPLES_PER_FRAME, 1.0f));
+        for (int i = 0; i < voices.length; i++) {
+            assertEquals(1, voices[i].blockCount);
+        }
+        for (int i = 0; i < output.length; i++) {
+            assertEquals(255.0f, output[i], 0.0f);
+        }
+    }
+
+    @Test
+    public void alternatingPartitionCountsNeverShareAPartition() {
+        // 8 voices use 4 partitions, 4 voices use 2 and 6 voices use 3.
+        // A worker left over from a job with more partitions must not
+        // claim a partition of the next job twice.
+        int[] voiceCounts = {8, 4, 6, 4};
+        CountingVoice[] voices = new CountingVoice[8];
+        for (int i = 0; i < voices.length; i++) {
+            voices[i] = new CountingVoice(1 << i);
+        }
+        float[] output = new float[NUM_FRAMES * SAMPLES_PER_FRAME];
+        for (int job = 0; job < 200000; job++) {
+            int numVoices = voiceCounts[job % voiceCounts.length];
+            for (int i = 0; i < output.length; i++) {
+                output[i] = 0.0f;
+            }
+            assertTrue(mMixer.mix(voices, numVoices, output, 0, NUM_FRAMES,
+                    SAMPLES_PER_FRAME, 1.0f));
+            float expected = 0.0f;
+            for (int i = 0; i < numVoices; i++) {
+                assertEquals("job " + job + ", voice " + i, 1,
+                        voices[i].blockCount);
+                voices[i].blockCount = 0;
+                expected += voices[i].value;
+            }
+            for (int i = 0; i < output.length; i++) {
+                assertEquals("job " + job, expected, output[i], 0.0f);
+            }
+        }
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.common.midi;
+
+import com.example.android.common.midi.EventScheduler.SchedulableEvent;
+
+/**
+ * Storage used by an EventScheduler to hold events until they are due.
+ *
+ * Only one Thread will call add() and only one Thread will call
+ * removeNextEvent() or getNextEventTime().
+ * An implementation is responsible for its own thread safety.
+ */
+public abstract class EventBuffer {
+
+    /**
+     * Store an event. Called from the writing thread.
+     *
+     * @param event
+     */
+    public abstract void add(SchedulableEvent event);
+
+    /**
+     * Store several events in order. Called from the writing thread.
+     * Subclasses can override this to synchronize once per batch.
+     *
+     * @param events
+     * @param count number of events to add from the start of the array
+     */
+    public void addAll(SchedulableEvent[] events, int count) {
+        for (int i = 0; i < count; i++) {
+            add(events[i]);
+        }
+    }
+
+    /**
+     * Remove the earliest event if it is due. Events with the same timestamp
+     * must be returned in the order they were added.
+     * Called from the reading thread.
+     *
+     * @param time
+     * @return next event or null if none ready
+     */
+    public abstract SchedulableEvent removeNextEvent(long time);
+
+    /**
+     * Called from the reading thread to decide how long it can sleep.
+     * The result may be earlier than the actual time of the next event
+     * but never later.
+     *
+     * @return time of the next event or Long.MAX_VALUE if empty
+     */
+    public abstract long getNextEventTime();
+}
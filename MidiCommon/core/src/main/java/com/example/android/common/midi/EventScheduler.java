@@ -16,9 +16,6 @@
 
 package com.example.android.common.midi;
 
-import java.util.SortedMap;
-import java.util.TreeMap;
-
 /**
  * Store SchedulableEvents in a timestamped buffer.
  * Events may be written in any order.
@@ -32,19 +29,29 @@ public class EventScheduler {
     private static final long NANOS_PER_MILLI = 1000000;
 
     private final Object lock = new Object();
-    private SortedMap<Long, FastEventQueue> mEventBuffer;
+    private final EventBuffer mEventBuffer;
+    // Set by the reading thread while it may be waiting for an event.
+    // Long.MIN_VALUE means that no thread is waiting.
+    private volatile long mWakeTime = Long.MIN_VALUE;
     // This does not have to be guarded. It is only set by the writing thread.
     // If the reader sees a null right before being set then that is OK.
     private FastEventQueue mEventPool = null;
     private static final int MAX_POOL_SIZE = 200;
 
     public EventScheduler() {
-        mEventBuffer = new TreeMap<Long, FastEventQueue>();
+        this(new TreeMapEventBuffer());
+    }
+
+    /**
+     * @param eventBuffer storage for the scheduled events
+     */
+    public EventScheduler(EventBuffer eventBuffer) {
+        mEventBuffer = eventBuffer;
     }
 
     // If we keep at least one node in the list then it can be atomic
     // and non-blocking.
-    private class FastEventQueue {
+    static class FastEventQueue {
         // One thread takes from the beginning of the list.
         volatile SchedulableEvent mFirst;
         // A second thread returns events to the end of the list.
@@ -92,7 +99,8 @@ public class EventScheduler {
      */
     public static class SchedulableEvent {
         private long mTimestamp;
-        private SchedulableEvent mNext = null;
+        // Used by the EventBuffer and the pool to link events together.
+        SchedulableEvent mNext = null;
 
         /**
          * @param timestamp
@@ -152,34 +160,34 @@ public class EventScheduler {
      * @param event
      */
     public void add(SchedulableEvent event) {
-        synchronized (lock) {
-            FastEventQueue list = mEventBuffer.get(event.getTimestamp());
-            if (list == null) {
-                long lowestTime = mEventBuffer.isEmpty() ? Long.MAX_VALUE
-                        : mEventBuffer.firstKey();
-                list = new FastEventQueue(event);
-                mEventBuffer.put(event.getTimestamp(), list);
-                // If the event we added is earlier than the previous earliest
-                // event then notify any threads waiting for the next event.
-                if (event.getTimestamp() < lowestTime) {
-                    lock.notify();
-                }
-            } else {
-                list.add(event);
+        mEventBuffer.add(event);
+        // If the event we added is earlier than the time the reader
+        // is waiting for then wake it up.
+        if (event.getTimestamp() < mWakeTime) {
+            synchronized (lock) {
+                lock.notify();
             }
         }
     }
 
-    // Caller must synchronize on lock before calling.
-    private SchedulableEvent removeNextEventLocked(long lowestTime) {
-        SchedulableEvent event;
-        FastEventQueue list = mEventBuffer.get(lowestTime);
-        // Remove list from tree if this is the last node.
-        if ((list.size() == 1)) {
-            mEventBuffer.remove(lowestTime);
+    /**
+     * Add several events to the scheduler with a single wake up check.
+     * Events with the same time will be processed in order.
+     *
+     * @param events
+     * @param count number of events to add from the start of the array
+     */
+    public void addAll(SchedulableEvent[] events, int count) {
+        long earliest = Long.MAX_VALUE;
+        for (int i = 0; i < count; i++) {
+            earliest = Math.min(earliest, events[i].getTimestamp());
+        }
+        mEventBuffer.addAll(events, count);
+        if (earliest < mWakeTime) {
+            synchronized (lock) {
+                lock.notify();
+            }
         }
-        event = list.remove();
-        return event;
     }
 
     /**
@@ -189,20 +197,22 @@ public class EventScheduler {
      * @return next event or null if none ready
      */
     public SchedulableEvent getNextEvent(long time) {
-        SchedulableEvent event = null;
-        synchronized (lock) {
-            if (!mEventBuffer.isEmpty()) {
-                long lowestTime = mEventBuffer.firstKey();
-                // Is it time for this list to be processed?
-                if (lowestTime <= time) {
-                    event = removeNextEventLocked(lowestTime);
-                }
-            }
-        }
+        SchedulableEvent event = mEventBuffer.removeNextEvent(time);
         // Log.i(TAG, "getNextEvent: event = " + event);
         return event;
     }
 
+    /**
+     * Should only be called by the reading thread.
+     * The result may be earlier than the actual time of the next event
+     * but never later.
+     *
+     * @return time of the next event or Long.MAX_VALUE if there are none
+     */
+    public long getNextEventTime() {
+        return mEventBuffer.getNextEventTime();
+    }
+
     /**
      * Return the next available event or wait until there is an event ready to
      * be processed. This method assumes that the timestamps are in nanoseconds
@@ -213,17 +223,20 @@ public class EventScheduler {
      */
     public SchedulableEvent waitNextEvent() throws InterruptedException {
         SchedulableEvent event = null;
-        while (true) {
-            long millisToWait = Integer.MAX_VALUE;
+        try {
             synchronized (lock) {
-                if (!mEventBuffer.isEmpty()) {
+                while (true) {
+                    // Publish before looking at the buffer so that the writer
+                    // either sees that we are waiting or we see its event.
+                    mWakeTime = Long.MAX_VALUE;
                     long now = System.nanoTime();
-                    long lowestTime = mEventBuffer.firstKey();
-                    // Is it time for the earliest list to be processed?
-                    if (lowestTime <= now) {
-                        event = removeNextEventLocked(lowestTime);
+                    event = mEventBuffer.removeNextEvent(now);
+                    if (event != null) {
                         break;
-                    } else {
+                    }
+                    long millisToWait = Integer.MAX_VALUE;
+                    long lowestTime = mEventBuffer.getNextEventTime();
+                    if (lowestTime != Long.MAX_VALUE) {
                         // Figure out how long to sleep until next event.
                         long nanosToWait = lowestTime - now;
                         // Add 1 millisecond so we don't wake up before it is
@@ -232,11 +245,17 @@ public class EventScheduler {
                         // Clip 64-bit value to 32-bit max.
                         if (millisToWait > Integer.MAX_VALUE) {
                             millisToWait = Integer.MAX_VALUE;
+                        } else if (millisToWait < 1) {
+                            millisToWait = 1; // zero would wait forever
                         }
                     }
+                    // Only earlier events need to wake us up now.
+                    mWakeTime = lowestTime;
+                    lock.wait((int) millisToWait);
                 }
-                lock.wait((int) millisToWait);
             }
+        } finally {
+            mWakeTime = Long.MIN_VALUE;
         }
         return event;
     }
@@ -0,0 +1,335 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.common.midi;
+
+import com.example.android.common.midi.EventScheduler.SchedulableEvent;
+
+/**
+ * Hierarchical timing wheel that does not use any locks.
+ *
+ * The writing thread puts events into a bounded single-producer,
+ * single-consumer ring. The reading thread moves them from the ring into
+ * the wheel, which is only ever touched by the reading thread.
+ * Each level of the wheel has 256 slots. A slot on level zero covers one tick.
+ * A slot on a higher level covers a whole rotation of the level below it and
+ * is cascaded down when the current tick reaches it.
+ *
+ * If the ring is full then the writing thread will yield until the reading
+ * thread makes room, so the reader must be polled regularly.
+ */
+public class TimingWheelEventBuffer extends EventBuffer {
+    public static final int DEFAULT_INBOX_CAPACITY = 4096;
+    public static final long DEFAULT_TICK_NANOS = 1 << 18; // about 262 usec
+
+    private static final int SLOT_BITS = 8;
+    private static final int NUM_SLOTS = 1 << SLOT_BITS;
+    private static final int SLOT_MASK = NUM_SLOTS - 1;
+    private static final int NUM_LEVELS = 4;
+
+    // Shared by both threads.
+    private final SchedulableEvent[] mInbox;
+    private final int mInboxMask;
+    private volatile long mInboxWriteIndex;
+    private volatile long mInboxReadIndex;
+
+    // Everything below is only accessed by the reading thread.
+    private final int mTickShift;
+    private final SchedulableEvent[][] mHeads = new SchedulableEvent[NUM_LEVELS][NUM_SLOTS];
+    private final SchedulableEvent[][] mTails = new SchedulableEvent[NUM_LEVELS][NUM_SLOTS];
+    private final int[] mLevelCounts = new int[NUM_LEVELS];
+    // Events that are too far in the future for the top level.
+    private SchedulableEvent mOverflowHead;
+    private SchedulableEvent mOverflowTail;
+    // Events whose tick has been reached, sorted by timestamp.
+    private SchedulableEvent mReadyHead;
+    private SchedulableEvent mReadyTail;
+    // Events whose tick has been reached but that are not sorted yet.
+    private SchedulableEvent mPendingHead;
+    private SchedulableEvent mPendingTail;
+    private int mPendingCount;
+    private SchedulableEvent mSortCursor;
+    private SchedulableEvent mMergeTail;
+    private long mCurrentTick;
+    private int mWheelCount;
+
+    public TimingWheelEventBuffer() {
+        this(DEFAULT_INBOX_CAPACITY, DEFAULT_TICK_NANOS);
+    }
+
+    /**
+     * @param inboxCapacity rounded up to a power of two
+     * @param tickNanos resolution of the wheel, rounded down to a power of two
+     */
+    public TimingWheelEventBuffer(int inboxCapacity, long tickNanos) {
+        if (inboxCapacity < 2 || tickNanos < 1) {
+            throw new IllegalArgumentException("inboxCapacity = " + inboxCapacity
+                    + ", tickNanos = " + tickNanos);
+        }
+        int capacity = Integer.highestOneBit(inboxCapacity - 1) << 1;
+        mInbox = new SchedulableEvent[capacity];
+        mInboxMask = capacity - 1;
+        mTickShift = 63 - Long.numberOfLeadingZeros(tickNanos);
+        mCurrentTick = System.nanoTime() >> mTickShift;
+    }
+
+    @Override
+    public void add(SchedulableEvent event) {
+        long writeIndex = mInboxWriteIndex;
+        while ((writeIndex - mInboxReadIndex) > mInboxMask) {
+            Thread.yield(); // Full so wait for the reader to catch up.
+        }
+        mInbox[(int) (writeIndex & mInboxMask)] = event;
+        mInboxWriteIndex = writeIndex + 1; // Publish the event.
+    }
+
+    @Override
+    public void addAll(SchedulableEvent[] events, int count) {
+        long writeIndex = mInboxWriteIndex;
+        for (int i = 0; i < count; i++) {
+            if ((writeIndex - mInboxReadIndex) > mInboxMask) {
+                mInboxWriteIndex = writeIndex; // Publish what fits.
+                while ((writeIndex - mInboxReadIndex) > mInboxMask) {
+                    Thread.yield();
+                }
+            }
+            mInbox[(int) (writeIndex & mInboxMask)] = events[i];
+            writeIndex++;
+        }
+        mInboxWriteIndex = writeIndex; // Publish the batch.
+    }
+
+    @Override
+    public SchedulableEvent removeNextEvent(long time) {
+        drainInbox();
+        advanceTo(time >> mTickShift);
+        flushPending();
+        SchedulableEvent event = mReadyHead;
+        if (event == null || event.getTimestamp() > time) {
+            return null;
+        }
+        mReadyHead = event.mNext;
+        if (mReadyHead == null) {
+            mReadyTail = null;
+        }
+        event.mNext = null;
+        return event;
+    }
+
+    @Override
+    public long getNextEventTime() {
+        drainInbox();
+        flushPending();
+        if (mReadyHead != null) {
+            return mReadyHead.getTimestamp();
+        }
+        if (mWheelCount == 0) {
+            return Long.MAX_VALUE;
+        }
+        // Find the first occupied slot, which gives a lower bound.
+        for (int level = 0; level < NUM_LEVELS; level++) {
+            if (mLevelCounts[level] > 0) {
+                int shift = SLOT_BITS * level;
+                int current = (int) (mCurrentTick >> shift) & SLOT_MASK;
+                SchedulableEvent[] heads = mHeads[level];
+                for (int slot = current + 1; slot < NUM_SLOTS; slot++) {
+                    if (heads[slot] != null) {
+                        long rotation = (mCurrentTick >> (shift + SLOT_BITS))
+                                << (shift + SLOT_BITS);
+                        return (rotation + ((long) slot << shift)) << mTickShift;
+                    }
+                }
+            }
+        }
+        long topShift = SLOT_BITS * NUM_LEVELS;
+        return (((mCurrentTick >> topShift) + 1) << topShift) << mTickShift;
+    }
+
+    private void drainInbox() {
+        long readIndex = mInboxReadIndex;
+        long writeIndex = mInboxWriteIndex;
+        while (readIndex < writeIndex) {
+            int index = (int) (readIndex & mInboxMask);
+            SchedulableEvent event = mInbox[index];
+            mInbox[index] = null;
+            insert(event);
+            readIndex++;
+        }
+        mInboxReadIndex = readIndex; // Let the writer reuse the slots.
+    }
+
+    private void insert(SchedulableEvent event) {
+        event.mNext = null;
+        long tick = event.getTimestamp() >> mTickShift;
+        if (tick <= mCurrentTick) {
+            if (mPendingTail == null) {
+                mPendingHead = event;
+            } else {
+                mPendingTail.mNext = event;
+            }
+            mPendingTail = event;
+            mPendingCount++;
+            return;
+        }
+        // Use the lowest level whose rotation contains the tick.
+        long diff = tick ^ mCurrentTick;
+        for (int level = 0; level < NUM_LEVELS; level++) {
+            int shift = SLOT_BITS * level;
+            if ((diff >>> (shift + SLOT_BITS)) == 0) {
+                int slot = (int) (tick >> shift) & SLOT_MASK;
+                if (mTails[level][slot] == null) {
+                    mHeads[level][slot] = event;
+                } else {
+                    mTails[level][slot].mNext = event;
+                }
+                mTails[level][slot] = event;
+                mLevelCounts[level]++;
+                mWheelCount++;
+                return;
+            }
+        }
+        if (mOverflowTail == null) {
+            mOverflowHead = event;
+        } else {
+            mOverflowTail.mNext = event;
+        }
+        mOverflowTail = event;
+        mWheelCount++;
+    }
+
+    // Sort the pending events and merge them into the ready list.
+    // Merge sort is stable so events with the same time stay in order.
+    private void flushPending() {
+        if (mPendingCount == 0) {
+            return;
+        }
+        mSortCursor = mPendingHead;
+        SchedulableEvent sorted = sortList(mPendingCount);
+        SchedulableEvent sortedTail = mMergeTail;
+        mPendingHead = null;
+        mPendingTail = null;
+        mPendingCount = 0;
+        if (mReadyHead == null) {
+            mReadyHead = sorted;
+            mReadyTail = sortedTail;
+        } else if (mReadyTail.getTimestamp() <= sorted.getTimestamp()) {
+            mReadyTail.mNext = sorted;
+            mReadyTail = sortedTail;
+        } else {
+            mReadyHead = merge(mReadyHead, sorted);
+            mReadyTail = mMergeTail;
+        }
+    }
+
+    // Sort the next count events starting at mSortCursor.
+    // The tail of the result is left in mMergeTail.
+    private SchedulableEvent sortList(int count) {
+        if (count == 1) {
+            SchedulableEvent event = mSortCursor;
+            mSortCursor = event.mNext;
+            event.mNext = null;
+            mMergeTail = event;
+            return event;
+        }
+        int half = count / 2;
+        SchedulableEvent left = sortList(half);
+        SchedulableEvent right = sortList(count - half);
+        return merge(left, right);
+    }
+
+    // Merge two sorted lists, taking from the left one first when the
+    // times are equal. The tail of the result is left in mMergeTail.
+    private SchedulableEvent merge(SchedulableEvent left, SchedulableEvent right) {
+        SchedulableEvent head;
+        if (right.getTimestamp() < left.getTimestamp()) {
+            head = right;
+            right = right.mNext;
+        } else {
+            head = left;
+            left = left.mNext;
+        }
+        SchedulableEvent tail = head;
+        while (left != null && right != null) {
+            if (right.getTimestamp() < left.getTimestamp()) {
+                tail.mNext = right;
+                right = right.mNext;
+            } else {
+                tail.mNext = left;
+                left = left.mNext;
+            }
+            tail = tail.mNext;
+        }
+        tail.mNext = (left != null) ? left : right;
+        while (tail.mNext != null) {
+            tail = tail.mNext;
+        }
+        mMergeTail = tail;
+        return head;
+    }
+
+    private void advanceTo(long tick) {
+        while (mCurrentTick < tick) {
+            if (mWheelCount == 0) {
+                mCurrentTick = tick;
+                return;
+            }
+            // Skip over whole rotations of empty levels.
+            long next = mCurrentTick + 1;
+            for (int level = 0; level < NUM_LEVELS && mLevelCounts[level] == 0;
+                    level++) {
+                int shift = SLOT_BITS * (level + 1);
+                next = ((mCurrentTick >> shift) + 1) << shift;
+            }
+            if (next > tick) {
+                // Nothing is stored before the requested tick.
+                mCurrentTick = tick;
+                return;
+            }
+            mCurrentTick = next;
+            cascade(next);
+        }
+    }
+
+    private void cascade(long tick) {
+        if ((tick & ((1L << (SLOT_BITS * NUM_LEVELS)) - 1)) == 0) {
+            SchedulableEvent event = mOverflowHead;
+            mOverflowHead = null;
+            mOverflowTail = null;
+            while (event != null) {
+                SchedulableEvent next = event.mNext;
+                mWheelCount--;
+                insert(event);
+                event = next;
+            }
+        }
+        for (int level = NUM_LEVELS - 1; level >= 0; level--) {
+            int shift = SLOT_BITS * level;
+            if ((tick & ((1L << shift) - 1)) == 0) {
+                int slot = (int) (tick >> shift) & SLOT_MASK;
+                SchedulableEvent event = mHeads[level][slot];
+                mHeads[level][slot] = null;
+                mTails[level][slot] = null;
+                while (event != null) {
+                    SchedulableEvent next = event.mNext;
+                    mLevelCounts[level]--;
+                    mWheelCount--;
+                    insert(event);
+                    event = next;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.common.midi;
+
+import com.example.android.common.midi.EventScheduler.FastEventQueue;
+import com.example.android.common.midi.EventScheduler.SchedulableEvent;
+
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * EventBuffer that keeps a list of events for each timestamp in a TreeMap.
+ * Both threads share a single lock.
+ */
+public class TreeMapEventBuffer extends EventBuffer {
+    private final Object lock = new Object();
+    private SortedMap<Long, FastEventQueue> mEventBuffer;
+
+    public TreeMapEventBuffer() {
+        mEventBuffer = new TreeMap<Long, FastEventQueue>();
+    }
+
+    @Override
+    public void add(SchedulableEvent event) {
+        synchronized (lock) {
+            insert(event);
+        }
+    }
+
+    @Override
+    public void addAll(SchedulableEvent[] events, int count) {
+        synchronized (lock) {
+            for (int i = 0; i < count; i++) {
+                insert(events[i]);
+            }
+        }
+    }
+
+    private void insert(SchedulableEvent event) {
+        FastEventQueue list = mEventBuffer.get(event.getTimestamp());
+        if (list == null) {
+            list = new FastEventQueue(event);
+            mEventBuffer.put(event.getTimestamp(), list);
+        } else {
+            list.add(event);
+        }
+    }
+
+    @Override
+    public SchedulableEvent removeNextEvent(long time) {
+        SchedulableEvent event = null;
+        synchronized (lock) {
+            if (!mEventBuffer.isEmpty()) {
+                long lowestTime = mEventBuffer.firstKey();
+                // Is it time for this list to be processed?
+                if (lowestTime <= time) {
+                    FastEventQueue list = mEventBuffer.get(lowestTime);
+                    // Remove list from tree if this is the last node.
+                    if ((list.size() == 1)) {
+                        mEventBuffer.remove(lowestTime);
+                    }
+                    event = list.remove();
+                }
+            }
+        }
+        return event;
+    }
+
+    @Override
+    public long getNextEventTime() {
+        synchronized (lock) {
+            return mEventBuffer.isEmpty() ? Long.MAX_VALUE
+                    : mEventBuffer.firstKey();
+        }
+    }
+}
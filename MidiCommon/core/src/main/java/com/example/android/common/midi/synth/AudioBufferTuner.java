@@ -0,0 +1,138 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.example.android.common.midi.synth;
+
+/**
+ * Adjust the buffer size of an AudioSink to get the lowest latency that
+ * still meets a target glitch rate.
+ *
+ * The buffer starts at two writes, which is the smallest size that can be
+ * refilled while it is playing. Every underrun grows it by one write.
+ * If there have been no underruns for the time expected between glitches
+ * at the target rate, and every write in that time still had to wait for
+ * room, then the producer has slack and the buffer shrinks by one write.
+ */
+public class AudioBufferTuner {
+    public static final double DEFAULT_GLITCHES_PER_HOUR = 60.0;
+    private static final long NANOS_PER_HOUR = 3600L * 1000000000L;
+    // A write must wait at least this fraction of a write for slack.
+    private static final int SLACK_DIVISOR = 4;
+
+    private final AudioSink mSink;
+    private long mQuietNanos;
+    private int mFrameRate;
+    private int mStepFrames; // zero until the first write
+    private long mStepNanos;
+    private int mLastUnderrunCount;
+    private long mQuietStartTime;
+    private long mMinBlockingNanos;
+    private volatile int mBufferSizeInFrames;
+    private volatile int mGrowCount;
+    private volatile int mShrinkCount;
+
+    public AudioBufferTuner(AudioSink sink) {
+        mSink = sink;
+        setTargetGlitchRate(DEFAULT_GLITCHES_PER_HOUR);
+    }
+
+    /**
+     * @param glitchesPerHour tolerated underruns per hour
+     */
+    public void setTargetGlitchRate(double glitchesPerHour) {
+        if (glitchesPerHour <= 0.0) {
+            throw new IllegalArgumentException("glitchesPerHour = "
+                    + glitchesPerHour);
+        }
+        mQuietNanos = (long) (NANOS_PER_HOUR / glitchesPerHour);
+    }
+
+    /**
+     * Call after the sink is started.
+     */
+    public void reset(int frameRate) {
+        mFrameRate = frameRate;
+        mStepFrames = 0;
+        mBufferSizeInFrames = mSink.getBufferSizeInFrames();
+    }
+
+    /**
+     * Call after each write.
+     *
+     * @param frames number of frames that were written
+     * @param blockingNanos time that the write took
+     * @param now time from the sink clock
+     */
+    public void onWrite(int frames, long blockingNanos, long now) {
+        if (mStepFrames == 0) {
+            mStepFrames = frames;
+            mStepNanos = frames * 1000000000L / mFrameRate;
+            mLastUnderrunCount = mSink.getUnderrunCount();
+            setBufferSize(2 * frames);
+            startQuietPeriod(now);
+            return;
+        }
+        int underrunCount = mSink.getUnderrunCount();
+        if (underrunCount != mLastUnderrunCount) {
+            mLastUnderrunCount = underrunCount;
+            if (setBufferSize(mBufferSizeInFrames + mStepFrames)) {
+                mGrowCount++;
+            }
+            startQuietPeriod(now);
+            return;
+        }
+        mMinBlockingNanos = Math.min(mMinBlockingNanos, blockingNanos);
+        if (now - mQuietStartTime >= mQuietNanos) {
+            if (mMinBlockingNanos >= mStepNanos / SLACK_DIVISOR
+                    && mBufferSizeInFrames > 2 * mStepFrames
+                    && setBufferSize(mBufferSizeInFrames - mStepFrames)) {
+                mShrinkCount++;
+            }
+            startQuietPeriod(now);
+        }
+    }
+
+    private void startQuietPeriod(long now) {
+        mQuietStartTime = now;
+        mMinBlockingNanos = Long.MAX_VALUE;
+    }
+
+    // Returns true if the size changed.
+    private boolean setBufferSize(int frames) {
+        int oldSize = mBufferSizeInFrames;
+        mBufferSizeInFrames = mSink.setBufferSizeInFrames(frames);
+        return mBufferSizeInFrames != oldSize;
+    }
+
+    public int getBufferSizeInFrames() {
+        return mBufferSizeInFrames;
+    }
+
+    /**
+     * @return number of times the buffer was made larger
+     */
+    public int getGrowCount() {
+        return mGrowCount;
+    }
+
+    /**
+     * @return number of times the buffer was made smaller
+     */
+    public int getShrinkCount() {
+        return mShrinkCount;
+    }
+}
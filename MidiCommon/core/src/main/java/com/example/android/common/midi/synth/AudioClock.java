@@ -0,0 +1,201 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.common.midi.synth;
+
+/**
+ * Model of when audio frames are presented, fitted to timestamps sampled
+ * from the audio output.
+ *
+ * A least squares line from frame position to System.nanoTime() is fitted
+ * over a window of recent samples. Its slope follows the drift between the
+ * audio clock and the system clock, within MAX_DRIFT_PPM of the nominal
+ * frame rate. A sample far from the line is ignored unless several arrive
+ * in a row, which means the output clock jumped, so the model restarts.
+ *
+ * All times are passed in, so the model can be driven by a fake clock.
+ */
+public class AudioClock {
+    public static final int DEFAULT_WINDOW_SIZE = 32;
+    public static final long MAX_DRIFT_PPM = 2000;
+    private static final long NANOS_PER_SECOND = 1000000000L;
+    private static final int MIN_SAMPLES = 2;
+    private static final long OUTLIER_NANOS = 2 * 1000000L;
+    private static final int MAX_OUTLIERS = 3;
+
+    private final double mNominalNanosPerFrame;
+    private final long[] mFrames;
+    private final long[] mTimes;
+    private int mCount;
+    private int mNext;
+    private int mOutliers;
+    private long mLastFrame = -1;
+
+    // The fitted line: time = mBaseTime + (frame - mBaseFrame) * mNanosPerFrame
+    private long mBaseFrame;
+    private long mBaseTime;
+    private double mNanosPerFrame;
+    private boolean mValid;
+
+    public AudioClock(int frameRate) {
+        this(frameRate, DEFAULT_WINDOW_SIZE);
+    }
+
+    /**
+     * @param frameRate nominal frames per second
+     * @param windowSize number of recent samples used for the fit
+     */
+    public AudioClock(int frameRate, int windowSize) {
+        if (frameRate <= 0 || windowSize < MIN_SAMPLES) {
+            throw new IllegalArgumentException("frameRate = " + frameRate
+                    + ", windowSize = " + windowSize);
+        }
+        mNominalNanosPerFrame = (double) NANOS_PER_SECOND / frameRate;
+        mNanosPerFrame = mNominalNanosPerFrame;
+        mFrames = new long[windowSize];
+        mTimes = new long[windowSize];
+    }
+
+    /**
+     * Forget all samples, for example after the output restarts.
+     */
+    public void reset() {
+        mCount = 0;
+        mNext = 0;
+        mOutliers = 0;
+        mLastFrame = -1;
+        mNanosPerFrame = mNominalNanosPerFrame;
+        mValid = false;
+    }
+
+    /**
+     * Add a measurement that the frame was presented at the time.
+     * Samples that do not advance the frame position are ignored.
+     *
+     * @param framePosition frames since the output started
+     * @param nanoTime presentation time in the System.nanoTime() base
+     * @return true if the sample was used
+     */
+    public boolean addTimestamp(long framePosition, long nanoTime) {
+        if (framePosition <= mLastFrame) {
+            return false; // not playing yet, or stalled
+        }
+        if (mValid && mCount >= MIN_SAMPLES) {
+            long error = nanoTime - framesToNanos(framePosition);
+            if (Math.abs(error) > OUTLIER_NANOS) {
+                if (++mOutliers < MAX_OUTLIERS) {
+                    return false;
+                }
+                reset(); // The clock jumped so start again.
+            }
+        }
+        mOutliers = 0;
+        mLastFrame = framePosition;
+        mFrames[mNext] = framePosition;
+        mTimes[mNext] = nanoTime;
+        mNext = (mNext + 1) % mFrames.length;
+        if (mCount < mFrames.length) {
+            mCount++;
+        }
+        fit();
+        return true;
+    }
+
+    private void fit() {
+        // Use offsets from the newest sample to keep the doubles precise.
+        int newest = (mNext + mFrames.length - 1) % mFrames.length;
+        long baseFrame = mFrames[newest];
+        long baseTime = mTimes[newest];
+        if (mCount < MIN_SAMPLES) {
+            mBaseFrame = baseFrame;
+            mBaseTime = baseTime;
+            mValid = true;
+            return;
+        }
+        double sumX = 0.0;
+        double sumY = 0.0;
+        for (int i = 0; i < mCount; i++) {
+            sumX += mFrames[i] - baseFrame;
+            sumY += mTimes[i] - baseTime;
+        }
+        double meanX = sumX / mCount;
+        double meanY = sumY / mCount;
+        double covariance = 0.0;
+        double variance = 0.0;
+        for (int i = 0; i < mCount; i++) {
+            double dx = (mFrames[i] - baseFrame) - meanX;
+            double dy = (mTimes[i] - baseTime) - meanY;
+            covariance += dx * dy;
+            variance += dx * dx;
+        }
+        double slope = (variance > 0.0) ? (covariance / variance)
+                : mNominalNanosPerFrame;
+        double maxError = mNominalNanosPerFrame * MAX_DRIFT_PPM / 1000000.0;
+        slope = Math.max(mNominalNanosPerFrame - maxError,
+                Math.min(mNominalNanosPerFrame + maxError, slope));
+        // The line passes through the mean of the samples.
+        mNanosPerFrame = slope;
+        mBaseFrame = baseFrame;
+        mBaseTime = baseTime + (long) (meanY - slope * meanX);
+        mValid = true;
+    }
+
+    /**
+     * @return true once there is at least one sample
+     */
+    public boolean isValid() {
+        return mValid;
+    }
+
+    /**
+     * @param framePosition
+     * @return predicted presentation time of the frame in nanoseconds
+     */
+    public long framesToNanos(long framePosition) {
+        return mBaseTime + (long) ((framePosition - mBaseFrame) * mNanosPerFrame);
+    }
+
+    /**
+     * @param nanoTime
+     * @return frame position that will be presented at the time
+     */
+    public long nanosToFrames(long nanoTime) {
+        return mBaseFrame + (long) Math.floor((nanoTime - mBaseTime)
+                / mNanosPerFrame);
+    }
+
+    /**
+     * @return measured frames per second in the System.nanoTime() base
+     */
+    public double getFrameRate() {
+        return NANOS_PER_SECOND / mNanosPerFrame;
+    }
+
+    /**
+     * @return how much faster the audio clock runs than nominal,
+     *     in parts per million
+     */
+    public double getDriftPpm() {
+        return (mNominalNanosPerFrame / mNanosPerFrame - 1.0) * 1000000.0;
+    }
+
+    /**
+     * @return number of samples in the fit
+     */
+    public int getSampleCount() {
+        return mCount;
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.example.android.common.midi.synth;
+
+/**
+ * Processor that modifies a block of interleaved audio in place.
+ * All state is allocated when the effect is created, so process() does not
+ * allocate. Parameters may be set from another thread. Each effect keeps
+ * the time its last block took, as measured by the EffectsChain.
+ */
+public abstract class AudioEffect {
+    public static final int MAX_CHANNELS = 2;
+    // Weight of the newest block in the average processing time.
+    private static final int AVERAGE_SHIFT = 5;
+
+    private final int mFrameRate;
+    private volatile boolean mEnabled = true;
+    private volatile long mLastNanos;
+    private volatile long mAverageNanos;
+    private volatile long mMaxNanos;
+
+    public AudioEffect() {
+        this(SynthUnit.FRAME_RATE);
+    }
+
+    public AudioEffect(int frameRate) {
+        mFrameRate = frameRate;
+    }
+
+    /**
+     * Process frames in place. Channels beyond MAX_CHANNELS are not changed.
+     *
+     * @param buffer interleaved samples
+     * @param offset index of the first frame
+     * @param numFrames
+     * @param samplesPerFrame
+     */
+    public abstract void process(float[] buffer, int offset, int numFrames,
+            int samplesPerFrame);
+
+    /**
+     * Clear any stored audio, such as delay lines.
+     * Only call this when process() is not running.
+     */
+    public abstract void reset();
+
+    public int getFrameRate() {
+        return mFrameRate;
+    }
+
+    public void setEnabled(boolean enabled) {
+        mEnabled = enabled;
+    }
+
+    public boolean isEnabled() {
+        return mEnabled;
+    }
+
+    void recordProcessTime(long nanos) {
+        mLastNanos = nanos;
+        mAverageNanos += (nanos - mAverageNanos) >> AVERAGE_SHIFT;
+        if (nanos > mMaxNanos) {
+            mMaxNanos = nanos;
+        }
+    }
+
+    /**
+     * @return time taken to process the last block
+     */
+    public long getLastProcessNanos() {
+        return mLastNanos;
+    }
+
+    /**
+     * @return time per block averaged over about the last 32 blocks
+     */
+    public long getAverageProcessNanos() {
+        return mAverageNanos;
+    }
+
+    public long getMaxProcessNanos() {
+        return mMaxNanos;
+    }
+
+    public void resetProcessTimes() {
+        mMaxNanos = 0;
+        mAverageNanos = 0;
+    }
+}
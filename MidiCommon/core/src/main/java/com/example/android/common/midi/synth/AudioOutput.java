@@ -0,0 +1,72 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.common.midi.synth;
+
+/**
+ * Destination for the stereo float audio rendered by a SynthEngine.
+ * SimpleAudioOutput plays it through an AudioTrack. WavFileAudioOutput
+ * writes it to a file and does not need Android.
+ */
+public abstract class AudioOutput {
+    public static final int SAMPLES_PER_FRAME = 2;
+
+    /**
+     * Prepare to receive audio.
+     *
+     * @param frameRate
+     */
+    public abstract void start(int frameRate);
+
+    /**
+     * @param buffer interleaved stereo samples
+     * @param offset
+     * @param length number of samples
+     * @return number of samples written or negative if the output failed
+     */
+    public abstract int write(float[] buffer, int offset, int length);
+
+    public abstract void stop();
+
+    public abstract int getFrameRate();
+
+    /**
+     * Get the frame position that was most recently presented and when.
+     * Frame positions count from start(). Outputs that are not played in
+     * real time do not have timestamps.
+     *
+     * @param timestamp filled in with the frame position and System.nanoTime()
+     * @return true if a timestamp was available
+     */
+    public boolean getTimestamp(AudioFrameTimestamp timestamp) {
+        return false;
+    }
+
+    /**
+     * @return frames the output can hold before write() blocks, or zero
+     *     if it does not block
+     */
+    public int getBufferSizeInFrames() {
+        return 0;
+    }
+
+    /**
+     * @return number of times the output ran out of data since start()
+     */
+    public int getUnderrunCount() {
+        return 0;
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.example.android.common.midi.synth;
+
+/**
+ * Destination for the stereo float audio written by SimpleAudioOutput.
+ * An implementation may play the audio or simulate a device.
+ */
+public interface AudioSink {
+    /**
+     * Open the sink and start it.
+     *
+     * @param frameRate
+     * @param adjustable true if the buffer size will be adjusted with
+     *     setBufferSizeInFrames(), so capacity is needed to grow into
+     */
+    void start(int frameRate, boolean adjustable);
+
+    /**
+     * Write interleaved stereo samples, blocking until they all fit.
+     *
+     * @return number of samples written or a negative error code
+     */
+    int write(float[] buffer, int offset, int length);
+
+    void stop();
+
+    /**
+     * @return number of times the sink ran out of data since start()
+     */
+    int getUnderrunCount();
+
+    int getBufferSizeInFrames();
+
+    int getBufferCapacityInFrames();
+
+    /**
+     * @param frames requested size, which may be clipped by the sink
+     * @return actual size in frames
+     */
+    int setBufferSizeInFrames(int frames);
+
+    /**
+     * @param timestamp filled in with the frame position and time
+     * @return true if a timestamp was available
+     */
+    boolean getTimestamp(AudioFrameTimestamp timestamp);
+
+    /**
+     * @return time that the last write() was blocked
+     */
+    long getWriteNanos();
+
+    /**
+     * @return System.nanoTime() or a simulated time
+     */
+    long nanoTime();
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.example.android.common.midi.synth;
+
+/**
+ * Second order IIR filter using the formulas from the Audio EQ Cookbook
+ * by Robert Bristow-Johnson. Each channel is filtered separately.
+ */
+public class BiquadFilter extends AudioEffect {
+    public static final int LOWPASS = 0;
+    public static final int HIGHPASS = 1;
+    public static final int BANDPASS = 2;
+    public static final int PEAK = 3;
+
+    // b0, b1, b2, a1, a2, normalized so a0 is 1.
+    // Replaced as a whole so process() never sees a half updated set.
+    private volatile float[] mCoefficients = { 1.0f, 0.0f, 0.0f, 0.0f, 0.0f };
+    private final float[] mX1 = new float[MAX_CHANNELS];
+    private final float[] mX2 = new float[MAX_CHANNELS];
+    private final float[] mY1 = new float[MAX_CHANNELS];
+    private final float[] mY2 = new float[MAX_CHANNELS];
+
+    public BiquadFilter() {
+        super();
+    }
+
+    public BiquadFilter(int frameRate) {
+        super(frameRate);
+    }
+
+    /**
+     * @param type LOWPASS, HIGHPASS, BANDPASS or PEAK
+     * @param frequency center or corner frequency in Hz
+     * @param q resonance, 0.707 for a flat pass band
+     * @param gainDb boost or cut for PEAK, ignored otherwise
+     */
+    public void setFilter(int type, float frequency, float q, float gainDb) {
+        double w0 = 2.0 * Math.PI
+                * Math.min(frequency, getFrameRate() * 0.49) / getFrameRate();
+        double cosW0 = Math.cos(w0);
+        double alpha = Math.sin(w0) / (2.0 * Math.max(q, 0.01));
+        double b0;
+        double b1;
+        double b2;
+        double a0;
+        double a1 = -2.0 * cosW0;
+        double a2;
+        switch (type) {
+            case LOWPASS:
+                b1 = 1.0 - cosW0;
+                b0 = b1 * 0.5;
+                b2 = b0;
+                a0 = 1.0 + alpha;
+                a2 = 1.0 - alpha;
+                break;
+            case HIGHPASS:
+                b1 = -(1.0 + cosW0);
+                b0 = -b1 * 0.5;
+                b2 = b0;
+                a0 = 1.0 + alpha;
+                a2 = 1.0 - alpha;
+                break;
+            case BANDPASS:
+                b0 = alpha;
+                b1 = 0.0;
+                b2 = -alpha;
+                a0 = 1.0 + alpha;
+                a2 = 1.0 - alpha;
+                break;
+            case PEAK:
+                double gain = Math.pow(10.0, gainDb / 40.0);
+                b0 = 1.0 + alpha * gain;
+                b1 = a1;
+                b2 = 1.0 - alpha * gain;
+                a0 = 1.0 + alpha / gain;
+                a2 = 1.0 - alpha / gain;
+                break;
+            default:
+                throw new IllegalArgumentException("type = " + type);
+        }
+        mCoefficients = new float[] {
+                (float) (b0 / a0), (float) (b1 / a0), (float) (b2 / a0),
+                (float) (a1 / a0), (float) (a2 / a0)
+        };
+    }
+
+    @Override
+    public void process(float[] buffer, int offset, int numFrames,
+            int samplesPerFrame) {
+        float[] c = mCoefficients;
+        float b0 = c[0];
+        float b1 = c[1];
+        float b2 = c[2];
+        float a1 = c[3];
+        float a2 = c[4];
+        int channels = Math.min(samplesPerFrame, MAX_CHANNELS);
+        for (int channel = 0; channel < channels; channel++) {
+            float x1 = mX1[channel];
+            float x2 = mX2[channel];
+            float y1 = mY1[channel];
+            float y2 = mY2[channel];
+            int end = (offset + numFrames) * samplesPerFrame;
+            for (int i = offset * samplesPerFrame + channel; i < end;
+                    i += samplesPerFrame) {
+                float x = buffer[i];
+                float y = b0 * x + b1 * x1 + b2 * x2 - a1 * y1 - a2 * y2;
+                x2 = x1;
+                x1 = x;
+                y2 = y1;
+                y1 = y;
+                buffer[i] = y;
+            }
+            // Flush values too small to hear so they cannot become denormal.
+            mX1[channel] = x1;
+            mX2[channel] = x2;
+            mY1[channel] = (Math.abs(y1) < 1.0e-20f) ? 0.0f : y1;
+            mY2[channel] = (Math.abs(y2) < 1.0e-20f) ? 0.0f : y2;
+        }
+    }
+
+    @Override
+    public void reset() {
+        for (int channel = 0; channel < MAX_CHANNELS; channel++) {
+            mX1[channel] = 0.0f;
+            mX2[channel] = 0.0f;
+            mY1[channel] = 0.0f;
+            mY2[channel] = 0.0f;
+        }
+    }
+}
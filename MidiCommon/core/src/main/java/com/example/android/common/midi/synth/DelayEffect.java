@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.example.android.common.midi.synth;
+
+/**
+ * Feedback delay, or echo, with a separate delay line for each channel.
+ */
+public class DelayEffect extends AudioEffect {
+    private final float[] mDelayLine; // interleaved frames
+    private final int mMaxFrames;
+    private int mWriteFrame;
+    private volatile int mDelayFrames;
+    private volatile float mFeedback = 0.4f;
+    private volatile float mMix = 0.3f;
+
+    /**
+     * @param maxDelaySeconds longest delay that can be set
+     */
+    public DelayEffect(float maxDelaySeconds) {
+        this(SynthUnit.FRAME_RATE, maxDelaySeconds);
+    }
+
+    public DelayEffect(int frameRate, float maxDelaySeconds) {
+        super(frameRate);
+        mMaxFrames = Math.max(1, (int) (maxDelaySeconds * frameRate));
+        mDelayLine = new float[mMaxFrames * MAX_CHANNELS];
+        mDelayFrames = mMaxFrames;
+    }
+
+    /**
+     * @param seconds clipped to the maximum delay
+     */
+    public void setDelayTime(float seconds) {
+        int frames = (int) (seconds * getFrameRate());
+        mDelayFrames = Math.max(1, Math.min(mMaxFrames, frames));
+    }
+
+    /**
+     * @param feedback fraction of the output fed back, below 1.0
+     */
+    public void setFeedback(float feedback) {
+        mFeedback = Math.max(-0.99f, Math.min(0.99f, feedback));
+    }
+
+    /**
+     * @param mix 0.0 for only the input to 1.0 for only the echoes
+     */
+    public void setMix(float mix) {
+        mMix = mix;
+    }
+
+    @Override
+    public void process(float[] buffer, int offset, int numFrames,
+            int samplesPerFrame) {
+        float[] line = mDelayLine;
+        int delayFrames = mDelayFrames;
+        float feedback = mFeedback;
+        float wet = mMix;
+        float dry = 1.0f - wet;
+        int channels = Math.min(samplesPerFrame, MAX_CHANNELS);
+        int writeFrame = mWriteFrame;
+        for (int frame = offset; frame < offset + numFrames; frame++) {
+            int readFrame = writeFrame - delayFrames;
+            if (readFrame < 0) {
+                readFrame += mMaxFrames;
+            }
+            int base = frame * samplesPerFrame;
+            for (int channel = 0; channel < channels; channel++) {
+                float input = buffer[base + channel];
+                float delayed = line[readFrame * MAX_CHANNELS + channel];
+                line[writeFrame * MAX_CHANNELS + channel] =
+                        input + delayed * feedback;
+                buffer[base + channel] = input * dry + delayed * wet;
+            }
+            if (++writeFrame == mMaxFrames) {
+                writeFrame = 0;
+            }
+        }
+        mWriteFrame = writeFrame;
+    }
+
+    @Override
+    public void reset() {
+        for (int i = 0; i < mDelayLine.length; i++) {
+            mDelayLine[i] = 0.0f;
+        }
+        mWriteFrame = 0;
+    }
+}
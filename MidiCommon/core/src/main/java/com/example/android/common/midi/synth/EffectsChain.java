@@ -0,0 +1,123 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.example.android.common.midi.synth;
+
+/**
+ * Effects applied in order to the mixed output, followed by a SoftLimiter.
+ * Effects can be added and removed from any thread while audio is running.
+ * The list is copied when it changes so process() never allocates or locks.
+ */
+public class EffectsChain {
+    private static final AudioEffect[] NO_EFFECTS = new AudioEffect[0];
+
+    private final Object mLock = new Object();
+    private volatile AudioEffect[] mEffects = NO_EFFECTS;
+    private final SoftLimiter mLimiter = new SoftLimiter();
+    private volatile long mLastNanos;
+
+    /**
+     * Add an effect to the end of the chain, before the limiter.
+     *
+     * @param effect
+     */
+    public void add(AudioEffect effect) {
+        synchronized (mLock) {
+            AudioEffect[] effects = new AudioEffect[mEffects.length + 1];
+            System.arraycopy(mEffects, 0, effects, 0, mEffects.length);
+            effects[mEffects.length] = effect;
+            mEffects = effects;
+        }
+    }
+
+    /**
+     * @param effect
+     * @return true if the effect was in the chain
+     */
+    public boolean remove(AudioEffect effect) {
+        synchronized (mLock) {
+            AudioEffect[] old = mEffects;
+            for (int i = 0; i < old.length; i++) {
+                if (old[i] == effect) {
+                    AudioEffect[] effects = new AudioEffect[old.length - 1];
+                    System.arraycopy(old, 0, effects, 0, i);
+                    System.arraycopy(old, i + 1, effects, i,
+                            old.length - i - 1);
+                    mEffects = effects;
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    public void clear() {
+        synchronized (mLock) {
+            mEffects = NO_EFFECTS;
+        }
+    }
+
+    /**
+     * @return the effects before the limiter, which must not be modified
+     */
+    public AudioEffect[] getEffects() {
+        return mEffects;
+    }
+
+    /**
+     * The limiter is always last. Disable it to let the output clip.
+     */
+    public SoftLimiter getLimiter() {
+        return mLimiter;
+    }
+
+    /**
+     * Run every enabled effect on the block and time each one.
+     */
+    public void process(float[] buffer, int offset, int numFrames,
+            int samplesPerFrame) {
+        long chainStart = System.nanoTime();
+        long startTime = chainStart;
+        AudioEffect[] effects = mEffects;
+        for (int i = 0; i < effects.length; i++) {
+            startTime = processEffect(effects[i], buffer, offset, numFrames,
+                    samplesPerFrame, startTime);
+        }
+        long endTime = processEffect(mLimiter, buffer, offset, numFrames,
+                samplesPerFrame, startTime);
+        mLastNanos = endTime - chainStart;
+    }
+
+    // Returns the time when the effect finished.
+    private static long processEffect(AudioEffect effect, float[] buffer,
+            int offset, int numFrames, int samplesPerFrame, long startTime) {
+        if (!effect.isEnabled()) {
+            return startTime;
+        }
+        effect.process(buffer, offset, numFrames, samplesPerFrame);
+        long endTime = System.nanoTime();
+        effect.recordProcessTime(endTime - startTime);
+        return endTime;
+    }
+
+    /**
+     * @return time taken by the whole chain for the last block
+     */
+    public long getLastProcessNanos() {
+        return mLastNanos;
+    }
+}
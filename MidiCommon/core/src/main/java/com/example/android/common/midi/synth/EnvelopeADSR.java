@@ -47,13 +47,13 @@ public class EnvelopeADSR extends SynthUnit {
     public void setAttackTime(float time) {
         if (time < MIN_TIME)
             time = MIN_TIME;
-        mAttackRate = 1.0f / (SynthEngine.FRAME_RATE * time);
+        mAttackRate = 1.0f / (SynthUnit.FRAME_RATE * time);
     }
 
     public void setDecayTime(float time) {
         if (time < MIN_TIME)
             time = MIN_TIME;
-        mDecayRate = 1.0f / (SynthEngine.FRAME_RATE * time);
+        mDecayRate = 1.0f / (SynthUnit.FRAME_RATE * time);
     }
 
     public void setSustainLevel(float level) {
@@ -65,7 +65,7 @@ public class EnvelopeADSR extends SynthUnit {
     public void setReleaseTime(float time) {
         if (time < MIN_TIME)
             time = MIN_TIME;
-        mRreleaseRate = 1.0f / (SynthEngine.FRAME_RATE * time);
+        mRreleaseRate = 1.0f / (SynthUnit.FRAME_RATE * time);
     }
 
     public void on() {
@@ -104,8 +104,66 @@ public class EnvelopeADSR extends SynthUnit {
         return mCurrent;
     }
 
+    @Override
+    public void renderBlock(float[] output, int offset, int numFrames) {
+        int end = offset + numFrames;
+        int i = offset;
+        float current = mCurrent;
+        while (i < end) {
+            switch (mSstate) {
+            case ATTACK:
+                while (i < end) {
+                    current += mAttackRate;
+                    if (current > 1.0f) {
+                        current = 1.0f;
+                        mSstate = DECAY;
+                        output[i++] = current;
+                        break;
+                    }
+                    output[i++] = current;
+                }
+                break;
+            case DECAY:
+                while (i < end) {
+                    current -= mDecayRate;
+                    if (current < mSustainLevel) {
+                        current = mSustainLevel;
+                        mSstate = SUSTAIN;
+                        output[i++] = current;
+                        break;
+                    }
+                    output[i++] = current;
+                }
+                break;
+            case RELEASE:
+                while (i < end) {
+                    current -= mRreleaseRate;
+                    if (current < 0.0f) {
+                        current = 0.0f;
+                        mSstate = FINISHED;
+                        output[i++] = current;
+                        break;
+                    }
+                    output[i++] = current;
+                }
+                break;
+            default:
+                // The level does not change.
+                while (i < end) {
+                    output[i++] = current;
+                }
+                break;
+            }
+        }
+        mCurrent = current;
+    }
+
     public boolean isDone() {
         return mSstate == FINISHED;
     }
 
+    public float getLevel() {
+        return mCurrent;
+    }
+
 }
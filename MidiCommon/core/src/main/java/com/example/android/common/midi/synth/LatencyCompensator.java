@@ -0,0 +1,123 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.common.midi.synth;
+
+import java.util.Arrays;
+
+/**
+ * Chooses the constant delay added to MIDI timestamps so that events are
+ * heard a fixed time after they were sent.
+ *
+ * The delay is a high percentile of the recent output latency plus a
+ * margin. It rises as soon as the percentile does but only falls a little
+ * at each update, so a short run of low latency does not make the timing
+ * jump. A single late measurement only counts until it leaves the window.
+ * Call reset() when the output buffer size changes so the delay follows
+ * the new size straight away.
+ *
+ * Does not allocate after it is constructed.
+ */
+public class LatencyCompensator {
+    public static final int DEFAULT_WINDOW_SIZE = 256;
+    public static final double PERCENTILE = 0.95;
+    // Number of measurements between updates of the delay.
+    public static final int UPDATE_INTERVAL = 16;
+    // Each update removes 1/8 of the excess when the latency has fallen.
+    private static final int DECAY_SHIFT = 3;
+
+    private final long mMarginNanos;
+    private final long[] mLatencies;
+    private final long[] mSorted;
+    private int mCount;
+    private int mNext;
+    private int mSinceUpdate;
+    private long mCompensation;
+
+    public LatencyCompensator(long marginNanos) {
+        this(marginNanos, DEFAULT_WINDOW_SIZE);
+    }
+
+    /**
+     * @param marginNanos added to the latency, for example one buffer
+     * @param windowSize number of recent measurements used
+     */
+    public LatencyCompensator(long marginNanos, int windowSize) {
+        if (windowSize < 1) {
+            throw new IllegalArgumentException("windowSize = " + windowSize);
+        }
+        mMarginNanos = marginNanos;
+        mLatencies = new long[windowSize];
+        mSorted = new long[windowSize];
+    }
+
+    /**
+     * Forget all measurements.
+     */
+    public void reset() {
+        mCount = 0;
+        mNext = 0;
+        mSinceUpdate = 0;
+        mCompensation = 0;
+    }
+
+    /**
+     * @param latencyNanos time from now until the next frame written is heard
+     * @return delay to add to event timestamps
+     */
+    public long update(long latencyNanos) {
+        mLatencies[mNext] = latencyNanos;
+        mNext = (mNext + 1) % mLatencies.length;
+        if (mCount < mLatencies.length) {
+            mCount++;
+        }
+        if (mCount == 1) {
+            // Nothing to compare with yet.
+            mSinceUpdate = 0;
+            mCompensation = latencyNanos + mMarginNanos;
+        } else if (++mSinceUpdate >= UPDATE_INTERVAL) {
+            mSinceUpdate = 0;
+            long target = getLatencyPercentile() + mMarginNanos;
+            if (target > mCompensation) {
+                mCompensation = target;
+            } else {
+                long excess = mCompensation - target;
+                mCompensation -= (excess + (1 << DECAY_SHIFT) - 1) >> DECAY_SHIFT;
+            }
+        }
+        return mCompensation;
+    }
+
+    /**
+     * @return PERCENTILE of the measurements in the window, or zero if none
+     */
+    public long getLatencyPercentile() {
+        if (mCount == 0) {
+            return 0;
+        }
+        System.arraycopy(mLatencies, 0, mSorted, 0, mCount);
+        Arrays.sort(mSorted, 0, mCount);
+        int index = (int) Math.ceil(PERCENTILE * mCount) - 1;
+        return mSorted[Math.max(0, index)];
+    }
+
+    /**
+     * @return delay to add to event timestamps, zero before the first update
+     */
+    public long getCompensationNanos() {
+        return mCompensation;
+    }
+}
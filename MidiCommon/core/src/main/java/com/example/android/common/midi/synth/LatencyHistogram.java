@@ -0,0 +1,157 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.example.android.common.midi.synth;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of durations in nanoseconds with a fixed relative precision,
+ * in the style of HdrHistogram.
+ *
+ * Values below 64 have their own bucket. Above that each power of two is
+ * split into 32 buckets, so a value is reported within about 3 percent.
+ * Values above MAX_VALUE are counted as MAX_VALUE.
+ *
+ * Only one thread may record. Every field is volatile so other threads can
+ * read the counts at any time without locking, although a reader may see
+ * a value recorded part way.
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int MAX_EXPONENT = 40;
+    public static final long MAX_VALUE = (1L << (MAX_EXPONENT + 1)) - 1;
+    static final int NUM_BUCKETS =
+            (MAX_EXPONENT - SUB_BUCKET_BITS + 2) << SUB_BUCKET_BITS;
+
+    private final AtomicLongArray mCounts = new AtomicLongArray(NUM_BUCKETS);
+    private volatile long mCount;
+    private volatile long mSum;
+    private volatile long mMax;
+
+    /**
+     * Count one value. Does not allocate or block.
+     * Only call this from the recording thread.
+     *
+     * @param nanos negative values are counted as zero
+     */
+    public void record(long nanos) {
+        long value = Math.max(0, Math.min(MAX_VALUE, nanos));
+        int index = getBucketIndex(value);
+        mCounts.set(index, mCounts.get(index) + 1);
+        mSum = mSum + value;
+        if (value > mMax) {
+            mMax = value;
+        }
+        mCount = mCount + 1;
+    }
+
+    /**
+     * Clear the counts. Only call this from the recording thread.
+     */
+    public void reset() {
+        for (int i = 0; i < NUM_BUCKETS; i++) {
+            mCounts.set(i, 0);
+        }
+        mCount = 0;
+        mSum = 0;
+        mMax = 0;
+    }
+
+    /**
+     * Replace the counts with a copy of another histogram.
+     * Only call this from the thread that owns this histogram.
+     */
+    public void copyFrom(LatencyHistogram other) {
+        for (int i = 0; i < NUM_BUCKETS; i++) {
+            mCounts.set(i, other.mCounts.get(i));
+        }
+        mCount = other.mCount;
+        mSum = other.mSum;
+        mMax = other.mMax;
+    }
+
+    static int getBucketIndex(long value) {
+        if (value < 2 * SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int shift = exponent - SUB_BUCKET_BITS;
+        return ((shift + 1) << SUB_BUCKET_BITS)
+                + (int) ((value >>> shift) - SUB_BUCKET_COUNT);
+    }
+
+    /**
+     * @return the largest value that falls in the bucket
+     */
+    static long getBucketUpperBound(int index) {
+        if (index < 2 * SUB_BUCKET_COUNT) {
+            return index;
+        }
+        int shift = (index >> SUB_BUCKET_BITS) - 1;
+        long lower = (long) (SUB_BUCKET_COUNT + (index & (SUB_BUCKET_COUNT - 1)))
+                << shift;
+        return lower + (1L << shift) - 1;
+    }
+
+    /**
+     * @return number of values recorded
+     */
+    public long getCount() {
+        return mCount;
+    }
+
+    /**
+     * @return largest value recorded or zero if none
+     */
+    public long getMax() {
+        return mMax;
+    }
+
+    /**
+     * @return mean of the values recorded or zero if none
+     */
+    public long getMean() {
+        long count = mCount;
+        return (count == 0) ? 0 : mSum / count;
+    }
+
+    /**
+     * @param fraction between 0.0 and 1.0, for example 0.99
+     * @return value that the fraction of the recorded values do not exceed,
+     *     rounded up to its bucket, or zero if none were recorded
+     */
+    public long getValueAtPercentile(double fraction) {
+        long total = 0;
+        for (int i = 0; i < NUM_BUCKETS; i++) {
+            total += mCounts.get(i);
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long target = Math.max(1, (long) Math.ceil(fraction * total));
+        long seen = 0;
+        for (int i = 0; i < NUM_BUCKETS; i++) {
+            seen += mCounts.get(i);
+            if (seen >= target) {
+                return Math.min(getBucketUpperBound(i), mMax);
+            }
+        }
+        return mMax;
+    }
+}
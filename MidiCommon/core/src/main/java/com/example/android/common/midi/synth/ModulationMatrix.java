@@ -0,0 +1,194 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.example.android.common.midi.synth;
+
+import java.util.Arrays;
+
+/**
+ * Routes MIDI controllers, channel pressure and polyphonic aftertouch to
+ * voice parameters. Each route adds the source value times a depth to a
+ * destination. All tables are allocated up front so updating a value on the
+ * synthesis thread does not allocate.
+ *
+ * Routes may be added from another thread. Values are only used by the
+ * synthesis thread. A source that has not been received yet does not
+ * modulate anything.
+ */
+public class ModulationMatrix {
+    /** Sources 0 to 127 are Control Change numbers. */
+    public static final int SOURCE_CHANNEL_PRESSURE = 128;
+    public static final int SOURCE_POLY_AFTERTOUCH = 129;
+    public static final int NUM_SOURCES = 130;
+
+    /** Gain is 1.0 plus the amount, never below zero. */
+    public static final int DEST_AMPLITUDE = 0;
+    /** Amount is in semitones. */
+    public static final int DEST_PITCH = 1;
+    /** Time is multiplied by two to the power of the amount. */
+    public static final int DEST_ATTACK_TIME = 2;
+    /** Time is multiplied by two to the power of the amount. */
+    public static final int DEST_RELEASE_TIME = 3;
+    public static final int NUM_DESTINATIONS = 4;
+
+    public static final int MAX_ROUTES = 32;
+    private static final int NUM_CHANNELS = VoicePool.NUM_CHANNELS;
+
+    private final Object mLock = new Object();
+    private final int[] mRouteSources = new int[MAX_ROUTES];
+    private final int[] mRouteDestinations = new int[MAX_ROUTES];
+    private final float[] mRouteDepths = new float[MAX_ROUTES];
+    private final boolean[] mRouteBipolar = new boolean[MAX_ROUTES];
+    private volatile int mRouteCount;
+    // Latest value of each source on each channel, or NaN if not received.
+    private final float[] mValues = new float[NUM_CHANNELS * NUM_SOURCES];
+
+    public ModulationMatrix() {
+        reset();
+    }
+
+    /**
+     * Aftertouch makes notes louder. The General MIDI sound controllers
+     * 72 and 73 change the release and attack times by up to two octaves
+     * either side of their center.
+     */
+    public static ModulationMatrix createDefault() {
+        ModulationMatrix matrix = new ModulationMatrix();
+        matrix.addRoute(SOURCE_CHANNEL_PRESSURE, DEST_AMPLITUDE, 0.5f, false);
+        matrix.addRoute(SOURCE_POLY_AFTERTOUCH, DEST_AMPLITUDE, 0.5f, false);
+        matrix.addRoute(72, DEST_RELEASE_TIME, 2.0f, true);
+        matrix.addRoute(73, DEST_ATTACK_TIME, 2.0f, true);
+        return matrix;
+    }
+
+    /**
+     * @param source Control Change number, SOURCE_CHANNEL_PRESSURE or
+     *     SOURCE_POLY_AFTERTOUCH
+     * @param destination one of the DEST_ constants
+     * @param depth amount added at the full source value
+     * @param bipolar if true the source goes from -1.0 to +1.0 with the
+     *     center at 64, otherwise from 0.0 to 1.0
+     * @return index of the route
+     */
+    public int addRoute(int source, int destination, float depth,
+            boolean bipolar) {
+        if (source < 0 || source >= NUM_SOURCES || destination < 0
+                || destination >= NUM_DESTINATIONS) {
+            throw new IllegalArgumentException("source = " + source
+                    + ", destination = " + destination);
+        }
+        synchronized (mLock) {
+            int index = mRouteCount;
+            if (index == MAX_ROUTES) {
+                throw new IllegalStateException("Too many routes");
+            }
+            mRouteSources[index] = source;
+            mRouteDestinations[index] = destination;
+            mRouteDepths[index] = depth;
+            mRouteBipolar[index] = bipolar;
+            mRouteCount = index + 1; // Publish the route.
+            return index;
+        }
+    }
+
+    public void clearRoutes() {
+        synchronized (mLock) {
+            mRouteCount = 0;
+        }
+    }
+
+    public int getRouteCount() {
+        return mRouteCount;
+    }
+
+    /**
+     * Forget every received value.
+     */
+    public void reset() {
+        Arrays.fill(mValues, Float.NaN);
+    }
+
+    /**
+     * @param channel
+     * @param source
+     * @param value MIDI data from 0 to 127
+     * @return true if any route uses the source
+     */
+    public boolean setValue(int channel, int source, int value) {
+        mValues[channel * NUM_SOURCES + source] = value;
+        int count = mRouteCount;
+        for (int i = 0; i < count; i++) {
+            if (mRouteSources[i] == source) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Sum the routes of every source that applies to the whole channel.
+     *
+     * @param channel
+     * @param destination
+     * @return total amount
+     */
+    public float getChannelAmount(int channel, int destination) {
+        float amount = 0.0f;
+        int base = channel * NUM_SOURCES;
+        int count = mRouteCount;
+        for (int i = 0; i < count; i++) {
+            int source = mRouteSources[i];
+            if (mRouteDestinations[i] == destination
+                    && source != SOURCE_POLY_AFTERTOUCH) {
+                float value = mValues[base + source];
+                if (value == value) { // not NaN
+                    amount += scale(i, value);
+                }
+            }
+        }
+        return amount;
+    }
+
+    /**
+     * Sum the polyphonic aftertouch routes for one note.
+     *
+     * @param destination
+     * @param pressure MIDI data from 0 to 127, or NaN if none was received
+     * @return total amount
+     */
+    public float getNoteAmount(int destination, float pressure) {
+        if (pressure != pressure) {
+            return 0.0f;
+        }
+        float amount = 0.0f;
+        int count = mRouteCount;
+        for (int i = 0; i < count; i++) {
+            if (mRouteDestinations[i] == destination
+                    && mRouteSources[i] == SOURCE_POLY_AFTERTOUCH) {
+                amount += scale(i, pressure);
+            }
+        }
+        return amount;
+    }
+
+    private float scale(int route, float value) {
+        float normalized = mRouteBipolar[route]
+                ? Math.max(-1.0f, (value - 64.0f) / 63.0f)
+                : value / 127.0f;
+        return normalized * mRouteDepths[route];
+    }
+}
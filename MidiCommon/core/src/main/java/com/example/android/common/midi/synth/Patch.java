@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.example.android.common.midi.synth;
+
+/**
+ * Immutable description of a sound: waveform, envelope and level.
+ * Voices are created from it but do not refer back to it.
+ */
+public class Patch {
+    public static final int WAVE_SAW = 0;
+    public static final int WAVE_SINE = 1;
+    public static final int WAVE_SQUARE = 2;
+    public static final int WAVE_TRIANGLE = 3;
+
+    private final String mName;
+    private final int mWaveform;
+    private final float mLevel;
+    private final float mAttackTime;
+    private final float mDecayTime;
+    private final float mSustainLevel;
+    private final float mReleaseTime;
+
+    /**
+     * @param name
+     * @param waveform WAVE_SAW, WAVE_SINE, WAVE_SQUARE or WAVE_TRIANGLE
+     * @param level gain applied to the velocity
+     * @param attackTime seconds
+     * @param decayTime seconds
+     * @param sustainLevel
+     * @param releaseTime seconds
+     */
+    public Patch(String name, int waveform, float level, float attackTime,
+            float decayTime, float sustainLevel, float releaseTime) {
+        if (waveform < WAVE_SAW || waveform > WAVE_TRIANGLE) {
+            throw new IllegalArgumentException("waveform = " + waveform);
+        }
+        mName = name;
+        mWaveform = waveform;
+        mLevel = level;
+        mAttackTime = attackTime;
+        mDecayTime = decayTime;
+        mSustainLevel = sustainLevel;
+        mReleaseTime = releaseTime;
+    }
+
+    /**
+     * Create a voice that plays this patch.
+     */
+    public SynthVoice createVoice() {
+        WavetableVoice voice = new WavetableVoice(getWavetable());
+        voice.setLevel(mLevel);
+        SegmentEnvelope envelope = voice.getEnvelope();
+        envelope.setAttackTime(mAttackTime);
+        envelope.setDecayTime(mDecayTime);
+        envelope.setSustainLevel(mSustainLevel);
+        envelope.setReleaseTime(mReleaseTime);
+        return voice;
+    }
+
+    private Wavetable getWavetable() {
+        switch (mWaveform) {
+            case WAVE_SINE:
+                return Wavetable.getSine();
+            case WAVE_SQUARE:
+                return Wavetable.getSquare();
+            case WAVE_TRIANGLE:
+                return Wavetable.getTriangle();
+            default:
+                return Wavetable.getSaw();
+        }
+    }
+
+    public String getName() {
+        return mName;
+    }
+
+    public int getWaveform() {
+        return mWaveform;
+    }
+
+    public float getLevel() {
+        return mLevel;
+    }
+
+    public float getAttackTime() {
+        return mAttackTime;
+    }
+
+    public float getDecayTime() {
+        return mDecayTime;
+    }
+
+    public float getSustainLevel() {
+        return mSustainLevel;
+    }
+
+    public float getReleaseTime() {
+        return mReleaseTime;
+    }
+}
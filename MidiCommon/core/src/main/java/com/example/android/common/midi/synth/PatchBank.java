@@ -0,0 +1,211 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.example.android.common.midi.synth;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+
+/**
+ * Immutable set of patches and the patch used by each of the 128 programs.
+ * Several programs can share a patch.
+ *
+ * The bank file is big-endian:
+ * <pre>
+ * "PBNK", int version, int patchCount,
+ * 128 bytes of patch index for each program,
+ * then for each patch: int waveform, float level, float attack,
+ * float decay, float sustain, float release,
+ * unsigned short name length, UTF-8 name
+ * </pre>
+ */
+public class PatchBank {
+    public static final int NUM_PROGRAMS = 128;
+    public static final int MAX_PATCHES = 128;
+    private static final int MAGIC = 0x50424E4B; // "PBNK"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 12;
+    private static final int PATCH_FIXED_SIZE = 26;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final Patch[] mPatches;
+    private final byte[] mProgramPatches;
+
+    /**
+     * @param patches at least one and at most MAX_PATCHES
+     * @param programPatches index into patches for each program
+     */
+    public PatchBank(Patch[] patches, byte[] programPatches) {
+        if (patches.length < 1 || patches.length > MAX_PATCHES
+                || programPatches.length != NUM_PROGRAMS) {
+            throw new IllegalArgumentException("patches = " + patches.length
+                    + ", programs = " + programPatches.length);
+        }
+        for (int program = 0; program < NUM_PROGRAMS; program++) {
+            if (programPatches[program] < 0
+                    || programPatches[program] >= patches.length) {
+                throw new IllegalArgumentException("program " + program
+                        + " uses patch " + programPatches[program]);
+            }
+        }
+        mPatches = patches.clone();
+        mProgramPatches = programPatches.clone();
+    }
+
+    /**
+     * Programs cycle through saw, sine, square and triangle waves.
+     */
+    public static PatchBank createDefault() {
+        Patch[] patches = {
+                new Patch("Saw", Patch.WAVE_SAW, 1.0f, 0.003f, 0.08f, 0.3f, 1.0f),
+                new Patch("Sine", Patch.WAVE_SINE, 1.0f, 0.003f, 0.08f, 0.3f, 1.0f),
+                new Patch("Square", Patch.WAVE_SQUARE, 1.0f, 0.003f, 0.08f, 0.3f, 1.0f),
+                new Patch("Triangle", Patch.WAVE_TRIANGLE, 1.0f, 0.003f, 0.08f, 0.3f, 1.0f)
+        };
+        byte[] programPatches = new byte[NUM_PROGRAMS];
+        for (int program = 0; program < NUM_PROGRAMS; program++) {
+            programPatches[program] = (byte) (program & 3);
+        }
+        return new PatchBank(patches, programPatches);
+    }
+
+    /**
+     * Read a bank file with a single memory-mapped read.
+     *
+     * @param file
+     * @return new bank
+     * @throws IOException if the file is not a valid bank
+     */
+    public static PatchBank load(File file) throws IOException {
+        ByteBuffer data;
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = randomAccessFile.getChannel();
+            // The mapping stays valid after the file is closed.
+            data = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                    channel.size());
+        } finally {
+            randomAccessFile.close();
+        }
+        if (data.limit() < HEADER_SIZE + NUM_PROGRAMS
+                || data.getInt() != MAGIC) {
+            throw new IOException("Not a patch bank");
+        }
+        int version = data.getInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported patch bank version " + version);
+        }
+        int count = data.getInt();
+        if (count < 1 || count > MAX_PATCHES) {
+            throw new IOException("Invalid patch count " + count);
+        }
+        byte[] programPatches = new byte[NUM_PROGRAMS];
+        data.get(programPatches);
+        Patch[] patches = new Patch[count];
+        for (int i = 0; i < count; i++) {
+            if (data.remaining() < PATCH_FIXED_SIZE) {
+                throw new IOException("Truncated patch " + i);
+            }
+            int waveform = data.getInt();
+            float level = data.getFloat();
+            float attack = data.getFloat();
+            float decay = data.getFloat();
+            float sustain = data.getFloat();
+            float release = data.getFloat();
+            int nameLength = data.getShort() & 0xFFFF;
+            if (data.remaining() < nameLength) {
+                throw new IOException("Truncated patch " + i);
+            }
+            byte[] name = new byte[nameLength];
+            data.get(name);
+            try {
+                patches[i] = new Patch(new String(name, UTF_8), waveform,
+                        level, attack, decay, sustain, release);
+            } catch (IllegalArgumentException e) {
+                throw new IOException("Invalid patch " + i, e);
+            }
+        }
+        try {
+            return new PatchBank(patches, programPatches);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Invalid program map", e);
+        }
+    }
+
+    /**
+     * Write the bank in the format read by load().
+     *
+     * @param file
+     * @throws IOException
+     */
+    public void save(File file) throws IOException {
+        int size = HEADER_SIZE + NUM_PROGRAMS;
+        byte[][] names = new byte[mPatches.length][];
+        for (int i = 0; i < mPatches.length; i++) {
+            names[i] = mPatches[i].getName().getBytes(UTF_8);
+            if (names[i].length > 0xFFFF) {
+                throw new IOException("Name too long in patch " + i);
+            }
+            size += PATCH_FIXED_SIZE + names[i].length;
+        }
+        ByteBuffer data = ByteBuffer.allocate(size);
+        data.putInt(MAGIC).putInt(VERSION).putInt(mPatches.length);
+        data.put(mProgramPatches);
+        for (int i = 0; i < mPatches.length; i++) {
+            Patch patch = mPatches[i];
+            data.putInt(patch.getWaveform());
+            data.putFloat(patch.getLevel());
+            data.putFloat(patch.getAttackTime());
+            data.putFloat(patch.getDecayTime());
+            data.putFloat(patch.getSustainLevel());
+            data.putFloat(patch.getReleaseTime());
+            data.putShort((short) names[i].length);
+            data.put(names[i]);
+        }
+        FileOutputStream stream = new FileOutputStream(file);
+        try {
+            stream.write(data.array());
+        } finally {
+            stream.close();
+        }
+    }
+
+    public int getPatchCount() {
+        return mPatches.length;
+    }
+
+    public Patch getPatch(int index) {
+        return mPatches[index];
+    }
+
+    /**
+     * @param program from 0 to 127
+     * @return index of the patch used by the program
+     */
+    public int getPatchIndex(int program) {
+        return mProgramPatches[program & 0x7F];
+    }
+
+    public Patch getProgramPatch(int program) {
+        return mPatches[getPatchIndex(program)];
+    }
+}
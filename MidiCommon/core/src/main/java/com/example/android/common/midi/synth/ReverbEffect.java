@@ -0,0 +1,155 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.example.android.common.midi.synth;
+
+import java.util.Arrays;
+
+/**
+ * Small Schroeder style reverb, based on the Freeverb design.
+ * The channels are mixed to mono, fed through four parallel damped comb
+ * filters and two series allpass filters for each output channel, then
+ * mixed back with the input. The right channel uses slightly longer delays
+ * so the two sides are not correlated.
+ */
+public class ReverbEffect extends AudioEffect {
+    // Delays in frames at 44100 Hz, from Freeverb.
+    private static final int[] COMB_TUNING = { 1116, 1188, 1277, 1356 };
+    private static final int[] ALLPASS_TUNING = { 556, 441 };
+    private static final int STEREO_SPREAD = 23;
+    private static final float ALLPASS_FEEDBACK = 0.5f;
+    private static final float INPUT_GAIN = 0.015f * 2.0f;
+
+    private final float[][] mCombs = new float[MAX_CHANNELS * COMB_TUNING.length][];
+    private final int[] mCombIndices = new int[mCombs.length];
+    private final float[] mCombFilterStates = new float[mCombs.length];
+    private final float[][] mAllpasses =
+            new float[MAX_CHANNELS * ALLPASS_TUNING.length][];
+    private final int[] mAllpassIndices = new int[mAllpasses.length];
+
+    private volatile float mFeedback;
+    private volatile float mDamping;
+    private volatile float mMix = 0.25f;
+
+    public ReverbEffect() {
+        this(SynthUnit.FRAME_RATE);
+    }
+
+    public ReverbEffect(int frameRate) {
+        super(frameRate);
+        double scale = frameRate / 44100.0;
+        for (int channel = 0; channel < MAX_CHANNELS; channel++) {
+            int spread = channel * STEREO_SPREAD;
+            for (int i = 0; i < COMB_TUNING.length; i++) {
+                mCombs[channel * COMB_TUNING.length + i] =
+                        new float[(int) ((COMB_TUNING[i] + spread) * scale)];
+            }
+            for (int i = 0; i < ALLPASS_TUNING.length; i++) {
+                mAllpasses[channel * ALLPASS_TUNING.length + i] =
+                        new float[(int) ((ALLPASS_TUNING[i] + spread) * scale)];
+            }
+        }
+        setRoomSize(0.5f);
+        setDamping(0.5f);
+    }
+
+    /**
+     * @param size 0.0 for a small room to 1.0 for a large hall
+     */
+    public void setRoomSize(float size) {
+        size = Math.max(0.0f, Math.min(1.0f, size));
+        mFeedback = 0.7f + size * 0.28f;
+    }
+
+    /**
+     * @param damping 0.0 for bright to 1.0 for dark
+     */
+    public void setDamping(float damping) {
+        mDamping = Math.max(0.0f, Math.min(1.0f, damping)) * 0.4f;
+    }
+
+    /**
+     * @param mix 0.0 for only the input to 1.0 for only the reverb
+     */
+    public void setMix(float mix) {
+        mMix = mix;
+    }
+
+    @Override
+    public void process(float[] buffer, int offset, int numFrames,
+            int samplesPerFrame) {
+        float feedback = mFeedback;
+        float damping = mDamping;
+        float undamped = 1.0f - damping;
+        float wet = mMix;
+        float dry = 1.0f - wet;
+        int channels = Math.min(samplesPerFrame, MAX_CHANNELS);
+        for (int frame = offset; frame < offset + numFrames; frame++) {
+            int base = frame * samplesPerFrame;
+            float input = 0.0f;
+            for (int channel = 0; channel < channels; channel++) {
+                input += buffer[base + channel];
+            }
+            input *= INPUT_GAIN;
+            for (int channel = 0; channel < channels; channel++) {
+                float output = 0.0f;
+                int comb = channel * COMB_TUNING.length;
+                for (int i = comb; i < comb + COMB_TUNING.length; i++) {
+                    float[] line = mCombs[i];
+                    int index = mCombIndices[i];
+                    float delayed = line[index];
+                    float filtered = delayed * undamped
+                            + mCombFilterStates[i] * damping;
+                    mCombFilterStates[i] = filtered;
+                    line[index] = input + filtered * feedback;
+                    mCombIndices[i] = (index + 1 == line.length) ? 0 : index + 1;
+                    output += delayed;
+                }
+                int allpass = channel * ALLPASS_TUNING.length;
+                for (int i = allpass; i < allpass + ALLPASS_TUNING.length; i++) {
+                    float[] line = mAllpasses[i];
+                    int index = mAllpassIndices[i];
+                    float delayed = line[index];
+                    line[index] = output + delayed * ALLPASS_FEEDBACK;
+                    output = delayed - output;
+                    mAllpassIndices[i] = (index + 1 == line.length) ? 0 : index + 1;
+                }
+                buffer[base + channel] = buffer[base + channel] * dry
+                        + output * wet;
+            }
+        }
+        // Keep the feedback paths from decaying into denormal numbers.
+        for (int i = 0; i < mCombFilterStates.length; i++) {
+            if (Math.abs(mCombFilterStates[i]) < 1.0e-20f) {
+                mCombFilterStates[i] = 0.0f;
+            }
+        }
+    }
+
+    @Override
+    public void reset() {
+        for (int i = 0; i < mCombs.length; i++) {
+            Arrays.fill(mCombs[i], 0.0f);
+            mCombFilterStates[i] = 0.0f;
+            mCombIndices[i] = 0;
+        }
+        for (int i = 0; i < mAllpasses.length; i++) {
+            Arrays.fill(mAllpasses[i], 0.0f);
+            mAllpassIndices[i] = 0;
+        }
+    }
+}
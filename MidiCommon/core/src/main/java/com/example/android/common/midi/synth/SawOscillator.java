@@ -22,6 +22,7 @@ public class SawOscillator extends SynthUnit {
     private float mFrequency = 0.0f;
     private float mFrequencyScaler = 1.0f;
     private float mAmplitude = 1.0f;
+    private int mFrameRate = SynthUnit.FRAME_RATE;
 
     public void setPitch(float pitch) {
         float freq = (float) pitchToFrequency(pitch);
@@ -34,7 +35,30 @@ public class SawOscillator extends SynthUnit {
     }
 
     private void updatePhaseIncrement() {
-        mPhaseIncrement = 2.0f * mFrequency * mFrequencyScaler / 48000.0f;
+        mPhaseIncrement = 2.0f * mFrequency * mFrequencyScaler / mFrameRate;
+        onPhaseIncrementChanged();
+    }
+
+    /**
+     * Called when the frequency, scaler or frame rate changes.
+     */
+    protected void onPhaseIncrementChanged() {
+    }
+
+    /**
+     * @return change in phase per frame, where one cycle is 2.0
+     */
+    protected float getPhaseIncrement() {
+        return mPhaseIncrement;
+    }
+
+    public void setFrameRate(int frameRate) {
+        mFrameRate = frameRate;
+        updatePhaseIncrement();
+    }
+
+    public int getFrameRate() {
+        return mFrameRate;
     }
 
     public void setAmplitude(float amplitude) {
@@ -65,9 +89,37 @@ public class SawOscillator extends SynthUnit {
         return mPhase;
     }
 
+    /**
+     * Write the phase for each frame, like calling incrementWrapPhase().
+     */
+    void renderPhaseBlock(float[] output, int offset, int numFrames) {
+        float phase = mPhase;
+        float phaseIncrement = mPhaseIncrement;
+        for (int i = offset; i < offset + numFrames; i++) {
+            phase += phaseIncrement;
+            while (phase > 1.0) {
+                phase -= 2.0;
+            }
+            while (phase < -1.0) {
+                phase += 2.0;
+            }
+            output[i] = phase;
+        }
+        mPhase = phase;
+    }
+
     @Override
     public float render() {
         return incrementWrapPhase() * mAmplitude;
     }
 
+    @Override
+    public void renderBlock(float[] output, int offset, int numFrames) {
+        renderPhaseBlock(output, offset, numFrames);
+        float amplitude = mAmplitude;
+        for (int i = offset; i < offset + numFrames; i++) {
+            output[i] = output[i] * amplitude;
+        }
+    }
+
 }
@@ -28,14 +28,20 @@ public class SawOscillatorDPW extends SawOscillator {
 
     @Override
     public void setFrequency(float freq) {
-        /* Calculate scaling based on frequency. */
-        freq = Math.abs(freq);
-        super.setFrequency(freq);
+        super.setFrequency(Math.abs(freq));
+    }
+
+    /**
+     * Calculate scaling based on the actual frequency, including the
+     * frequency scaler and the frame rate.
+     */
+    @Override
+    protected void onPhaseIncrementChanged() {
+        float freq = Math.abs(getPhaseIncrement()) * 0.5f * getFrameRate();
         if (freq < VERY_LOW_FREQ) {
-            mScaler = (float) (0.125 * 44100 / VERY_LOW_FREQ);
-        } else {
-            mScaler = (float) (0.125 * 44100 / freq);
+            freq = VERY_LOW_FREQ;
         }
+        mScaler = (float) (0.125 * getFrameRate() / freq);
     }
 
     @Override
@@ -49,4 +55,24 @@ public class SawOscillatorDPW extends SawOscillator {
         return diffed * mScaler * getAmplitude();
     }
 
+    @Override
+    public void renderBlock(float[] output, int offset, int numFrames) {
+        renderPhaseBlock(output, offset, numFrames);
+        float z1 = mZ1;
+        float z2 = mZ2;
+        float scaler = mScaler;
+        float amplitude = getAmplitude();
+        for (int i = offset; i < offset + numFrames; i++) {
+            float phase = output[i];
+            /* Square the raw sawtooth. */
+            float squared = phase * phase;
+            float diffed = squared - z2;
+            z2 = z1;
+            z1 = squared;
+            output[i] = diffed * scaler * amplitude;
+        }
+        mZ1 = z1;
+        mZ2 = z2;
+    }
+
 }
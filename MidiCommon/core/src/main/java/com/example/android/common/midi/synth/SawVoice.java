@@ -0,0 +1,125 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.common.midi.synth;
+
+/**
+ * Sawtooth oscillator with an ADSR.
+ */
+public class SawVoice extends SynthVoice {
+    private SawOscillator mOscillator;
+    private SegmentEnvelope mEnvelope;
+    private float mLevel = 1.0f;
+    private float mModulationGain = 1.0f;
+    // Scratch buffer for the envelope, grown as needed.
+    private float[] mEnvelopeBuffer = new float[0];
+
+    public SawVoice() {
+        mOscillator = createOscillator();
+        mEnvelope = new SegmentEnvelope();
+    }
+
+    protected SawOscillator createOscillator() {
+        return new SawOscillator();
+    }
+
+    protected SawOscillator getOscillator() {
+        return mOscillator;
+    }
+
+    /**
+     * @param level gain applied to the amplitude from the velocity
+     */
+    public void setLevel(float level) {
+        mLevel = level;
+    }
+
+    public SegmentEnvelope getEnvelope() {
+        return mEnvelope;
+    }
+
+    @Override
+    public void noteOn(int noteIndex, int velocity) {
+        super.noteOn(noteIndex, velocity);
+        mOscillator.setPitch(noteIndex);
+        mOscillator.setAmplitude(getAmplitude() * mLevel * mModulationGain);
+        mEnvelope.on();
+    }
+
+    @Override
+    public void noteOff() {
+        super.noteOff();
+        mEnvelope.off();
+    }
+
+    @Override
+    public void setFrequencyScaler(float scaler) {
+        mOscillator.setFrequencyScaler(scaler);
+    }
+
+    @Override
+    public void setModulation(int destination, float value) {
+        switch (destination) {
+            case ModulationMatrix.DEST_AMPLITUDE:
+                if (mModulationGain != value) {
+                    mModulationGain = value;
+                    mOscillator.setAmplitude(getAmplitude() * mLevel * value);
+                }
+                break;
+            case ModulationMatrix.DEST_ATTACK_TIME:
+                mEnvelope.setTimeScale(0, value);
+                break;
+            case ModulationMatrix.DEST_RELEASE_TIME:
+                for (int i = mEnvelope.getSustainSegment() + 1;
+                        i < mEnvelope.getNumSegments(); i++) {
+                    mEnvelope.setTimeScale(i, value);
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    @Override
+    public float render() {
+        float output = mOscillator.render() * mEnvelope.render();
+        return output;
+    }
+
+    @Override
+    public void renderBlock(float[] output, int offset, int numFrames) {
+        if (mEnvelopeBuffer.length < numFrames) {
+            mEnvelopeBuffer = new float[numFrames];
+        }
+        float[] envelope = mEnvelopeBuffer;
+        mOscillator.renderBlock(output, offset, numFrames);
+        mEnvelope.renderBlock(envelope, 0, numFrames);
+        for (int i = 0; i < numFrames; i++) {
+            output[offset + i] = output[offset + i] * envelope[i];
+        }
+    }
+
+    @Override
+    public boolean isDone() {
+        return mEnvelope.isDone();
+    }
+
+    @Override
+    public float getLevel() {
+        return getAmplitude() * mEnvelope.getLevel();
+    }
+
+}
@@ -0,0 +1,309 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.example.android.common.midi.synth;
+
+import java.util.Arrays;
+
+/**
+ * Envelope made of exponential segments. Each segment moves from the
+ * current level to a target level in a given time. The envelope holds at the
+ * end of the sustain segment until off() is called, then runs the segments
+ * after it.
+ *
+ * Each segment approaches a point beyond its target, so it has an
+ * exponential shape but still arrives in a finite time. The overshoot ratio
+ * sets the shape. Small ratios give a strongly curved segment and large
+ * ratios give a nearly straight one.
+ *
+ * When a segment fades toward silence and the level drops below the silence
+ * threshold, the envelope finishes so the voice can be reused.
+ * By default the segments are attack, decay, sustain and release.
+ * Times are in seconds.
+ */
+public class SegmentEnvelope extends SynthUnit {
+    public static final int MAX_SEGMENTS = 8;
+    public static final float DEFAULT_SILENCE_THRESHOLD = 0.001f; // -60 dB
+    public static final float ATTACK_RATIO = 0.3f;
+    public static final float DECAY_RATIO = 0.001f;
+    private static final float MIN_TIME = 0.001f;
+
+    private static final int IDLE = -1;
+    private static final int FINISHED = -2;
+
+    private final float[] mTargets = new float[MAX_SEGMENTS];
+    private final float[] mTimes = new float[MAX_SEGMENTS];
+    private final float[] mRatios = new float[MAX_SEGMENTS];
+    private final float[] mTimeScales = new float[MAX_SEGMENTS];
+    private final float[] mCoefficients = new float[MAX_SEGMENTS];
+    private int mNumSegments;
+    private int mSustainSegment;
+    private int mFrameRate = SynthUnit.FRAME_RATE;
+    private float mSilenceThreshold = DEFAULT_SILENCE_THRESHOLD;
+
+    private int mSegment = IDLE;
+    private boolean mHolding;
+    private float mCurrent;
+    private float mBase;
+    private float mCoefficient;
+    private float mTarget;
+    private boolean mRising;
+
+    public SegmentEnvelope() {
+        Arrays.fill(mTimeScales, 1.0f);
+        setSegment(0, 1.0f, 0.003f, ATTACK_RATIO);
+        setSegment(1, 0.3f, 0.08f, DECAY_RATIO);
+        setSegment(2, 0.0f, 1.0f, DECAY_RATIO);
+        setNumSegments(3);
+        setSustainSegment(1);
+    }
+
+    /**
+     * @param index segment from 0 to MAX_SEGMENTS - 1
+     * @param target level at the end of the segment
+     * @param time seconds to reach the target
+     * @param ratio overshoot as a fraction of the distance moved
+     */
+    public void setSegment(int index, float target, float time, float ratio) {
+        if (index < 0 || index >= MAX_SEGMENTS || ratio <= 0.0f) {
+            throw new IllegalArgumentException("index = " + index
+                    + ", ratio = " + ratio);
+        }
+        mTargets[index] = Math.max(0.0f, target);
+        mTimes[index] = Math.max(MIN_TIME, time);
+        mRatios[index] = ratio;
+        updateCoefficient(index);
+    }
+
+    private void updateCoefficient(int index) {
+        float ratio = mRatios[index];
+        double frames = Math.max(MIN_TIME, mTimes[index] * mTimeScales[index])
+                * mFrameRate;
+        // The remaining distance shrinks to ratio / (1 + ratio) in time.
+        mCoefficients[index] = (float) Math.pow(ratio / (1.0 + ratio),
+                1.0 / frames);
+    }
+
+    /**
+     * Stretch or shrink the time of a segment, for modulation.
+     * A segment that is already running keeps its rate.
+     *
+     * @param index segment from 0 to MAX_SEGMENTS - 1
+     * @param scale multiplies the time of the segment
+     */
+    public void setTimeScale(int index, float scale) {
+        if (mTimeScales[index] != scale) {
+            mTimeScales[index] = scale;
+            updateCoefficient(index);
+        }
+    }
+
+    public void setNumSegments(int numSegments) {
+        if (numSegments < 1 || numSegments > MAX_SEGMENTS) {
+            throw new IllegalArgumentException("numSegments = " + numSegments);
+        }
+        mNumSegments = numSegments;
+    }
+
+    /**
+     * @param index hold at the end of this segment, or -1 to never hold
+     */
+    public void setSustainSegment(int index) {
+        mSustainSegment = index;
+    }
+
+    public int getSustainSegment() {
+        return mSustainSegment;
+    }
+
+    public int getNumSegments() {
+        return mNumSegments;
+    }
+
+    public void setFrameRate(int frameRate) {
+        mFrameRate = frameRate;
+        for (int i = 0; i < MAX_SEGMENTS; i++) {
+            updateCoefficient(i);
+        }
+    }
+
+    /**
+     * @param level below which a fading envelope is finished
+     */
+    public void setSilenceThreshold(float level) {
+        mSilenceThreshold = level;
+    }
+
+    public float getSilenceThreshold() {
+        return mSilenceThreshold;
+    }
+
+    // Setters for the default ADSR shape.
+
+    public void setAttackTime(float time) {
+        setSegment(0, mTargets[0], time, mRatios[0]);
+    }
+
+    public void setDecayTime(float time) {
+        setSegment(1, mTargets[1], time, mRatios[1]);
+    }
+
+    public void setSustainLevel(float level) {
+        setSegment(1, level, mTimes[1], mRatios[1]);
+    }
+
+    public void setReleaseTime(float time) {
+        setSegment(2, mTargets[2], time, mRatios[2]);
+    }
+
+    public void on() {
+        mHolding = false;
+        enterSegment(0);
+    }
+
+    /**
+     * Start the segments after the sustain segment, from the current level.
+     * Without a sustain segment the envelope just continues.
+     */
+    public void off() {
+        if (mSegment == IDLE) {
+            finish();
+        } else if (mSegment == FINISHED || mSustainSegment < 0
+                || mSegment > mSustainSegment) {
+            return;
+        } else if (mSustainSegment + 1 < mNumSegments) {
+            mHolding = false;
+            enterSegment(mSustainSegment + 1);
+        } else {
+            finish();
+        }
+    }
+
+    private void enterSegment(int index) {
+        mSegment = index;
+        float target = mTargets[index];
+        float distance = target - mCurrent;
+        // Aim past the target so that it is reached.
+        float aim = target + (mRatios[index] * distance);
+        mCoefficient = mCoefficients[index];
+        mBase = aim * (1.0f - mCoefficient);
+        mTarget = target;
+        mRising = distance > 0.0f;
+    }
+
+    // Called when the current segment reaches its target.
+    private void nextSegment() {
+        mCurrent = mTarget;
+        if (mSegment == mSustainSegment) {
+            mHolding = true;
+        } else if (mSegment + 1 < mNumSegments) {
+            enterSegment(mSegment + 1);
+        } else {
+            finish();
+        }
+    }
+
+    private void finish() {
+        mSegment = FINISHED;
+        mHolding = false;
+        mCurrent = 0.0f;
+    }
+
+    private boolean isMoving() {
+        return mSegment >= 0 && !mHolding;
+    }
+
+    // True if the level has faded below the threshold for good.
+    private boolean isSilent() {
+        return !mRising && mTarget < mSilenceThreshold
+                && mCurrent <= mSilenceThreshold;
+    }
+
+    @Override
+    public float render() {
+        if (isMoving()) {
+            mCurrent = mBase + (mCurrent * mCoefficient);
+            if (mRising ? (mCurrent >= mTarget) : (mCurrent <= mTarget)) {
+                nextSegment();
+            }
+            if (isMoving() && isSilent()) {
+                finish();
+            }
+        }
+        return mCurrent;
+    }
+
+    @Override
+    public void renderBlock(float[] output, int offset, int numFrames) {
+        int end = offset + numFrames;
+        int i = offset;
+        while (i < end) {
+            if (!isMoving()) {
+                // The level does not change.
+                float current = mCurrent;
+                while (i < end) {
+                    output[i++] = current;
+                }
+                break;
+            }
+            float current = mCurrent;
+            float base = mBase;
+            float coefficient = mCoefficient;
+            float target = mTarget;
+            boolean arrived = false;
+            if (mRising) {
+                while (i < end) {
+                    current = base + (current * coefficient);
+                    if (current >= target) {
+                        arrived = true;
+                        break;
+                    }
+                    output[i++] = current;
+                }
+            } else {
+                float stop = (target < mSilenceThreshold)
+                        ? mSilenceThreshold : target;
+                while (i < end) {
+                    current = base + (current * coefficient);
+                    if (current <= stop) {
+                        arrived = true;
+                        break;
+                    }
+                    output[i++] = current;
+                }
+            }
+            mCurrent = current;
+            if (arrived) {
+                if (mRising || current <= target) {
+                    nextSegment();
+                }
+                if (isMoving() && isSilent()) {
+                    finish();
+                }
+                output[i++] = mCurrent;
+            }
+        }
+    }
+
+    public boolean isDone() {
+        return mSegment == FINISHED;
+    }
+
+    public float getLevel() {
+        return mCurrent;
+    }
+}
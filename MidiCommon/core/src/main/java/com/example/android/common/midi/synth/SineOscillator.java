@@ -51,4 +51,13 @@ public class SineOscillator extends SawOscillator {
         return fastSin(phase) * getAmplitude();
     }
 
+    @Override
+    public void renderBlock(float[] output, int offset, int numFrames) {
+        renderPhaseBlock(output, offset, numFrames);
+        float amplitude = getAmplitude();
+        for (int i = offset; i < offset + numFrames; i++) {
+            output[i] = fastSin(output[i]) * amplitude;
+        }
+    }
+
 }
@@ -0,0 +1,77 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.example.android.common.midi.synth;
+
+/**
+ * Keep the output between -1.0 and +1.0 without hard clipping.
+ * Samples below the threshold pass through unchanged. Above it they are
+ * bent smoothly toward 1.0, with no corner at the threshold.
+ */
+public class SoftLimiter extends AudioEffect {
+    public static final float DEFAULT_THRESHOLD = 0.8f;
+
+    private volatile float mThreshold = DEFAULT_THRESHOLD;
+    private volatile int mLimitedCount;
+
+    public SoftLimiter() {
+        super();
+    }
+
+    /**
+     * @param threshold between 0.0 and 1.0
+     */
+    public void setThreshold(float threshold) {
+        mThreshold = Math.max(0.0f, Math.min(0.99f, threshold));
+    }
+
+    public float getThreshold() {
+        return mThreshold;
+    }
+
+    @Override
+    public void process(float[] buffer, int offset, int numFrames,
+            int samplesPerFrame) {
+        float threshold = mThreshold;
+        float range = 1.0f - threshold;
+        int limited = 0;
+        int end = (offset + numFrames) * samplesPerFrame;
+        for (int i = offset * samplesPerFrame; i < end; i++) {
+            float sample = buffer[i];
+            float magnitude = Math.abs(sample);
+            if (magnitude > threshold) {
+                // u / (1 + u) has a slope of 1 at zero and approaches 1.
+                float over = (magnitude - threshold) / range;
+                float bent = threshold + range * (over / (1.0f + over));
+                buffer[i] = (sample < 0.0f) ? -bent : bent;
+                limited++;
+            }
+        }
+        mLimitedCount += limited;
+    }
+
+    @Override
+    public void reset() {
+    }
+
+    /**
+     * @return number of samples that were above the threshold
+     */
+    public int getLimitedCount() {
+        return mLimitedCount;
+    }
+}
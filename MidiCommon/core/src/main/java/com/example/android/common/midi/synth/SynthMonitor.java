@@ -0,0 +1,240 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.example.android.common.midi.synth;
+
+/**
+ * Timing statistics for the synthesis loop.
+ *
+ * The synthesis thread records each buffer with recordBuffer(), which does
+ * not allocate, lock or wait. Any other thread can read a consistent copy
+ * with getSnapshot(). The synthesis thread bumps a sequence number before
+ * and after each update, and a reader copies again if the number changed
+ * while it was copying. So readers may retry but never delay the audio.
+ */
+public class SynthMonitor {
+    private final long mDeadlineNanos;
+
+    // Written only by the synthesis thread.
+    private volatile int mSequence;
+    private final LatencyHistogram mProcessHistogram = new LatencyHistogram();
+    private final LatencyHistogram mEventHistogram = new LatencyHistogram();
+    private final LatencyHistogram mRenderHistogram = new LatencyHistogram();
+    private final LatencyHistogram mWriteHistogram = new LatencyHistogram();
+    private volatile long mBufferCount;
+    private volatile long mDeadlineMissCount;
+    private volatile long mUnderrunCount;
+    private volatile int mActiveVoices;
+    private volatile int mMaxActiveVoices;
+
+    private volatile boolean mResetRequested;
+
+    /**
+     * @param deadlineNanos time to produce one buffer in real time
+     */
+    public SynthMonitor(long deadlineNanos) {
+        mDeadlineNanos = deadlineNanos;
+    }
+
+    /**
+     * Statistics copied from the monitor. Each reading thread should use
+     * its own Snapshot.
+     */
+    public static class Snapshot {
+        private final LatencyHistogram mProcessHistogram = new LatencyHistogram();
+        private final LatencyHistogram mEventHistogram = new LatencyHistogram();
+        private final LatencyHistogram mRenderHistogram = new LatencyHistogram();
+        private final LatencyHistogram mWriteHistogram = new LatencyHistogram();
+        private long mDeadlineNanos;
+        private long mBufferCount;
+        private long mDeadlineMissCount;
+        private long mUnderrunCount;
+        private int mActiveVoices;
+        private int mMaxActiveVoices;
+
+        /**
+         * @return time to process each buffer, not counting the write
+         */
+        public LatencyHistogram getProcessHistogram() {
+            return mProcessHistogram;
+        }
+
+        /**
+         * @return time to deliver the MIDI events in each buffer
+         */
+        public LatencyHistogram getEventHistogram() {
+            return mEventHistogram;
+        }
+
+        /**
+         * @return time to mix the voices and run the effects for each buffer
+         */
+        public LatencyHistogram getRenderHistogram() {
+            return mRenderHistogram;
+        }
+
+        /**
+         * @return time each write to the audio output was blocked
+         */
+        public LatencyHistogram getWriteHistogram() {
+            return mWriteHistogram;
+        }
+
+        public long getDeadlineNanos() {
+            return mDeadlineNanos;
+        }
+
+        public long getBufferCount() {
+            return mBufferCount;
+        }
+
+        /**
+         * @return number of buffers that took longer than one buffer period
+         *     to process
+         */
+        public long getDeadlineMissCount() {
+            return mDeadlineMissCount;
+        }
+
+        /**
+         * @return number of times the audio output ran out of data
+         */
+        public long getUnderrunCount() {
+            return mUnderrunCount;
+        }
+
+        /**
+         * @return number of voices playing in the latest buffer
+         */
+        public int getActiveVoices() {
+            return mActiveVoices;
+        }
+
+        /**
+         * @return most voices playing in any buffer
+         */
+        public int getMaxActiveVoices() {
+            return mMaxActiveVoices;
+        }
+
+        @Override
+        public String toString() {
+            return "buffers = " + mBufferCount
+                    + ", misses = " + mDeadlineMissCount
+                    + ", underruns = " + mUnderrunCount
+                    + ", voices = " + mActiveVoices + "/" + mMaxActiveVoices
+                    + ", process p50/p99/max = "
+                    + mProcessHistogram.getValueAtPercentile(0.50) + "/"
+                    + mProcessHistogram.getValueAtPercentile(0.99) + "/"
+                    + mProcessHistogram.getMax() + " ns";
+        }
+    }
+
+    /**
+     * Record one buffer. Only call this from the synthesis thread.
+     *
+     * @param eventNanos time spent delivering MIDI events
+     * @param renderNanos time spent mixing voices and running effects
+     * @param writeNanos time spent blocked writing to the audio output
+     * @param activeVoices most voices playing during the buffer
+     * @param underruns number of new underruns reported by the output
+     */
+    public void recordBuffer(long eventNanos, long renderNanos, long writeNanos,
+            int activeVoices, int underruns) {
+        mSequence = mSequence + 1; // Odd while the update is in progress.
+        if (mResetRequested) {
+            mResetRequested = false;
+            clear();
+        }
+        long processNanos = eventNanos + renderNanos;
+        mProcessHistogram.record(processNanos);
+        mEventHistogram.record(eventNanos);
+        mRenderHistogram.record(renderNanos);
+        mWriteHistogram.record(writeNanos);
+        mBufferCount = mBufferCount + 1;
+        if (processNanos > mDeadlineNanos) {
+            mDeadlineMissCount = mDeadlineMissCount + 1;
+        }
+        if (underruns > 0) {
+            mUnderrunCount = mUnderrunCount + underruns;
+        }
+        mActiveVoices = activeVoices;
+        if (activeVoices > mMaxActiveVoices) {
+            mMaxActiveVoices = activeVoices;
+        }
+        mSequence = mSequence + 1;
+    }
+
+    private void clear() {
+        mProcessHistogram.reset();
+        mEventHistogram.reset();
+        mRenderHistogram.reset();
+        mWriteHistogram.reset();
+        mBufferCount = 0;
+        mDeadlineMissCount = 0;
+        mUnderrunCount = 0;
+        mActiveVoices = 0;
+        mMaxActiveVoices = 0;
+    }
+
+    /**
+     * Clear the statistics before the next buffer is recorded.
+     * Can be called from any thread.
+     */
+    public void reset() {
+        mResetRequested = true;
+    }
+
+    /**
+     * Copy the statistics without blocking the synthesis thread.
+     * Can be called from any thread.
+     *
+     * @param snapshot to fill in, or null to allocate a new one
+     * @return the snapshot
+     */
+    public Snapshot getSnapshot(Snapshot snapshot) {
+        if (snapshot == null) {
+            snapshot = new Snapshot();
+        }
+        while (true) {
+            int sequence = mSequence;
+            if ((sequence & 1) == 0) {
+                snapshot.mProcessHistogram.copyFrom(mProcessHistogram);
+                snapshot.mEventHistogram.copyFrom(mEventHistogram);
+                snapshot.mRenderHistogram.copyFrom(mRenderHistogram);
+                snapshot.mWriteHistogram.copyFrom(mWriteHistogram);
+                snapshot.mDeadlineNanos = mDeadlineNanos;
+                snapshot.mBufferCount = mBufferCount;
+                snapshot.mDeadlineMissCount = mDeadlineMissCount;
+                snapshot.mUnderrunCount = mUnderrunCount;
+                snapshot.mActiveVoices = mActiveVoices;
+                snapshot.mMaxActiveVoices = mMaxActiveVoices;
+                if (sequence == mSequence) {
+                    return snapshot;
+                }
+            }
+            Thread.yield(); // The synthesis thread is part way through.
+        }
+    }
+
+    /**
+     * @return a new snapshot of the statistics
+     */
+    public Snapshot getSnapshot() {
+        return getSnapshot(null);
+    }
+}
@@ -17,6 +17,10 @@
 package com.example.android.common.midi.synth;
 
 public abstract class SynthUnit {
+    /**
+     * Frames per second used unless a unit is given another rate.
+     */
+    public static final int FRAME_RATE = 48000;
 
     private static final double CONCERT_A_PITCH = 69.0;
     private static final double CONCERT_A_FREQUENCY = 440.0;
@@ -32,4 +36,19 @@ public abstract class SynthUnit {
     }
 
     public abstract float render();
+
+    /**
+     * Render a block of frames. This gives the same result as calling
+     * render() once for each frame. Subclasses should override it with a
+     * tight loop.
+     *
+     * @param output
+     * @param offset index of the first frame in output
+     * @param numFrames
+     */
+    public void renderBlock(float[] output, int offset, int numFrames) {
+        for (int i = offset; i < offset + numFrames; i++) {
+            output[i] = render();
+        }
+    }
 }
@@ -25,6 +25,8 @@ public abstract class SynthVoice {
     public static final int STATE_OFF = 0;
     public static final int STATE_ON = 1;
     private int mState = STATE_OFF;
+    // Scratch buffer for renderBlock(), grown as needed.
+    private float[] mMixBuffer = new float[0];
 
     public SynthVoice() {
         mNoteIndex = -1;
@@ -49,9 +51,28 @@ public abstract class SynthVoice {
      */
     public void mix(float[] outputBuffer, int samplesPerFrame, float level) {
         int numFrames = outputBuffer.length / samplesPerFrame;
+        mix(outputBuffer, 0, numFrames, samplesPerFrame, level);
+    }
+
+    /**
+     * Add the output of this voice to part of an output buffer.
+     *
+     * @param outputBuffer
+     * @param frameOffset first frame to write
+     * @param numFrames
+     * @param samplesPerFrame
+     * @param level
+     */
+    public void mix(float[] outputBuffer, int frameOffset, int numFrames,
+            int samplesPerFrame, float level) {
+        if (mMixBuffer.length < numFrames) {
+            mMixBuffer = new float[numFrames];
+        }
+        float[] block = mMixBuffer;
+        renderBlock(block, 0, numFrames);
         for (int i = 0; i < numFrames; i++) {
-            float output = render();
-            int offset = i * samplesPerFrame;
+            float output = block[i];
+            int offset = (frameOffset + i) * samplesPerFrame;
             for (int jf = 0; jf < samplesPerFrame; jf++) {
                 outputBuffer[offset + jf] += output * level;
             }
@@ -60,10 +81,38 @@ public abstract class SynthVoice {
 
     public abstract float render();
 
+    /**
+     * Render a block of frames. This gives the same result as calling
+     * render() once for each frame.
+     *
+     * @param output
+     * @param offset index of the first frame in output
+     * @param numFrames
+     */
+    public void renderBlock(float[] output, int offset, int numFrames) {
+        for (int i = offset; i < offset + numFrames; i++) {
+            output[i] = render();
+        }
+    }
+
     public boolean isDone() {
         return mState == STATE_OFF;
     }
 
+    /**
+     * @return true if the note has not been released yet
+     */
+    public boolean isOn() {
+        return mState == STATE_ON;
+    }
+
+    /**
+     * @return current output level, used to find the quietest voice
+     */
+    public float getLevel() {
+        return isDone() ? 0.0f : getAmplitude();
+    }
+
     public int getNoteIndex() {
         return mNoteIndex;
     }
@@ -82,4 +131,15 @@ public abstract class SynthVoice {
     public void setFrequencyScaler(float scaler) {
     }
 
+    /**
+     * Apply a modulation amount to a voice parameter.
+     * Voices ignore destinations that they do not support.
+     *
+     * @param destination ModulationMatrix.DEST_AMPLITUDE, DEST_ATTACK_TIME
+     *     or DEST_RELEASE_TIME
+     * @param value gain or time scaler
+     */
+    public void setModulation(int destination, float value) {
+    }
+
 }
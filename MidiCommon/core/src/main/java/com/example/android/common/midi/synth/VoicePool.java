@@ -0,0 +1,320 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.common.midi.synth;
+
+/**
+ * Fixed number of voice slots with an index from channel and note to slot.
+ * When every slot is busy a voice is stolen according to the policy.
+ *
+ * The pool does not create voices. The caller puts a voice into a slot
+ * with setVoice() when the slot is empty or holds a voice for a different
+ * program. After that the same voice objects are reused, so allocating
+ * and releasing slots never creates any objects.
+ *
+ * This is not thread safe. Only use it from the synthesis thread.
+ */
+public class VoicePool {
+    public static final int NUM_CHANNELS = 16;
+    public static final int NUM_NOTES = 128;
+
+    /** Steal the voice that was started first. Released voices go first. */
+    public static final int STEAL_OLDEST = 0;
+    /** Steal the voice with the lowest output level. */
+    public static final int STEAL_QUIETEST = 1;
+    /**
+     * Restart the voice that is already playing the same note on the same
+     * channel. Otherwise steal the oldest voice.
+     */
+    public static final int STEAL_SAME_NOTE = 2;
+
+    private static final int NO_SLOT = -1;
+
+    private final SynthVoice[] mVoices;
+    private final int[] mPrograms;
+    private final int[] mChannels;
+    private final int[] mNotes;
+    private final long[] mStartOrder;
+    private long mNextStartOrder;
+    // Slot for each channel and note or NO_SLOT.
+    private final int[] mNoteToSlot = new int[NUM_CHANNELS * NUM_NOTES];
+    // Active slots are kept together at the start of mActiveSlots.
+    private final int[] mActiveSlots;
+    private final int[] mActivePositions;
+    private int mNumActive;
+    // Active slots grouped by channel. Each channel has getMaxVoices() entries.
+    private final int[] mChannelSlots;
+    private final int[] mChannelCounts = new int[NUM_CHANNELS];
+    private final int[] mChannelPositions;
+    private int mStealPolicy = STEAL_OLDEST;
+    private int mStealCount;
+
+    /**
+     * @param maxVoices number of voices that can play at the same time
+     */
+    public VoicePool(int maxVoices) {
+        if (maxVoices < 1) {
+            throw new IllegalArgumentException("maxVoices = " + maxVoices);
+        }
+        mVoices = new SynthVoice[maxVoices];
+        mPrograms = new int[maxVoices];
+        mChannels = new int[maxVoices];
+        mNotes = new int[maxVoices];
+        mStartOrder = new long[maxVoices];
+        mActiveSlots = new int[maxVoices];
+        mActivePositions = new int[maxVoices];
+        mChannelSlots = new int[NUM_CHANNELS * maxVoices];
+        mChannelPositions = new int[maxVoices];
+        for (int slot = 0; slot < maxVoices; slot++) {
+            mActiveSlots[slot] = slot;
+            mActivePositions[slot] = slot;
+            mPrograms[slot] = -1;
+        }
+        for (int i = 0; i < mNoteToSlot.length; i++) {
+            mNoteToSlot[i] = NO_SLOT;
+        }
+    }
+
+    public int getMaxVoices() {
+        return mVoices.length;
+    }
+
+    /**
+     * @param policy STEAL_OLDEST, STEAL_QUIETEST or STEAL_SAME_NOTE
+     */
+    public void setStealPolicy(int policy) {
+        if (policy < STEAL_OLDEST || policy > STEAL_SAME_NOTE) {
+            throw new IllegalArgumentException("policy = " + policy);
+        }
+        mStealPolicy = policy;
+    }
+
+    public int getStealPolicy() {
+        return mStealPolicy;
+    }
+
+    /**
+     * Reserve a slot for a note. The note replaces any earlier note on the
+     * same channel and key in the index. Use getVoice() to find the voice
+     * in the slot.
+     *
+     * @param channel
+     * @param noteIndex
+     * @param program preferred when picking a free slot
+     * @return slot index
+     */
+    public int allocate(int channel, int noteIndex, int program) {
+        int key = (channel * NUM_NOTES) + noteIndex;
+        int slot = NO_SLOT;
+        if (mStealPolicy == STEAL_SAME_NOTE) {
+            slot = mNoteToSlot[key];
+        }
+        if (slot == NO_SLOT) {
+            slot = findFreeSlot(program);
+        }
+        if (slot == NO_SLOT) {
+            slot = findVictim();
+            mStealCount++;
+        }
+        if (mActivePositions[slot] >= mNumActive) {
+            activate(slot);
+        } else {
+            unindex(slot);
+            removeFromChannel(slot);
+        }
+        int previous = mNoteToSlot[key];
+        if (previous != NO_SLOT && previous != slot) {
+            // Let the old note fade out but it no longer owns the key.
+            mVoices[previous].noteOff();
+        }
+        mNoteToSlot[key] = slot;
+        mChannels[slot] = channel;
+        addToChannel(slot);
+        mNotes[slot] = noteIndex;
+        mStartOrder[slot] = mNextStartOrder++;
+        return slot;
+    }
+
+    private int findFreeSlot(int program) {
+        int fallback = NO_SLOT;
+        for (int i = mNumActive; i < mActiveSlots.length; i++) {
+            int slot = mActiveSlots[i];
+            if (mPrograms[slot] == program) {
+                return slot;
+            } else if (fallback == NO_SLOT) {
+                fallback = slot;
+            }
+        }
+        return fallback;
+    }
+
+    private int findVictim() {
+        int victim = mActiveSlots[0];
+        if (mStealPolicy == STEAL_QUIETEST) {
+            float lowest = mVoices[victim].getLevel();
+            for (int i = 1; i < mNumActive; i++) {
+                int slot = mActiveSlots[i];
+                float level = mVoices[slot].getLevel();
+                if (level < lowest) {
+                    lowest = level;
+                    victim = slot;
+                }
+            }
+        } else {
+            for (int i = 1; i < mNumActive; i++) {
+                int slot = mActiveSlots[i];
+                boolean released = !mVoices[slot].isOn();
+                boolean victimReleased = !mVoices[victim].isOn();
+                if ((released && !victimReleased)
+                        || ((released == victimReleased)
+                        && (mStartOrder[slot] < mStartOrder[victim]))) {
+                    victim = slot;
+                }
+            }
+        }
+        return victim;
+    }
+
+    /**
+     * @param slot
+     * @return voice in the slot or null if none has been set
+     */
+    public SynthVoice getVoice(int slot) {
+        return mVoices[slot];
+    }
+
+    /**
+     * @param slot
+     * @return program of the voice in the slot or -1
+     */
+    public int getProgram(int slot) {
+        return mPrograms[slot];
+    }
+
+    /**
+     * Put a voice into a slot. Voices are kept when their slot is released.
+     */
+    public void setVoice(int slot, SynthVoice voice, int program) {
+        mVoices[slot] = voice;
+        mPrograms[slot] = program;
+    }
+
+    /**
+     * @return voice playing the note or null
+     */
+    public SynthVoice findVoice(int channel, int noteIndex) {
+        int slot = mNoteToSlot[(channel * NUM_NOTES) + noteIndex];
+        return (slot == NO_SLOT) ? null : mVoices[slot];
+    }
+
+    /**
+     * @return number of active voices
+     */
+    public int getActiveCount() {
+        return mNumActive;
+    }
+
+    /**
+     * @param index from 0 to getActiveCount() - 1
+     * @return active voice
+     */
+    public SynthVoice getActiveVoice(int index) {
+        return mVoices[mActiveSlots[index]];
+    }
+
+    /**
+     * @return number of active voices on the channel
+     */
+    public int getChannelVoiceCount(int channel) {
+        return mChannelCounts[channel];
+    }
+
+    /**
+     * @param channel
+     * @param index from 0 to getChannelVoiceCount(channel) - 1
+     * @return active voice on the channel
+     */
+    public SynthVoice getChannelVoice(int channel, int index) {
+        return mVoices[mChannelSlots[(channel * mVoices.length) + index]];
+    }
+
+    /**
+     * Return the slots of all finished voices to the pool.
+     */
+    public void releaseFinishedVoices() {
+        int i = 0;
+        while (i < mNumActive) {
+            int slot = mActiveSlots[i];
+            if (mVoices[slot].isDone()) {
+                unindex(slot);
+                removeFromChannel(slot);
+                deactivate(slot); // Moves another slot to position i.
+            } else {
+                i++;
+            }
+        }
+    }
+
+    /**
+     * @return number of voices that were stolen
+     */
+    public int getStealCount() {
+        return mStealCount;
+    }
+
+    private void unindex(int slot) {
+        int key = (mChannels[slot] * NUM_NOTES) + mNotes[slot];
+        if (mNoteToSlot[key] == slot) {
+            mNoteToSlot[key] = NO_SLOT;
+        }
+    }
+
+    private void addToChannel(int slot) {
+        int channel = mChannels[slot];
+        int position = mChannelCounts[channel]++;
+        mChannelSlots[(channel * mVoices.length) + position] = slot;
+        mChannelPositions[slot] = position;
+    }
+
+    private void removeFromChannel(int slot) {
+        int channel = mChannels[slot];
+        int base = channel * mVoices.length;
+        int last = --mChannelCounts[channel];
+        int lastSlot = mChannelSlots[base + last];
+        int position = mChannelPositions[slot];
+        mChannelSlots[base + position] = lastSlot;
+        mChannelPositions[lastSlot] = position;
+    }
+
+    private void activate(int slot) {
+        swapPositions(slot, mActiveSlots[mNumActive]);
+        mNumActive++;
+    }
+
+    private void deactivate(int slot) {
+        mNumActive--;
+        swapPositions(slot, mActiveSlots[mNumActive]);
+    }
+
+    private void swapPositions(int slotA, int slotB) {
+        int positionA = mActivePositions[slotA];
+        int positionB = mActivePositions[slotB];
+        mActiveSlots[positionA] = slotB;
+        mActiveSlots[positionB] = slotA;
+        mActivePositions[slotA] = positionB;
+        mActivePositions[slotB] = positionA;
+    }
+}
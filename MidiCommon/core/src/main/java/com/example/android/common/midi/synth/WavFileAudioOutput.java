@@ -0,0 +1,228 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.common.midi.synth;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * Audio output that writes a stereo WAV file instead of playing the audio.
+ * It does not use any Android classes, so it can be used to render offline
+ * on a desktop or server.
+ *
+ * Samples are written as 32-bit float or 16-bit PCM, either through a
+ * FileChannel or into memory-mapped regions of the file.
+ * If writing fails then write() returns -1 and getError() has the cause.
+ */
+public class WavFileAudioOutput extends AudioOutput {
+    public static final int ENCODING_PCM_16BIT = 1; // WAVE_FORMAT_PCM
+    public static final int ENCODING_PCM_FLOAT = 3; // WAVE_FORMAT_IEEE_FLOAT
+
+    private static final int HEADER_SIZE = 44;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int MAP_SIZE = 4 * 1024 * 1024;
+
+    private final File mFile;
+    private final int mEncoding;
+    private final boolean mMemoryMapped;
+    private final int mBytesPerSample;
+    private RandomAccessFile mRandomAccessFile;
+    private FileChannel mChannel;
+    private ByteBuffer mBuffer;
+    private long mBufferPosition; // file position of the start of mBuffer
+    private long mDataBytes;
+    private int mFrameRate;
+    private IOException mError;
+
+    /**
+     * Write 32-bit float samples through a FileChannel.
+     */
+    public WavFileAudioOutput(File file) {
+        this(file, ENCODING_PCM_FLOAT, false);
+    }
+
+    /**
+     * @param file
+     * @param encoding ENCODING_PCM_FLOAT or ENCODING_PCM_16BIT
+     * @param memoryMapped true to write into memory-mapped regions of the file
+     */
+    public WavFileAudioOutput(File file, int encoding, boolean memoryMapped) {
+        if (encoding != ENCODING_PCM_FLOAT && encoding != ENCODING_PCM_16BIT) {
+            throw new IllegalArgumentException("encoding = " + encoding);
+        }
+        mFile = file;
+        mEncoding = encoding;
+        mMemoryMapped = memoryMapped;
+        mBytesPerSample = (encoding == ENCODING_PCM_FLOAT) ? 4 : 2;
+    }
+
+    /**
+     * Create the file and leave room for the header.
+     */
+    @Override
+    public void start(int frameRate) {
+        stop();
+        mFrameRate = frameRate;
+        mError = null;
+        mDataBytes = 0;
+        try {
+            mRandomAccessFile = new RandomAccessFile(mFile, "rw");
+            mRandomAccessFile.setLength(0);
+            mChannel = mRandomAccessFile.getChannel();
+            mBufferPosition = HEADER_SIZE;
+            if (mMemoryMapped) {
+                mapBuffer();
+            } else {
+                mBuffer = ByteBuffer.allocateDirect(BUFFER_SIZE)
+                        .order(ByteOrder.LITTLE_ENDIAN);
+            }
+        } catch (IOException e) {
+            mError = e;
+        }
+    }
+
+    @Override
+    public int write(float[] buffer, int offset, int length) {
+        if (mError != null || mChannel == null) {
+            return -1;
+        }
+        try {
+            for (int i = offset; i < offset + length; i++) {
+                if (mBuffer.remaining() < mBytesPerSample) {
+                    flushBuffer();
+                }
+                float sample = buffer[i];
+                if (mEncoding == ENCODING_PCM_FLOAT) {
+                    mBuffer.putFloat(sample);
+                } else {
+                    // Clip before converting so loud mixes do not wrap.
+                    if (sample > 1.0f) {
+                        sample = 1.0f;
+                    } else if (sample < -1.0f) {
+                        sample = -1.0f;
+                    }
+                    mBuffer.putShort((short) (sample * Short.MAX_VALUE));
+                }
+            }
+        } catch (IOException e) {
+            mError = e;
+            return -1;
+        }
+        mDataBytes += (long) length * mBytesPerSample;
+        return length;
+    }
+
+    private void flushBuffer() throws IOException {
+        int used = mBuffer.position();
+        if (mMemoryMapped) {
+            mBufferPosition += used;
+            mapBuffer();
+        } else {
+            mBuffer.flip();
+            while (mBuffer.hasRemaining()) {
+                mChannel.write(mBuffer, mBufferPosition + mBuffer.position());
+            }
+            mBufferPosition += used;
+            mBuffer.clear();
+        }
+    }
+
+    private void mapBuffer() throws IOException {
+        mBuffer = mChannel.map(FileChannel.MapMode.READ_WRITE, mBufferPosition,
+                MAP_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Write the remaining samples and the header then close the file.
+     */
+    @Override
+    public void stop() {
+        if (mChannel == null) {
+            return;
+        }
+        try {
+            if (mError == null) {
+                if (mMemoryMapped) {
+                    mBuffer = null;
+                    mChannel.truncate(HEADER_SIZE + mDataBytes);
+                } else {
+                    flushBuffer();
+                }
+                writeHeader();
+            }
+        } catch (IOException e) {
+            mError = e;
+        } finally {
+            try {
+                mRandomAccessFile.close();
+            } catch (IOException e) {
+                if (mError == null) {
+                    mError = e;
+                }
+            }
+            mChannel = null;
+            mRandomAccessFile = null;
+            mBuffer = null;
+        }
+    }
+
+    private void writeHeader() throws IOException {
+        int bytesPerFrame = SAMPLES_PER_FRAME * mBytesPerSample;
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        header.put((byte) 'R').put((byte) 'I').put((byte) 'F').put((byte) 'F');
+        header.putInt((int) (HEADER_SIZE - 8 + mDataBytes));
+        header.put((byte) 'W').put((byte) 'A').put((byte) 'V').put((byte) 'E');
+        header.put((byte) 'f').put((byte) 'm').put((byte) 't').put((byte) ' ');
+        header.putInt(16);
+        header.putShort((short) mEncoding);
+        header.putShort((short) SAMPLES_PER_FRAME);
+        header.putInt(mFrameRate);
+        header.putInt(mFrameRate * bytesPerFrame);
+        header.putShort((short) bytesPerFrame);
+        header.putShort((short) (8 * mBytesPerSample));
+        header.put((byte) 'd').put((byte) 'a').put((byte) 't').put((byte) 'a');
+        header.putInt((int) mDataBytes);
+        header.flip();
+        while (header.hasRemaining()) {
+            mChannel.write(header, header.position());
+        }
+    }
+
+    @Override
+    public int getFrameRate() {
+        return mFrameRate;
+    }
+
+    /**
+     * @return number of frames written since start()
+     */
+    public long getFramesWritten() {
+        return mDataBytes / (SAMPLES_PER_FRAME * mBytesPerSample);
+    }
+
+    /**
+     * @return the exception that stopped the output or null
+     */
+    public IOException getError() {
+        return mError;
+    }
+}
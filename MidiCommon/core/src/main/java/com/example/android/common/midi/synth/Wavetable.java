@@ -0,0 +1,244 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.example.android.common.midi.synth;
+
+/**
+ * Immutable single cycle waveform stored as a set of band limited tables,
+ * one per octave, like a mip-map.
+ *
+ * Level 0 holds up to MAX_HARMONICS harmonics and is used for the lowest
+ * notes. Each level above it holds half as many harmonics as the level
+ * below, so the top level is a pure sine. An oscillator uses the lowest
+ * level whose harmonics all stay below the Nyquist frequency.
+ *
+ * The tables are computed once and can be shared by any number of voices.
+ * Each table has one extra sample at the end, equal to the first, so
+ * linear interpolation never needs to wrap.
+ */
+public class Wavetable {
+    public static final int TABLE_SIZE = 2048;
+    public static final int MAX_HARMONICS = TABLE_SIZE / 4;
+    public static final int NUM_LEVELS =
+            Integer.numberOfTrailingZeros(MAX_HARMONICS) + 1;
+
+    private final float[][] mLevels;
+
+    private Wavetable(float[][] levels) {
+        mLevels = levels;
+    }
+
+    // Holder classes so each standard table is only computed when first used.
+    private static class SineHolder {
+        static final Wavetable TABLE = fromHarmonics(new float[] { 1.0f });
+    }
+
+    private static class SawHolder {
+        static final Wavetable TABLE = fromHarmonics(sawHarmonics());
+    }
+
+    private static class SquareHolder {
+        static final Wavetable TABLE = fromHarmonics(squareHarmonics());
+    }
+
+    private static class TriangleHolder {
+        static final Wavetable TABLE = fromHarmonics(triangleHarmonics());
+    }
+
+    public static Wavetable getSine() {
+        return SineHolder.TABLE;
+    }
+
+    public static Wavetable getSaw() {
+        return SawHolder.TABLE;
+    }
+
+    public static Wavetable getSquare() {
+        return SquareHolder.TABLE;
+    }
+
+    public static Wavetable getTriangle() {
+        return TriangleHolder.TABLE;
+    }
+
+    private static float[] sawHarmonics() {
+        float[] amplitudes = new float[MAX_HARMONICS];
+        for (int h = 1; h <= MAX_HARMONICS; h++) {
+            amplitudes[h - 1] = ((h & 1) == 1 ? 1.0f : -1.0f) / h;
+        }
+        return amplitudes;
+    }
+
+    private static float[] squareHarmonics() {
+        float[] amplitudes = new float[MAX_HARMONICS];
+        for (int h = 1; h <= MAX_HARMONICS; h += 2) {
+            amplitudes[h - 1] = 1.0f / h;
+        }
+        return amplitudes;
+    }
+
+    private static float[] triangleHarmonics() {
+        float[] amplitudes = new float[MAX_HARMONICS];
+        for (int h = 1; h <= MAX_HARMONICS; h += 2) {
+            amplitudes[h - 1] = (((h >> 1) & 1) == 0 ? 1.0f : -1.0f) / (h * h);
+        }
+        return amplitudes;
+    }
+
+    /**
+     * Build a waveform from the amplitudes of its sine harmonics.
+     * The result is scaled so that its peak is 1.0.
+     *
+     * @param amplitudes amplitude of harmonic n + 1 at index n, extra
+     *     harmonics beyond MAX_HARMONICS are ignored
+     * @return new table
+     */
+    public static Wavetable fromHarmonics(float[] amplitudes) {
+        int numHarmonics = Math.min(amplitudes.length, MAX_HARMONICS);
+        double[] sine = createSine();
+        // Build from the top level down, adding the harmonics that each
+        // lower level can hold to a copy of the level above it.
+        float[][] levels = new float[NUM_LEVELS][];
+        double[] sum = new double[TABLE_SIZE];
+        int harmonic = 1;
+        for (int level = NUM_LEVELS - 1; level >= 0; level--) {
+            int lastHarmonic = Math.min(numHarmonics, MAX_HARMONICS >> level);
+            for (; harmonic <= lastHarmonic; harmonic++) {
+                float amplitude = amplitudes[harmonic - 1];
+                if (amplitude != 0.0f) {
+                    for (int i = 0; i < TABLE_SIZE; i++) {
+                        sum[i] += amplitude
+                                * sine[(harmonic * i) & (TABLE_SIZE - 1)];
+                    }
+                }
+            }
+            float[] table = new float[TABLE_SIZE + 1];
+            for (int i = 0; i < TABLE_SIZE; i++) {
+                table[i] = (float) sum[i];
+            }
+            levels[level] = table;
+        }
+        normalize(levels);
+        return new Wavetable(levels);
+    }
+
+    /**
+     * Build a band limited waveform from one cycle of samples, for example
+     * a cycle taken from a recording.
+     *
+     * @param cycle samples of one cycle, any length of at least two
+     * @return new table
+     */
+    public static Wavetable fromCycle(float[] cycle) {
+        // Resample onto the table with linear interpolation.
+        double[] samples = new double[TABLE_SIZE];
+        for (int i = 0; i < TABLE_SIZE; i++) {
+            double position = (double) i * cycle.length / TABLE_SIZE;
+            int index = (int) position;
+            double fraction = position - index;
+            float next = cycle[(index + 1) % cycle.length];
+            samples[i] = cycle[index] + fraction * (next - cycle[index]);
+        }
+        // Measure each harmonic, as a sine and cosine pair.
+        double[] sine = createSine();
+        int quarter = TABLE_SIZE / 4;
+        double[] sines = new double[MAX_HARMONICS];
+        double[] cosines = new double[MAX_HARMONICS];
+        for (int h = 1; h <= MAX_HARMONICS; h++) {
+            double s = 0.0;
+            double c = 0.0;
+            for (int i = 0; i < TABLE_SIZE; i++) {
+                int index = h * i;
+                s += samples[i] * sine[index & (TABLE_SIZE - 1)];
+                c += samples[i] * sine[(index + quarter) & (TABLE_SIZE - 1)];
+            }
+            sines[h - 1] = 2.0 * s / TABLE_SIZE;
+            cosines[h - 1] = 2.0 * c / TABLE_SIZE;
+        }
+        float[][] levels = new float[NUM_LEVELS][];
+        for (int level = 0; level < NUM_LEVELS; level++) {
+            int lastHarmonic = MAX_HARMONICS >> level;
+            float[] table = new float[TABLE_SIZE + 1];
+            for (int i = 0; i < TABLE_SIZE; i++) {
+                double sum = 0.0;
+                for (int h = 1; h <= lastHarmonic; h++) {
+                    int index = h * i;
+                    sum += sines[h - 1] * sine[index & (TABLE_SIZE - 1)]
+                            + cosines[h - 1]
+                            * sine[(index + quarter) & (TABLE_SIZE - 1)];
+                }
+                table[i] = (float) sum;
+            }
+            levels[level] = table;
+        }
+        normalize(levels);
+        return new Wavetable(levels);
+    }
+
+    // One cycle of a sine wave the size of the table.
+    private static double[] createSine() {
+        double[] sine = new double[TABLE_SIZE];
+        for (int i = 0; i < TABLE_SIZE; i++) {
+            sine[i] = Math.sin(2.0 * Math.PI * i / TABLE_SIZE);
+        }
+        return sine;
+    }
+
+    // Scale every level by the same amount so that switching levels does not
+    // change the loudness, and set the guard samples.
+    private static void normalize(float[][] levels) {
+        float peak = 0.0f;
+        for (float[] table : levels) {
+            for (int i = 0; i < TABLE_SIZE; i++) {
+                peak = Math.max(peak, Math.abs(table[i]));
+            }
+        }
+        float scaler = (peak > 0.0f) ? (1.0f / peak) : 1.0f;
+        for (float[] table : levels) {
+            for (int i = 0; i < TABLE_SIZE; i++) {
+                table[i] *= scaler;
+            }
+            table[TABLE_SIZE] = table[0];
+        }
+    }
+
+    /**
+     * Choose the table for a frequency.
+     *
+     * @param cyclesPerFrame frequency divided by the frame rate
+     * @return level index
+     */
+    public static int selectLevel(float cyclesPerFrame) {
+        float highest = Math.abs(cyclesPerFrame) * MAX_HARMONICS;
+        int level = 0;
+        while (level < NUM_LEVELS - 1 && highest >= 0.5f) {
+            highest *= 0.5f;
+            level++;
+        }
+        return level;
+    }
+
+    /**
+     * The table must not be modified.
+     *
+     * @param level from selectLevel()
+     * @return TABLE_SIZE + 1 samples
+     */
+    public float[] getTable(int level) {
+        return mLevels[level];
+    }
+}
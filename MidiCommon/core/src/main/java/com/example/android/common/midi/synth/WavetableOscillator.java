@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.example.android.common.midi.synth;
+
+/**
+ * Oscillator that reads a shared Wavetable with linear interpolation.
+ * The band limited table is chosen when the frequency changes, so each
+ * frame costs one table read and one interpolation.
+ */
+public class WavetableOscillator extends SawOscillator {
+    private static final float HALF_TABLE_SIZE = Wavetable.TABLE_SIZE * 0.5f;
+
+    private Wavetable mWavetable;
+    private float[] mTable;
+
+    public WavetableOscillator() {
+        this(Wavetable.getSine());
+    }
+
+    public WavetableOscillator(Wavetable wavetable) {
+        setWavetable(wavetable);
+    }
+
+    public void setWavetable(Wavetable wavetable) {
+        mWavetable = wavetable;
+        onPhaseIncrementChanged();
+    }
+
+    public Wavetable getWavetable() {
+        return mWavetable;
+    }
+
+    @Override
+    protected void onPhaseIncrementChanged() {
+        if (mWavetable != null) {
+            // The phase increment is for a cycle of 2.0.
+            int level = Wavetable.selectLevel(getPhaseIncrement() * 0.5f);
+            mTable = mWavetable.getTable(level);
+        }
+    }
+
+    // Convert a phase from -1.0 to +1.0 to a position in the table.
+    private static float lookup(float[] table, float phase) {
+        float position = (phase + 1.0f) * HALF_TABLE_SIZE;
+        int index = (int) position;
+        if (index >= Wavetable.TABLE_SIZE) {
+            index = Wavetable.TABLE_SIZE - 1;
+        }
+        float fraction = position - index;
+        float sample = table[index];
+        return sample + (fraction * (table[index + 1] - sample));
+    }
+
+    @Override
+    public float render() {
+        return lookup(mTable, incrementWrapPhase()) * getAmplitude();
+    }
+
+    @Override
+    public void renderBlock(float[] output, int offset, int numFrames) {
+        renderPhaseBlock(output, offset, numFrames);
+        float[] table = mTable;
+        float amplitude = getAmplitude();
+        for (int i = offset; i < offset + numFrames; i++) {
+            output[i] = lookup(table, output[i]) * amplitude;
+        }
+    }
+}
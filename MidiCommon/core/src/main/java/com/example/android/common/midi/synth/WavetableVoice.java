@@ -14,22 +14,21 @@
  * limitations under the License.
  */
 
-package com.example.android.common.midi.synth;
 
-public abstract class SynthUnit {
+package com.example.android.common.midi.synth;
 
-    private static final double CONCERT_A_PITCH = 69.0;
-    private static final double CONCERT_A_FREQUENCY = 440.0;
+/**
+ * Enveloped voice that plays a shared Wavetable.
+ */
+public class WavetableVoice extends SawVoice {
 
-    /**
-     * @param pitch
-     *            MIDI pitch in semitones
-     * @return frequency
-     */
-    public static double pitchToFrequency(double pitch) {
-        double semitones = pitch - CONCERT_A_PITCH;
-        return CONCERT_A_FREQUENCY * Math.pow(2.0, semitones / 12.0);
+    public WavetableVoice(Wavetable wavetable) {
+        super();
+        ((WavetableOscillator) getOscillator()).setWavetable(wavetable);
     }
 
-    public abstract float render();
+    @Override
+    protected SawOscillator createOscillator() {
+        return new WavetableOscillator();
+    }
 }
@@ -0,0 +1,180 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.common.midi;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.example.android.common.midi.EventScheduler.SchedulableEvent;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+public class TimingWheelEventBufferTest {
+    private static final long MSEC = 1000000L;
+    private static final long SECOND = 1000 * MSEC;
+
+    private static class TestEvent extends SchedulableEvent {
+        final int id;
+
+        TestEvent(long timestamp, int id) {
+            super(timestamp);
+            this.id = id;
+        }
+    }
+
+    private static int removeId(EventBuffer buffer, long time) {
+        SchedulableEvent event = buffer.removeNextEvent(time);
+        return (event == null) ? -1 : ((TestEvent) event).id;
+    }
+
+    @Test
+    public void sameTimestampKeepsOrder() {
+        TimingWheelEventBuffer buffer = new TimingWheelEventBuffer();
+        long base = System.nanoTime();
+        long[] times = {base + 3 * MSEC, base + MSEC, base + 2 * MSEC};
+        for (int i = 0; i < 30; i++) {
+            buffer.add(new TestEvent(times[i % times.length], i));
+        }
+        long end = base + 3 * MSEC;
+        for (int t = 1; t <= 3; t++) {
+            // Events with the same time come out in the order they were added.
+            int first = (t == 1) ? 1 : (t == 2) ? 2 : 0;
+            for (int i = first; i < 30; i += 3) {
+                assertEquals(i, removeId(buffer, end));
+            }
+        }
+        assertNull(buffer.removeNextEvent(end));
+        assertEquals(Long.MAX_VALUE, buffer.getNextEventTime());
+    }
+
+    @Test
+    public void farFutureEventsUseOverflow() {
+        // With one nanosecond ticks the wheel only covers about 4 seconds.
+        TimingWheelEventBuffer buffer = new TimingWheelEventBuffer(16, 1);
+        long base = System.nanoTime();
+        buffer.add(new TestEvent(base + 10 * SECOND, 0));
+        buffer.add(new TestEvent(base + 5 * SECOND, 1));
+        buffer.add(new TestEvent(base + MSEC, 2));
+        buffer.add(new TestEvent(base + 10 * SECOND, 3));
+        assertTrue(buffer.getNextEventTime() <= base + MSEC);
+        assertEquals(-1, removeId(buffer, base));
+        assertEquals(2, removeId(buffer, base + 4 * SECOND));
+        assertEquals(-1, removeId(buffer, base + 4 * SECOND));
+        assertTrue(buffer.getNextEventTime() <= base + 5 * SECOND);
+        assertEquals(-1, removeId(buffer, base + 5 * SECOND - 1));
+        assertEquals(1, removeId(buffer, base + 5 * SECOND));
+        assertTrue(buffer.getNextEventTime() <= base + 10 * SECOND);
+        assertEquals(-1, removeId(buffer, base + 10 * SECOND - 1));
+        assertEquals(0, removeId(buffer, base + 20 * SECOND));
+        assertEquals(3, removeId(buffer, base + 20 * SECOND));
+        assertEquals(Long.MAX_VALUE, buffer.getNextEventTime());
+    }
+
+    @Test
+    public void lateEventsAreSortedIntoReadyEvents() {
+        TimingWheelEventBuffer buffer = new TimingWheelEventBuffer();
+        long base = System.nanoTime();
+        buffer.add(new TestEvent(base + 8 * MSEC, 0));
+        buffer.add(new TestEvent(base + 20 * MSEC, 1));
+        assertTrue(buffer.getNextEventTime() <= base + 8 * MSEC);
+        assertEquals(-1, removeId(buffer, base + 7 * MSEC));
+        SchedulableEvent first = buffer.removeNextEvent(base + 10 * MSEC);
+        assertEquals(0, ((TestEvent) first).id);
+        // The reader is now at 10 msec, so these arrive late.
+        buffer.add(new TestEvent(base + 5 * MSEC, 2));
+        buffer.add(new TestEvent(base + 9 * MSEC, 3));
+        buffer.add(new TestEvent(base + MSEC, 4));
+        buffer.add(new TestEvent(base + 9 * MSEC, 5));
+        assertEquals(base + MSEC, buffer.getNextEventTime());
+        assertEquals(4, removeId(buffer, base + 10 * MSEC));
+        // More late events are merged with the ones that are ready.
+        buffer.add(new TestEvent(base + 6 * MSEC, 6));
+        buffer.add(new TestEvent(base + 2 * MSEC, 7));
+        assertEquals(7, removeId(buffer, base + 10 * MSEC));
+        assertEquals(2, removeId(buffer, base + 10 * MSEC));
+        assertEquals(6, removeId(buffer, base + 10 * MSEC));
+        assertEquals(3, removeId(buffer, base + 10 * MSEC));
+        assertEquals(5, removeId(buffer, base + 10 * MSEC));
+        assertEquals(-1, removeId(buffer, base + 10 * MSEC));
+        assertEquals(1, removeId(buffer, base + 20 * MSEC));
+    }
+
+    @Test
+    public void randomOrderMatchesTreeMap() {
+        // Offsets up to 2^52 nanoseconds overflow the wheel at both sizes.
+        long[] tickSizes = {1 << 10, TimingWheelEventBuffer.DEFAULT_TICK_NANOS};
+        Random random = new Random(1234);
+        for (long tickNanos : tickSizes) {
+            TimingWheelEventBuffer wheel = new TimingWheelEventBuffer(64,
+                    tickNanos);
+            TreeMapEventBuffer tree = new TreeMapEventBuffer();
+            long now = System.nanoTime();
+            // Ranges of offsets from now, including late and overflow times.
+            long[] ranges = {10 * MSEC, 500 * MSEC, 20 * SECOND, 1L << 52};
+            ArrayList<SchedulableEvent> wheelBatch = new ArrayList<SchedulableEvent>();
+            int nextId = 0;
+            for (int step = 0; step < 20000; step++) {
+                int numEvents = random.nextInt(4);
+                wheelBatch.clear();
+                for (int i = 0; i < numEvents; i++) {
+                    long range = ranges[random.nextInt(ranges.length)];
+                    long offset = (long) (random.nextDouble() * range)
+                            - 5 * MSEC;
+                    // Share some timestamps to check the order of ties.
+                    if (random.nextInt(4) == 0) {
+                        offset -= offset % MSEC;
+                    }
+                    wheelBatch.add(new TestEvent(now + offset, nextId));
+                    tree.add(new TestEvent(now + offset, nextId));
+                    nextId++;
+                }
+                if (random.nextBoolean()) {
+                    wheel.addAll(wheelBatch.toArray(new SchedulableEvent[0]),
+                            wheelBatch.size());
+                } else {
+                    for (SchedulableEvent event : wheelBatch) {
+                        wheel.add(event);
+                    }
+                }
+
+                long treeNext = tree.getNextEventTime();
+                long wheelNext = wheel.getNextEventTime();
+                assertTrue("lower bound", wheelNext <= treeNext);
+                assertEquals(treeNext == Long.MAX_VALUE,
+                        wheelNext == Long.MAX_VALUE);
+
+                if (random.nextInt(1000) == 0) {
+                    now += random.nextDouble() * (1L << 53);
+                } else {
+                    now += random.nextInt((int) (2 * MSEC));
+                }
+                while (true) {
+                    int expected = removeId(tree, now);
+                    assertEquals("tick " + tickNanos + " step " + step,
+                            expected, removeId(wheel, now));
+                    if (expected < 0) {
+                        break;
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.common.midi.synth;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Drive the tuner with a FakeAudioSink, the same way SimpleAudioOutput does
+ * in adaptive mode.
+ */
+public class AudioBufferTunerTest {
+    private static final int FRAME_RATE = 48000;
+    private static final int FRAMES_PER_BURST = 96;
+    private static final int CAPACITY_IN_FRAMES = 64 * FRAMES_PER_BURST;
+    private static final int FRAMES_PER_WRITE = 192;
+    private static final long NANOS_PER_WRITE =
+            FRAMES_PER_WRITE * 1000000000L / FRAME_RATE;
+    private static final long NANOS_PER_SECOND = 1000000000L;
+
+    private final float[] mBuffer =
+            new float[FRAMES_PER_WRITE * AudioOutput.SAMPLES_PER_FRAME];
+
+    private static FakeAudioSink createSink(long seed) {
+        FakeAudioSink sink = new FakeAudioSink(FRAMES_PER_BURST,
+                CAPACITY_IN_FRAMES, seed);
+        sink.setRenderNanos(NANOS_PER_WRITE / 10);
+        return sink;
+    }
+
+    private static AudioBufferTuner start(FakeAudioSink sink,
+            double glitchesPerHour) {
+        AudioBufferTuner tuner = new AudioBufferTuner(sink);
+        tuner.setTargetGlitchRate(glitchesPerHour);
+        sink.start(FRAME_RATE, true);
+        tuner.reset(FRAME_RATE);
+        return tuner;
+    }
+
+    // Write until the sink clock has advanced by the duration.
+    private void run(FakeAudioSink sink, AudioBufferTuner tuner,
+            long durationNanos) {
+        long endTime = sink.nanoTime() + durationNanos;
+        while (sink.nanoTime() < endTime) {
+            int result = sink.write(mBuffer, 0, mBuffer.length);
+            tuner.onWrite(result / AudioOutput.SAMPLES_PER_FRAME,
+                    sink.getWriteNanos(), sink.nanoTime());
+        }
+    }
+
+    @Test
+    public void startsAtTwoWrites() {
+        FakeAudioSink sink = createSink(1);
+        AudioBufferTuner tuner = start(sink, 60.0);
+        assertEquals(CAPACITY_IN_FRAMES, tuner.getBufferSizeInFrames());
+        run(sink, tuner, NANOS_PER_WRITE);
+        assertEquals(2 * FRAMES_PER_WRITE, tuner.getBufferSizeInFrames());
+        assertEquals(2 * FRAMES_PER_WRITE, sink.getBufferSizeInFrames());
+    }
+
+    @Test
+    public void staysSmallWithoutUnderruns() {
+        FakeAudioSink sink = createSink(1);
+        AudioBufferTuner tuner = start(sink, 3600.0);
+        run(sink, tuner, 10 * NANOS_PER_SECOND);
+        assertEquals(0, sink.getUnderrunCount());
+        assertEquals(0, tuner.getGrowCount());
+        assertEquals(2 * FRAMES_PER_WRITE, tuner.getBufferSizeInFrames());
+    }
+
+    @Test
+    public void growsAfterUnderruns() {
+        FakeAudioSink sink = createSink(2);
+        // Stalls of three writes drain a buffer of two writes.
+        sink.setStalls(0.01, 3 * NANOS_PER_WRITE);
+        AudioBufferTuner tuner = start(sink, 60.0);
+        run(sink, tuner, 10 * NANOS_PER_SECOND);
+        assertTrue(sink.getUnderrunCount() > 0);
+        assertTrue(tuner.getGrowCount() > 0);
+        assertEquals(0, tuner.getShrinkCount());
+        int size = tuner.getBufferSizeInFrames();
+        assertTrue("size = " + size, size > 2 * FRAMES_PER_WRITE);
+        // Once large enough the underruns stop.
+        int underruns = sink.getUnderrunCount();
+        run(sink, tuner, 10 * NANOS_PER_SECOND);
+        assertEquals(underruns, sink.getUnderrunCount());
+        assertEquals(size, tuner.getBufferSizeInFrames());
+    }
+
+    @Test
+    public void shrinksAfterQuietPeriodWithSlack() {
+        FakeAudioSink sink = createSink(3);
+        sink.setStalls(0.01, 3 * NANOS_PER_WRITE);
+        // One glitch per second is tolerated, so a quiet period is a second.
+        AudioBufferTuner tuner = start(sink, 3600.0);
+        run(sink, tuner, 5 * NANOS_PER_SECOND);
+        int grown = tuner.getBufferSizeInFrames();
+        assertTrue("size = " + grown, grown > 2 * FRAMES_PER_WRITE);
+
+        sink.setStalls(0.0, 0);
+        int underruns = sink.getUnderrunCount();
+        run(sink, tuner, 30 * NANOS_PER_SECOND);
+        assertEquals(underruns, sink.getUnderrunCount());
+        assertTrue(tuner.getShrinkCount() > 0);
+        assertEquals(2 * FRAMES_PER_WRITE, tuner.getBufferSizeInFrames());
+    }
+
+    @Test
+    public void doesNotShrinkWithoutSlack() {
+        FakeAudioSink sink = createSink(4);
+        sink.setStalls(0.01, 3 * NANOS_PER_WRITE);
+        AudioBufferTuner tuner = start(sink, 3600.0);
+        run(sink, tuner, 5 * NANOS_PER_SECOND);
+        int grown = tuner.getBufferSizeInFrames();
+        assertTrue("size = " + grown, grown > 2 * FRAMES_PER_WRITE);
+
+        // The producer barely keeps up, so writes hardly ever wait.
+        sink.setStalls(0.0, 0);
+        sink.setRenderNanos(NANOS_PER_WRITE * 19 / 20);
+        run(sink, tuner, 30 * NANOS_PER_SECOND);
+        assertEquals(0, tuner.getShrinkCount());
+        assertEquals(grown, tuner.getBufferSizeInFrames());
+    }
+
+    @Test
+    public void sameSeedGivesSameResult() {
+        int[] sizes = new int[2];
+        int[] underruns = new int[2];
+        for (int i = 0; i < 2; i++) {
+            FakeAudioSink sink = createSink(5);
+            sink.setStalls(0.02, 4 * NANOS_PER_WRITE);
+            AudioBufferTuner tuner = start(sink, 600.0);
+            run(sink, tuner, 20 * NANOS_PER_SECOND);
+            sizes[i] = tuner.getBufferSizeInFrames();
+            underruns[i] = sink.getUnderrunCount();
+        }
+        assertEquals(sizes[0], sizes[1]);
+        assertEquals(underruns[0], underruns[1]);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsZeroGlitchRate() {
+        new AudioBufferTuner(createSink(6)).setTargetGlitchRate(0.0);
+    }
+}
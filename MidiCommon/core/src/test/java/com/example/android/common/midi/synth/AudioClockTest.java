@@ -0,0 +1,182 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.common.midi.synth;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+public class AudioClockTest {
+    private static final int FRAME_RATE = 48000;
+    private static final int FRAMES_PER_SAMPLE = 960; // 20 msec
+
+    /**
+     * Fake audio output clock that presents frames at a fixed drift from
+     * the nominal rate, with optional jitter on the reported times.
+     */
+    private static class FakeClock {
+        private final long mStartTime;
+        private final double mNanosPerFrame;
+        private final Random mRandom = new Random(1234);
+        private final long mJitterNanos;
+
+        FakeClock(long startTime, double driftPpm, long jitterNanos) {
+            mStartTime = startTime;
+            mNanosPerFrame = 1.0e9 / (FRAME_RATE * (1.0 + driftPpm / 1.0e6));
+            mJitterNanos = jitterNanos;
+        }
+
+        long getTime(long frame) {
+            return mStartTime + Math.round(frame * mNanosPerFrame);
+        }
+
+        long getJitteredTime(long frame) {
+            long jitter = 0;
+            if (mJitterNanos > 0) {
+                jitter = (long) ((mRandom.nextDouble() * 2.0 - 1.0)
+                        * mJitterNanos);
+            }
+            return getTime(frame) + jitter;
+        }
+    }
+
+    private static void feed(AudioClock clock, FakeClock fake,
+            long firstFrame, int count) {
+        for (int i = 0; i < count; i++) {
+            long frame = firstFrame + (long) i * FRAMES_PER_SAMPLE;
+            assertTrue(clock.addTimestamp(frame, fake.getJitteredTime(frame)));
+        }
+    }
+
+    @Test
+    public void invalidUntilFirstSample() {
+        AudioClock clock = new AudioClock(FRAME_RATE);
+        assertFalse(clock.isValid());
+        assertTrue(clock.addTimestamp(100, 5000000L));
+        assertTrue(clock.isValid());
+        assertEquals(5000000L, clock.framesToNanos(100));
+        // Uses the nominal rate with only one sample.
+        assertEquals(5000000L + 1000000000L, clock.framesToNanos(100 + FRAME_RATE));
+    }
+
+    @Test
+    public void ignoresFramesThatDoNotAdvance() {
+        AudioClock clock = new AudioClock(FRAME_RATE);
+        assertTrue(clock.addTimestamp(1000, 1000000L));
+        assertFalse(clock.addTimestamp(1000, 2000000L));
+        assertFalse(clock.addTimestamp(999, 3000000L));
+        assertEquals(1, clock.getSampleCount());
+    }
+
+    @Test
+    public void leastSquaresFitFollowsDrift() {
+        FakeClock fake = new FakeClock(7000000000L, 150.0, 0);
+        AudioClock clock = new AudioClock(FRAME_RATE);
+        feed(clock, fake, 0, 40);
+        assertEquals(150.0, clock.getDriftPpm(), 0.5);
+        assertEquals(FRAME_RATE * 1.00015, clock.getFrameRate(), 0.05);
+        // Predicts frames well past the samples.
+        long frame = 100 * FRAME_RATE;
+        assertEquals(fake.getTime(frame), clock.framesToNanos(frame), 20000.0);
+        long time = fake.getTime(frame);
+        assertEquals(frame, clock.nanosToFrames(time), 1.0);
+        assertEquals(AudioClock.DEFAULT_WINDOW_SIZE, clock.getSampleCount());
+    }
+
+    @Test
+    public void leastSquaresFitAveragesJitter() {
+        // 50 usec of jitter is much larger than the 1.6 usec of drift
+        // between samples.
+        FakeClock fake = new FakeClock(0, -80.0, 50000L);
+        AudioClock clock = new AudioClock(FRAME_RATE, 64);
+        feed(clock, fake, 0, 200);
+        assertEquals(-80.0, clock.getDriftPpm(), 25.0);
+        long frame = 200L * FRAMES_PER_SAMPLE;
+        assertEquals(fake.getTime(frame), clock.framesToNanos(frame), 200000.0);
+    }
+
+    @Test
+    public void clampsDriftToMaximum() {
+        FakeClock fast = new FakeClock(0, 5000.0, 0);
+        AudioClock clock = new AudioClock(FRAME_RATE);
+        feed(clock, fast, 0, 6);
+        double maxFast = (1.0 / (1.0 - AudioClock.MAX_DRIFT_PPM / 1.0e6) - 1.0)
+                * 1.0e6;
+        assertEquals(maxFast, clock.getDriftPpm(), 0.01);
+
+        FakeClock slow = new FakeClock(0, -5000.0, 0);
+        clock.reset();
+        feed(clock, slow, 0, 6);
+        double maxSlow = (1.0 / (1.0 + AudioClock.MAX_DRIFT_PPM / 1.0e6) - 1.0)
+                * 1.0e6;
+        assertEquals(maxSlow, clock.getDriftPpm(), 0.01);
+    }
+
+    @Test
+    public void ignoresSingleOutlier() {
+        FakeClock fake = new FakeClock(1000000000L, 0.0, 0);
+        AudioClock clock = new AudioClock(FRAME_RATE);
+        feed(clock, fake, 0, 10);
+        long frame = 10L * FRAMES_PER_SAMPLE;
+        long predicted = clock.framesToNanos(frame);
+        // A late timestamp, for example from a preempted thread.
+        assertFalse(clock.addTimestamp(frame, fake.getTime(frame) + 10000000L));
+        assertEquals(predicted, clock.framesToNanos(frame));
+        assertEquals(10, clock.getSampleCount());
+        // Samples on the line are used again.
+        feed(clock, fake, frame + FRAMES_PER_SAMPLE, 1);
+        assertEquals(11, clock.getSampleCount());
+    }
+
+    @Test
+    public void restartsAfterDiscontinuity() {
+        FakeClock fake = new FakeClock(1000000000L, 0.0, 0);
+        AudioClock clock = new AudioClock(FRAME_RATE);
+        feed(clock, fake, 0, 10);
+        // The output clock jumps 50 msec, for example after a route change.
+        FakeClock jumped = new FakeClock(1050000000L, 0.0, 0);
+        long frame = 10L * FRAMES_PER_SAMPLE;
+        assertFalse(clock.addTimestamp(frame, jumped.getTime(frame)));
+        frame += FRAMES_PER_SAMPLE;
+        assertFalse(clock.addTimestamp(frame, jumped.getTime(frame)));
+        frame += FRAMES_PER_SAMPLE;
+        // Several in a row means the clock really jumped.
+        assertTrue(clock.addTimestamp(frame, jumped.getTime(frame)));
+        assertEquals(1, clock.getSampleCount());
+        assertEquals(jumped.getTime(frame), clock.framesToNanos(frame));
+        feed(clock, jumped, frame + FRAMES_PER_SAMPLE, 5);
+        long later = frame + 100L * FRAMES_PER_SAMPLE;
+        assertEquals(jumped.getTime(later), clock.framesToNanos(later), 1000.0);
+    }
+
+    @Test
+    public void resetForgetsSamples() {
+        FakeClock fake = new FakeClock(0, 300.0, 0);
+        AudioClock clock = new AudioClock(FRAME_RATE);
+        feed(clock, fake, 0, 10);
+        clock.reset();
+        assertFalse(clock.isValid());
+        assertEquals(0, clock.getSampleCount());
+        assertEquals(0.0, clock.getDriftPpm(), 0.0);
+        // Frame positions can start again from zero.
+        assertTrue(clock.addTimestamp(0, 5000L));
+    }
+}
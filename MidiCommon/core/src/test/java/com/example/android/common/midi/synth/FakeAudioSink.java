@@ -0,0 +1,198 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.example.android.common.midi.synth;
+
+import java.util.Random;
+
+/**
+ * AudioSink that simulates a device so buffer tuning can be tested without
+ * real time or audio hardware.
+ *
+ * Time only advances inside write(). Each write first advances the clock by
+ * the time the producer spent rendering, plus an occasional stall, then
+ * waits for room in the buffer.
+ * The simulated device then consumes one burst per burst period and counts
+ * an underrun whenever a burst is not completely available.
+ * Runs with the same seed produce the same results.
+ */
+public class FakeAudioSink implements AudioSink {
+    private static final long NANOS_PER_SECOND = 1000000000L;
+
+    private final int mFramesPerBurst;
+    private final int mCapacityInFrames;
+    private final Random mRandom;
+    private long mRenderNanos;
+    private double mStallProbability;
+    private long mStallNanos;
+
+    private int mFrameRate;
+    private long mBurstNanos;
+    private long mTime;
+    private long mNextBurstTime;
+    private int mBufferSizeInFrames;
+    private int mFramesBuffered;
+    private long mFramesConsumed;
+    private long mLastBurstTime;
+    private int mUnderrunCount;
+    private boolean mPlaying; // becomes true when the first data is written
+    private long mWriteNanos;
+
+    /**
+     * @param framesPerBurst frames consumed by the device at a time
+     * @param capacityInFrames largest buffer size
+     * @param seed for the stalls
+     */
+    public FakeAudioSink(int framesPerBurst, int capacityInFrames, long seed) {
+        if (framesPerBurst < 1 || capacityInFrames < framesPerBurst) {
+            throw new IllegalArgumentException("framesPerBurst = "
+                    + framesPerBurst + ", capacityInFrames = "
+                    + capacityInFrames);
+        }
+        mFramesPerBurst = framesPerBurst;
+        mCapacityInFrames = capacityInFrames;
+        mRandom = new Random(seed);
+    }
+
+    /**
+     * @param renderNanos time the producer spends between writes
+     */
+    public void setRenderNanos(long renderNanos) {
+        mRenderNanos = renderNanos;
+    }
+
+    /**
+     * @param probability chance that a write is delayed by a stall
+     * @param stallNanos extra time added to the write
+     */
+    public void setStalls(double probability, long stallNanos) {
+        mStallProbability = probability;
+        mStallNanos = stallNanos;
+    }
+
+    @Override
+    public void start(int frameRate, boolean adjustable) {
+        mFrameRate = frameRate;
+        mBurstNanos = mFramesPerBurst * NANOS_PER_SECOND / frameRate;
+        mBufferSizeInFrames = mCapacityInFrames;
+        mFramesBuffered = 0;
+        mFramesConsumed = 0;
+        mUnderrunCount = 0;
+        mPlaying = false;
+        mNextBurstTime = mTime + mBurstNanos;
+    }
+
+    @Override
+    public int write(float[] buffer, int offset, int length) {
+        long delay = mRenderNanos;
+        if (mStallProbability > 0.0
+                && mRandom.nextDouble() < mStallProbability) {
+            delay += mStallNanos;
+        }
+        advanceTo(mTime + delay);
+        long startTime = mTime;
+        int frames = length / AudioOutput.SAMPLES_PER_FRAME;
+        while (frames > 0) {
+            int room = mBufferSizeInFrames - mFramesBuffered;
+            if (room > 0) {
+                int framesToWrite = Math.min(room, frames);
+                mFramesBuffered += framesToWrite;
+                frames -= framesToWrite;
+                mPlaying = true;
+            } else {
+                advanceTo(mNextBurstTime); // Block until the next burst.
+            }
+        }
+        mWriteNanos = mTime - startTime;
+        return length;
+    }
+
+    // Let the device consume every burst that is due by this time.
+    private void advanceTo(long time) {
+        while (mNextBurstTime <= time) {
+            if (mPlaying) {
+                if (mFramesBuffered < mFramesPerBurst) {
+                    mUnderrunCount++;
+                    mFramesConsumed += mFramesBuffered;
+                    mFramesBuffered = 0;
+                } else {
+                    mFramesConsumed += mFramesPerBurst;
+                    mFramesBuffered -= mFramesPerBurst;
+                }
+                mLastBurstTime = mNextBurstTime;
+            }
+            mNextBurstTime += mBurstNanos;
+        }
+        mTime = time;
+    }
+
+    @Override
+    public void stop() {
+        mPlaying = false;
+        mFramesBuffered = 0;
+    }
+
+    @Override
+    public int getUnderrunCount() {
+        return mUnderrunCount;
+    }
+
+    @Override
+    public int getBufferSizeInFrames() {
+        return mBufferSizeInFrames;
+    }
+
+    @Override
+    public int getBufferCapacityInFrames() {
+        return mCapacityInFrames;
+    }
+
+    /**
+     * The size is rounded up to a whole number of bursts.
+     */
+    @Override
+    public int setBufferSizeInFrames(int frames) {
+        int bursts = (frames + mFramesPerBurst - 1) / mFramesPerBurst;
+        int size = Math.max(1, bursts) * mFramesPerBurst;
+        mBufferSizeInFrames = Math.min(size, mCapacityInFrames);
+        return mBufferSizeInFrames;
+    }
+
+    @Override
+    public boolean getTimestamp(AudioFrameTimestamp timestamp) {
+        if (mFramesConsumed == 0) {
+            return false;
+        }
+        timestamp.framePosition = mFramesConsumed;
+        timestamp.nanoTime = mLastBurstTime;
+        return true;
+    }
+
+    @Override
+    public long getWriteNanos() {
+        return mWriteNanos;
+    }
+
+    @Override
+    public long nanoTime() {
+        return mTime;
+    }
+
+    public int getFrameRate() {
+        return mFrameRate;
+    }
+}
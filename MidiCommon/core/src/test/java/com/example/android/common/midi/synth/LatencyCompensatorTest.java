@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.common.midi.synth;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class LatencyCompensatorTest {
+    private static final long MSEC = 1000000L;
+    private static final long MARGIN = 5 * MSEC;
+    private static final int WINDOW = 64;
+
+    private static long feed(LatencyCompensator compensator, long latency,
+            int count) {
+        long compensation = 0;
+        for (int i = 0; i < count; i++) {
+            compensation = compensator.update(latency);
+        }
+        return compensation;
+    }
+
+    @Test
+    public void firstMeasurementSetsCompensation() {
+        LatencyCompensator compensator = new LatencyCompensator(MARGIN, WINDOW);
+        assertEquals(0, compensator.getCompensationNanos());
+        assertEquals(20 * MSEC + MARGIN, compensator.update(20 * MSEC));
+    }
+
+    @Test
+    public void singleLateMeasurementIsForgotten() {
+        LatencyCompensator compensator = new LatencyCompensator(MARGIN, WINDOW);
+        feed(compensator, 20 * MSEC, WINDOW);
+        assertEquals(20 * MSEC + MARGIN, compensator.getCompensationNanos());
+        // One late measurement is above the percentile so it is ignored.
+        compensator.update(80 * MSEC);
+        long compensation = feed(compensator, 20 * MSEC,
+                LatencyCompensator.UPDATE_INTERVAL);
+        assertEquals(20 * MSEC + MARGIN, compensation);
+    }
+
+    @Test
+    public void risesQuicklyAndFallsSlowly() {
+        LatencyCompensator compensator = new LatencyCompensator(MARGIN, WINDOW);
+        feed(compensator, 10 * MSEC, WINDOW);
+        // Rises once the higher latency reaches the percentile.
+        long compensation = feed(compensator, 40 * MSEC, WINDOW / 2);
+        assertEquals(40 * MSEC + MARGIN, compensation);
+        feed(compensator, 40 * MSEC, WINDOW);
+        // Falls a little at each update once the window has low latency.
+        compensation = feed(compensator, 10 * MSEC,
+                WINDOW + LatencyCompensator.UPDATE_INTERVAL);
+        assertTrue(compensation < 40 * MSEC + MARGIN);
+        assertTrue(compensation > 30 * MSEC + MARGIN);
+        long previous = compensation;
+        for (int i = 0; i < 20; i++) {
+            compensation = feed(compensator, 10 * MSEC,
+                    LatencyCompensator.UPDATE_INTERVAL);
+            assertTrue(compensation <= previous);
+            assertTrue(previous - compensation <= 4 * MSEC);
+            previous = compensation;
+        }
+        compensation = feed(compensator, 10 * MSEC, 200 * WINDOW);
+        assertEquals(10 * MSEC + MARGIN, compensation);
+    }
+
+    @Test
+    public void resetFollowsSmallerBuffer() {
+        LatencyCompensator compensator = new LatencyCompensator(MARGIN, WINDOW);
+        feed(compensator, 40 * MSEC, WINDOW);
+        compensator.reset();
+        assertEquals(0, compensator.getCompensationNanos());
+        assertEquals(10 * MSEC + MARGIN, compensator.update(10 * MSEC));
+    }
+
+    @Test
+    public void percentileIgnoresFewHighMeasurements() {
+        LatencyCompensator compensator = new LatencyCompensator(MARGIN, 100);
+        for (int i = 0; i < 100; i++) {
+            compensator.update((i < 95 ? 10 : 50) * MSEC);
+        }
+        // Only 5% are high.
+        assertEquals(10 * MSEC, compensator.getLatencyPercentile());
+        compensator.update(50 * MSEC);
+        assertEquals(50 * MSEC, compensator.getLatencyPercentile());
+    }
+}
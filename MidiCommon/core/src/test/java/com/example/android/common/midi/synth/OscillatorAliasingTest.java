@@ -0,0 +1,151 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.common.midi.synth;
+
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Compare the aliasing of the oscillators. Their speed is measured by
+ * OscillatorRenderBenchmark in the MidiSynth Benchmark module.
+ *
+ * Quality is the ratio of the energy in the harmonics of the note to the
+ * energy everywhere else, which is mostly aliasing. The test frequency is
+ * chosen so that a whole number of cycles fits in the analysis window,
+ * which puts every harmonic exactly on a bin of the FFT.
+ */
+public class OscillatorAliasingTest {
+    private static final int FRAME_RATE = SynthUnit.FRAME_RATE;
+    private static final int FFT_SIZE = 4096;
+    // Cycles per window. Odd and prime, so aliases rarely land on harmonics.
+    private static final int TEST_CYCLES = 293;
+    private static final int WARMUP_FRAMES = 1024;
+    private static final int BLOCK_SIZE = 240;
+
+    /**
+     * @return harmonic to alias ratio in dB, higher is better
+     */
+    private static double measureAliasingDb(SawOscillator oscillator) {
+        oscillator.setFrameRate(FRAME_RATE);
+        oscillator.setFrequencyScaler(1.0f);
+        oscillator.setFrequency((float) TEST_CYCLES * FRAME_RATE / FFT_SIZE);
+        oscillator.setAmplitude(1.0f);
+        float[] samples = new float[FFT_SIZE];
+        // Let filters settle.
+        for (int i = 0; i < WARMUP_FRAMES; i += BLOCK_SIZE) {
+            oscillator.renderBlock(samples, 0, BLOCK_SIZE);
+        }
+        oscillator.renderBlock(samples, 0, FFT_SIZE);
+        double[] real = new double[FFT_SIZE];
+        double[] imaginary = new double[FFT_SIZE];
+        for (int i = 0; i < FFT_SIZE; i++) {
+            real[i] = samples[i];
+        }
+        fft(real, imaginary);
+        double harmonicEnergy = 0.0;
+        double aliasEnergy = 0.0;
+        for (int bin = 1; bin < FFT_SIZE / 2; bin++) {
+            double power = real[bin] * real[bin]
+                    + imaginary[bin] * imaginary[bin];
+            if ((bin % TEST_CYCLES) == 0) {
+                harmonicEnergy += power;
+            } else {
+                aliasEnergy += power;
+            }
+        }
+        if (aliasEnergy == 0.0) {
+            return Double.POSITIVE_INFINITY;
+        }
+        return 10.0 * Math.log10(harmonicEnergy / aliasEnergy);
+    }
+
+    // In place radix 2 FFT. The length must be a power of two.
+    private static void fft(double[] real, double[] imaginary) {
+        int n = real.length;
+        for (int i = 1, j = 0; i < n; i++) {
+            int bit = n >> 1;
+            for (; (j & bit) != 0; bit >>= 1) {
+                j ^= bit;
+            }
+            j ^= bit;
+            if (i < j) {
+                double temp = real[i];
+                real[i] = real[j];
+                real[j] = temp;
+                temp = imaginary[i];
+                imaginary[i] = imaginary[j];
+                imaginary[j] = temp;
+            }
+        }
+        for (int length = 2; length <= n; length <<= 1) {
+            double angle = -2.0 * Math.PI / length;
+            double stepReal = Math.cos(angle);
+            double stepImaginary = Math.sin(angle);
+            for (int start = 0; start < n; start += length) {
+                double wReal = 1.0;
+                double wImaginary = 0.0;
+                for (int k = 0; k < length / 2; k++) {
+                    int even = start + k;
+                    int odd = even + length / 2;
+                    double oddReal = real[odd] * wReal
+                            - imaginary[odd] * wImaginary;
+                    double oddImaginary = real[odd] * wImaginary
+                            + imaginary[odd] * wReal;
+                    real[odd] = real[even] - oddReal;
+                    imaginary[odd] = imaginary[even] - oddImaginary;
+                    real[even] += oddReal;
+                    imaginary[even] += oddImaginary;
+                    double nextReal = wReal * stepReal
+                            - wImaginary * stepImaginary;
+                    wImaginary = wReal * stepImaginary
+                            + wImaginary * stepReal;
+                    wReal = nextReal;
+                }
+            }
+        }
+    }
+
+    private static void assertAbove(String name, double minimumDb,
+            SawOscillator oscillator) {
+        double quality = measureAliasingDb(oscillator);
+        assertTrue(name + " = " + quality + " dB", quality > minimumDb);
+    }
+
+    @Test
+    public void dpwAliasesLessThanNaiveSaw() {
+        double naive = measureAliasingDb(new SawOscillator());
+        double dpw = measureAliasingDb(new SawOscillatorDPW());
+        assertTrue("naive = " + naive + " dB, dpw = " + dpw + " dB",
+                dpw > naive + 10.0);
+    }
+
+    @Test
+    public void wavetablesAreBandLimited() {
+        assertAbove("saw", 90.0, new WavetableOscillator(Wavetable.getSaw()));
+        assertAbove("sine", 90.0, new WavetableOscillator(Wavetable.getSine()));
+        assertAbove("square", 90.0,
+                new WavetableOscillator(Wavetable.getSquare()));
+        assertAbove("triangle", 90.0,
+                new WavetableOscillator(Wavetable.getTriangle()));
+    }
+
+    @Test
+    public void sineIsClean() {
+        assertAbove("sine", 90.0, new SineOscillator());
+    }
+}
@@ -0,0 +1,175 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.common.midi.synth;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+public class PatchBankTest {
+    // Offsets in the bank file.
+    private static final int VERSION_OFFSET = 4;
+    private static final int COUNT_OFFSET = 8;
+    private static final int PROGRAMS_OFFSET = 12;
+    private static final int FIRST_PATCH_OFFSET = PROGRAMS_OFFSET
+            + PatchBank.NUM_PROGRAMS;
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private static PatchBank createBank() {
+        Patch[] patches = {
+                new Patch("Lead", Patch.WAVE_SQUARE, 0.8f, 0.01f, 0.2f, 0.5f, 0.4f),
+                new Patch("", Patch.WAVE_SINE, 1.0f, 0.0f, 0.0f, 1.0f, 0.0f),
+                new Patch("Pad \u00e9\u00e8", Patch.WAVE_TRIANGLE, 0.5f, 1.5f,
+                        0.7f, 0.9f, 2.0f)
+        };
+        byte[] programPatches = new byte[PatchBank.NUM_PROGRAMS];
+        for (int program = 0; program < PatchBank.NUM_PROGRAMS; program++) {
+            programPatches[program] = (byte) ((program * 7) % patches.length);
+        }
+        return new PatchBank(patches, programPatches);
+    }
+
+    private File saveBank() throws IOException {
+        File file = mFolder.newFile();
+        createBank().save(file);
+        return file;
+    }
+
+    private static void assertLoadFails(File file, String message) {
+        try {
+            PatchBank.load(file);
+            fail("loaded a bad bank");
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith(message));
+        }
+    }
+
+    // Save a bank, change the file and check that loading it fails.
+    private void assertCorruptFails(int offset, int value, String message)
+            throws IOException {
+        File file = saveBank();
+        byte[] data = Files.readAllBytes(file.toPath());
+        ByteBuffer.wrap(data).putInt(offset, value);
+        Files.write(file.toPath(), data);
+        assertLoadFails(file, message);
+    }
+
+    @Test
+    public void roundTrip() throws IOException {
+        PatchBank bank = createBank();
+        File file = mFolder.newFile();
+        bank.save(file);
+        PatchBank loaded = PatchBank.load(file);
+        assertEquals(bank.getPatchCount(), loaded.getPatchCount());
+        for (int i = 0; i < bank.getPatchCount(); i++) {
+            Patch expected = bank.getPatch(i);
+            Patch actual = loaded.getPatch(i);
+            assertEquals(expected.getName(), actual.getName());
+            assertEquals(expected.getWaveform(), actual.getWaveform());
+            assertEquals(expected.getLevel(), actual.getLevel(), 0.0f);
+            assertEquals(expected.getAttackTime(), actual.getAttackTime(), 0.0f);
+            assertEquals(expected.getDecayTime(), actual.getDecayTime(), 0.0f);
+            assertEquals(expected.getSustainLevel(), actual.getSustainLevel(),
+                    0.0f);
+            assertEquals(expected.getReleaseTime(), actual.getReleaseTime(),
+                    0.0f);
+        }
+        for (int program = 0; program < PatchBank.NUM_PROGRAMS; program++) {
+            assertEquals(bank.getPatchIndex(program),
+                    loaded.getPatchIndex(program));
+        }
+    }
+
+    @Test
+    public void defaultBankRoundTrip() throws IOException {
+        File file = mFolder.newFile();
+        PatchBank.createDefault().save(file);
+        PatchBank loaded = PatchBank.load(file);
+        assertEquals(4, loaded.getPatchCount());
+        assertEquals("Triangle", loaded.getProgramPatch(7).getName());
+    }
+
+    @Test
+    public void rejectsBadMagic() throws IOException {
+        assertCorruptFails(0, 0x4D546864, "Not a patch bank");
+    }
+
+    @Test
+    public void rejectsShortFile() throws IOException {
+        File file = mFolder.newFile();
+        Files.write(file.toPath(), new byte[] {'P', 'B', 'N', 'K'});
+        assertLoadFails(file, "Not a patch bank");
+    }
+
+    @Test
+    public void rejectsOtherVersion() throws IOException {
+        assertCorruptFails(VERSION_OFFSET, 2, "Unsupported patch bank version");
+    }
+
+    @Test
+    public void rejectsBadPatchCount() throws IOException {
+        assertCorruptFails(COUNT_OFFSET, 0, "Invalid patch count");
+        assertCorruptFails(COUNT_OFFSET, PatchBank.MAX_PATCHES + 1,
+                "Invalid patch count");
+    }
+
+    @Test
+    public void rejectsTruncatedPatch() throws IOException {
+        File file = saveBank();
+        byte[] data = Files.readAllBytes(file.toPath());
+        // Cut inside the fixed fields and inside the name of a patch.
+        int[] lengths = {FIRST_PATCH_OFFSET + 10, data.length - 1};
+        for (int length : lengths) {
+            Files.write(file.toPath(), Arrays.copyOf(data, length));
+            assertLoadFails(file, "Truncated patch");
+        }
+    }
+
+    @Test
+    public void rejectsMorePatchesThanStored() throws IOException {
+        assertCorruptFails(COUNT_OFFSET, 4, "Truncated patch 3");
+    }
+
+    @Test
+    public void rejectsProgramMapOutOfRange() throws IOException {
+        File file = saveBank();
+        byte[] data = Files.readAllBytes(file.toPath());
+        data[PROGRAMS_OFFSET + 5] = 3; // only patches 0 to 2 exist
+        Files.write(file.toPath(), data);
+        assertLoadFails(file, "Invalid program map");
+        data[PROGRAMS_OFFSET + 5] = (byte) 0x80; // negative
+        Files.write(file.toPath(), data);
+        assertLoadFails(file, "Invalid program map");
+    }
+
+    @Test
+    public void rejectsBadWaveform() throws IOException {
+        assertCorruptFails(FIRST_PATCH_OFFSET, 9, "Invalid patch 0");
+    }
+}
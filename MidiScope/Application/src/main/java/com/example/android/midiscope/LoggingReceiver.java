@@ -20,18 +20,19 @@ import android.media.midi.MidiReceiver;
 import android.util.Log;
 
 import java.io.IOException;
-import java.util.Locale;
-import java.util.concurrent.TimeUnit;
 
 /**
- * Convert incoming MIDI messages to a string and write them to a ScopeLogger.
+ * Pass incoming MIDI messages to a ScopeLogger.
  * Assume that messages have been aligned using a MidiFramer.
+ *
+ * The messages are also written to logcat when debug logging is enabled
+ * with "adb shell setprop log.tag.MidiScope DEBUG". That is off by default
+ * because formatting every message cannot keep up with a fast stream.
  */
 public class LoggingReceiver extends MidiReceiver {
     public static final String TAG = "MidiScope";
-    private static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
-    private long mStartTime;
-    private ScopeLogger mLogger;
+    private final long mStartTime;
+    private final ScopeLogger mLogger;
 
     public LoggingReceiver(ScopeLogger logger) {
         mStartTime = System.nanoTime();
@@ -44,20 +45,11 @@ public class LoggingReceiver extends MidiReceiver {
     @Override
     public void onSend(byte[] data, int offset, int count, long timestamp)
             throws IOException {
-        StringBuilder sb = new StringBuilder();
-        if (timestamp == 0) {
-            sb.append("-----0----: ");
-        } else {
-            long monoTime = timestamp - mStartTime;
-            double seconds = (double) monoTime / NANOS_PER_SECOND;
-            sb.append(String.format(Locale.US, "%10.3f: ", seconds));
+        mLogger.logMessage(data, offset, count, timestamp);
+        if (Log.isLoggable(TAG, Log.DEBUG)) {
+            Log.d(TAG, MidiPrinter.formatEvent(timestamp, mStartTime, data,
+                    offset, count, count));
         }
-        sb.append(MidiPrinter.formatBytes(data, offset, count));
-        sb.append(": ");
-        sb.append(MidiPrinter.formatMessage(data, offset));
-        String text = sb.toString();
-        mLogger.log(text);
-        Log.i(TAG, text);
     }
 
-}
\ No newline at end of file
+}
@@ -16,6 +16,7 @@
 
 package com.example.android.midiscope;
 
+import android.content.SharedPreferences;
 import android.media.midi.MidiDeviceInfo;
 import android.media.midi.MidiManager;
 import android.media.midi.MidiReceiver;
@@ -23,30 +24,60 @@ import android.os.Bundle;
 import android.support.v7.app.ActionBar;
 import android.support.v7.app.AppCompatActivity;
 import android.support.v7.widget.Toolbar;
+import android.view.Choreographer;
 import android.view.Menu;
 import android.view.MenuItem;
 import android.view.View;
 import android.view.WindowManager;
-import android.widget.ScrollView;
-import android.widget.TextView;
+import android.widget.ListView;
 
+import com.example.android.common.midi.AsyncMidiReceiver;
+import com.example.android.common.midi.MidiDispatcher;
 import com.example.android.common.midi.MidiFramer;
+import com.example.android.common.midi.MidiLogRecorder;
 import com.example.android.common.midi.MidiOutputPortSelector;
 import com.example.android.common.midi.MidiPortWrapper;
 
-import java.util.LinkedList;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * App that provides a MIDI echo service.
  */
 public class MainActivity extends AppCompatActivity implements ScopeLogger {
 
-    private static final int MAX_LINES = 100;
+    private static final String PREF_HISTORY_DEPTH = "history_depth";
+    private static final int DEFAULT_HISTORY_DEPTH = 4096;
+    private static final int[] HISTORY_DEPTHS = { 1024, 4096, 16384 };
+    private static final int[] HISTORY_MENU_IDS = { R.id.action_history_1k,
+            R.id.action_history_4k, R.id.action_history_16k };
 
-    private final LinkedList<String> mLogLines = new LinkedList<>();
-    private TextView mLog;
-    private ScrollView mScroller;
+    // Written by the MIDI threads and read by the UI thread.
+    private volatile MidiEventLog mEventLog;
+    private MidiLogAdapter mLogAdapter;
+    private ListView mLogView;
+    private int mHistoryDepth;
+    // True from when the log changes until the next frame shows it.
+    private final AtomicBoolean mUpdatePending = new AtomicBoolean();
+    private final Runnable mScheduleUpdate = new Runnable() {
+        @Override
+        public void run() {
+            Choreographer.getInstance().postFrameCallback(mUpdateCallback);
+        }
+    };
+    private final Choreographer.FrameCallback mUpdateCallback =
+            new Choreographer.FrameCallback() {
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            mUpdatePending.set(false);
+            updateLogView();
+        }
+    };
     private MidiOutputPortSelector mLogSenderSelector;
+    private MidiLogRecorder mRecorder;
+    private MidiReceiver mLoggingReceiver;
+    private MidiDispatcher mDispatcher;
 
     @Override
     public void onCreate(Bundle savedInstanceState) {
@@ -59,17 +90,32 @@ public class MainActivity extends AppCompatActivity implements ScopeLogger {
             actionBar.setDisplayShowTitleEnabled(false);
         }
 
-        mLog = (TextView) findViewById(R.id.log);
-        mScroller = (ScrollView) findViewById(R.id.scroll);
+        mHistoryDepth = getPreferences(MODE_PRIVATE).getInt(PREF_HISTORY_DEPTH,
+                DEFAULT_HISTORY_DEPTH);
+        mEventLog = new MidiEventLog(mHistoryDepth);
+        mLogAdapter = new MidiLogAdapter(this);
+        mLogView = (ListView) findViewById(R.id.log);
+        mLogView.setAdapter(mLogAdapter);
 
         // Setup MIDI
         MidiManager midiManager = (MidiManager) getSystemService(MIDI_SERVICE);
 
         // Receiver that prints the messages.
-        MidiReceiver loggingReceiver = new LoggingReceiver(this);
+        mLoggingReceiver = new LoggingReceiver(this);
+
+        // Receiver that records the messages to a file when enabled.
+        File logFile = new File(getExternalFilesDir(null), "midiscope.mlog");
+        mRecorder = new MidiLogRecorder(logFile);
+
+        // Send the messages to both, each on its own thread so that
+        // formatting the log cannot hold up the recorder.
+        mDispatcher = new MidiDispatcher(1024,
+                AsyncMidiReceiver.OVERFLOW_DROP_OLDEST);
+        mDispatcher.getSender().connect(mLoggingReceiver);
+        mDispatcher.getSender().connect(mRecorder);
 
         // Receiver that parses raw data into complete messages.
-        MidiFramer connectFramer = new MidiFramer(loggingReceiver);
+        MidiFramer connectFramer = new MidiFramer(mDispatcher);
 
         // Setup a menu to select an input source.
         mLogSenderSelector = new MidiOutputPortSelector(midiManager, this, R.id.spinner_senders) {
@@ -77,7 +123,7 @@ public class MainActivity extends AppCompatActivity implements ScopeLogger {
             public void onPortSelected(final MidiPortWrapper wrapper) {
                 super.onPortSelected(wrapper);
                 if (wrapper != null) {
-                    mLogLines.clear();
+                    mLogAdapter.clear();
                     MidiDeviceInfo deviceInfo = wrapper.getDeviceInfo();
                     if (deviceInfo == null) {
                         log(getString(R.string.header_text));
@@ -96,9 +142,14 @@ public class MainActivity extends AppCompatActivity implements ScopeLogger {
     @Override
     public void onDestroy() {
         mLogSenderSelector.onClose();
+        setRecording(false);
+        // Stop the dispatcher threads.
+        mDispatcher.getSender().disconnect(mLoggingReceiver);
+        mDispatcher.getSender().disconnect(mRecorder);
         // The scope will live on as a service so we need to tell it to stop
         // writing log messages to this Activity.
         MidiScope.setScopeLogger(null);
+        Choreographer.getInstance().removeFrameCallback(mUpdateCallback);
         super.onDestroy();
     }
 
@@ -106,6 +157,11 @@ public class MainActivity extends AppCompatActivity implements ScopeLogger {
     public boolean onCreateOptionsMenu(Menu menu) {
         getMenuInflater().inflate(R.menu.main, menu);
         setKeepScreenOn(menu.findItem(R.id.action_keep_screen_on).isChecked());
+        for (int i = 0; i < HISTORY_DEPTHS.length; i++) {
+            if (HISTORY_DEPTHS[i] == mHistoryDepth) {
+                menu.findItem(HISTORY_MENU_IDS[i]).setChecked(true);
+            }
+        }
         return true;
     }
 
@@ -113,18 +169,49 @@ public class MainActivity extends AppCompatActivity implements ScopeLogger {
     public boolean onOptionsItemSelected(MenuItem item) {
         switch (item.getItemId()) {
             case R.id.action_clear_all:
-                mLogLines.clear();
-                logOnUiThread("");
+                mLogAdapter.clear();
                 break;
             case R.id.action_keep_screen_on:
                 boolean checked = !item.isChecked();
                 setKeepScreenOn(checked);
                 item.setChecked(checked);
                 break;
+            case R.id.action_record:
+                item.setChecked(setRecording(!item.isChecked()));
+                break;
+            default:
+                for (int i = 0; i < HISTORY_MENU_IDS.length; i++) {
+                    if (HISTORY_MENU_IDS[i] == item.getItemId()) {
+                        setHistoryDepth(HISTORY_DEPTHS[i]);
+                        item.setChecked(true);
+                    }
+                }
+                break;
         }
         return super.onOptionsItemSelected(item);
     }
 
+    /**
+     * Start or stop recording the framed messages to the log file.
+     *
+     * @return true if recording
+     */
+    private boolean setRecording(boolean record) {
+        try {
+            if (record) {
+                mRecorder.start();
+                log("Recording to " + mRecorder.getFile());
+            } else if (mRecorder.isRecording()) {
+                mRecorder.stop();
+                log("Recorded " + mRecorder.getRecordedCount() + " messages, dropped "
+                        + mRecorder.getDroppedCount());
+            }
+        } catch (IOException e) {
+            log("Recording failed: " + e);
+        }
+        return mRecorder.isRecording();
+    }
+
     private void setKeepScreenOn(boolean keepScreenOn) {
         if (keepScreenOn) {
             getWindow().addFlags(WindowManager.LayoutParams.FLAG_KEEP_SCREEN_ON);
@@ -133,30 +220,57 @@ public class MainActivity extends AppCompatActivity implements ScopeLogger {
         }
     }
 
+    /**
+     * Keep this many of the most recent messages. Starts a new log.
+     */
+    private void setHistoryDepth(int depth) {
+        mHistoryDepth = depth;
+        SharedPreferences.Editor editor = getPreferences(MODE_PRIVATE).edit();
+        editor.putInt(PREF_HISTORY_DEPTH, depth);
+        editor.apply();
+        mEventLog = new MidiEventLog(depth);
+        requestUpdate();
+    }
+
     @Override
-    public void log(final String string) {
-        runOnUiThread(new Runnable() {
-            @Override
-            public void run() {
-                logOnUiThread(string);
-            }
-        });
+    public void log(String string) {
+        mEventLog.addText(string);
+        requestUpdate();
+    }
+
+    @Override
+    public void logMessage(byte[] data, int offset, int count, long timestamp) {
+        mEventLog.add(data, offset, count, timestamp);
+        requestUpdate();
     }
 
     /**
-     * Logs a message to our TextView. This needs to be called from the UI thread.
+     * Show the new entries on the next frame. However fast the messages
+     * arrive, the list is updated at most once per frame, and nothing is
+     * allocated here.
      */
-    private void logOnUiThread(String s) {
-        mLogLines.add(s);
-        if (mLogLines.size() > MAX_LINES) {
-            mLogLines.removeFirst();
+    private void requestUpdate() {
+        if (mUpdatePending.compareAndSet(false, true)) {
+            runOnUiThread(mScheduleUpdate);
         }
-        // Render line buffer to one String.
-        StringBuilder sb = new StringBuilder();
-        for (String line : mLogLines) {
-            sb.append(line).append('\n');
+    }
+
+    /**
+     * Show the latest snapshot of the log. This needs to be called from the
+     * UI thread. When the list is scrolled back, it is kept on the same
+     * rows as old entries are removed. Otherwise the transcript mode keeps
+     * the newest entry in view.
+     */
+    private void updateLogView() {
+        int firstVisible = mLogView.getFirstVisiblePosition();
+        View firstChild = mLogView.getChildAt(0);
+        int top = (firstChild == null) ? 0 : firstChild.getTop();
+        boolean following = mLogView.getLastVisiblePosition()
+                >= mLogAdapter.getCount() - 1;
+        int removed = mLogAdapter.update(mEventLog);
+        if (removed > 0 && !following) {
+            mLogView.setSelectionFromTop(Math.max(0, firstVisible - removed),
+                    top);
         }
-        mLog.setText(sb.toString());
-        mScroller.fullScroll(View.FOCUS_DOWN);
     }
 }
@@ -0,0 +1,157 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.example.android.midiscope;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Ring of the most recent MIDI messages and text lines, kept as raw bytes
+ * so that nothing is formatted until it is shown.
+ *
+ * Each entry uses two longs, one for the timestamp and one for the packed
+ * message. Up to 7 bytes of a message are kept along with its full length,
+ * so long SysEx messages are shortened. Text lines are kept as Strings.
+ *
+ * Any thread can add entries. Writers share a lock, but the reader does
+ * not use it. The newest entry is published last, and an entry that was
+ * overwritten while it was being read is reported as missing.
+ */
+public class MidiEventLog {
+    public static final int MAX_STORED_BYTES = 7;
+    private static final int COUNT_SHIFT = 8 * MAX_STORED_BYTES;
+    private static final int MAX_COUNT = 0xFF;
+
+    private final Object mLock = new Object();
+    private final int mCapacity;
+    private final int mMask;
+    private final AtomicLongArray mEntries; // pairs of timestamp and message
+    private final AtomicReferenceArray<String> mTexts;
+    private final long mStartTime;
+    private volatile long mWriteIndex;
+
+    /**
+     * Holds one entry read from the log.
+     */
+    public static class Entry {
+        public long timestamp;
+        public int count; // length of the message, which may be over data.length
+        public final byte[] data = new byte[MAX_STORED_BYTES];
+        public String text; // null for a MIDI message
+    }
+
+    /**
+     * @param capacity number of entries kept, rounded up to a power of two
+     */
+    public MidiEventLog(int capacity) {
+        if (capacity < 2) {
+            throw new IllegalArgumentException("capacity = " + capacity);
+        }
+        mCapacity = Integer.highestOneBit(capacity - 1) << 1;
+        mMask = mCapacity - 1;
+        mEntries = new AtomicLongArray(2 * mCapacity);
+        mTexts = new AtomicReferenceArray<String>(mCapacity);
+        mStartTime = System.nanoTime();
+    }
+
+    /**
+     * Add a MIDI message. Does not allocate.
+     */
+    public void add(byte[] data, int offset, int count, long timestamp) {
+        long packed = Math.min(count, MAX_COUNT);
+        packed <<= COUNT_SHIFT;
+        int stored = Math.min(count, MAX_STORED_BYTES);
+        for (int i = 0; i < stored; i++) {
+            packed |= (long) (data[offset + i] & 0xFF) << (8 * i);
+        }
+        write(timestamp, packed, null);
+    }
+
+    /**
+     * Add a line of text.
+     */
+    public void addText(String text) {
+        write(System.nanoTime(), 0, text);
+    }
+
+    // Messages come from the one thread of the open MIDI port, plus an
+    // occasional text line, so the lock is rarely contended. A lock-free
+    // index would also need a per-slot sequence to publish entries. The
+    // reader never takes the lock, so it cannot block drawing.
+    private void write(long timestamp, long packed, String text) {
+        synchronized (mLock) {
+            long index = mWriteIndex;
+            int slot = (int) (index & mMask);
+            mTexts.set(slot, text);
+            mEntries.set(2 * slot, timestamp);
+            mEntries.set(2 * slot + 1, packed);
+            mWriteIndex = index + 1; // Publish the entry.
+        }
+    }
+
+    /**
+     * @return index that the next entry will have
+     */
+    public long getWriteIndex() {
+        return mWriteIndex;
+    }
+
+    /**
+     * The slot of the oldest entry may be in the middle of being
+     * overwritten, so one less than the capacity can be read.
+     *
+     * @return index of the oldest entry that can be read
+     */
+    public long getFirstIndex() {
+        return Math.max(0, mWriteIndex - (mCapacity - 1));
+    }
+
+    public int getCapacity() {
+        return mCapacity;
+    }
+
+    /**
+     * @return System.nanoTime() when the log was created
+     */
+    public long getStartTime() {
+        return mStartTime;
+    }
+
+    /**
+     * Copy an entry.
+     *
+     * @param index from getFirstIndex() to getWriteIndex() - 1
+     * @param entry filled in with the entry
+     * @return false if the entry is not in the log any more
+     */
+    public boolean read(long index, Entry entry) {
+        if (index < getFirstIndex() || index >= mWriteIndex) {
+            return false;
+        }
+        int slot = (int) (index & mMask);
+        entry.text = mTexts.get(slot);
+        entry.timestamp = mEntries.get(2 * slot);
+        long packed = mEntries.get(2 * slot + 1);
+        entry.count = (int) (packed >>> COUNT_SHIFT);
+        for (int i = 0; i < MAX_STORED_BYTES; i++) {
+            entry.data[i] = (byte) (packed >>> (8 * i));
+        }
+        // Check that a writer did not start to reuse the slot.
+        return index >= getFirstIndex();
+    }
+}
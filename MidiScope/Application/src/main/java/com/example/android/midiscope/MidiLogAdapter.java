@@ -0,0 +1,126 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.example.android.midiscope;
+
+import android.content.Context;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.BaseAdapter;
+import android.widget.TextView;
+
+/**
+ * Shows the entries of a MidiEventLog in a ListView.
+ * Only the rows that are on the screen are formatted.
+ *
+ * The adapter works from a snapshot of the log that is taken by update(),
+ * so the ListView sees a stable count between updates.
+ * Only use it from the UI thread.
+ */
+public class MidiLogAdapter extends BaseAdapter {
+    private final LayoutInflater mInflater;
+    private final MidiEventLog.Entry mEntry = new MidiEventLog.Entry();
+    private MidiEventLog mLog;
+    private long mFirstIndex;
+    private long mClearIndex;
+    private int mCount;
+
+    public MidiLogAdapter(Context context) {
+        mInflater = LayoutInflater.from(context);
+    }
+
+    /**
+     * Take a new snapshot of the log and notify the ListView if it changed.
+     *
+     * @param log may be a different log than last time
+     * @return number of rows removed from the start of the list
+     */
+    public int update(MidiEventLog log) {
+        if (log != mLog) {
+            mLog = log;
+            mFirstIndex = 0;
+            mClearIndex = 0;
+            mCount = 0;
+        }
+        long firstIndex = Math.max(mClearIndex, log.getFirstIndex());
+        int count = (int) (log.getWriteIndex() - firstIndex);
+        int removed = (int) Math.min(mCount, firstIndex - mFirstIndex);
+        if (firstIndex != mFirstIndex || count != mCount) {
+            mFirstIndex = firstIndex;
+            mCount = count;
+            notifyDataSetChanged();
+        }
+        return removed;
+    }
+
+    /**
+     * Hide everything that is in the log now.
+     */
+    public void clear() {
+        if (mLog != null) {
+            mClearIndex = mLog.getWriteIndex();
+            update(mLog);
+        }
+    }
+
+    @Override
+    public int getCount() {
+        return mCount;
+    }
+
+    @Override
+    public Object getItem(int position) {
+        return formatRow(position);
+    }
+
+    /**
+     * @return index of the entry in the log, which does not change as
+     *     older entries are removed
+     */
+    @Override
+    public long getItemId(int position) {
+        return mFirstIndex + position;
+    }
+
+    @Override
+    public boolean hasStableIds() {
+        return true;
+    }
+
+    @Override
+    public View getView(int position, View convertView, ViewGroup parent) {
+        TextView view = (TextView) convertView;
+        if (view == null) {
+            view = (TextView) mInflater.inflate(R.layout.log_row, parent, false);
+        }
+        view.setText(formatRow(position));
+        return view;
+    }
+
+    private String formatRow(int position) {
+        if (!mLog.read(mFirstIndex + position, mEntry)) {
+            return ""; // Overwritten since the snapshot.
+        }
+        if (mEntry.text != null) {
+            return mEntry.text;
+        }
+        int stored = Math.min(mEntry.count, MidiEventLog.MAX_STORED_BYTES);
+        return MidiPrinter.formatEvent(mEntry.timestamp, mLog.getStartTime(),
+                mEntry.data, 0, stored, mEntry.count);
+    }
+}
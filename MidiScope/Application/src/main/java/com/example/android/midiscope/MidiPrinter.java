@@ -22,10 +22,14 @@ import android.os.Bundle;
 
 import com.example.android.common.midi.MidiConstants;
 
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
 /**
  * Format a MIDI message for printing.
  */
 public class MidiPrinter {
+    private static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
 
     public static final String[] CHANNEL_COMMAND_NAMES = { "NoteOff", "NoteOn",
             "PolyTouch", "Control", "Program", "Pressure", "Bend" };
@@ -88,6 +92,33 @@ public class MidiPrinter {
         return sb.toString();
     }
 
+    /**
+     * Format a timestamped message as one line of the log.
+     *
+     * @param timestamp System.nanoTime() of the message or zero if unknown
+     * @param startTime time that is shown as zero seconds
+     * @param count number of bytes in data
+     * @param length length of the whole message, more than count if it
+     *     was shortened
+     */
+    public static String formatEvent(long timestamp, long startTime,
+            byte[] data, int offset, int count, int length) {
+        StringBuilder sb = new StringBuilder();
+        if (timestamp == 0) {
+            sb.append("-----0----: ");
+        } else {
+            double seconds = (double) (timestamp - startTime) / NANOS_PER_SECOND;
+            sb.append(String.format(Locale.US, "%10.3f: ", seconds));
+        }
+        sb.append(formatBytes(data, offset, count));
+        if (length > count) {
+            sb.append(" ...");
+        }
+        sb.append(": ");
+        sb.append(formatMessage(data, offset));
+        return sb.toString();
+    }
+
     public static String formatDeviceInfo(MidiDeviceInfo info) {
         StringBuilder sb = new StringBuilder();
         if (info != null) {
@@ -24,4 +24,15 @@ public interface ScopeLogger {
      * @param text The log message.
      */
     void log(String text);
+
+    /**
+     * Show a MIDI message. This may be called for every message in a fast
+     * stream, so it should not format the message right away.
+     *
+     * @param data holds one complete message
+     * @param offset
+     * @param count
+     * @param timestamp System.nanoTime() of the message or zero if unknown
+     */
+    void logMessage(byte[] data, int offset, int count, long timestamp);
 }
@@ -0,0 +1,110 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.example.android.midisynth.benchmark;
+
+import com.example.android.common.midi.EventBuffer;
+import com.example.android.common.midi.EventScheduler;
+import com.example.android.common.midi.EventScheduler.SchedulableEvent;
+import com.example.android.common.midi.TimingWheelEventBuffer;
+import com.example.android.common.midi.TreeMapEventBuffer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of EventScheduler with one thread adding events and another
+ * thread removing them at the same time, like a MIDI input thread feeding
+ * the synthesis thread.
+ *
+ * With pooled set, removed events are returned to the scheduler's pool
+ * and reused by the adding thread, which is what MidiEventScheduler does.
+ * The adding thread yields while MAX_PENDING events are waiting so the
+ * buffer cannot grow without limit. Calls to getNextEvent() that find
+ * nothing due are counted too, so compare the add rates.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Group)
+public class EventSchedulerBenchmark {
+    private static final int MAX_PENDING = 1024;
+
+    @Param({"treemap", "wheel"})
+    public String buffer;
+
+    @Param({"false", "true"})
+    public boolean pooled;
+
+    private EventScheduler mScheduler;
+    // Each is only written by one thread.
+    private volatile long mAddedCount;
+    private volatile long mRemovedCount;
+
+    @Setup(Level.Iteration)
+    public void setup() {
+        EventBuffer eventBuffer = "wheel".equals(buffer)
+                ? new TimingWheelEventBuffer() : new TreeMapEventBuffer();
+        mScheduler = new EventScheduler(eventBuffer);
+        mAddedCount = 0;
+        mRemovedCount = 0;
+    }
+
+    @Benchmark
+    @Group("contended")
+    @GroupThreads(1)
+    public boolean add() {
+        if (mAddedCount - mRemovedCount >= MAX_PENDING) {
+            Thread.yield();
+            return false;
+        }
+        SchedulableEvent event = pooled ? mScheduler.removeEventfromPool() : null;
+        long now = System.nanoTime();
+        if (event == null) {
+            event = new SchedulableEvent(now);
+        } else {
+            event.setTimestamp(now);
+        }
+        mScheduler.add(event);
+        mAddedCount = mAddedCount + 1;
+        return true;
+    }
+
+    @Benchmark
+    @Group("contended")
+    @GroupThreads(1)
+    public SchedulableEvent getNextEvent() {
+        SchedulableEvent event = mScheduler.getNextEvent(System.nanoTime());
+        if (event != null) {
+            mRemovedCount = mRemovedCount + 1;
+            if (pooled) {
+                mScheduler.addEventToPool(event);
+            }
+        }
+        return event;
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.example.android.midisynth.benchmark;
+
+import android.media.midi.MidiReceiver;
+
+import com.example.android.common.midi.MidiDispatcher;
+import com.example.android.common.midi.MidiMessageBatch;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time for a synchronous MidiDispatcher to deliver to its receivers.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+public class MidiDispatcherBenchmark {
+    private static final int BATCH_SIZE = 16;
+
+    @Param({"1", "4", "16"})
+    public int receivers;
+
+    private final byte[] mNoteOn = { (byte) 0x90, 60, 100 };
+    private final MidiMessageBatch mBatch = new MidiMessageBatch(BATCH_SIZE);
+    private MidiDispatcher mDispatcher;
+
+    @Setup
+    public void setup(final Blackhole blackhole) {
+        mDispatcher = new MidiDispatcher();
+        for (int i = 0; i < receivers; i++) {
+            mDispatcher.getSender().connect(new MidiReceiver() {
+                @Override
+                public void onSend(byte[] msg, int offset, int count,
+                        long timestamp) {
+                    blackhole.consume(msg[offset]);
+                }
+            });
+        }
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            mBatch.addCopy(mNoteOn, 0, mNoteOn.length, i);
+        }
+    }
+
+    /**
+     * One message to every receiver.
+     */
+    @Benchmark
+    public void send() throws IOException {
+        mDispatcher.send(mNoteOn, 0, mNoteOn.length, 0);
+    }
+
+    /**
+     * BATCH_SIZE messages to every receiver.
+     */
+    @Benchmark
+    public void sendBatch() throws IOException {
+        mDispatcher.sendBatch(mBatch);
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.example.android.midisynth.benchmark;
+
+import android.media.midi.MidiReceiver;
+
+import com.example.android.common.midi.MidiFramer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time for MidiFramer to split a mixed stream into messages.
+ * The stream has running status, SysEx and real-time messages in the
+ * middle of other messages. It is sent in packets of packetSize bytes.
+ * Each operation sends the whole stream.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+public class MidiFramerBenchmark {
+    private static final byte[] STREAM = {
+        (byte) 0x90, 60, 100, 64, 100, 67, 100, // running status
+        (byte) 0xB0, 7, (byte) 0xF8, 90, // clock inside a message
+        (byte) 0xE0, 0, 64,
+        (byte) 0xC0, 5,
+        (byte) 0xF0, 0x7E, 0x7F, 0x06, 0x01, (byte) 0xF7, // identity request
+        (byte) 0xD0, 80, 81, 82,
+        (byte) 0x80, 60, 0, 64, 0, 67, 0,
+        (byte) 0xFE, // active sensing
+        (byte) 0xA0, 60, 40,
+        (byte) 0xF0, 0x43, 0x10, 0x4C, 0x00, 0x00, 0x7E, 0x00, (byte) 0xF7,
+        (byte) 0x99, 36, 127, 38, 127, 42, 127, 36, 0, 38, 0, 42, 0
+    };
+
+    @Param({"3", "64"})
+    public int packetSize;
+
+    @Param({"false", "true"})
+    public boolean bulkScan;
+
+    private MidiFramer mFramer;
+
+    @Setup
+    public void setup(final Blackhole blackhole) {
+        mFramer = new MidiFramer(new MidiReceiver() {
+            @Override
+            public void onSend(byte[] msg, int offset, int count,
+                    long timestamp) {
+                blackhole.consume(msg[offset]);
+                blackhole.consume(count);
+            }
+        });
+        mFramer.setBulkScanEnabled(bulkScan);
+    }
+
+    @Benchmark
+    public void send() throws IOException {
+        for (int offset = 0; offset < STREAM.length; offset += packetSize) {
+            int count = Math.min(packetSize, STREAM.length - offset);
+            mFramer.send(STREAM, offset, count, 0);
+        }
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.example.android.midisynth.benchmark;
+
+import com.example.android.common.midi.synth.SawOscillator;
+import com.example.android.common.midi.synth.SawOscillatorDPW;
+import com.example.android.common.midi.synth.SineOscillator;
+import com.example.android.common.midi.synth.Wavetable;
+import com.example.android.common.midi.synth.WavetableOscillator;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time per frame for each oscillator, one frame at a time with render()
+ * and one buffer at a time with renderBlock().
+ * Their aliasing is compared by OscillatorAliasingTest in MidiCommon core.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+public class OscillatorRenderBenchmark {
+    private static final int FRAMES = 240;
+
+    @Param({"saw", "dpw", "sine", "wavetable", "wavetable_sine",
+            "wavetable_square", "wavetable_triangle"})
+    public String oscillator;
+
+    private SawOscillator mOscillator;
+    private final float[] mBuffer = new float[FRAMES];
+
+    @Setup
+    public void setup() {
+        if ("dpw".equals(oscillator)) {
+            mOscillator = new SawOscillatorDPW();
+        } else if ("sine".equals(oscillator)) {
+            mOscillator = new SineOscillator();
+        } else if ("wavetable".equals(oscillator)) {
+            mOscillator = new WavetableOscillator(Wavetable.getSaw());
+        } else if ("wavetable_sine".equals(oscillator)) {
+            mOscillator = new WavetableOscillator(Wavetable.getSine());
+        } else if ("wavetable_square".equals(oscillator)) {
+            mOscillator = new WavetableOscillator(Wavetable.getSquare());
+        } else if ("wavetable_triangle".equals(oscillator)) {
+            mOscillator = new WavetableOscillator(Wavetable.getTriangle());
+        } else {
+            mOscillator = new SawOscillator();
+        }
+        mOscillator.setFrequency(440.0f);
+        mOscillator.setAmplitude(0.5f);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FRAMES)
+    public float render() {
+        float sum = 0.0f;
+        for (int i = 0; i < FRAMES; i++) {
+            sum += mOscillator.render();
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FRAMES)
+    public float[] renderBlock() {
+        mOscillator.renderBlock(mBuffer, 0, FRAMES);
+        return mBuffer;
+    }
+}
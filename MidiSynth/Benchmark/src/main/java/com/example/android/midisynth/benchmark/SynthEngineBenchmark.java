@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.example.android.midisynth.benchmark;
+
+import com.example.android.common.midi.synth.SimpleAudioOutput;
+import com.example.android.common.midi.synth.SynthEngine;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time for SynthEngine to generate one buffer with a number of notes held.
+ * The audio goes to the AudioTrack shim, which discards it.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+public class SynthEngineBenchmark {
+    // One 240 frame buffer at 48000 Hz.
+    private static final long NANOS_PER_BUFFER = 5000000L;
+
+    @Param({"1", "8", "32"})
+    public int voices;
+
+    @Param({"false", "true"})
+    public boolean sampleAccurate;
+
+    private SynthEngine mEngine;
+
+    @Setup
+    public void setup() throws IOException {
+        mEngine = new SynthEngine(new SimpleAudioOutput());
+        mEngine.setMaxVoices(voices);
+        mEngine.setSampleAccurate(sampleAccurate);
+        mEngine.startOffline();
+        // Spread the notes over four channels with their own programs
+        // so that several patches play.
+        byte[] programChange = new byte[2];
+        for (int channel = 0; channel < 4; channel++) {
+            programChange[0] = (byte) (0xC0 + channel);
+            programChange[1] = (byte) channel;
+            mEngine.send(programChange, 0, programChange.length, 0);
+        }
+        byte[] noteOn = new byte[3];
+        for (int i = 0; i < voices; i++) {
+            noteOn[0] = (byte) (0x90 + (i & 3));
+            noteOn[1] = (byte) (36 + i);
+            noteOn[2] = 100;
+            mEngine.send(noteOn, 0, noteOn.length, 0);
+        }
+        // Get past the attacks.
+        mEngine.renderOffline(NANOS_PER_BUFFER * 100);
+    }
+
+    @TearDown
+    public void tearDown() {
+        mEngine.stop();
+    }
+
+    @Benchmark
+    public int generateBuffer() throws IOException {
+        return mEngine.renderOffline(mEngine.getOfflineTime() + NANOS_PER_BUFFER);
+    }
+}
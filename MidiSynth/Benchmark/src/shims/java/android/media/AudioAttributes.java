@@ -0,0 +1,45 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package android.media;
+
+/**
+ * JVM shim.
+ */
+public final class AudioAttributes {
+    public static final int USAGE_MEDIA = 1;
+    public static final int CONTENT_TYPE_MUSIC = 2;
+    public static final int FLAG_LOW_LATENCY = 1 << 8;
+
+    public static class Builder {
+        public Builder setUsage(int usage) {
+            return this;
+        }
+
+        public Builder setContentType(int contentType) {
+            return this;
+        }
+
+        public Builder setFlags(int flags) {
+            return this;
+        }
+
+        public AudioAttributes build() {
+            return new AudioAttributes();
+        }
+    }
+}
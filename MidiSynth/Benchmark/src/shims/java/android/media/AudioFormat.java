@@ -0,0 +1,44 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package android.media;
+
+/**
+ * JVM shim.
+ */
+public final class AudioFormat {
+    public static final int CHANNEL_OUT_STEREO = 12;
+    public static final int ENCODING_PCM_FLOAT = 4;
+
+    public static class Builder {
+        public Builder setSampleRate(int sampleRate) {
+            return this;
+        }
+
+        public Builder setChannelMask(int channelMask) {
+            return this;
+        }
+
+        public Builder setEncoding(int encoding) {
+            return this;
+        }
+
+        public AudioFormat build() {
+            return new AudioFormat();
+        }
+    }
+}
@@ -14,14 +14,12 @@
  * limitations under the License.
  */
 
-package com.example.android.common.midi.synth;
+
+package android.media;
 
 /**
- * Replace sawtooth with a sine wave.
+ * JVM shim.
  */
-public class SineVoice extends SawVoice {
-    @Override
-    protected SawOscillator createOscillator() {
-        return new SineOscillator();
-    }
+public class AudioManager {
+    public static final int STREAM_MUSIC = 3;
 }
@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package android.media;
+
+/**
+ * JVM shim that discards the audio without blocking.
+ */
+public class AudioTrack {
+    public static final int MODE_STREAM = 1;
+    public static final int WRITE_BLOCKING = 0;
+    public static final int WRITE_NON_BLOCKING = 1;
+    public static final int PERFORMANCE_MODE_LOW_LATENCY = 1;
+
+    private int mBufferSizeInFrames;
+    private final int mCapacityInFrames;
+
+    private AudioTrack(int capacityInFrames) {
+        mCapacityInFrames = capacityInFrames;
+        mBufferSizeInFrames = capacityInFrames;
+    }
+
+    public static class Builder {
+        private int mBufferSizeInBytes = 8 * 1024;
+
+        public Builder setAudioAttributes(AudioAttributes attributes) {
+            return this;
+        }
+
+        public Builder setAudioFormat(AudioFormat format) {
+            return this;
+        }
+
+        public Builder setBufferSizeInBytes(int bufferSizeInBytes) {
+            mBufferSizeInBytes = bufferSizeInBytes;
+            return this;
+        }
+
+        public Builder setTransferMode(int mode) {
+            return this;
+        }
+
+        public Builder setPerformanceMode(int performanceMode) {
+            return this;
+        }
+
+        public AudioTrack build() {
+            // Stereo float frames.
+            return new AudioTrack(mBufferSizeInBytes / 8);
+        }
+    }
+
+    public static int getMinBufferSize(int sampleRateInHz, int channelConfig,
+            int audioFormat) {
+        return 2 * 256 * 8;
+    }
+
+    public void play() {
+    }
+
+    public void stop() {
+    }
+
+    public void release() {
+    }
+
+    public int write(float[] audioData, int offsetInFloats, int sizeInFloats,
+            int writeMode) {
+        return sizeInFloats;
+    }
+
+    public boolean getTimestamp(AudioTimestamp timestamp) {
+        return false;
+    }
+
+    public int getUnderrunCount() {
+        return 0;
+    }
+
+    public int getBufferSizeInFrames() {
+        return mBufferSizeInFrames;
+    }
+
+    public int getBufferCapacityInFrames() {
+        return mCapacityInFrames;
+    }
+
+    public int setBufferSizeInFrames(int bufferSizeInFrames) {
+        mBufferSizeInFrames = Math.max(1,
+                Math.min(mCapacityInFrames, bufferSizeInFrames));
+        return mBufferSizeInFrames;
+    }
+}
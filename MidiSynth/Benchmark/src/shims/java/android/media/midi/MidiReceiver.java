@@ -0,0 +1,64 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package android.media.midi;
+
+import java.io.IOException;
+
+/**
+ * JVM shim with the same behavior as the Android MidiReceiver.
+ */
+public abstract class MidiReceiver {
+    private final int mMaxMessageSize;
+
+    public MidiReceiver() {
+        this(Integer.MAX_VALUE);
+    }
+
+    public MidiReceiver(int maxMessageSize) {
+        mMaxMessageSize = maxMessageSize;
+    }
+
+    public abstract void onSend(byte[] msg, int offset, int count,
+            long timestamp) throws IOException;
+
+    public void flush() throws IOException {
+        onFlush();
+    }
+
+    public void onFlush() throws IOException {
+    }
+
+    public final int getMaxMessageSize() {
+        return mMaxMessageSize;
+    }
+
+    public void send(byte[] msg, int offset, int count) throws IOException {
+        send(msg, offset, count, 0);
+    }
+
+    public void send(byte[] msg, int offset, int count, long timestamp)
+            throws IOException {
+        int messageSize = getMaxMessageSize();
+        while (count > 0) {
+            int length = (count > messageSize ? messageSize : count);
+            onSend(msg, offset, length, timestamp);
+            offset += length;
+            count -= length;
+        }
+    }
+}